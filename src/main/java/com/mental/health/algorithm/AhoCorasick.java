@@ -0,0 +1,193 @@
+package com.mental.health.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho–Corasick 多模式匹配自动机
+ *
+ * 每个模式串带一个整数标签（同一模式串可带多个标签），一次扫描文本即可报告所有命中模式的标签。
+ * 转移表以 (状态, 字符) 编码为 long 键存放在 {@link LongIntHashMap} 中；
+ * 输出集合在构建时沿失败链合并，匹配时无需再回溯输出链。
+ * 构建完成后不可变，可被多线程并发使用。
+ */
+public final class AhoCorasick {
+
+    private final LongIntHashMap transitions;
+    private final int[] fail;
+    private final int[][] outputs;
+    private final int patternCount;
+
+    private AhoCorasick(LongIntHashMap transitions, int[] fail, int[][] outputs, int patternCount) {
+        this.transitions = transitions;
+        this.fail = fail;
+        this.outputs = outputs;
+        this.patternCount = patternCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int patternCount() {
+        return patternCount;
+    }
+
+    public int stateCount() {
+        return fail.length;
+    }
+
+    /**
+     * 扫描文本，每命中一次模式就回调其标签（同一标签可能被回调多次）
+     */
+    public void scan(CharSequence text, IntConsumer onTag) {
+        if (text == null || patternCount == 0) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transitions.get(key(state, c))) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            for (int tag : outputs[state]) {
+                onTag.accept(tag);
+            }
+        }
+    }
+
+    /**
+     * 文本中是否命中任意模式
+     */
+    public boolean matchesAny(CharSequence text) {
+        if (text == null || patternCount == 0) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transitions.get(key(state, c))) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            if (outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    public static final class Builder {
+
+        private static final int[] NO_TAGS = new int[0];
+
+        /** 构建期的字典树：每个状态的子节点与自身标签 */
+        private final List<Map<Character, Integer>> children = new ArrayList<>();
+        private final List<int[]> tags = new ArrayList<>();
+        private int patternCount;
+
+        private Builder() {
+            newState();
+        }
+
+        /**
+         * 添加模式串；空串被忽略
+         */
+        public Builder add(String pattern, int tag) {
+            if (pattern == null || pattern.isEmpty()) {
+                return this;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            int[] existing = tags.get(state);
+            for (int t : existing) {
+                if (t == tag) {
+                    return this;
+                }
+            }
+            int[] merged = Arrays.copyOf(existing, existing.length + 1);
+            merged[existing.length] = tag;
+            tags.set(state, merged);
+            patternCount++;
+            return this;
+        }
+
+        public AhoCorasick build() {
+            int size = children.size();
+            LongIntHashMap transitions = new LongIntHashMap(size);
+            int[] fail = new int[size];
+            int[][] outputs = new int[size][];
+            outputs[0] = tags.get(0);
+
+            // 按 BFS 顺序计算失败指针：父节点的失败指针一定先于子节点确定
+            int[] queue = new int[size];
+            int head = 0;
+            int tail = 0;
+            for (Map.Entry<Character, Integer> e : children.get(0).entrySet()) {
+                int child = e.getValue();
+                transitions.put(key(0, e.getKey()), child);
+                fail[child] = 0;
+                outputs[child] = tags.get(child);
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (Map.Entry<Character, Integer> e : children.get(state).entrySet()) {
+                    char c = e.getKey();
+                    int child = e.getValue();
+                    transitions.put(key(state, c), child);
+
+                    int f = fail[state];
+                    int next;
+                    while ((next = children.get(f).getOrDefault(c, -1)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = Math.max(next, 0);
+                    outputs[child] = union(tags.get(child), outputs[fail[child]]);
+                    queue[tail++] = child;
+                }
+            }
+            return new AhoCorasick(transitions, fail, outputs, patternCount);
+        }
+
+        private int newState() {
+            children.add(new HashMap<>(4));
+            tags.add(NO_TAGS);
+            return children.size() - 1;
+        }
+
+        private static int[] union(int[] own, int[] inherited) {
+            if (inherited.length == 0) return own;
+            if (own.length == 0) return inherited;
+            int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+            int n = own.length;
+            outer:
+            for (int t : inherited) {
+                for (int i = 0; i < n; i++) {
+                    if (merged[i] == t) continue outer;
+                }
+                merged[n++] = t;
+            }
+            return n == merged.length ? merged : Arrays.copyOf(merged, n);
+        }
+    }
+}
@@ -2,152 +2,297 @@ package com.mental.health.algorithm;
 
 import org.springframework.stereotype.Component;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 /**
  * 协同过滤推荐算法
- * 基于用户-资源评分矩阵，计算用户相似度，推荐个性化资源
+ * 基于用户-资源稀疏评分矩阵，计算用户相似度，推荐个性化资源
+ *
+ * 相似度：共同评分资源上的余弦相似度。计算时经由资源倒排索引只访问共同评分用户，
+ * 不再做 O(n²) 的全量两两比较；结果保存为 Top-K 近邻表，在线推荐只需查表加权求和。
  */
 @Component
 public class CollaborativeFiltering {
 
-    /**
-     * 计算余弦相似度
-     */
-    public double cosineSimilarity(Map<Long, Double> user1Ratings, Map<Long, Double> user2Ratings) {
-        Set<Long> commonResources = new HashSet<>(user1Ratings.keySet());
-        commonResources.retainAll(user2Ratings.keySet());
-
-        if (commonResources.isEmpty()) {
-            return 0.0;
-        }
+    /** 评分人数超过该值的资源不参与近邻发现（热门资源区分度低，且会让候选集退化为全体用户） */
+    private static final int DEFAULT_MAX_CO_RATERS = 5000;
 
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
+    /** 近邻数上限 */
+    public static final int MAX_K = 256;
 
-        for (Long resourceId : commonResources) {
-            double rating1 = user1Ratings.get(resourceId);
-            double rating2 = user2Ratings.get(resourceId);
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
 
-            dotProduct += rating1 * rating2;
-            norm1 += rating1 * rating1;
-            norm2 += rating2 * rating2;
-        }
+    /**
+     * 全量构建所有用户的 Top-K 近邻表
+     */
+    public TopKNeighborIndex buildNeighborIndex(SparseRatingMatrix matrix, int k) {
+        return buildNeighborIndex(matrix, k, DEFAULT_MAX_CO_RATERS);
+    }
 
-        if (norm1 == 0 || norm2 == 0) {
-            return 0.0;
+    public TopKNeighborIndex buildNeighborIndex(SparseRatingMatrix matrix, int k, int maxCoRaters) {
+        int kk = Math.min(k, MAX_K);
+        int userCount = matrix.userCount();
+        long[][] ids = new long[userCount][];
+        float[][] sims = new float[userCount][];
+
+        IntStream.range(0, userCount).parallel().forEach(u -> {
+            Scratch s = userScratch(matrix);
+            int n = computeNeighbors(matrix, u, kk, maxCoRaters, s, null);
+            ids[u] = Arrays.copyOf(s.topIds, n);
+            sims[u] = Arrays.copyOf(s.topSims, n);
+        });
+
+        TopKNeighborIndex index = new TopKNeighborIndex(kk, userCount);
+        for (int u = 0; u < userCount; u++) {
+            index.put(matrix.userIdAt(u), ids[u], sims[u]);
         }
-
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        return index;
     }
 
     /**
-     * 计算所有用户之间的相似度
+     * 增量更新近邻表：重算评分发生变化的用户，并把新的相似度回填到与其共同评分用户的列表中。
+     * 返回新的索引副本，原索引不受影响。
+     *
+     * 注意：若某用户撤销评分导致与他人不再有共同资源，对方列表中的旧条目会保留到下一次全量重建。
+     *
+     * @param changedUserIds 输出参数，记录列表发生变化的用户ID（用于持久化）
      */
-    public Map<Long, Map<Long, Double>> calculateUserSimilarities(Map<Long, Map<Long, Double>> userRatings) {
-        Map<Long, Map<Long, Double>> similarities = new HashMap<>();
-
-        List<Long> userIds = new ArrayList<>(userRatings.keySet());
-
-        for (int i = 0; i < userIds.size(); i++) {
-            Long userId1 = userIds.get(i);
-            Map<Long, Double> user1Ratings = userRatings.get(userId1);
-
-            similarities.putIfAbsent(userId1, new HashMap<>());
-
-            for (int j = i + 1; j < userIds.size(); j++) {
-                Long userId2 = userIds.get(j);
-                Map<Long, Double> user2Ratings = userRatings.get(userId2);
-
-                double similarity = cosineSimilarity(user1Ratings, user2Ratings);
-
-                similarities.get(userId1).put(userId2, similarity);
-                similarities.putIfAbsent(userId2, new HashMap<>());
-                similarities.get(userId2).put(userId1, similarity);
+    public TopKNeighborIndex updateNeighborIndex(TopKNeighborIndex base, SparseRatingMatrix matrix,
+                                                 long[] dirtyUserIds, Set<Long> changedUserIds) {
+        TopKNeighborIndex index = base.copy();
+        int k = Math.min(base.k(), MAX_K);
+        Scratch s = userScratch(matrix);
+        for (long userId : dirtyUserIds) {
+            int u = matrix.userIndexOf(userId);
+            if (u < 0) {
+                index.put(userId, new long[0], new float[0]);
+                changedUserIds.add(userId);
+                continue;
             }
+            int n = computeNeighbors(matrix, u, k, DEFAULT_MAX_CO_RATERS, s, (v, sim) -> {
+                long neighborId = matrix.userIdAt(v);
+                if (index.offer(neighborId, userId, sim)) {
+                    changedUserIds.add(neighborId);
+                }
+            });
+            index.put(userId, Arrays.copyOf(s.topIds, n), Arrays.copyOf(s.topSims, n));
+            changedUserIds.add(userId);
         }
-
-        return similarities;
+        return index;
     }
 
     /**
-     * 获取K个最相似的用户
+     * 推荐Top-N资源：近邻评分的相似度加权平均，排除目标用户已评分的资源
      */
-    public List<Long> getKNearestNeighbors(Long targetUserId, Map<Long, Map<Long, Double>> similarities, int k) {
-        if (!similarities.containsKey(targetUserId)) {
-            return new ArrayList<>();
+    public long[] recommendTopN(long targetUserId, SparseRatingMatrix matrix, TopKNeighborIndex index, int n) {
+        long[] neighborIds = index.neighborIds(targetUserId);
+        float[] neighborSims = index.similarities(targetUserId);
+        if (neighborIds.length == 0 || n <= 0) {
+            return new long[0];
+        }
+        int target = matrix.userIndexOf(targetUserId);
+        Scratch s = itemScratch(matrix);
+        float[] numerator = s.itemNumerator;
+        float[] denominator = s.itemDenominator;
+        int[] touched = s.touchedItems;
+        int touchedCount = 0;
+
+        for (int j = 0; j < neighborIds.length; j++) {
+            int v = matrix.userIndexOf(neighborIds[j]);
+            if (v < 0) continue;
+            float sim = neighborSims[j];
+            for (int p = matrix.rowStart(v); p < matrix.rowEnd(v); p++) {
+                int item = matrix.rowItem(p);
+                if (target >= 0 && matrix.hasRated(target, item)) continue;
+                if (denominator[item] == 0f) {
+                    touched[touchedCount++] = item;
+                }
+                numerator[item] += sim * matrix.rowValue(p);
+                denominator[item] += Math.abs(sim);
+            }
         }
 
-        Map<Long, Double> userSimilarities = similarities.get(targetUserId);
-
-        return userSimilarities.entrySet().stream()
-                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-                .limit(k)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        // 部分选择排序取前N
+        int limit = Math.min(n, touchedCount);
+        long[] result = new long[limit];
+        float[] predicted = new float[touchedCount];
+        for (int t = 0; t < touchedCount; t++) {
+            int item = touched[t];
+            predicted[t] = denominator[item] > 0 ? numerator[item] / denominator[item] : 0f;
+        }
+        for (int r = 0; r < limit; r++) {
+            int best = r;
+            for (int t = r + 1; t < touchedCount; t++) {
+                if (predicted[t] > predicted[best]) best = t;
+            }
+            float tmpScore = predicted[r];
+            predicted[r] = predicted[best];
+            predicted[best] = tmpScore;
+            int tmpItem = touched[r];
+            touched[r] = touched[best];
+            touched[best] = tmpItem;
+            result[r] = matrix.itemIdAt(touched[r]);
+        }
+        for (int t = 0; t < touchedCount; t++) {
+            numerator[touched[t]] = 0f;
+            denominator[touched[t]] = 0f;
+        }
+        return result;
     }
 
     /**
-     * 预测用户对资源的评分
+     * 计算用户 u 的 Top-K 近邻，结果写入 s.topIds/s.topSims（降序），返回邻居个数。
+     * 只遍历与 u 有共同评分资源的用户，三个累加器分别累计点积与共同资源上的平方和。
      */
-    public Map<Long, Double> predictRatings(Long targetUserId, Map<Long, Map<Long, Double>> userRatings,
-                                             Map<Long, Map<Long, Double>> similarities, int k) {
-        Map<Long, Double> predictions = new HashMap<>();
+    private int computeNeighbors(SparseRatingMatrix m, int u, int k, int maxCoRaters,
+                                 Scratch s, CandidateListener listener) {
+        int touchedCount = 0;
+        for (int p = m.rowStart(u); p < m.rowEnd(u); p++) {
+            int item = m.rowItem(p);
+            if (m.colEnd(item) - m.colStart(item) > maxCoRaters) continue;
+            float ru = m.rowValue(p);
+            for (int q = m.colStart(item); q < m.colEnd(item); q++) {
+                int v = m.colUser(q);
+                if (v == u) continue;
+                float rv = m.colValue(q);
+                if (!s.seen[v]) {
+                    s.seen[v] = true;
+                    s.touchedUsers[touchedCount++] = v;
+                }
+                s.dot[v] += ru * rv;
+                s.normU[v] += ru * ru;
+                s.normV[v] += rv * rv;
+            }
+        }
 
-        List<Long> neighbors = getKNearestNeighbors(targetUserId, similarities, k);
+        // 小顶堆维护Top-K
+        int heapSize = 0;
+        int[] heap = s.heap;
+        float[] score = s.heapScore;
+        for (int t = 0; t < touchedCount; t++) {
+            int v = s.touchedUsers[t];
+            float sim = (s.normU[v] == 0f || s.normV[v] == 0f) ? 0f
+                    : (float) (s.dot[v] / (Math.sqrt(s.normU[v]) * Math.sqrt(s.normV[v])));
+            s.seen[v] = false;
+            s.dot[v] = 0f;
+            s.normU[v] = 0f;
+            s.normV[v] = 0f;
+            if (listener != null) {
+                listener.onCandidate(v, sim);
+            }
+            if (sim <= 0f || k <= 0) continue;
+            if (heapSize < k) {
+                heap[heapSize] = v;
+                score[heapSize] = sim;
+                siftUp(heap, score, heapSize++);
+            } else if (sim > score[0]) {
+                heap[0] = v;
+                score[0] = sim;
+                siftDown(heap, score, 0, heapSize);
+            }
+        }
 
-        if (neighbors.isEmpty()) {
-            return predictions;
+        for (int i = heapSize - 1; i >= 0; i--) {
+            s.topIds[i] = m.userIdAt(heap[0]);
+            s.topSims[i] = score[0];
+            heap[0] = heap[i];
+            score[0] = score[i];
+            siftDown(heap, score, 0, i);
         }
+        return heapSize;
+    }
 
-        Map<Long, Double> targetUserRatings = userRatings.getOrDefault(targetUserId, new HashMap<>());
+    private static void siftUp(int[] heap, float[] score, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (score[parent] <= score[i]) break;
+            swap(heap, score, i, parent);
+            i = parent;
+        }
+    }
 
-        // 收集所有邻居评分过但目标用户未评分的资源
-        Set<Long> candidateResources = new HashSet<>();
-        for (Long neighborId : neighbors) {
-            Map<Long, Double> neighborRatings = userRatings.get(neighborId);
-            candidateResources.addAll(neighborRatings.keySet());
+    private static void siftDown(int[] heap, float[] score, int i, int size) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int smallest = left + 1 < size && score[left + 1] < score[left] ? left + 1 : left;
+            if (score[i] <= score[smallest]) break;
+            swap(heap, score, i, smallest);
+            i = smallest;
         }
-        candidateResources.removeAll(targetUserRatings.keySet());
+    }
 
-        // 预测评分
-        for (Long resourceId : candidateResources) {
-            double numerator = 0.0;
-            double denominator = 0.0;
+    private static void swap(int[] heap, float[] score, int a, int b) {
+        int h = heap[a];
+        heap[a] = heap[b];
+        heap[b] = h;
+        float f = score[a];
+        score[a] = score[b];
+        score[b] = f;
+    }
 
-            for (Long neighborId : neighbors) {
-                Map<Long, Double> neighborRatings = userRatings.get(neighborId);
-                if (neighborRatings.containsKey(resourceId)) {
-                    double similarity = similarities.get(targetUserId).get(neighborId);
-                    double rating = neighborRatings.get(resourceId);
+    private Scratch userScratch(SparseRatingMatrix matrix) {
+        Scratch s = current();
+        s.ensureUsers(matrix.userCount());
+        return s;
+    }
 
-                    numerator += similarity * rating;
-                    denominator += Math.abs(similarity);
-                }
-            }
+    private Scratch itemScratch(SparseRatingMatrix matrix) {
+        Scratch s = current();
+        s.ensureItems(matrix.itemCount());
+        return s;
+    }
 
-            if (denominator > 0) {
-                double predictedRating = numerator / denominator;
-                predictions.put(resourceId, predictedRating);
-            }
+    private Scratch current() {
+        Scratch s = scratch.get();
+        if (s == null) {
+            s = new Scratch();
+            scratch.set(s);
         }
+        return s;
+    }
 
-        return predictions;
+    @FunctionalInterface
+    private interface CandidateListener {
+        void onCandidate(int userIdx, float similarity);
     }
 
     /**
-     * 推荐Top-N资源
+     * 每线程复用的计算缓冲区，避免每次计算分配与清零整块数组。
+     * 用户维度数组只在近邻构建线程上分配，在线推荐线程只分配资源维度数组；使用后均归零。
      */
-    public List<Long> recommendTopN(Long targetUserId, Map<Long, Map<Long, Double>> userRatings,
-                                     Map<Long, Map<Long, Double>> similarities, int k, int n) {
-        Map<Long, Double> predictions = predictRatings(targetUserId, userRatings, similarities, k);
-
-        return predictions.entrySet().stream()
-                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-                .limit(n)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+    private static final class Scratch {
+        float[] dot = new float[0];
+        float[] normU = new float[0];
+        float[] normV = new float[0];
+        boolean[] seen = new boolean[0];
+        int[] touchedUsers = new int[0];
+        float[] itemNumerator = new float[0];
+        float[] itemDenominator = new float[0];
+        int[] touchedItems = new int[0];
+        final int[] heap = new int[MAX_K];
+        final float[] heapScore = new float[MAX_K];
+        final long[] topIds = new long[MAX_K];
+        final float[] topSims = new float[MAX_K];
+
+        void ensureUsers(int users) {
+            if (dot.length < users) {
+                dot = new float[users];
+                normU = new float[users];
+                normV = new float[users];
+                seen = new boolean[users];
+                touchedUsers = new int[users];
+            }
+        }
+
+        void ensureItems(int items) {
+            if (itemNumerator.length < items) {
+                itemNumerator = new float[items];
+                itemDenominator = new float[items];
+                touchedItems = new int[items];
+            }
+        }
     }
 }
@@ -0,0 +1,117 @@
+package com.mental.health.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * long -> int 开放寻址哈希表（线性探测）
+ * 用于把数据库中的用户ID/资源ID映射为矩阵内部的连续下标，避免 Map&lt;Long, Integer&gt; 的装箱开销。
+ * 非线程安全；构建完成后只读访问是安全的。
+ */
+public final class LongIntHashMap {
+
+    /** 空槽标记，业务ID均为正数 */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * 获取映射值，不存在时返回 -1
+     */
+    public int get(long key) {
+        int slot = mix(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) >= 0;
+    }
+
+    /**
+     * 写入映射，返回旧值（不存在时返回 -1）
+     */
+    public int put(long key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("不支持的键: " + key);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            long k = keys[slot];
+            if (k == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            if (k == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 不存在时写入 value 并返回 value，存在时返回已有值
+     */
+    public int putIfAbsent(long key, int value) {
+        int existing = get(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        put(key, value);
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
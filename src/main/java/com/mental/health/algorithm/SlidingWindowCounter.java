@@ -0,0 +1,243 @@
+package com.mental.health.algorithm;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 定长内存的滑动窗口计数器（带锁定）
+ *
+ * 每个键只保存“当前桶计数 + 上一桶计数 + 当前桶起点 + 最近命中时间 + 锁定截止时间”，
+ * 窗口内估计值 = 上一桶计数 × 上一桶在窗口内的剩余比例 + 当前桶计数。
+ * 所有状态放在预分配的基本类型数组中（开放寻址、有限探测），容量固定，键再多也不会增长；
+ * 探测范围内没有空槽时淘汰最久未活动且未锁定的槽位。
+ * 键以带随机种子的 64 位哈希存储，不保留原始字符串。
+ * 按段加锁，计数与锁定判定在同一临界区内完成。
+ */
+public final class SlidingWindowCounter {
+
+    private static final int SEGMENTS = 16;
+    private static final int MAX_PROBE = 16;
+    /** 空槽标记 */
+    private static final long EMPTY = 0L;
+
+    private final long windowMillis;
+    private final int limit;
+    private final long lockMillis;
+    private final long seed = ThreadLocalRandom.current().nextLong() | 1L;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * @param capacity     最多跟踪的键数（向上取整为 2 的幂）
+     * @param windowMillis 滑动窗口长度
+     * @param limit        窗口内达到该次数即锁定
+     * @param lockMillis   锁定时长
+     */
+    public SlidingWindowCounter(int capacity, long windowMillis, int limit, long lockMillis) {
+        if (windowMillis <= 0 || limit <= 0) {
+            throw new IllegalArgumentException("窗口长度与阈值必须为正数");
+        }
+        this.windowMillis = windowMillis;
+        this.limit = limit;
+        this.lockMillis = Math.max(0L, lockMillis);
+        int perSegment = Integer.highestOneBit(Math.max(MAX_PROBE, (capacity + SEGMENTS - 1) / SEGMENTS - 1)) << 1;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * 记录一次命中，返回记录后的窗口内估计次数；达到阈值时开始锁定
+     */
+    public double hit(String key, long now) {
+        long hash = hash(key);
+        Segment seg = segmentOf(hash);
+        synchronized (seg) {
+            int slot = seg.findOrClaim(hash, now);
+            seg.roll(slot, now, windowMillis);
+            seg.current[slot]++;
+            seg.lastHit[slot] = now;
+            double estimate = seg.estimate(slot, now, windowMillis);
+            if (estimate >= limit && seg.lockedUntil[slot] <= now) {
+                seg.lockedUntil[slot] = now + lockMillis;
+            }
+            return estimate;
+        }
+    }
+
+    /**
+     * 锁定剩余毫秒数，未锁定返回 0
+     */
+    public long lockRemaining(String key, long now) {
+        long hash = hash(key);
+        Segment seg = segmentOf(hash);
+        synchronized (seg) {
+            int slot = seg.find(hash);
+            if (slot < 0) {
+                return 0L;
+            }
+            long until = seg.lockedUntil[slot];
+            if (until <= now) {
+                if (until != 0L) {
+                    // 锁定到期后重新计数
+                    seg.clear(slot);
+                }
+                return 0L;
+            }
+            return until - now;
+        }
+    }
+
+    /**
+     * 窗口内估计次数
+     */
+    public double estimate(String key, long now) {
+        long hash = hash(key);
+        Segment seg = segmentOf(hash);
+        synchronized (seg) {
+            int slot = seg.find(hash);
+            if (slot < 0) {
+                return 0d;
+            }
+            seg.roll(slot, now, windowMillis);
+            return seg.estimate(slot, now, windowMillis);
+        }
+    }
+
+    public void reset(String key) {
+        long hash = hash(key);
+        Segment seg = segmentOf(hash);
+        synchronized (seg) {
+            int slot = seg.find(hash);
+            if (slot >= 0) {
+                seg.clear(slot);
+            }
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int capacity() {
+        return segments[0].keys.length * SEGMENTS;
+    }
+
+    public int size() {
+        int total = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                for (long k : seg.keys) {
+                    if (k != EMPTY) total++;
+                }
+            }
+        }
+        return total;
+    }
+
+    private Segment segmentOf(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 带种子的 FNV-1a + 64 位终混，避免构造碰撞键互相影响
+     */
+    private long hash(String key) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+
+    private static final class Segment {
+        final long[] keys;
+        final long[] bucketStart;
+        /** 最近一次命中时间，淘汰依据；bucketStart 按窗口对齐，不能反映最近活动 */
+        final long[] lastHit;
+        final int[] current;
+        final int[] previous;
+        final long[] lockedUntil;
+        final int mask;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            bucketStart = new long[capacity];
+            lastHit = new long[capacity];
+            current = new int[capacity];
+            previous = new int[capacity];
+            lockedUntil = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        int find(long hash) {
+            int slot = (int) hash & mask;
+            for (int i = 0; i < MAX_PROBE; i++, slot = (slot + 1) & mask) {
+                if (keys[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 查找键；不存在时占用探测范围内的空槽，没有空槽则淘汰最久未活动的未锁定槽位
+         */
+        int findOrClaim(long hash, long now) {
+            int slot = (int) hash & mask;
+            int empty = -1;
+            int victim = -1;
+            long victimScore = Long.MAX_VALUE;
+            for (int i = 0; i < MAX_PROBE; i++, slot = (slot + 1) & mask) {
+                long k = keys[slot];
+                if (k == hash) {
+                    return slot;
+                }
+                if (k == EMPTY) {
+                    if (empty < 0) empty = slot;
+                    continue;
+                }
+                // 锁定中的槽位优先保留：评分加上锁定截止时间
+                long score = lockedUntil[slot] > now ? lockedUntil[slot] : lastHit[slot];
+                if (score < victimScore) {
+                    victimScore = score;
+                    victim = slot;
+                }
+            }
+            int claimed = empty >= 0 ? empty : victim;
+            clear(claimed);
+            keys[claimed] = hash;
+            bucketStart[claimed] = now;
+            lastHit[claimed] = now;
+            return claimed;
+        }
+
+        void roll(int slot, long now, long windowMillis) {
+            long elapsed = now - bucketStart[slot];
+            if (elapsed < windowMillis) {
+                return;
+            }
+            previous[slot] = elapsed < 2 * windowMillis ? current[slot] : 0;
+            current[slot] = 0;
+            bucketStart[slot] = now - elapsed % windowMillis;
+        }
+
+        double estimate(int slot, long now, long windowMillis) {
+            double previousWeight = 1d - (double) (now - bucketStart[slot]) / windowMillis;
+            return previous[slot] * Math.max(0d, previousWeight) + current[slot];
+        }
+
+        void clear(int slot) {
+            keys[slot] = EMPTY;
+            bucketStart[slot] = 0L;
+            lastHit[slot] = 0L;
+            current[slot] = 0;
+            previous[slot] = 0;
+            lockedUntil[slot] = 0L;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.mental.health.algorithm;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 用户-资源评分稀疏矩阵
+ *
+ * 同时保存两份压缩存储：
+ * - CSR（按用户行）：遍历某个用户评过分的资源
+ * - CSC（按资源列）：资源 -> 评分用户的倒排索引，相似度计算只需访问共同评分用户
+ *
+ * 用户ID/资源ID在构建时重映射为连续 int 下标，评分以 float 存储。实例构建后不可变，可被多线程共享。
+ */
+public final class SparseRatingMatrix {
+
+    private final long[] userIds;
+    private final long[] itemIds;
+    private final LongIntHashMap userIndex;
+    private final LongIntHashMap itemIndex;
+
+    private final int[] rowPtr;
+    private final int[] rowItems;
+    private final float[] rowValues;
+
+    private final int[] colPtr;
+    private final int[] colUsers;
+    private final float[] colValues;
+
+    private SparseRatingMatrix(long[] userIds, long[] itemIds,
+                               LongIntHashMap userIndex, LongIntHashMap itemIndex,
+                               int[] rowPtr, int[] rowItems, float[] rowValues) {
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.userIndex = userIndex;
+        this.itemIndex = itemIndex;
+        this.rowPtr = rowPtr;
+        this.rowItems = rowItems;
+        this.rowValues = rowValues;
+
+        // 由CSR按列计数排序得到CSC，列内用户下标天然有序
+        int nnz = rowItems.length;
+        this.colPtr = new int[itemIds.length + 1];
+        for (int p = 0; p < nnz; p++) {
+            colPtr[rowItems[p] + 1]++;
+        }
+        for (int i = 0; i < itemIds.length; i++) {
+            colPtr[i + 1] += colPtr[i];
+        }
+        this.colUsers = new int[nnz];
+        this.colValues = new float[nnz];
+        int[] cursor = Arrays.copyOf(colPtr, itemIds.length);
+        for (int u = 0; u < userIds.length; u++) {
+            for (int p = rowPtr[u]; p < rowPtr[u + 1]; p++) {
+                int dst = cursor[rowItems[p]]++;
+                colUsers[dst] = u;
+                colValues[dst] = rowValues[p];
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder(1024);
+    }
+
+    public static Builder builder(int expectedRatings) {
+        return new Builder(expectedRatings);
+    }
+
+    /**
+     * 以本矩阵为底的构建器：预先写入 replacedUserIds 以外用户的评分，调用方再写入这些用户的最新评分。
+     * 增量重建用，只重读变化的行，其余行直接从内存复制。
+     */
+    public Builder toBuilderExcept(Set<Long> replacedUserIds) {
+        Builder builder = new Builder(rowItems.length);
+        for (int u = 0; u < userIds.length; u++) {
+            if (replacedUserIds.contains(userIds[u])) {
+                continue;
+            }
+            for (int p = rowPtr[u]; p < rowPtr[u + 1]; p++) {
+                builder.add(userIds[u], itemIds[rowItems[p]], rowValues[p]);
+            }
+        }
+        return builder;
+    }
+
+    public int userCount() {
+        return userIds.length;
+    }
+
+    public int itemCount() {
+        return itemIds.length;
+    }
+
+    public int nonZeroCount() {
+        return rowItems.length;
+    }
+
+    /**
+     * 用户ID -> 内部下标，不存在返回 -1
+     */
+    public int userIndexOf(long userId) {
+        return userIndex.get(userId);
+    }
+
+    public int itemIndexOf(long itemId) {
+        return itemIndex.get(itemId);
+    }
+
+    public long userIdAt(int userIdx) {
+        return userIds[userIdx];
+    }
+
+    public long itemIdAt(int itemIdx) {
+        return itemIds[itemIdx];
+    }
+
+    // ===== CSR 访问 =====
+
+    public int rowStart(int userIdx) {
+        return rowPtr[userIdx];
+    }
+
+    public int rowEnd(int userIdx) {
+        return rowPtr[userIdx + 1];
+    }
+
+    public int rowItem(int pos) {
+        return rowItems[pos];
+    }
+
+    public float rowValue(int pos) {
+        return rowValues[pos];
+    }
+
+    /**
+     * 用户是否评过某资源（行内资源下标有序，二分查找）
+     */
+    public boolean hasRated(int userIdx, int itemIdx) {
+        return Arrays.binarySearch(rowItems, rowPtr[userIdx], rowPtr[userIdx + 1], itemIdx) >= 0;
+    }
+
+    // ===== CSC 访问 =====
+
+    public int colStart(int itemIdx) {
+        return colPtr[itemIdx];
+    }
+
+    public int colEnd(int itemIdx) {
+        return colPtr[itemIdx + 1];
+    }
+
+    public int colUser(int pos) {
+        return colUsers[pos];
+    }
+
+    public float colValue(int pos) {
+        return colValues[pos];
+    }
+
+    /**
+     * 评分三元组收集器。同一 (用户, 资源) 重复写入时以最后一次为准。
+     */
+    public static final class Builder {
+        private long[] users;
+        private long[] items;
+        private float[] values;
+        private int size;
+
+        private Builder(int capacity) {
+            capacity = Math.max(16, capacity);
+            users = new long[capacity];
+            items = new long[capacity];
+            values = new float[capacity];
+        }
+
+        public Builder add(long userId, long itemId, float rating) {
+            if (size == users.length) {
+                int newCapacity = size + (size >> 1);
+                users = Arrays.copyOf(users, newCapacity);
+                items = Arrays.copyOf(items, newCapacity);
+                values = Arrays.copyOf(values, newCapacity);
+            }
+            users[size] = userId;
+            items[size] = itemId;
+            values[size] = rating;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public SparseRatingMatrix build() {
+            LongIntHashMap userIndex = new LongIntHashMap(Math.max(16, size / 8));
+            LongIntHashMap itemIndex = new LongIntHashMap(256);
+            long[] userIds = new long[16];
+            long[] itemIds = new long[16];
+            int[] u = new int[size];
+            int[] it = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                int ui = userIndex.get(users[i]);
+                if (ui < 0) {
+                    ui = userIndex.size();
+                    userIndex.put(users[i], ui);
+                    if (ui == userIds.length) userIds = Arrays.copyOf(userIds, ui << 1);
+                    userIds[ui] = users[i];
+                }
+                int ii = itemIndex.get(items[i]);
+                if (ii < 0) {
+                    ii = itemIndex.size();
+                    itemIndex.put(items[i], ii);
+                    if (ii == itemIds.length) itemIds = Arrays.copyOf(itemIds, ii << 1);
+                    itemIds[ii] = items[i];
+                }
+                u[i] = ui;
+                it[i] = ii;
+            }
+            int userCount = userIndex.size();
+            int itemCount = itemIndex.size();
+
+            // 按用户计数排序
+            int[] ptr = new int[userCount + 1];
+            for (int i = 0; i < size; i++) {
+                ptr[u[i] + 1]++;
+            }
+            for (int r = 0; r < userCount; r++) {
+                ptr[r + 1] += ptr[r];
+            }
+            // 高32位为资源下标，低32位为写入序号，排序后同资源按写入先后相邻
+            long[] packed = new long[size];
+            int[] cursor = Arrays.copyOf(ptr, userCount);
+            for (int i = 0; i < size; i++) {
+                packed[cursor[u[i]]++] = ((long) it[i] << 32) | i;
+            }
+
+            int[] rowPtr = new int[userCount + 1];
+            int[] rowItems = new int[size];
+            float[] rowValues = new float[size];
+            int nnz = 0;
+            for (int r = 0; r < userCount; r++) {
+                Arrays.sort(packed, ptr[r], ptr[r + 1]);
+                for (int p = ptr[r]; p < ptr[r + 1]; p++) {
+                    int item = (int) (packed[p] >>> 32);
+                    int source = (int) packed[p];
+                    if (p + 1 < ptr[r + 1] && (int) (packed[p + 1] >>> 32) == item) {
+                        continue;
+                    }
+                    rowItems[nnz] = item;
+                    rowValues[nnz] = values[source];
+                    nnz++;
+                }
+                rowPtr[r + 1] = nnz;
+            }
+
+            return new SparseRatingMatrix(
+                    Arrays.copyOf(userIds, userCount), Arrays.copyOf(itemIds, itemCount),
+                    userIndex, itemIndex, rowPtr,
+                    Arrays.copyOf(rowItems, nnz), Arrays.copyOf(rowValues, nnz));
+        }
+    }
+}
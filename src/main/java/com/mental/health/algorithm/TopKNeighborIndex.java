@@ -0,0 +1,132 @@
+package com.mental.health.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * 用户 Top-K 近邻表
+ * 每个用户保存最多 K 个邻居ID及相似度（按相似度降序）。
+ *
+ * 发布后只读；增量重建时先 {@link #copy()} 出私有副本修改，再整体替换引用。
+ */
+public final class TopKNeighborIndex {
+
+    private static final long[] NO_IDS = new long[0];
+    private static final float[] NO_SIMS = new float[0];
+
+    private final int k;
+    private final LongIntHashMap slots;
+    private long[] userIds;
+    private long[][] neighborIds;
+    private float[][] similarities;
+    private int size;
+
+    public TopKNeighborIndex(int k, int expectedUsers) {
+        this.k = k;
+        this.slots = new LongIntHashMap(Math.max(16, expectedUsers));
+        int capacity = Math.max(16, expectedUsers);
+        this.userIds = new long[capacity];
+        this.neighborIds = new long[capacity][];
+        this.similarities = new float[capacity][];
+    }
+
+    public int k() {
+        return k;
+    }
+
+    public int userCount() {
+        return size;
+    }
+
+    public long userIdAt(int slot) {
+        return userIds[slot];
+    }
+
+    public long[] neighborIds(long userId) {
+        int slot = slots.get(userId);
+        return slot < 0 ? NO_IDS : neighborIds[slot];
+    }
+
+    public float[] similarities(long userId) {
+        int slot = slots.get(userId);
+        return slot < 0 ? NO_SIMS : similarities[slot];
+    }
+
+    /**
+     * 整体替换某用户的邻居列表（调用方保证已按相似度降序且长度不超过 K）
+     */
+    public void put(long userId, long[] ids, float[] sims) {
+        int slot = slots.get(userId);
+        if (slot < 0) {
+            slot = size++;
+            if (slot == userIds.length) {
+                int newCapacity = slot + (slot >> 1);
+                userIds = Arrays.copyOf(userIds, newCapacity);
+                neighborIds = Arrays.copyOf(neighborIds, newCapacity);
+                similarities = Arrays.copyOf(similarities, newCapacity);
+            }
+            slots.put(userId, slot);
+            userIds[slot] = userId;
+        }
+        neighborIds[slot] = ids;
+        similarities[slot] = sims;
+    }
+
+    /**
+     * 用新的相似度更新 userId 列表中的 neighborId：已存在则改写并重排，不存在且优于末位则挤入。
+     *
+     * @return 列表是否发生变化
+     */
+    public boolean offer(long userId, long neighborId, float sim) {
+        long[] ids = neighborIds(userId);
+        float[] sims = similarities(userId);
+        int existing = -1;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == neighborId) {
+                existing = i;
+                break;
+            }
+        }
+        if (existing < 0 && ids.length >= k && sim <= sims[sims.length - 1]) {
+            return false;
+        }
+        if (existing >= 0 && sims[existing] == sim) {
+            return false;
+        }
+
+        int n = existing >= 0 ? ids.length : Math.min(ids.length + 1, k);
+        long[] newIds = new long[n];
+        float[] newSims = new float[n];
+        int out = 0;
+        boolean placed = false;
+        for (int i = 0; i < ids.length && out < n; i++) {
+            if (i == existing) {
+                continue;
+            }
+            if (!placed && sim > sims[i]) {
+                newIds[out] = neighborId;
+                newSims[out++] = sim;
+                placed = true;
+                if (out == n) break;
+            }
+            newIds[out] = ids[i];
+            newSims[out++] = sims[i];
+        }
+        if (!placed && out < n) {
+            newIds[out] = neighborId;
+            newSims[out++] = sim;
+        }
+        put(userId, Arrays.copyOf(newIds, out), Arrays.copyOf(newSims, out));
+        return true;
+    }
+
+    /**
+     * 复制出可修改的副本；邻居数组本身按不可变对象共享
+     */
+    public TopKNeighborIndex copy() {
+        TopKNeighborIndex copy = new TopKNeighborIndex(k, size);
+        for (int slot = 0; slot < size; slot++) {
+            copy.put(userIds[slot], neighborIds[slot], similarities[slot]);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mental.health.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的 {var} 占位模板
+ *
+ * 解析一次，渲染时按片段顺序拼接，不再对每个变量做一次整串 replace。
+ * 未提供的变量保留原样占位，值为 null 时替换为空串。
+ */
+public final class CompiledTemplate {
+
+    private final String source;
+    /** 偶数下标为字面量，奇数下标为变量名 */
+    private final String[] parts;
+    private final int literalLength;
+
+    private CompiledTemplate(String source, String[] parts, int literalLength) {
+        this.source = source;
+        this.parts = parts;
+        this.literalLength = literalLength;
+    }
+
+    public static CompiledTemplate compile(String source) {
+        if (source == null) {
+            return new CompiledTemplate(null, new String[0], 0);
+        }
+        List<String> parts = new ArrayList<>();
+        int literalLength = 0;
+        int literalStart = 0;
+        int i = 0;
+        while (i < source.length()) {
+            int open = source.indexOf('{', i);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            int nested = source.indexOf('{', open + 1);
+            if (nested >= 0 && nested < close) {
+                i = nested;
+                continue;
+            }
+            String literal = source.substring(literalStart, open);
+            parts.add(literal);
+            parts.add(source.substring(open + 1, close));
+            literalLength += literal.length();
+            literalStart = close + 1;
+            i = close + 1;
+        }
+        String tail = source.substring(literalStart);
+        parts.add(tail);
+        literalLength += tail.length();
+        return new CompiledTemplate(source, parts.toArray(new String[0]), literalLength);
+    }
+
+    public String render(Map<String, String> variables) {
+        if (source == null || parts.length == 1 || variables == null) {
+            return source;
+        }
+        StringBuilder sb = new StringBuilder(literalLength + 16 * (parts.length / 2));
+        for (int i = 0; i < parts.length; i++) {
+            if ((i & 1) == 0) {
+                sb.append(parts[i]);
+            } else if (variables.containsKey(parts[i])) {
+                String value = variables.get(parts[i]);
+                if (value != null) {
+                    sb.append(value);
+                }
+            } else {
+                sb.append('{').append(parts[i]).append('}');
+            }
+        }
+        return sb.toString();
+    }
+
+    public String source() {
+        return source;
+    }
+}
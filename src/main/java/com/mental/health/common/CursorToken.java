@@ -0,0 +1,46 @@
+package com.mental.health.common;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+/**
+ * 键集分页游标：(create_time, id) 位置编码为不透明字符串
+ *
+ * 客户端只需原样回传，不应解析其内容；格式带版本号，便于以后调整排序键。
+ */
+public record CursorToken(LocalDateTime time, long id) {
+
+    private static final String VERSION = "v1";
+
+    public static String encode(LocalDateTime time, Long id) {
+        if (time == null || id == null) {
+            return null;
+        }
+        long epochMillis = time.toInstant(ZoneOffset.UTC).toEpochMilli();
+        String raw = VERSION + ":" + epochMillis + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析游标；为空返回 null，格式错误抛出异常
+     */
+    public static CursorToken decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":");
+            if (parts.length != 3 || !VERSION.equals(parts[0])) {
+                throw new IllegalArgumentException(raw);
+            }
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(parts[1])), ZoneOffset.UTC);
+            return new CursorToken(time, Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+}
@@ -1,32 +1,74 @@
 package com.mental.health.common;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * JWT工具类
+ *
+ * 签名密钥与解析器在启动时构建一次并复用（解析器不可变、线程安全）。
+ * {@link #verify(String)} 每个令牌只验签一次：验证通过的声明按令牌的 SHA-256 摘要缓存，
+ * 缓存按条数分段 LRU 淘汰，条目在令牌过期或缓存 TTL 到期时失效，重复请求不再计算 HMAC。
  */
 @Component
 public class JwtUtil {
 
+    private static final int CACHE_STRIPES = 16;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Value("${jwt.secret}")
     private String secret;
 
     @Value("${jwt.expiration}")
     private Long expiration;
 
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${jwt.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    private SecretKey signingKey;
+    private JwtParser parser;
+    private CacheStripe[] cache;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+        // 向上取整：配置小于分段数时每段至少一条，只有 0 才关闭缓存
+        int perStripe = cacheMaxEntries > 0 ? (cacheMaxEntries + CACHE_STRIPES - 1) / CACHE_STRIPES : 0;
+        cache = new CacheStripe[CACHE_STRIPES];
+        for (int i = 0; i < CACHE_STRIPES; i++) {
+            cache[i] = new CacheStripe(perStripe);
+        }
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        return signingKey;
     }
 
     public String generateToken(Long userId, String username, String role) {
@@ -52,52 +94,83 @@ public class JwtUtil {
 
     public Claims getClaimsFromToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
+            return parser.parseSignedClaims(token).getPayload();
         } catch (Exception e) {
             return null;
         }
     }
 
-    public String getUsernameFromToken(String token) {
+    /**
+     * 验签并解析令牌，一次得到全部声明；无效或已过期返回 null。
+     * 命中缓存时不做 Base64 解码与 HMAC 计算。
+     */
+    public VerifiedToken verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        TokenHash key = hash(token);
+        CacheStripe stripe = cache[Math.floorMod((int) key.h0(), CACHE_STRIPES)];
+        synchronized (stripe) {
+            CacheEntry entry = stripe.entries.get(key);
+            if (entry != null) {
+                if (entry.cacheUntil() > now) {
+                    return entry.token();
+                }
+                stripe.entries.remove(key);
+            }
+        }
+
         Claims claims = getClaimsFromToken(token);
-        return claims != null ? claims.getSubject() : null;
+        if (claims == null || claims.getExpiration() == null || claims.get("userId") == null) {
+            return null;
+        }
+        long expiresAt = claims.getExpiration().getTime();
+        if (expiresAt <= now) {
+            return null;
+        }
+        Object role = claims.get("role");
+        VerifiedToken verified = new VerifiedToken(Long.valueOf(claims.get("userId").toString()),
+                claims.getSubject(), role != null ? role.toString() : null, expiresAt);
+        if (stripe.capacity > 0) {
+            long cacheUntil = Math.min(expiresAt, now + cacheTtlSeconds * 1000);
+            synchronized (stripe) {
+                stripe.entries.put(key, new CacheEntry(verified, cacheUntil));
+            }
+        }
+        return verified;
+    }
+
+    public String getUsernameFromToken(String token) {
+        VerifiedToken verified = verify(token);
+        return verified != null ? verified.username() : null;
     }
 
     public Long getUserIdFromToken(String token) {
-        Claims claims = getClaimsFromToken(token);
-        return claims != null ? Long.valueOf(claims.get("userId").toString()) : null;
+        VerifiedToken verified = verify(token);
+        return verified != null ? verified.userId() : null;
     }
 
     public String getRoleFromToken(String token) {
-        Claims claims = getClaimsFromToken(token);
-        return claims != null ? claims.get("role").toString() : null;
+        VerifiedToken verified = verify(token);
+        return verified != null ? verified.role() : null;
     }
 
     public Boolean isTokenExpired(String token) {
-        try {
-            Claims claims = getClaimsFromToken(token);
-            if (claims == null) {
-                return true;
-            }
-            Date expiration = claims.getExpiration();
-            return expiration.before(new Date());
-        } catch (Exception e) {
-            return true;
-        }
+        return verify(token) == null;
     }
 
     public Boolean validateToken(String token, String username) {
-        String tokenUsername = getUsernameFromToken(token);
-        return (tokenUsername != null && tokenUsername.equals(username) && !isTokenExpired(token));
+        VerifiedToken verified = verify(token);
+        return verified != null && verified.username() != null && verified.username().equals(username);
     }
 
     public Long getUserIdFromAuthentication(org.springframework.security.core.Authentication authentication) {
         if (authentication == null) return null;
         Object principal = authentication.getPrincipal();
+        if (principal instanceof com.mental.health.security.AuthenticatedUser user) {
+            return user.userId();
+        }
         if (principal instanceof org.springframework.security.core.userdetails.UserDetails) {
             String username = ((org.springframework.security.core.userdetails.UserDetails) principal).getUsername();
             // Look up userId via the credentials or token stored in details
@@ -116,4 +189,37 @@ public class JwtUtil {
         }
         return null;
     }
+
+    private static TokenHash hash(String token) {
+        MessageDigest digest = SHA256.get();
+        ByteBuffer d = ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenHash(d.getLong(), d.getLong(), d.getLong(), d.getLong());
+    }
+
+    /**
+     * 验签通过的令牌声明
+     */
+    public record VerifiedToken(Long userId, String username, String role, long expiresAtMillis) {
+    }
+
+    private record TokenHash(long h0, long h1, long h2, long h3) {
+    }
+
+    private record CacheEntry(VerifiedToken token, long cacheUntil) {
+    }
+
+    private static final class CacheStripe {
+        final int capacity;
+        final LinkedHashMap<TokenHash, CacheEntry> entries;
+
+        CacheStripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TokenHash, CacheEntry> eldest) {
+                    return size() > CacheStripe.this.capacity;
+                }
+            };
+        }
+    }
 }
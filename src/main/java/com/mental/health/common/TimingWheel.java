@@ -0,0 +1,163 @@
+package com.mental.health.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ *
+ * 第 0 层一槽一个 tick，第 k 层一槽等于第 k-1 层转一圈。到期越远放得越高，
+ * 高层槽轮到时把其中的任务按剩余时间重新放到低层，第 0 层槽轮到即到期。
+ * 加入、取消 O(1)；取消只打标记，槽轮到时丢弃。
+ * 超出最高层一圈的时间点不接收（{@link #add} 返回 null），由调用方临近时再加入。
+ * 非线程安全，由调用方加锁。
+ */
+public final class TimingWheel<T> {
+
+    private final int[] sizes;
+    /** 第 k 层一槽的 tick 数 */
+    private final long[] units;
+    private final ArrayDeque<Entry<T>>[][] buckets;
+    /** 加入时已到期的任务，下次推进时返回 */
+    private final List<Entry<T>> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long startTick, int... sizes) {
+        if (sizes.length == 0) {
+            throw new IllegalArgumentException("至少需要一层");
+        }
+        this.sizes = sizes.clone();
+        this.units = new long[sizes.length];
+        this.buckets = new ArrayDeque[sizes.length][];
+        long unit = 1;
+        for (int k = 0; k < sizes.length; k++) {
+            if (sizes[k] < 2) {
+                throw new IllegalArgumentException("每层至少两个槽");
+            }
+            units[k] = unit;
+            buckets[k] = new ArrayDeque[sizes[k]];
+            for (int i = 0; i < sizes[k]; i++) {
+                buckets[k][i] = new ArrayDeque<>();
+            }
+            unit = Math.multiplyExact(unit, sizes[k]);
+        }
+        this.currentTick = startTick;
+    }
+
+    public static final class Entry<T> {
+        private final T value;
+        private final long deadline;
+        private boolean cancelled;
+
+        private Entry(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    public long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * 已加入且尚未到期的任务数（含已取消但还没轮到的）
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 该时间点是否在最高层一圈之内
+     */
+    public boolean accepts(long deadline) {
+        int top = sizes.length - 1;
+        return deadline / units[top] - currentTick / units[top] < sizes[top];
+    }
+
+    /**
+     * @return 加入的任务；超出时间轮范围时返回 null
+     */
+    public Entry<T> add(T value, long deadline) {
+        if (!accepts(deadline)) {
+            return null;
+        }
+        Entry<T> entry = new Entry<>(value, deadline);
+        place(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * 推进到 toTick（含），返回期间到期且未取消的任务，按到期 tick 先后排列
+     */
+    public List<Entry<T>> advance(long toTick) {
+        List<Entry<T>> due = new ArrayList<>();
+        drain(overdue, due);
+        while (currentTick < toTick) {
+            currentTick++;
+            for (int k = sizes.length - 1; k >= 1; k--) {
+                if (currentTick % units[k] == 0) {
+                    ArrayDeque<Entry<T>> bucket = buckets[k][index(k, currentTick)];
+                    for (Entry<T> e; (e = bucket.poll()) != null; ) {
+                        if (e.cancelled) {
+                            size--;
+                        } else {
+                            place(e);
+                        }
+                    }
+                }
+            }
+            drain(overdue, due);
+            drain(buckets[0][index(0, currentTick)], due);
+        }
+        return due;
+    }
+
+    private void place(Entry<T> e) {
+        if (e.deadline <= currentTick) {
+            overdue.add(e);
+            return;
+        }
+        for (int k = 0; k < sizes.length; k++) {
+            if (e.deadline / units[k] - currentTick / units[k] < sizes[k]) {
+                buckets[k][index(k, e.deadline)].add(e);
+                return;
+            }
+        }
+        throw new IllegalStateException("超出时间轮范围: " + e.deadline);
+    }
+
+    private int index(int level, long tick) {
+        return (int) ((tick / units[level]) % sizes[level]);
+    }
+
+    private void drain(Collection<Entry<T>> from, List<Entry<T>> to) {
+        for (Entry<T> e : from) {
+            size--;
+            if (!e.cancelled) {
+                to.add(e);
+            }
+        }
+        from.clear();
+    }
+}
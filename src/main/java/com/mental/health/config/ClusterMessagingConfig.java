@@ -0,0 +1,32 @@
+package com.mental.health.config;
+
+import com.mental.health.service.ClusterTransport;
+import com.mental.health.service.InMemoryClusterTransport;
+import com.mental.health.service.RedisClusterTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * WebSocket 集群传输选择：开启 Redis 时走 Redis 路由表 + pub/sub，否则为单机进程内实现
+ */
+@Configuration
+public class ClusterMessagingConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "spring.data.redis", name = "enabled", havingValue = "true")
+    public RedisClusterTransport redisClusterTransport(StringRedisTemplate stringRedisTemplate,
+                                                      RedisConnectionFactory connectionFactory,
+                                                      @Value("${websocket.cluster.route-ttl-seconds:90}") long routeTtlSeconds) {
+        return new RedisClusterTransport(stringRedisTemplate, connectionFactory, routeTtlSeconds * 1000L);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.data.redis", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public ClusterTransport inMemoryClusterTransport() {
+        return new InMemoryClusterTransport();
+    }
+}
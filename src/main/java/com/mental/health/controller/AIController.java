@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.AIConversation;
 import com.mental.health.service.AIService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -22,15 +23,12 @@ public class AIController {
     @Autowired
     private AIService aiService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * AI问答
      */
     @PostMapping("/ask")
-    public Result<String> askQuestion(@RequestBody Map<String, String> request, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> askQuestion(@RequestBody Map<String, String> request, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String question = request.get("question");
         
         if (question == null || question.trim().isEmpty()) {
@@ -47,8 +45,8 @@ public class AIController {
     @GetMapping("/conversations")
     public Result<List<AIConversation>> getConversations(
             @RequestParam(defaultValue = "20") int limit,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<AIConversation> conversations = aiService.getUserConversations(userId, limit);
         return Result.success(conversations);
     }
@@ -73,8 +71,8 @@ public class AIController {
      * 生成AI评估报告
      */
     @PostMapping("/generate-report")
-    public Result<String> generateReport(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> generateReport(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String report = aiService.generateAssessmentReport(userId);
         return Result.success(report);
     }
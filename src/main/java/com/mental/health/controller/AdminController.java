@@ -1,8 +1,9 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.service.RelationshipChangeRequestService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -17,9 +18,6 @@ import java.util.Map;
 @PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @Autowired
     private RelationshipChangeRequestService relationshipChangeRequestService;
 
@@ -30,11 +28,11 @@ public class AdminController {
      */
     @GetMapping("/patient-assignments/pending")
     public Result<Map<String, Object>> getPendingAssignments(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) String requestType) {
-        Long adminId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long adminId = currentUser.userId();
         Map<String, Object> result = relationshipChangeRequestService.getPendingRequests(pageNum, pageSize);
         return Result.success(result);
     }
@@ -44,10 +42,10 @@ public class AdminController {
      */
     @PostMapping("/patient-assignments/{requestId}/approve")
     public Result<String> approveAssignment(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long requestId,
             @RequestBody Map<String, String> request) {
-        Long adminId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long adminId = currentUser.userId();
         String adminNote = request.get("adminNote");
 
         try {
@@ -63,10 +61,10 @@ public class AdminController {
      */
     @PostMapping("/patient-assignments/{requestId}/reject")
     public Result<String> rejectAssignment(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long requestId,
             @RequestBody Map<String, String> request) {
-        Long adminId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long adminId = currentUser.userId();
         String adminNote = request.get("adminNote");
 
         if (adminNote == null || adminNote.trim().isEmpty()) {
@@ -1,10 +1,12 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
+import com.mental.health.dto.CursorPage;
 import com.mental.health.entity.*;
 import com.mental.health.service.AiSessionService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,28 +18,27 @@ import java.util.Map;
 public class AiSessionController {
 
     @Autowired private AiSessionService aiSessionService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 患者端 =====
     @PostMapping("/patient/ai/sessions")
-    public Result<Long> openSession(@RequestHeader("Authorization") String token,
+    public Result<Long> openSession(@CurrentUser AuthenticatedUser currentUser,
             @RequestBody(required = false) Map<String, String> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         String sessionType = body != null ? body.get("sessionType") : null;
         return Result.success(aiSessionService.openSession(patientId, sessionType));
     }
 
     @GetMapping("/patient/ai/sessions")
-    public Result<List<AiSession>> getSessions(@RequestHeader("Authorization") String token,
+    public Result<List<AiSession>> getSessions(@CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(aiSessionService.getPatientSessions(patientId, status));
     }
 
     @PostMapping("/patient/ai/sessions/{sessionId}/messages")
-    public Result<Map<String, Object>> sendMessage(@RequestHeader("Authorization") String token,
+    public Result<Map<String, Object>> sendMessage(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long sessionId, @RequestBody Map<String, String> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(aiSessionService.sendMessage(sessionId, patientId, body.get("content")));
     }
 
@@ -47,34 +48,50 @@ public class AiSessionController {
         return Result.success(aiSessionService.getSessionMessages(sessionId, pageNum, pageSize));
     }
 
+    /**
+     * 游标分页：before 向前翻更早的消息，after 拉取新消息；都为空时返回最新一页
+     */
+    @GetMapping("/patient/ai/sessions/{sessionId}/messages/cursor")
+    public Result<CursorPage<AiMessage>> getMessagesByCursor(@CurrentUser AuthenticatedUser currentUser,
+            @PathVariable Long sessionId,
+            @RequestParam(required = false) String before, @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return Result.success(aiSessionService.getSessionMessagesByCursor(
+                    sessionId, currentUser.userId(), before, after, limit));
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     @PostMapping("/patient/ai/sessions/{sessionId}/close")
-    public Result<Void> closeSession(@RequestHeader("Authorization") String token,
+    public Result<Void> closeSession(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long sessionId, @RequestBody(required = false) Map<String, String> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         aiSessionService.closeSession(sessionId, patientId, body != null ? body.get("reason") : null);
         return Result.success();
     }
 
     // ===== 医生端 =====
     @GetMapping("/doctor/ai-handoff-tasks")
-    public Result<IPage<AiHandoffTask>> getHandoffTasks(@RequestHeader("Authorization") String token,
+    public Result<IPage<AiHandoffTask>> getHandoffTasks(@CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "1") int pageNum, @RequestParam(defaultValue = "20") int pageSize) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         return Result.success(aiSessionService.getDoctorHandoffTasks(doctorId, status, pageNum, pageSize));
     }
 
     @PostMapping("/doctor/ai-handoff-tasks/{taskId}/acknowledge")
-    public Result<Void> ackHandoff(@RequestHeader("Authorization") String token, @PathVariable Long taskId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<Void> ackHandoff(@CurrentUser AuthenticatedUser currentUser, @PathVariable Long taskId) {
+        Long doctorId = currentUser.userId();
         aiSessionService.acknowledgeHandoff(taskId, doctorId);
         return Result.success();
     }
 
     @PostMapping("/doctor/ai-handoff-tasks/{taskId}/complete")
-    public Result<Void> completeHandoff(@RequestHeader("Authorization") String token,
+    public Result<Void> completeHandoff(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long taskId, @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         aiSessionService.completeHandoff(taskId, doctorId, body.get("note"), body.get("followUpAction"));
         return Result.success();
     }
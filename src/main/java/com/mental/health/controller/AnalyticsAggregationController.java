@@ -1,10 +1,12 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.AnalyticsAggregationService;
 import com.mental.health.service.MoodInsightService;
+import com.mental.health.service.RealtimePatientMetricService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
@@ -20,7 +22,7 @@ public class AnalyticsAggregationController {
 
     @Autowired private AnalyticsAggregationService aggregationService;
     @Autowired private MoodInsightService moodInsightService;
-    @Autowired private JwtUtil jwtUtil;
+    @Autowired private RealtimePatientMetricService realtimeMetricService;
 
     // ===== 患者轨迹(医生端) =====
     @GetMapping("/doctor/patients/{patientId}/trajectory")
@@ -31,6 +33,12 @@ public class AnalyticsAggregationController {
         return Result.success(aggregationService.getPatientTrajectory(patientId, from, to));
     }
 
+    // ===== 患者当日实时指标(医生端) =====
+    @GetMapping("/doctor/patients/{patientId}/realtime-metrics")
+    public Result<Map<String, Object>> getRealtimeMetrics(@PathVariable Long patientId) {
+        return Result.success(realtimeMetricService.currentStats(patientId, LocalDate.now()));
+    }
+
     // ===== 医生工作负载(管理端) =====
     @GetMapping("/admin/analytics/doctors/{doctorId}/workload")
     public Result<List<DoctorWorkloadSnapshot>> getDoctorWorkload(
@@ -42,14 +50,25 @@ public class AnalyticsAggregationController {
 
     // ===== 手动触发聚合(管理端) =====
     @PostMapping("/admin/analytics/jobs")
-    public Result<Long> triggerJob(@RequestHeader("Authorization") String token,
+    public Result<Long> triggerJob(@CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, String> body) {
-        Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long userId = currentUser.userId();
         LocalDate targetDate = LocalDate.parse(body.get("targetDate"));
         return Result.success(aggregationService.triggerAggregation(
                 body.get("jobScopeCode"), targetDate, userId));
     }
 
+    @PostMapping("/admin/analytics/jobs/{jobId}/resume")
+    public Result<Long> resumeJob(@PathVariable Long jobId) {
+        return Result.success(aggregationService.resumeJob(jobId));
+    }
+
+    // ===== 作业分区吞吐与延迟(管理端) =====
+    @GetMapping("/admin/analytics/jobs/{jobId}/progress")
+    public Result<Map<String, Object>> getJobProgress(@PathVariable Long jobId) {
+        return Result.success(aggregationService.getJobProgress(jobId));
+    }
+
     // ===== 日记洞察(患者端) =====
     @GetMapping("/patient/mood-diaries/{diaryId}/insights")
     public Result<MoodDiaryFeature> getDiaryInsight(@PathVariable Long diaryId) {
@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.OutcomeSnapshot;
 import com.mental.health.service.AnalyticsService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -17,27 +18,19 @@ public class AnalyticsController {
 
     @Autowired
     private AnalyticsService analyticsService;
-
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private Long extractUserId(String token) {
-        return jwtUtil.getUserIdFromToken(token.substring(7));
-    }
-
     // Patient: my outcome summary
     @GetMapping("/patient/outcomes/summary")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<Map<String, Object>> getMyOutcomeSummary(@RequestHeader("Authorization") String token) {
-        Long patientId = extractUserId(token);
+    public Result<Map<String, Object>> getMyOutcomeSummary(@CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         return Result.success(analyticsService.getPatientOutcomeSummary(patientId));
     }
 
     // Patient: my outcome history
     @GetMapping("/patient/outcomes/history")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<List<OutcomeSnapshot>> getMyOutcomeHistory(@RequestHeader("Authorization") String token) {
-        Long patientId = extractUserId(token);
+    public Result<List<OutcomeSnapshot>> getMyOutcomeHistory(@CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         return Result.success(analyticsService.getPatientOutcomeHistory(patientId));
     }
 
@@ -54,8 +47,8 @@ public class AnalyticsController {
     public Result<OutcomeSnapshot> generateSnapshot(
             @PathVariable Long patientId,
             @RequestParam(defaultValue = "MONTHLY") String snapshotType,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         OutcomeSnapshot snapshot = analyticsService.generateSnapshot(patientId, doctorId, snapshotType);
         return Result.success("快照已生成", snapshot);
     }
@@ -70,8 +63,8 @@ public class AnalyticsController {
     // Doctor: my performance
     @GetMapping("/doctor/performance")
     @PreAuthorize("hasAnyRole('DOCTOR', 'ADMIN')")
-    public Result<Map<String, Object>> getDoctorPerformance(@RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+    public Result<Map<String, Object>> getDoctorPerformance(@CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(analyticsService.getDoctorPerformanceSummary(doctorId));
     }
 
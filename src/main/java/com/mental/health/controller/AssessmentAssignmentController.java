@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.AssessmentAssignmentService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,23 +18,22 @@ import java.util.Map;
 public class AssessmentAssignmentController {
 
     @Autowired private AssessmentAssignmentService assignmentService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 患者端 =====
 
     @GetMapping("/patient/assessment-assignments/pending")
     public Result<List<AssessmentAssignment>> getMyPendingAssignments(
-            @RequestHeader("Authorization") String token) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         return Result.success(assignmentService.getPatientPendingAssignments(patientId));
     }
 
     @GetMapping("/patient/assessment-assignments")
     public Result<IPage<AssessmentAssignment>> getMyAssignmentHistory(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "20") int pageSize) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(assignmentService.getPatientAssignmentHistory(patientId, pageNum, pageSize));
     }
 
@@ -49,10 +49,10 @@ public class AssessmentAssignmentController {
 
     @PostMapping("/doctor/patients/{patientId}/assessment-assignments")
     public Result<Long> assignAssessment(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId,
             @RequestBody Map<String, Object> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         String scaleCode = (String) body.get("scaleCode");
         boolean isBaseline = Boolean.TRUE.equals(body.get("isBaseline"));
         Long treatmentPlanId = body.get("treatmentPlanId") != null
@@ -67,10 +67,10 @@ public class AssessmentAssignmentController {
 
     @PostMapping("/doctor/assessment-assignments/{assignmentId}/review")
     public Result<Void> reviewAssignment(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long assignmentId,
             @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         assignmentService.reviewAssignment(assignmentId, doctorId, body.get("note"));
         return Result.success();
     }
@@ -103,10 +103,10 @@ public class AssessmentAssignmentController {
 
     @PostMapping("/doctor/patients/{patientId}/trigger-protocol")
     public Result<List<Long>> triggerProtocol(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId,
             @RequestBody Map<String, Object> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         String trigger = (String) body.get("triggerCondition");
         String sourceType = (String) body.get("sourceEventType");
         Long sourceId = body.get("sourceEventId") != null
@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.dto.*;
 import com.mental.health.service.AssessmentService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -18,9 +19,6 @@ public class AssessmentController {
     @Autowired
     private AssessmentService assessmentService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping("/patient/assessments/scales")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<List<ScaleListItem>> getAvailableScales() {
@@ -40,8 +38,8 @@ public class AssessmentController {
     @PostMapping("/patient/assessments/sessions")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<Long> startSession(@RequestBody StartSessionRequest request,
-                                     @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                     @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Long sessionId = assessmentService.startSession(userId, request.getScaleCode());
         return Result.success(sessionId);
     }
@@ -50,8 +48,8 @@ public class AssessmentController {
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<Void> saveAnswers(@PathVariable Long id,
                                     @RequestBody SaveAnswersRequest request,
-                                    @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                    @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         assessmentService.saveAnswers(userId, id, request.getAnswers());
         return Result.success(null);
     }
@@ -59,8 +57,8 @@ public class AssessmentController {
     @PostMapping("/patient/assessments/sessions/{id}/submit")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<SessionResultDTO> submitSession(@PathVariable Long id,
-                                                  @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                                  @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         SessionResultDTO result = assessmentService.submitSession(userId, id);
         return Result.success(result);
     }
@@ -70,8 +68,8 @@ public class AssessmentController {
     public Result<IPage<AssessmentHistoryItem>> getHistory(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(assessmentService.getHistory(userId, pageNum, pageSize));
     }
 
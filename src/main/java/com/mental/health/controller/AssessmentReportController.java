@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.AssessmentReport;
 import com.mental.health.service.AssessmentReportService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,9 +22,6 @@ public class AssessmentReportController {
     @Autowired
     private AssessmentReportService assessmentReportService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 获取我的评估报告列表（患者）
      */
@@ -32,8 +30,8 @@ public class AssessmentReportController {
     public Result<IPage<AssessmentReport>> getMyReports(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         IPage<AssessmentReport> reports = assessmentReportService.getUserReports(userId, pageNum, pageSize);
         return Result.success(reports);
     }
@@ -59,8 +57,8 @@ public class AssessmentReportController {
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<List<AssessmentReport>> getRecentReports(
             @RequestParam(defaultValue = "5") int limit,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<AssessmentReport> reports = assessmentReportService.getRecentReports(userId, limit);
         return Result.success(reports);
     }
@@ -70,8 +68,8 @@ public class AssessmentReportController {
      */
     @PostMapping("/doctor/reports/create")
     @PreAuthorize("hasAnyRole('DOCTOR', 'ADMIN')")
-    public Result<String> createReport(@RequestBody AssessmentReport report, @RequestHeader("Authorization") String token) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> createReport(@RequestBody AssessmentReport report, @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         report.setDoctorId(doctorId);
         report.setIsAiGenerated(0);
         
@@ -91,8 +89,8 @@ public class AssessmentReportController {
     public Result<IPage<AssessmentReport>> getDoctorReports(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         IPage<AssessmentReport> reports = assessmentReportService.getDoctorReports(doctorId, pageNum, pageSize);
         return Result.success(reports);
     }
@@ -3,6 +3,7 @@ package com.mental.health.controller;
 import com.mental.health.common.Result;
 import com.mental.health.entity.User;
 import com.mental.health.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -35,12 +36,17 @@ public class AuthController {
      * 用户登录
      */
     @PostMapping("/login")
-    public Result<Map<String, Object>> login(@RequestBody Map<String, String> loginData) {
+    public Result<Map<String, Object>> login(@RequestBody Map<String, String> loginData,
+                                             HttpServletRequest request) {
         String username = loginData.get("username");
         String password = loginData.get("password");
 
-        Map<String, Object> result = authService.login(username, password);
+        Map<String, Object> result = authService.login(username, password, request.getRemoteAddr());
         if (result != null) {
+            if (result.containsKey("ipBlocked")) {
+                int lockTime = (int) result.get("lockTime");
+                return Result.error("登录失败次数过多，请 " + lockTime + " 秒后重试");
+            }
             // 检查是否被锁定
             if (result.containsKey("locked")) {
                 int lockTime = (int) result.get("lockTime");
@@ -1,13 +1,15 @@
 package com.mental.health.controller;
 
 import com.mental.health.entity.ChatMessage;
+import com.mental.health.service.ClusterMessagingService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import java.util.Arrays;
+
 /**
  * 聊天控制器 - WebSocket
  */
@@ -15,25 +17,19 @@ import org.springframework.stereotype.Controller;
 public class ChatController {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterMessagingService clusterMessagingService;
 
     /**
      * 发送私聊消息
      */
     @MessageMapping("/chat/private")
     public void sendPrivateMessage(@Payload ChatMessage message) {
-        // 发送给指定用户
-        messagingTemplate.convertAndSendToUser(
-                message.getReceiverId().toString(),
-                "/queue/messages",
-                message
-        );
-        
-        // 同时发送给发送者（用于消息确认）
-        messagingTemplate.convertAndSendToUser(
-                message.getSenderId().toString(),
+        // 发送给指定用户，同时发送给发送者（用于消息确认）；对方连在其他节点时经集群中继
+        clusterMessagingService.sendToUsers(
+                Arrays.asList(message.getReceiverId(), message.getSenderId()),
                 "/queue/messages",
-                message
+                message,
+                false
         );
     }
 
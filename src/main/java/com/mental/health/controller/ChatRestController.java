@@ -1,12 +1,14 @@
 package com.mental.health.controller;
 
 import com.mental.health.common.Result;
+import com.mental.health.dto.CursorPage;
 import com.mental.health.entity.ConsultationSession;
 import com.mental.health.entity.User;
 import com.mental.health.mapper.UserMapper;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import com.mental.health.service.ChatMessageService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -31,23 +33,23 @@ public class ChatRestController {
     private UserMapper userMapper;
 
     /**
-     * 获取当前用户信息
+     * 患者端 - 获取聊天列表
      */
-    private User getCurrentUser(Authentication auth) {
-        String username = auth.getName();
-        return userMapper.selectOne(
-            new com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
+    @GetMapping("/patient/chat/list")
+    public Result<List<Map<String, Object>>> getPatientChatList(@CurrentUser AuthenticatedUser currentUser) {
+        List<Map<String, Object>> list = chatMessageService.getChatList(currentUser.userId(), "PATIENT");
+        return Result.success(list);
     }
 
     /**
-     * 患者端 - 获取聊天列表
+     * 患者端 - 分页获取收件箱
      */
-    @GetMapping("/patient/chat/list")
-    public Result<List<Map<String, Object>>> getPatientChatList(Authentication auth) {
-        User user = getCurrentUser(auth);
-        List<Map<String, Object>> list = chatMessageService.getChatList(user.getId(), "PATIENT");
-        return Result.success(list);
+    @GetMapping("/patient/chat/inbox")
+    public Result<Map<String, Object>> getPatientInbox(
+            @RequestParam(defaultValue = "1") int pageNum,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @CurrentUser AuthenticatedUser currentUser) {
+        return Result.success(chatMessageService.getInbox(currentUser.userId(), "PATIENT", pageNum, pageSize));
     }
 
     /**
@@ -56,12 +58,11 @@ public class ChatRestController {
     @PostMapping("/patient/chat/create")
     public Result<Map<String, Object>> createChat(
             @RequestBody Map<String, Object> params,
-            Authentication auth) {
-        User patient = getCurrentUser(auth);
+            @CurrentUser AuthenticatedUser currentUser) {
         Long doctorId = Long.valueOf(params.get("doctorId").toString());
 
         ConsultationSession session = chatMessageService.getOrCreateSession(
-            patient.getId(), doctorId);
+            currentUser.userId(), doctorId);
 
         // 获取医生信息
         User doctor = userMapper.selectById(doctorId);
@@ -85,29 +86,44 @@ public class ChatRestController {
             @PathVariable Long sessionId,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "50") int pageSize,
-            Authentication auth) {
-        User user = getCurrentUser(auth);
+            @CurrentUser AuthenticatedUser currentUser) {
         Map<String, Object> messages = chatMessageService.getMessages(
-            sessionId, user.getId(), pageNum, pageSize);
+            sessionId, currentUser.userId(), pageNum, pageSize);
         return Result.success(messages);
     }
 
+    /**
+     * 患者端 - 游标分页获取消息历史（before 向前翻，after 拉取新消息）
+     */
+    @GetMapping("/patient/chat/messages/{sessionId}/cursor")
+    public Result<CursorPage<Map<String, Object>>> getPatientMessagesByCursor(
+            @PathVariable Long sessionId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @CurrentUser AuthenticatedUser currentUser) {
+        try {
+            return Result.success(chatMessageService.getMessagesByCursor(
+                sessionId, currentUser.userId(), before, after, limit));
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     /**
      * 患者端 - 发送消息
      */
     @PostMapping("/patient/chat/send")
     public Result<Map<String, Object>> patientSendMessage(
             @RequestBody Map<String, Object> params,
-            Authentication auth) {
-        User patient = getCurrentUser(auth);
-
+            @CurrentUser AuthenticatedUser currentUser) {
         Long sessionId = Long.valueOf(params.get("sessionId").toString());
         Long receiverId = Long.valueOf(params.get("targetUserId").toString());
         String content = (String) params.get("content");
         String type = (String) params.getOrDefault("type", "text");
 
         Map<String, Object> message = chatMessageService.sendMessage(
-            sessionId, patient.getId(), receiverId, content, type);
+            sessionId, currentUser.userId(), receiverId, content, type);
 
         return Result.success(message);
     }
@@ -118,9 +134,8 @@ public class ChatRestController {
     @PostMapping("/patient/chat/read/{sessionId}")
     public Result<String> patientMarkRead(
             @PathVariable Long sessionId,
-            Authentication auth) {
-        User user = getCurrentUser(auth);
-        chatMessageService.markAsRead(sessionId, user.getId());
+            @CurrentUser AuthenticatedUser currentUser) {
+        chatMessageService.markAsRead(sessionId, currentUser.userId());
         return Result.success("已标记为已读");
     }
 
@@ -128,12 +143,22 @@ public class ChatRestController {
      * 医生端 - 获取聊天列表
      */
     @GetMapping("/doctor/chat/list")
-    public Result<List<Map<String, Object>>> getDoctorChatList(Authentication auth) {
-        User user = getCurrentUser(auth);
-        List<Map<String, Object>> list = chatMessageService.getChatList(user.getId(), "DOCTOR");
+    public Result<List<Map<String, Object>>> getDoctorChatList(@CurrentUser AuthenticatedUser currentUser) {
+        List<Map<String, Object>> list = chatMessageService.getChatList(currentUser.userId(), "DOCTOR");
         return Result.success(list);
     }
 
+    /**
+     * 医生端 - 分页获取收件箱
+     */
+    @GetMapping("/doctor/chat/inbox")
+    public Result<Map<String, Object>> getDoctorInbox(
+            @RequestParam(defaultValue = "1") int pageNum,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @CurrentUser AuthenticatedUser currentUser) {
+        return Result.success(chatMessageService.getInbox(currentUser.userId(), "DOCTOR", pageNum, pageSize));
+    }
+
     /**
      * 医生端 - 获取消息历史
      */
@@ -142,29 +167,44 @@ public class ChatRestController {
             @PathVariable Long sessionId,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "50") int pageSize,
-            Authentication auth) {
-        User user = getCurrentUser(auth);
+            @CurrentUser AuthenticatedUser currentUser) {
         Map<String, Object> messages = chatMessageService.getMessages(
-            sessionId, user.getId(), pageNum, pageSize);
+            sessionId, currentUser.userId(), pageNum, pageSize);
         return Result.success(messages);
     }
 
+    /**
+     * 医生端 - 游标分页获取消息历史（before 向前翻，after 拉取新消息）
+     */
+    @GetMapping("/doctor/chat/messages/{sessionId}/cursor")
+    public Result<CursorPage<Map<String, Object>>> getDoctorMessagesByCursor(
+            @PathVariable Long sessionId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit,
+            @CurrentUser AuthenticatedUser currentUser) {
+        try {
+            return Result.success(chatMessageService.getMessagesByCursor(
+                sessionId, currentUser.userId(), before, after, limit));
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     /**
      * 医生端 - 发送消息
      */
     @PostMapping("/doctor/chat/send")
     public Result<Map<String, Object>> doctorSendMessage(
             @RequestBody Map<String, Object> params,
-            Authentication auth) {
-        User doctor = getCurrentUser(auth);
-
+            @CurrentUser AuthenticatedUser currentUser) {
         Long sessionId = Long.valueOf(params.get("sessionId").toString());
         Long receiverId = Long.valueOf(params.get("targetUserId").toString());
         String content = (String) params.get("content");
         String type = (String) params.getOrDefault("type", "text");
 
         Map<String, Object> message = chatMessageService.sendMessage(
-            sessionId, doctor.getId(), receiverId, content, type);
+            sessionId, currentUser.userId(), receiverId, content, type);
 
         return Result.success(message);
     }
@@ -175,9 +215,8 @@ public class ChatRestController {
     @PostMapping("/doctor/chat/read/{sessionId}")
     public Result<String> doctorMarkRead(
             @PathVariable Long sessionId,
-            Authentication auth) {
-        User user = getCurrentUser(auth);
-        chatMessageService.markAsRead(sessionId, user.getId());
+            @CurrentUser AuthenticatedUser currentUser) {
+        chatMessageService.markAsRead(sessionId, currentUser.userId());
         return Result.success("已标记为已读");
     }
 
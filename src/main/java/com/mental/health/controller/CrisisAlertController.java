@@ -3,11 +3,12 @@ package com.mental.health.controller;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.CrisisAlert;
 import com.mental.health.mapper.CrisisAlertMapper;
 import com.mental.health.service.RiskAlertService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.StringUtils;
@@ -26,16 +27,13 @@ public class CrisisAlertController {
     @Autowired
     private RiskAlertService riskAlertService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping
     public Result<IPage<CrisisAlert>> list(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "20") int pageSize,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String level,
-            @RequestHeader("Authorization") String token) {
+            @CurrentUser AuthenticatedUser currentUser) {
         Page<CrisisAlert> page = new Page<>(pageNum, pageSize);
         LambdaQueryWrapper<CrisisAlert> w = new LambdaQueryWrapper<>();
         if (StringUtils.hasText(status)) {
@@ -58,8 +56,8 @@ public class CrisisAlertController {
     @PostMapping("/{id}/acknowledge")
     public Result<Void> acknowledge(@PathVariable Long id,
                                      @RequestBody(required = false) Map<String, String> body,
-                                     @RequestHeader("Authorization") String token) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                     @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         String note = body != null ? body.get("note") : null;
         riskAlertService.acknowledge(id, doctorId, note);
         return Result.success(null);
@@ -68,8 +66,8 @@ public class CrisisAlertController {
     @PostMapping("/{id}/resolve")
     public Result<Void> resolve(@PathVariable Long id,
                                  @RequestBody(required = false) Map<String, String> body,
-                                 @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                 @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String note = body != null ? body.get("note") : null;
         riskAlertService.resolve(id, userId, "DOCTOR", note);
         return Result.success(null);
@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.CrisisCaseService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,18 +22,15 @@ public class CrisisCaseController {
     @Autowired
     private CrisisCaseService crisisCaseService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     // ===== 医生端 =====
 
     @GetMapping("/doctor/crisis-cases")
     public Result<Page<CrisisCase>> getDoctorCases(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "20") int pageSize) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         return Result.success(crisisCaseService.getDoctorCases(doctorId, status, pageNum, pageSize));
     }
 
@@ -54,10 +52,10 @@ public class CrisisCaseController {
 
     @PostMapping("/doctor/crisis-cases/{caseId}/triage")
     public Result<Void> triageCase(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long caseId,
             @RequestBody Map<String, Object> body) {
-        Long operatorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long operatorId = currentUser.userId();
         String triageLevel = (String) body.get("triageLevel");
         Long assignDoctorId = body.get("assignDoctorId") != null ? Long.valueOf(body.get("assignDoctorId").toString()) : null;
         String note = (String) body.get("note");
@@ -67,20 +65,20 @@ public class CrisisCaseController {
 
     @PostMapping("/doctor/crisis-cases/{caseId}/transition")
     public Result<Void> transitionStatus(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long caseId,
             @RequestBody Map<String, String> body) {
-        Long operatorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long operatorId = currentUser.userId();
         crisisCaseService.transitionStatus(caseId, body.get("targetStatus"), operatorId, body.get("note"));
         return Result.success();
     }
 
     @PostMapping("/doctor/crisis-cases/{caseId}/contact-attempts")
     public Result<Void> recordContactAttempt(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long caseId,
             @RequestBody Map<String, String> body) {
-        Long operatorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long operatorId = currentUser.userId();
         crisisCaseService.recordContactAttempt(caseId, body.get("target"), body.get("channel"),
                 body.get("contactName"), body.get("contactInfo"), body.get("status"), operatorId, body.get("note"));
         return Result.success();
@@ -96,10 +94,10 @@ public class CrisisCaseController {
 
     @PostMapping("/doctor/patients/{patientId}/safety-plan")
     public Result<Long> createSafetyPlan(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId,
             @RequestBody PatientSafetyPlan plan) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         return Result.success(crisisCaseService.createSafetyPlan(patientId, doctorId, plan));
     }
 
@@ -107,16 +105,16 @@ public class CrisisCaseController {
 
     @GetMapping("/patient/crisis-cases")
     public Result<Page<CrisisCase>> getPatientCases(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "20") int pageSize) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(crisisCaseService.getPatientCases(patientId, pageNum, pageSize));
     }
 
     @GetMapping("/patient/safety-plan")
-    public Result<PatientSafetyPlan> getMysSafetyPlan(@RequestHeader("Authorization") String token) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<PatientSafetyPlan> getMysSafetyPlan(@CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         PatientSafetyPlan plan = crisisCaseService.getActiveSafetyPlan(patientId);
         return plan != null ? Result.success(plan) : Result.success(null);
     }
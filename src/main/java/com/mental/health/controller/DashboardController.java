@@ -1,8 +1,9 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.mapper.MoodDiaryMapper;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -17,15 +18,12 @@ public class DashboardController {
     @Autowired
     private MoodDiaryMapper moodDiaryMapper;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping("/mood-heatmap")
     public Result<List<Map<String, Object>>> getMoodHeatmap(
             @RequestParam(defaultValue = "2026") int year,
             @RequestParam(defaultValue = "3") int month,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<Map<String, Object>> heatmap = new ArrayList<>();
         try {
             List<Map<String, Object>> dataPoints = moodDiaryMapper.getDiaryDataPoints(userId, 90);
@@ -44,8 +42,8 @@ public class DashboardController {
     @GetMapping("/correlations")
     public Result<Map<String, Object>> getCorrelations(
             @RequestParam(defaultValue = "30") int range,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Object> result = new HashMap<>();
         result.put("scatterPoints", new ArrayList<>());
         result.put("correlations", Map.of("moodSleep", 0, "moodStress", 0, "moodEnergy", 0));
@@ -71,8 +69,8 @@ public class DashboardController {
     @GetMapping("/summary")
     public Result<Map<String, Object>> getSummary(
             @RequestParam(defaultValue = "7") int range,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Object> summary = new HashMap<>();
         summary.put("avgMood", 0);
         summary.put("avgSleep", 0);
@@ -1,6 +1,5 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.AssessmentReport;
 import com.mental.health.entity.User;
@@ -8,9 +7,10 @@ import com.mental.health.service.ConsultationService;
 import com.mental.health.service.DoctorService;
 import com.mental.health.service.PatientDoctorRelationshipService;
 import com.mental.health.service.RelationshipChangeRequestService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -27,9 +27,6 @@ public class DoctorController {
     @Autowired
     private DoctorService doctorService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @Autowired
     private RelationshipChangeRequestService relationshipChangeRequestService;
 
@@ -43,9 +40,8 @@ public class DoctorController {
      * Get doctor dashboard statistics
      */
     @GetMapping("/dashboard/statistics")
-    public Result<Map<String, Object>> getDashboardStatistics(Authentication authentication) {
-        String username = authentication.getName();
-        Map<String, Object> statistics = doctorService.getDashboardStatistics(username);
+    public Result<Map<String, Object>> getDashboardStatistics(@CurrentUser AuthenticatedUser currentUser) {
+        Map<String, Object> statistics = doctorService.getDashboardStatistics(currentUser.userId());
         return Result.success(statistics);
     }
 
@@ -54,12 +50,11 @@ public class DoctorController {
      */
     @GetMapping("/patients")
     public Result<Map<String, Object>> getPatients(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) String keyword) {
-        String username = authentication.getName();
-        Map<String, Object> result = doctorService.getPatients(username, pageNum, pageSize, keyword);
+        Map<String, Object> result = doctorService.getPatients(currentUser.userId(), pageNum, pageSize, keyword);
         return Result.success(result);
     }
 
@@ -68,10 +63,9 @@ public class DoctorController {
      */
     @GetMapping("/patients/{patientId}")
     public Result<Map<String, Object>> getPatientDetail(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId) {
-        String username = authentication.getName();
-        Map<String, Object> detail = doctorService.getPatientDetail(username, patientId);
+        Map<String, Object> detail = doctorService.getPatientDetail(currentUser.userId(), patientId);
         if (detail != null) {
             return Result.success(detail);
         } else {
@@ -84,12 +78,11 @@ public class DoctorController {
      */
     @GetMapping("/reports")
     public Result<Map<String, Object>> getReports(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) Long patientId) {
-        String username = authentication.getName();
-        Map<String, Object> result = doctorService.getReports(username, pageNum, pageSize, patientId);
+        Map<String, Object> result = doctorService.getReports(currentUser.userId(), pageNum, pageSize, patientId);
         return Result.success(result);
     }
 
@@ -98,10 +91,9 @@ public class DoctorController {
      */
     @GetMapping("/reports/{reportId}")
     public Result<AssessmentReport> getReportDetail(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long reportId) {
-        String username = authentication.getName();
-        AssessmentReport report = doctorService.getReportDetail(username, reportId);
+        AssessmentReport report = doctorService.getReportDetail(currentUser.userId(), reportId);
         if (report != null) {
             return Result.success(report);
         } else {
@@ -114,10 +106,8 @@ public class DoctorController {
      */
     @PostMapping("/reports")
     public Result<String> createReport(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, Object> requestData) {
-        String username = authentication.getName();
-
         // Map patientId to userId in AssessmentReport
         AssessmentReport report = new AssessmentReport();
         if (requestData.containsKey("patientId")) {
@@ -136,7 +126,7 @@ public class DoctorController {
             report.setSuggestions(requestData.get("recommendations").toString());
         }
 
-        boolean success = doctorService.createReport(username, report);
+        boolean success = doctorService.createReport(currentUser.userId(), report);
         if (success) {
             return Result.success("创建成功");
         } else {
@@ -149,11 +139,9 @@ public class DoctorController {
      */
     @PutMapping("/reports/{reportId}")
     public Result<String> updateReport(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long reportId,
             @RequestBody Map<String, Object> requestData) {
-        String username = authentication.getName();
-
         // Map patientId to userId in AssessmentReport
         AssessmentReport report = new AssessmentReport();
         report.setId(reportId);
@@ -173,7 +161,7 @@ public class DoctorController {
             report.setSuggestions(requestData.get("recommendations").toString());
         }
 
-        boolean success = doctorService.updateReport(username, report);
+        boolean success = doctorService.updateReport(currentUser.userId(), report);
         if (success) {
             return Result.success("更新成功");
         } else {
@@ -186,10 +174,9 @@ public class DoctorController {
      */
     @DeleteMapping("/reports/{reportId}")
     public Result<String> deleteReport(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long reportId) {
-        String username = authentication.getName();
-        boolean success = doctorService.deleteReport(username, reportId);
+        boolean success = doctorService.deleteReport(currentUser.userId(), reportId);
         if (success) {
             return Result.success("删除成功");
         } else {
@@ -202,12 +189,11 @@ public class DoctorController {
      */
     @GetMapping("/appointments")
     public Result<Map<String, Object>> getAppointments(
-            Authentication authentication,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) Integer status) {
-        String username = authentication.getName();
-        Map<String, Object> result = doctorService.getAppointments(username, pageNum, pageSize, status);
+        Map<String, Object> result = doctorService.getAppointments(currentUser.userId(), pageNum, pageSize, status);
         return Result.success(result);
     }
 
@@ -215,9 +201,8 @@ public class DoctorController {
      * Get recent appointments (for dashboard)
      */
     @GetMapping("/appointments/recent")
-    public Result<List<Map<String, Object>>> getRecentAppointments(Authentication authentication) {
-        String username = authentication.getName();
-        List<Map<String, Object>> appointments = doctorService.getRecentAppointments(username);
+    public Result<List<Map<String, Object>>> getRecentAppointments(@CurrentUser AuthenticatedUser currentUser) {
+        List<Map<String, Object>> appointments = doctorService.getRecentAppointments(currentUser.userId());
         return Result.success(appointments);
     }
 
@@ -228,11 +213,11 @@ public class DoctorController {
      */
     @GetMapping("/patient-pool")
     public Result<Map<String, Object>> getPatientPool(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) String keyword) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
 
         // 获取未分配的患者列表
         List<Map<String, Object>> allUnassigned = patientDoctorRelationshipService.getUnassignedPatients();
@@ -277,10 +262,10 @@ public class DoctorController {
      */
     @PostMapping("/patient-pool/claim/{patientId}")
     public Result<String> claimPatient(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId,
             @RequestBody Map<String, String> request) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         String reason = request.get("reason");
 
         if (reason == null || reason.trim().isEmpty()) {
@@ -302,10 +287,10 @@ public class DoctorController {
      */
     @PostMapping("/patients/{patientId}/release")
     public Result<String> releasePatient(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId,
             @RequestBody Map<String, String> request) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         String reason = request.get("reason");
 
         if (reason == null || reason.trim().isEmpty()) {
@@ -327,12 +312,12 @@ public class DoctorController {
      */
     @GetMapping("/requests")
     public Result<Map<String, Object>> getDoctorRequests(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) String requestType,
             @RequestParam(required = false) Integer status) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         Map<String, Object> result = relationshipChangeRequestService.getDoctorRequests(doctorId, pageNum, pageSize);
         return Result.success(result);
     }
@@ -344,11 +329,11 @@ public class DoctorController {
      */
     @GetMapping("/consultations")
     public Result<Map<String, Object>> getConsultations(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
             @RequestParam(required = false) Integer status) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         Map<String, Object> result = consultationService.getDoctorSessions(doctorId, pageNum, pageSize);
         return Result.success(result);
     }
@@ -358,9 +343,9 @@ public class DoctorController {
      */
     @GetMapping("/consultations/{sessionId}")
     public Result<Map<String, Object>> getConsultationDetail(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long sessionId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         // TODO: Add permission check for doctor accessing this session
         return Result.error("会话详情功能暂未实现");
     }
@@ -370,9 +355,9 @@ public class DoctorController {
      */
     @PostMapping("/consultations/{sessionId}/close")
     public Result<String> closeConsultation(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long sessionId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long doctorId = currentUser.userId();
         try {
             consultationService.closeSession(sessionId);
             return Result.success("会话已关闭");
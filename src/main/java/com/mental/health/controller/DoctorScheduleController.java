@@ -1,6 +1,5 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.dto.ScheduleOverrideRequest;
 import com.mental.health.dto.TimeSlotDTO;
@@ -8,6 +7,8 @@ import com.mental.health.entity.Appointment;
 import com.mental.health.entity.DoctorSchedule;
 import com.mental.health.entity.DoctorScheduleOverride;
 import com.mental.health.service.SchedulingService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -26,24 +27,16 @@ public class DoctorScheduleController {
 
     @Autowired
     private SchedulingService schedulingService;
-
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private Long extractUserId(String token) {
-        return jwtUtil.getUserIdFromToken(token.substring(7));
-    }
-
     @GetMapping
-    public Result<List<DoctorSchedule>> getMySchedule(@RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+    public Result<List<DoctorSchedule>> getMySchedule(@CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(schedulingService.getDoctorSchedule(doctorId));
     }
 
     @PostMapping
     public Result<DoctorSchedule> saveScheduleSlot(@RequestBody DoctorSchedule slot,
-                                                    @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                                    @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         slot.setDoctorId(doctorId);
         try {
             DoctorSchedule saved = schedulingService.saveScheduleSlot(slot);
@@ -55,8 +48,8 @@ public class DoctorScheduleController {
 
     @DeleteMapping("/{id}")
     public Result<String> deleteScheduleSlot(@PathVariable Long id,
-                                              @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                              @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         try {
             schedulingService.deleteScheduleSlot(doctorId, id);
             return Result.success("删除成功");
@@ -67,8 +60,8 @@ public class DoctorScheduleController {
 
     @PostMapping("/override")
     public Result<DoctorScheduleOverride> saveOverride(@RequestBody ScheduleOverrideRequest request,
-                                                        @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                                        @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         DoctorScheduleOverride override = new DoctorScheduleOverride();
         override.setOverrideDate(request.getOverrideDate());
         override.setOverrideType(request.getOverrideType());
@@ -88,8 +81,8 @@ public class DoctorScheduleController {
     public Result<List<DoctorScheduleOverride>> getOverrides(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(schedulingService.getOverrides(doctorId, startDate, endDate));
     }
 
@@ -97,8 +90,8 @@ public class DoctorScheduleController {
     public Result<List<TimeSlotDTO>> getMySlots(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(schedulingService.getAvailableSlots(doctorId, startDate, endDate));
     }
 
@@ -106,15 +99,15 @@ public class DoctorScheduleController {
     public Result<List<Appointment>> getMyAppointments(
             @RequestParam(required = false) Integer status,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(schedulingService.getDoctorAppointments(doctorId, status, date));
     }
 
     @PostMapping("/appointments/{id}/confirm")
     public Result<String> confirmAppointment(@PathVariable Long id,
-                                              @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                              @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         try {
             schedulingService.doctorConfirmAppointment(doctorId, id);
             return Result.success("确认成功");
@@ -125,8 +118,8 @@ public class DoctorScheduleController {
 
     @PostMapping("/appointments/{id}/complete")
     public Result<String> completeAppointment(@PathVariable Long id,
-                                               @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                               @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         try {
             schedulingService.doctorCompleteAppointment(doctorId, id);
             return Result.success("完成成功");
@@ -138,8 +131,8 @@ public class DoctorScheduleController {
     @PostMapping("/appointments/{id}/cancel")
     public Result<String> cancelAppointment(@PathVariable Long id,
                                             @RequestBody(required = false) Map<String, String> body,
-                                            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         String reason = body != null ? body.get("reason") : null;
         try {
             schedulingService.doctorCancelAppointment(doctorId, id, reason);
@@ -1,11 +1,12 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.MeditationExercise;
 import com.mental.health.entity.MeditationSession;
 import com.mental.health.service.MeditationService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,9 +22,6 @@ public class MeditationController {
     @Autowired
     private MeditationService meditationService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping("/exercises")
     public Result<List<MeditationExercise>> getExercises() {
         return Result.success(meditationService.getExercises());
@@ -31,8 +29,8 @@ public class MeditationController {
 
     @PostMapping("/sessions/start")
     public Result<Long> startSession(@RequestBody Map<String, Long> body,
-                                      @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                      @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Long exerciseId = body.get("exerciseId");
         return Result.success(meditationService.startSession(userId, exerciseId));
     }
@@ -40,8 +38,8 @@ public class MeditationController {
     @PostMapping("/sessions/{id}/complete")
     public Result<Void> completeSession(@PathVariable Long id,
                                          @RequestBody Map<String, Integer> body,
-                                         @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                         @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Integer actualSeconds = body.get("actualSeconds");
         meditationService.completeSession(userId, id, actualSeconds);
         return Result.success(null);
@@ -51,14 +49,14 @@ public class MeditationController {
     public Result<IPage<MeditationSession>> getHistory(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(meditationService.getHistory(userId, pageNum, pageSize));
     }
 
     @GetMapping("/stats")
-    public Result<Map<String, Object>> getStats(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Object>> getStats(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(meditationService.getStats(userId));
     }
 }
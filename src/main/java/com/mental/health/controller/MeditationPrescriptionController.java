@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.MeditationPrescriptionService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,13 +16,12 @@ import java.util.Map;
 public class MeditationPrescriptionController {
 
     @Autowired private MeditationPrescriptionService prescriptionService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 医生端 =====
     @PostMapping("/doctor/patients/{patientId}/meditation-prescriptions")
-    public Result<Long> createPrescription(@RequestHeader("Authorization") String token,
+    public Result<Long> createPrescription(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId, @RequestBody Map<String, Object> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         Long exerciseId = Long.valueOf(body.get("exerciseId").toString());
         Long planId = body.get("treatmentPlanId") != null ? Long.valueOf(body.get("treatmentPlanId").toString()) : null;
         Integer sessionsPerWeek = body.get("sessionsPerWeek") != null ? Integer.valueOf(body.get("sessionsPerWeek").toString()) : null;
@@ -65,16 +65,16 @@ public class MeditationPrescriptionController {
     // ===== 患者端 =====
     @GetMapping("/patient/meditation/prescriptions")
     public Result<List<MeditationPrescription>> getMyPrescriptions(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(prescriptionService.getPatientPrescriptions(patientId, status));
     }
 
     @PostMapping("/patient/meditation/sessions/{sessionId}/effect")
-    public Result<Long> recordEffect(@RequestHeader("Authorization") String token,
+    public Result<Long> recordEffect(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long sessionId, @RequestBody Map<String, Object> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         Long prescriptionId = body.get("prescriptionId") != null ? Long.valueOf(body.get("prescriptionId").toString()) : null;
         Integer preMood = body.get("preMoodScore") != null ? Integer.valueOf(body.get("preMoodScore").toString()) : null;
         Integer postMood = body.get("postMoodScore") != null ? Integer.valueOf(body.get("postMoodScore").toString()) : null;
@@ -86,9 +86,9 @@ public class MeditationPrescriptionController {
     }
 
     @GetMapping("/patient/meditation/effects")
-    public Result<List<MeditationEffectLog>> getMyEffects(@RequestHeader("Authorization") String token,
+    public Result<List<MeditationEffectLog>> getMyEffects(@CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "20") int limit) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(prescriptionService.getPatientEffectLogs(patientId, limit));
     }
 }
@@ -1,12 +1,14 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.mental.health.common.Result;
 import com.mental.health.entity.MentalResource;
 import com.mental.health.mapper.MentalResourceMapper;
+import com.mental.health.service.ResourceBehaviorPipeline;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.StringUtils;
@@ -26,6 +28,9 @@ public class MentalResourceController {
     @Autowired
     private MentalResourceMapper resourceMapper;
 
+    @Autowired
+    private ResourceBehaviorPipeline behaviorPipeline;
+
     // ==================== 公开接口 ====================
 
     @GetMapping("/public/resources")
@@ -56,14 +61,15 @@ public class MentalResourceController {
     }
 
     @GetMapping("/public/resources/{id}")
-    public Result<MentalResource> getResourceDetail(@PathVariable Long id) {
-        int rows = resourceMapper.update(null, new LambdaUpdateWrapper<MentalResource>()
-                .eq(MentalResource::getId, id)
-                .eq(MentalResource::getStatus, 1)
-                .setSql("view_count = COALESCE(view_count, 0) + 1"));
-        if (rows <= 0) return Result.error("资源不存在");
+    public Result<MentalResource> getResourceDetail(@PathVariable Long id,
+                                                    @CurrentUser(required = false) AuthenticatedUser currentUser) {
         MentalResource resource = resourceMapper.selectById(id);
-        return resource != null ? Result.success(resource) : Result.error("资源不存在");
+        if (resource == null || resource.getStatus() == null || resource.getStatus() != 1) {
+            return Result.error("资源不存在");
+        }
+        // 浏览计数经行为管道合并后批量累加，不再每次浏览一次行锁UPDATE
+        behaviorPipeline.record((currentUser != null ? currentUser.userId() : null), id, ResourceBehaviorPipeline.ACTION_VIEW, null);
+        return Result.success(resource);
     }
 
     @GetMapping("/public/resources/hot")
@@ -173,25 +179,25 @@ public class MentalResourceController {
 
     @PostMapping("/patient/resources/{id}/like")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<String> likeResource(@PathVariable Long id) {
+    public Result<String> likeResource(@PathVariable Long id,
+                                       @CurrentUser AuthenticatedUser currentUser) {
         MentalResource resource = resourceMapper.selectById(id);
         if (resource == null) {
             return Result.error("资源不存在");
         }
-        resource.setLikeCount(resource.getLikeCount() + 1);
-        resourceMapper.updateById(resource);
+        behaviorPipeline.record(currentUser.userId(), id, ResourceBehaviorPipeline.ACTION_LIKE, null);
         return Result.success("点赞成功");
     }
 
     @PostMapping("/patient/resources/{id}/download")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<String> downloadResource(@PathVariable Long id) {
+    public Result<String> downloadResource(@PathVariable Long id,
+                                           @CurrentUser AuthenticatedUser currentUser) {
         MentalResource resource = resourceMapper.selectById(id);
         if (resource == null) {
             return Result.error("资源不存在");
         }
-        resource.setDownloadCount(resource.getDownloadCount() + 1);
-        resourceMapper.updateById(resource);
+        behaviorPipeline.record(currentUser.userId(), id, ResourceBehaviorPipeline.ACTION_DOWNLOAD, null);
         return Result.success("下载成功");
     }
 }
@@ -1,13 +1,14 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.Announcement;
 import com.mental.health.entity.SystemAlert;
 import com.mental.health.entity.SystemNotification;
 import com.mental.health.entity.UserFeedback;
 import com.mental.health.service.MessageService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -25,9 +26,6 @@ public class MessageController {
     @Autowired
     private MessageService messageService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     // ==================== Statistics ====================
 
     /**
@@ -142,9 +140,9 @@ public class MessageController {
     public Result<String> replyFeedback(
             @PathVariable Long id,
             @RequestBody Map<String, String> request,
-            @RequestHeader("Authorization") String token) {
+            @CurrentUser AuthenticatedUser currentUser) {
         String reply = request.get("reply");
-        Long handlerId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long handlerId = currentUser.userId();
 
         boolean success = messageService.replyFeedback(id, reply, handlerId);
         if (success) {
@@ -230,10 +228,10 @@ public class MessageController {
     public Result<String> handleAlert(
             @PathVariable Long id,
             @RequestBody Map<String, Object> request,
-            @RequestHeader("Authorization") String token) {
+            @CurrentUser AuthenticatedUser currentUser) {
         String handleNote = (String) request.get("handleNote");
         Integer newStatus = (Integer) request.get("status");
-        Long handlerId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long handlerId = currentUser.userId();
 
         boolean success = messageService.handleAlert(id, handleNote, handlerId, newStatus);
         if (success) {
@@ -315,8 +313,8 @@ public class MessageController {
      * Publish announcement
      */
     @PostMapping("/announcements/{id}/publish")
-    public Result<String> publishAnnouncement(@PathVariable Long id, @RequestHeader("Authorization") String token) {
-        Long publisherId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> publishAnnouncement(@PathVariable Long id, @CurrentUser AuthenticatedUser currentUser) {
+        Long publisherId = currentUser.userId();
         boolean success = messageService.publishAnnouncement(id, publisherId);
         if (success) {
             return Result.success("发布成功");
@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.MoodComment;
 import com.mental.health.service.MoodCommentService;
 import com.mental.health.service.UserThemeConfigService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -26,15 +27,12 @@ public class MoodCommentController {
     @Autowired
     private UserThemeConfigService themeConfigService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 添加留言
      */
     @PostMapping("/add")
-    public Result<MoodComment> addComment(@RequestBody MoodComment comment, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<MoodComment> addComment(@RequestBody MoodComment comment, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         comment.setUserId(userId);
         
         MoodComment result = commentService.addComment(comment);
@@ -61,8 +59,8 @@ public class MoodCommentController {
     public Result<String> updateInteraction(
             @PathVariable Long commentId,
             @RequestBody Map<String, Object> params,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         
         @SuppressWarnings("unchecked")
         List<String> interactions = (List<String>) params.get("interactions");
@@ -78,8 +76,8 @@ public class MoodCommentController {
      * 删除留言
      */
     @DeleteMapping("/{commentId}")
-    public Result<String> deleteComment(@PathVariable Long commentId, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> deleteComment(@PathVariable Long commentId, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         boolean success = commentService.deleteComment(commentId, userId);
         if (success) {
             return Result.success("留言删除成功");
@@ -1,11 +1,12 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.MoodDiary;
 import com.mental.health.service.MoodDiaryService;
 import com.mental.health.service.UserThemeConfigService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -27,15 +28,12 @@ public class MoodDiaryController {
     @Autowired
     private UserThemeConfigService themeConfigService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 添加日记
      */
     @PostMapping("/add")
-    public Result<MoodDiary> addDiary(@RequestBody MoodDiary diary, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<MoodDiary> addDiary(@RequestBody MoodDiary diary, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         diary.setUserId(userId);
         
         MoodDiary result = diaryService.addDiary(diary);
@@ -53,8 +51,8 @@ public class MoodDiaryController {
     public Result<Page<MoodDiary>> getDiaryList(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Page<MoodDiary> page = diaryService.getDiaryList(userId, pageNum, pageSize);
         return Result.success(page);
     }
@@ -63,8 +61,8 @@ public class MoodDiaryController {
      * 获取日记详情
      */
     @GetMapping("/detail/{id}")
-    public Result<MoodDiary> getDiaryDetail(@PathVariable Long id, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<MoodDiary> getDiaryDetail(@PathVariable Long id, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         MoodDiary diary = diaryService.getDiaryDetail(id, userId);
         if (diary != null) {
             return Result.success(diary);
@@ -79,8 +77,8 @@ public class MoodDiaryController {
     public Result<String> updateStatus(
             @PathVariable Long id,
             @RequestBody Map<String, String> params,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String status = params.get("status");
         
         if (status == null || !isValidStatus(status)) {
@@ -98,8 +96,8 @@ public class MoodDiaryController {
      * 获取用户统计数据
      */
     @GetMapping("/stats")
-    public Result<Map<String, Object>> getUserStats(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Object>> getUserStats(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Object> stats = diaryService.getUserStats(userId);
         return Result.success(stats);
     }
@@ -110,8 +108,8 @@ public class MoodDiaryController {
     @GetMapping("/recent")
     public Result<List<MoodDiary>> getRecentDiaries(
             @RequestParam(defaultValue = "10") int limit,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<MoodDiary> diaries = diaryService.getRecentDiaries(userId, limit);
         return Result.success(diaries);
     }
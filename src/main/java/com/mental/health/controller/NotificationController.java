@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.dto.UserNotificationDTO;
 import com.mental.health.service.UserNotificationService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,38 +16,35 @@ public class NotificationController {
     @Autowired
     private UserNotificationService userNotificationService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping
     public Result<IPage<UserNotificationDTO>> getNotifications(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "20") int pageSize,
             @RequestParam(required = false) String category,
             @RequestParam(required = false) Integer readStatus,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(userNotificationService.getNotifications(userId, pageNum, pageSize, category, readStatus));
     }
 
     @PostMapping("/{id}/read")
     public Result<Void> markRead(@PathVariable Long id,
-                                  @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+                                  @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         userNotificationService.markRead(userId, id);
         return Result.success(null);
     }
 
     @PostMapping("/read-all")
-    public Result<Void> markAllRead(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Void> markAllRead(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         userNotificationService.markAllRead(userId);
         return Result.success(null);
     }
 
     @GetMapping("/unread-count")
-    public Result<Long> getUnreadCount(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Long> getUnreadCount(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(userNotificationService.getUnreadCount(userId));
     }
 }
@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.NotificationPreference;
 import com.mental.health.service.NotificationStrategyService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,20 +17,19 @@ import java.util.Map;
 public class NotificationPreferenceController {
 
     @Autowired private NotificationStrategyService strategyService;
-    @Autowired private JwtUtil jwtUtil;
 
     @GetMapping("/user/notification-preferences")
     public Result<List<NotificationPreference>> getPreferences(
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(strategyService.getUserPreferences(userId));
     }
 
     @PostMapping("/user/notification-preferences")
     public Result<Void> savePreference(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, Object> body) {
-        Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long userId = currentUser.userId();
         String category = (String) body.get("category");
         String channelCode = (String) body.get("channelCode");
         boolean enabled = Boolean.TRUE.equals(body.get("enabled"));
@@ -47,17 +47,17 @@ public class NotificationPreferenceController {
     }
 
     @PostMapping("/user/notification-preferences/init-defaults")
-    public Result<Void> initDefaults(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<Void> initDefaults(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         strategyService.initDefaultPreferences(userId, null);
         return Result.success();
     }
 
     @PostMapping("/user/notifications/{notificationId}/acknowledge")
     public Result<Void> acknowledge(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long notificationId) {
-        Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long userId = currentUser.userId();
         strategyService.acknowledgeNotification(notificationId, userId);
         return Result.success();
     }
@@ -0,0 +1,51 @@
+package com.mental.health.controller;
+
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.mental.health.common.Result;
+import com.mental.health.entity.OutboxEvent;
+import com.mental.health.service.OutboxArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outbox 运维（管理端）：死信查询/重放、手动归档
+ */
+@RestController
+@RequestMapping("/api/admin/outbox")
+@PreAuthorize("hasRole('ADMIN')")
+public class OutboxAdminController {
+
+    @Autowired
+    private OutboxArchiveService archiveService;
+
+    @GetMapping("/dead-letters")
+    public Result<IPage<OutboxEvent>> getDeadLetters(
+            @RequestParam(required = false) String eventType,
+            @RequestParam(defaultValue = "1") int pageNum,
+            @RequestParam(defaultValue = "20") int pageSize) {
+        return Result.success(archiveService.listDeadLetters(eventType, pageNum, pageSize));
+    }
+
+    /**
+     * 重放死信，body: ids(可选), eventType(可选), limit(默认100), ratePerSecond(默认10)
+     */
+    @PostMapping("/dead-letters/replay")
+    public Result<Integer> replayDeadLetters(@RequestBody Map<String, Object> body) {
+        @SuppressWarnings("unchecked")
+        List<Number> rawIds = (List<Number>) body.get("ids");
+        List<Long> ids = rawIds != null ? rawIds.stream().map(Number::longValue).toList() : null;
+        String eventType = (String) body.get("eventType");
+        int limit = body.get("limit") != null ? ((Number) body.get("limit")).intValue() : 100;
+        int rate = body.get("ratePerSecond") != null ? ((Number) body.get("ratePerSecond")).intValue() : 10;
+        return Result.success(archiveService.replayDeadLetters(ids, eventType, limit, rate));
+    }
+
+    @PostMapping("/archive")
+    public Result<Map<String, Integer>> archive() {
+        return Result.success(archiveService.archive());
+    }
+}
@@ -1,13 +1,15 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
+import com.mental.health.dto.AvailableSlotDTO;
 import com.mental.health.dto.BookAppointmentRequest;
 import com.mental.health.dto.JoinWaitlistRequest;
 import com.mental.health.dto.TimeSlotDTO;
 import com.mental.health.entity.Appointment;
 import com.mental.health.entity.AppointmentWaitlist;
 import com.mental.health.service.SchedulingService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -24,14 +26,6 @@ public class PatientAppointmentController {
 
     @Autowired
     private SchedulingService schedulingService;
-
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private Long extractUserId(String token) {
-        return jwtUtil.getUserIdFromToken(token.substring(7));
-    }
-
     @GetMapping("/slots")
     public Result<List<TimeSlotDTO>> getAvailableSlots(
             @RequestParam Long doctorId,
@@ -41,10 +35,25 @@ public class PatientAppointmentController {
         return Result.success(slots);
     }
 
+    @GetMapping("/slots/search")
+    public Result<List<AvailableSlotDTO>> searchAvailableSlots(
+            @RequestParam(required = false) String specialization,
+            @RequestParam(required = false) String location,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            return Result.success(schedulingService.searchAvailableSlots(
+                    specialization, location, startDate, endDate, limit));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     @PostMapping("/book")
     public Result<Long> bookAppointment(@RequestBody BookAppointmentRequest request,
-                                        @RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+                                        @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         try {
             Appointment apt = schedulingService.bookAppointment(userId, request);
             return Result.success("预约成功", apt.getId());
@@ -56,8 +65,8 @@ public class PatientAppointmentController {
     @GetMapping
     public Result<List<Appointment>> getMyAppointments(
             @RequestParam(required = false) Integer status,
-            @RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<Appointment> list = schedulingService.getPatientAppointments(userId, status);
         return Result.success(list);
     }
@@ -65,8 +74,8 @@ public class PatientAppointmentController {
     @PostMapping("/{id}/cancel")
     public Result<String> cancelAppointment(@PathVariable Long id,
                                             @RequestBody(required = false) Map<String, String> body,
-                                            @RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+                                            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String reason = body != null ? body.get("reason") : null;
         try {
             schedulingService.patientCancelAppointment(userId, id, reason);
@@ -78,8 +87,8 @@ public class PatientAppointmentController {
 
     @PostMapping("/waitlist")
     public Result<Long> joinWaitlist(@RequestBody JoinWaitlistRequest request,
-                                     @RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+                                     @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         AppointmentWaitlist wl = new AppointmentWaitlist();
         wl.setDoctorId(request.getDoctorId());
         wl.setPreferredDate(request.getPreferredDate());
@@ -92,15 +101,15 @@ public class PatientAppointmentController {
     }
 
     @GetMapping("/waitlist")
-    public Result<List<AppointmentWaitlist>> getMyWaitlist(@RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+    public Result<List<AppointmentWaitlist>> getMyWaitlist(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         return Result.success(schedulingService.getPatientWaitlist(userId));
     }
 
     @PostMapping("/waitlist/{id}/cancel")
     public Result<String> cancelWaitlist(@PathVariable Long id,
-                                         @RequestHeader("Authorization") String token) {
-        Long userId = extractUserId(token);
+                                         @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         if (schedulingService.cancelWaitlist(userId, id)) {
             return Result.success("已取消等候");
         }
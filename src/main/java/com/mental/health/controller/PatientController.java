@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.service.ConsultationService;
 import com.mental.health.service.PatientDoctorRelationshipService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -18,9 +19,6 @@ import java.util.Map;
 @PreAuthorize("hasRole('PATIENT')")
 public class PatientController {
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @Autowired
     private PatientDoctorRelationshipService patientDoctorRelationshipService;
 
@@ -34,8 +32,8 @@ public class PatientController {
      */
     @GetMapping("/my-doctor")
     public Result<Map<String, Object>> getMyDoctor(
-            @RequestHeader("Authorization") String token) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         Map<String, Object> doctor = patientDoctorRelationshipService.getPatientDoctor(patientId);
 
         if (doctor != null) {
@@ -50,8 +48,8 @@ public class PatientController {
      */
     @GetMapping("/my-consultation")
     public Result<Map<String, Object>> getMyConsultation(
-            @RequestHeader("Authorization") String token) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         Map<String, Object> consultation = consultationService.getPatientSession(patientId);
 
         if (consultation != null) {
@@ -66,10 +64,10 @@ public class PatientController {
      */
     @GetMapping("/consultation-history")
     public Result<Map<String, Object>> getConsultationHistory(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long patientId = currentUser.userId();
         Map<String, Object> history = consultationService.getPatientConsultationHistory(patientId, pageNum, pageSize);
         return Result.success(history);
     }
@@ -79,9 +77,9 @@ public class PatientController {
      */
     @PostMapping("/consultation/start")
     public Result<Map<String, Object>> startConsultation(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, String> request) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long patientId = currentUser.userId();
         String initialMessage = request.get("message");
 
         if (initialMessage == null || initialMessage.trim().isEmpty()) {
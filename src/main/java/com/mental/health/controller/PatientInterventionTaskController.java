@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.InterventionTask;
 import com.mental.health.service.TreatmentPlanPhaseService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,22 +16,21 @@ import java.util.Map;
 public class PatientInterventionTaskController {
 
     @Autowired private TreatmentPlanPhaseService phaseService;
-    @Autowired private JwtUtil jwtUtil;
 
     @GetMapping("/intervention-tasks")
     public Result<List<InterventionTask>> getMyTasks(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(phaseService.getPatientTasks(patientId, status));
     }
 
     @PostMapping("/intervention-tasks/{taskId}/submit")
     public Result<Void> submitTask(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long taskId,
             @RequestBody Map<String, String> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         phaseService.submitTask(taskId, patientId, body.get("note"), body.get("value"));
         return Result.success();
     }
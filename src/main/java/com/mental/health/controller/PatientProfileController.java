@@ -1,11 +1,12 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.dto.ProfileAggregate;
 import com.mental.health.dto.UpdateProfileCommand;
 import com.mental.health.service.PatientDoctorRelationshipService;
 import com.mental.health.service.PatientProfileService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -14,9 +15,6 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/patient/profile")
 public class PatientProfileController {
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @Autowired
     private PatientProfileService patientProfileService;
 
@@ -25,8 +23,8 @@ public class PatientProfileController {
 
     @GetMapping
     public Result<ProfileAggregate> getProfile(
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         ProfileAggregate profile = patientProfileService.getAggregateProfile(userId);
         if (profile == null) {
             return Result.error("用户不存在");
@@ -36,9 +34,9 @@ public class PatientProfileController {
 
     @PutMapping
     public Result<ProfileAggregate> updateProfile(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody UpdateProfileCommand cmd) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long userId = currentUser.userId();
         ProfileAggregate updated = patientProfileService.updateAggregateProfile(userId, cmd);
         return Result.success("档案更新成功", updated);
     }
@@ -46,13 +44,10 @@ public class PatientProfileController {
     @GetMapping("/doctor/{patientId}")
     @PreAuthorize("hasAnyRole('DOCTOR', 'ADMIN')")
     public Result<ProfileAggregate> getPatientProfile(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId) {
-        String jwt = token.substring(7);
-        Long requesterId = jwtUtil.getUserIdFromToken(jwt);
-        String requesterRole = jwtUtil.getRoleFromToken(jwt);
-        if ("DOCTOR".equals(requesterRole)
-                && !patientDoctorRelationshipService.hasRelationship(requesterId, patientId)) {
+        if (currentUser.hasRole("DOCTOR")
+                && !patientDoctorRelationshipService.hasRelationship(currentUser.userId(), patientId)) {
             return Result.error(403, "无权查看该患者档案");
         }
 
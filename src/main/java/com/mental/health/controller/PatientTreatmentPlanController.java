@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.TreatmentPlan;
 import com.mental.health.service.TreatmentPlanService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -19,12 +20,9 @@ public class PatientTreatmentPlanController {
     @Autowired
     private TreatmentPlanService planService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     @GetMapping
-    public Result<List<TreatmentPlan>> getMyPlans(@RequestHeader("Authorization") String token) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<List<TreatmentPlan>> getMyPlans(@CurrentUser AuthenticatedUser currentUser) {
+        Long patientId = currentUser.userId();
         return Result.success(planService.getPatientPlans(patientId));
     }
 
@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.MentalResource;
 import com.mental.health.service.RecommendationService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,17 +22,14 @@ public class RecommendationController {
     @Autowired
     private RecommendationService recommendationService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 获取个性化推荐资源
      */
     @GetMapping("/resources")
     public Result<List<MentalResource>> getRecommendedResources(
             @RequestParam(defaultValue = "10") int limit,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<MentalResource> resources = recommendationService.recommendResources(userId, limit);
         return Result.success(resources);
     }
@@ -44,8 +42,8 @@ public class RecommendationController {
             @RequestParam Long resourceId,
             @RequestParam String action,
             @RequestParam(required = false) Double rating,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         recommendationService.recordUserBehavior(userId, resourceId, action, rating);
         return Result.success("记录成功");
     }
@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.ReferralService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -15,13 +16,12 @@ import java.util.Map;
 public class ReferralController {
 
     @Autowired private ReferralService referralService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 转诊 =====
     @PostMapping("/referrals")
-    public Result<Long> initiateReferral(@RequestHeader("Authorization") String token,
+    public Result<Long> initiateReferral(@CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, Object> body) {
-        Long fromDoctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long fromDoctorId = currentUser.userId();
         Long patientId = Long.valueOf(body.get("patientId").toString());
         Long toDoctorId = body.get("toDoctorId") != null ? Long.valueOf(body.get("toDoctorId").toString()) : null;
         Long planId = body.get("treatmentPlanId") != null ? Long.valueOf(body.get("treatmentPlanId").toString()) : null;
@@ -31,15 +31,15 @@ public class ReferralController {
     }
 
     @GetMapping("/referrals")
-    public Result<List<ReferralCase>> getReferrals(@RequestHeader("Authorization") String token,
+    public Result<List<ReferralCase>> getReferrals(@CurrentUser AuthenticatedUser currentUser,
             @RequestParam(defaultValue = "from") String role, @RequestParam(required = false) String status) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         return Result.success(referralService.getDoctorReferrals(doctorId, role, status));
     }
 
     @PostMapping("/referrals/{id}/accept")
-    public Result<Void> accept(@RequestHeader("Authorization") String token, @PathVariable Long id) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<Void> accept(@CurrentUser AuthenticatedUser currentUser, @PathVariable Long id) {
+        Long doctorId = currentUser.userId();
         referralService.acceptReferral(id, doctorId);
         return Result.success();
     }
@@ -52,22 +52,22 @@ public class ReferralController {
     }
 
     @PostMapping("/referrals/{id}/handoffs")
-    public Result<Long> createHandoff(@RequestHeader("Authorization") String token,
+    public Result<Long> createHandoff(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long id, @RequestBody ReferralHandoff handoff) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         return Result.success(referralService.createHandoff(id, doctorId, handoff));
     }
 
     @PostMapping("/referral-handoffs/{id}/acknowledge")
-    public Result<Void> ackHandoff(@RequestHeader("Authorization") String token, @PathVariable Long id) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<Void> ackHandoff(@CurrentUser AuthenticatedUser currentUser, @PathVariable Long id) {
+        Long doctorId = currentUser.userId();
         referralService.acknowledgeHandoff(id, doctorId);
         return Result.success();
     }
 
     @PostMapping("/referrals/{id}/complete")
-    public Result<Void> complete(@RequestHeader("Authorization") String token, @PathVariable Long id) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+    public Result<Void> complete(@CurrentUser AuthenticatedUser currentUser, @PathVariable Long id) {
+        Long doctorId = currentUser.userId();
         referralService.completeReferral(id, doctorId);
         return Result.success();
     }
@@ -79,9 +79,9 @@ public class ReferralController {
     }
 
     @PostMapping("/patients/{patientId}/care-team")
-    public Result<Long> addMember(@RequestHeader("Authorization") String token,
+    public Result<Long> addMember(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId, @RequestBody Map<String, Object> body) {
-        Long addedBy = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long addedBy = currentUser.userId();
         Long doctorId = Long.valueOf(body.get("doctorId").toString());
         return Result.success(referralService.addCareTeamMember(patientId, doctorId,
                 (String) body.get("memberRoleCode"), addedBy, (String) body.get("accessScopeJson")));
@@ -0,0 +1,91 @@
+package com.mental.health.controller;
+
+import com.mental.health.common.Result;
+import com.mental.health.service.RiskRescoreService;
+import com.mental.health.service.RiskRuleSnapshot;
+import com.mental.health.service.RiskScoringService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 风险规则运维（管理端）：规则重新编译、历史数据批量重算
+ */
+@RestController
+@RequestMapping("/api/admin/risk")
+@PreAuthorize("hasRole('ADMIN')")
+public class RiskRuleAdminController {
+
+    @Autowired
+    private RiskScoringService riskScoringService;
+
+    @Autowired
+    private RiskRescoreService riskRescoreService;
+
+    @PostMapping("/rules/reload")
+    public Result<Map<String, Object>> reloadRules() {
+        RiskRuleSnapshot snapshot = riskScoringService.reloadRules();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ruleCount", snapshot.ruleCount());
+        result.put("keywordCount", snapshot.keywordCount());
+        result.put("compiledAt", snapshot.getCompiledAt());
+        return Result.success(result);
+    }
+
+    /**
+     * 提交重算任务，body: sources(可选), start/end(可选, yyyy-MM-dd 或 yyyy-MM-ddTHH:mm:ss), dryRun(默认 true)
+     */
+    @PostMapping("/rescore")
+    public Result<Map<String, Object>> submitRescore(@RequestBody Map<String, Object> body) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> sources = (List<String>) body.get("sources");
+            LocalDateTime start = parseTime((String) body.get("start"), false);
+            LocalDateTime end = parseTime((String) body.get("end"), true);
+            boolean dryRun = !Boolean.FALSE.equals(body.get("dryRun"));
+            return Result.success(riskRescoreService.submit(sources, start, end, dryRun));
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    @GetMapping("/rescore/{jobId}")
+    public Result<Map<String, Object>> getRescoreJob(@PathVariable String jobId) {
+        try {
+            return Result.success(riskRescoreService.getJob(jobId));
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    @PostMapping("/rescore/{jobId}/cancel")
+    public Result<Void> cancelRescoreJob(@PathVariable String jobId) {
+        try {
+            riskRescoreService.cancel(jobId);
+            return Result.success(null);
+        } catch (RuntimeException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    private LocalDateTime parseTime(String value, boolean endOfDay) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            if (value.length() == 10) {
+                LocalDate date = LocalDate.parse(value);
+                return endOfDay ? date.atTime(23, 59, 59) : date.atStartOfDay();
+            }
+            return LocalDateTime.parse(value.replace(' ', 'T'));
+        } catch (Exception e) {
+            throw new RuntimeException("时间格式不正确: " + value);
+        }
+    }
+}
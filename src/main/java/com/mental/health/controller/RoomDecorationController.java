@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.DecorationConfig;
 import com.mental.health.entity.RoomDecoration;
 import com.mental.health.service.RoomDecorationService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -15,7 +16,6 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -35,16 +35,6 @@ public class RoomDecorationController {
     @Autowired
     private RoomDecorationService decorationService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private Long getUserIdFromHeader(String authorization) {
-        if (!StringUtils.hasText(authorization) || !authorization.startsWith("Bearer ")) {
-            throw new IllegalArgumentException("缺少或无效的认证信息");
-        }
-        return jwtUtil.getUserIdFromToken(authorization.substring(7));
-    }
-
     private boolean isAuthError(IllegalArgumentException e) {
         String message = e.getMessage();
         return message != null && message.contains("认证");
@@ -98,9 +88,9 @@ public class RoomDecorationController {
      * 获取用户所有装饰物（包括未放置的）
      */
     @GetMapping("/decorations")
-    public Result<List<RoomDecoration>> getUserDecorations(@RequestHeader("Authorization") String token) {
+    public Result<List<RoomDecoration>> getUserDecorations(@CurrentUser AuthenticatedUser currentUser) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             // 返回所有装饰记录（包括未放置的）用于商店和解锁显示
             List<RoomDecoration> decorations = decorationService.getAllUserDecorations(userId);
             return Result.success(decorations);
@@ -149,9 +139,9 @@ public class RoomDecorationController {
      * 检查并解锁新装饰物
      */
     @PostMapping("/check-unlock")
-    public Result<Map<String, Object>> checkAndUnlock(@RequestHeader("Authorization") String token) {
+    public Result<Map<String, Object>> checkAndUnlock(@CurrentUser AuthenticatedUser currentUser) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             Map<String, Object> result = decorationService.checkAndUnlockDecorations(userId);
             return Result.success(result);
         } catch (IllegalArgumentException e) {
@@ -172,10 +162,10 @@ public class RoomDecorationController {
      */
     @PostMapping("/add")
     public Result<String> addToRoom(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, Object> request) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             String decorationType = (String) request.get("decorationType");
 
             if (!StringUtils.hasText(decorationType)) {
@@ -206,10 +196,10 @@ public class RoomDecorationController {
     @PutMapping("/position/{id}")
     public Result<String> updatePosition(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestBody Map<String, Object> request) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             Integer x = request.containsKey("x") ? parseInteger(request.get("x"), "x", null) : null;
             Integer y = request.containsKey("y") ? parseInteger(request.get("y"), "y", null) : null;
             Integer z = request.containsKey("z") ? parseInteger(request.get("z"), "z", null) : null;
@@ -237,9 +227,9 @@ public class RoomDecorationController {
     @DeleteMapping("/{id}")
     public Result<String> removeDecoration(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String token) {
+            @CurrentUser AuthenticatedUser currentUser) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             boolean success = decorationService.removeDecoration(userId, id);
             return success ? Result.success("移除成功", null) : Result.error("移除失败");
         } catch (IllegalArgumentException e) {
@@ -261,9 +251,9 @@ public class RoomDecorationController {
     @PostMapping("/interact/{id}")
     public Result<Map<String, Object>> interact(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String token) {
+            @CurrentUser AuthenticatedUser currentUser) {
         try {
-            Long userId = getUserIdFromHeader(token);
+            Long userId = currentUser.userId();
             Map<String, Object> result = decorationService.interactWithDecoration(userId, id);
             if (result.isEmpty()) {
                 return Result.error("互动失败");
@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.SymptomRecord;
 import com.mental.health.service.SymptomRecordService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,15 +21,12 @@ public class SymptomRecordController {
     @Autowired
     private SymptomRecordService symptomRecordService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 添加症状记录
      */
     @PostMapping("/add")
-    public Result<String> addRecord(@RequestBody SymptomRecord record, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> addRecord(@RequestBody SymptomRecord record, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         record.setUserId(userId);
         
         boolean success = symptomRecordService.addRecord(record);
@@ -46,8 +44,8 @@ public class SymptomRecordController {
     public Result<IPage<SymptomRecord>> getMyRecords(
             @RequestParam(defaultValue = "1") int pageNum,
             @RequestParam(defaultValue = "10") int pageSize,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         IPage<SymptomRecord> records = symptomRecordService.getUserRecords(userId, pageNum, pageSize);
         return Result.success(records);
     }
@@ -97,8 +95,8 @@ public class SymptomRecordController {
     @GetMapping("/recent")
     public Result<List<SymptomRecord>> getRecentRecords(
             @RequestParam(defaultValue = "7") int limit,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<SymptomRecord> records = symptomRecordService.getRecentRecords(userId, limit);
         return Result.success(records);
     }
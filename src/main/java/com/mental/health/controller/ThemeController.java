@@ -1,11 +1,12 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.UserThemeConfig;
 import com.mental.health.entity.WeatherConfig;
 import com.mental.health.service.UserThemeConfigService;
 import com.mental.health.service.WeatherConfigService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -28,15 +29,12 @@ public class ThemeController {
     @Autowired
     private WeatherConfigService weatherConfigService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 获取当前主题配置
      */
     @GetMapping("/config")
-    public Result<UserThemeConfig> getConfig(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<UserThemeConfig> getConfig(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         UserThemeConfig config = themeConfigService.getUserConfig(userId);
         return Result.success(config);
     }
@@ -45,8 +43,8 @@ public class ThemeController {
      * 检查并解锁新主题
      */
     @PostMapping("/check-unlock")
-    public Result<Map<String, Object>> checkUnlock(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Object>> checkUnlock(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Object> result = themeConfigService.checkAndUnlockThemes(userId);
         return Result.success(result);
     }
@@ -57,8 +55,8 @@ public class ThemeController {
     @PostMapping("/switch")
     public Result<String> switchTheme(
             @RequestBody Map<String, String> request,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String themeName = request.get("themeName");
 
         if (themeName == null || themeName.isEmpty()) {
@@ -76,8 +74,8 @@ public class ThemeController {
      * 获取已解锁主题列表
      */
     @GetMapping("/unlocked")
-    public Result<Map<String, Object>> getUnlockedThemes(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Object>> getUnlockedThemes(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         UserThemeConfig config = themeConfigService.getUserConfig(userId);
 
         Map<String, Object> result = new HashMap<>();
@@ -92,8 +90,8 @@ public class ThemeController {
      * 切换灯光模式
      */
     @PostMapping("/toggle-light")
-    public Result<Map<String, String>> toggleLight(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, String>> toggleLight(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         boolean success = themeConfigService.toggleLightMode(userId);
 
         if (success) {
@@ -110,8 +108,8 @@ public class ThemeController {
      * 更新设置
      */
     @PutMapping("/settings")
-    public Result<String> updateSettings(@RequestBody UserThemeConfig config, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> updateSettings(@RequestBody UserThemeConfig config, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         config.setUserId(userId);
 
         boolean success = themeConfigService.updateConfig(config);
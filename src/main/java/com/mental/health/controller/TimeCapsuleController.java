@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.TimeCapsule;
 import com.mental.health.service.TimeCapsuleService;
 import com.mental.health.service.UserThemeConfigService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -26,15 +27,12 @@ public class TimeCapsuleController {
     @Autowired
     private UserThemeConfigService themeConfigService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 写信 (兼容/write和/create两个路径)
      */
     @PostMapping({"/write", "/create"})
-    public Result<TimeCapsule> writeLetter(@RequestBody TimeCapsule capsule, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<TimeCapsule> writeLetter(@RequestBody TimeCapsule capsule, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
 
         if (capsule.getUnlockDate() == null) {
             return Result.error("请设置解锁日期");
@@ -52,8 +50,8 @@ public class TimeCapsuleController {
      * 获取信箱列表
      */
     @GetMapping("/list")
-    public Result<List<TimeCapsule>> getLetterList(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<List<TimeCapsule>> getLetterList(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         // 先检查并解锁满足条件的信件
         capsuleService.checkAndUnlockLetters(userId);
         // 再获取列表
@@ -65,8 +63,8 @@ public class TimeCapsuleController {
      * 获取可解锁的信件列表
      */
     @GetMapping("/unlockable")
-    public Result<List<TimeCapsule>> getUnlockableLetters(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<List<TimeCapsule>> getUnlockableLetters(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<TimeCapsule> letters = capsuleService.checkAndUnlockLetters(userId);
         return Result.success(letters);
     }
@@ -75,8 +73,8 @@ public class TimeCapsuleController {
      * 检查可解锁的信件
      */
     @GetMapping("/check-unlock")
-    public Result<List<TimeCapsule>> checkUnlockLetters(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<List<TimeCapsule>> checkUnlockLetters(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<TimeCapsule> letters = capsuleService.checkAndUnlockLetters(userId);
         if (!letters.isEmpty()) {
             return Result.success("有 " + letters.size() + " 封信件可以打开了", letters);
@@ -88,8 +86,8 @@ public class TimeCapsuleController {
      * 解锁信件
      */
     @GetMapping("/unlock/{id}")
-    public Result<TimeCapsule> unlockLetter(@PathVariable Long id, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<TimeCapsule> unlockLetter(@PathVariable Long id, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         TimeCapsule letter = capsuleService.unlockLetter(id, userId);
         if (letter != null) {
             return Result.success("信件已解锁", letter);
@@ -101,8 +99,8 @@ public class TimeCapsuleController {
      * 阅读信件
      */
     @PostMapping("/read/{id}")
-    public Result<TimeCapsule> readLetter(@PathVariable Long id, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<TimeCapsule> readLetter(@PathVariable Long id, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         TimeCapsule letter = capsuleService.readLetter(id, userId);
         if (letter != null) {
             return Result.success(letter);
@@ -117,8 +115,8 @@ public class TimeCapsuleController {
     public Result<String> replyLetter(
             @PathVariable Long id,
             @RequestBody Map<String, String> params,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String replyContent = params.get("replyContent");
         
         boolean success = capsuleService.replyLetter(id, userId, replyContent);
@@ -132,8 +130,8 @@ public class TimeCapsuleController {
      * 获取信件详情
      */
     @GetMapping("/detail/{id}")
-    public Result<TimeCapsule> getLetterDetail(@PathVariable Long id, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<TimeCapsule> getLetterDetail(@PathVariable Long id, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         TimeCapsule letter = capsuleService.getLetterDetail(id, userId);
         if (letter != null) {
             return Result.success(letter);
@@ -145,8 +143,8 @@ public class TimeCapsuleController {
      * 获取智能推荐
      */
     @GetMapping("/recommend")
-    public Result<com.mental.health.entity.LetterRecommendation> getRecommendation(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<com.mental.health.entity.LetterRecommendation> getRecommendation(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         com.mental.health.entity.LetterRecommendation recommendation = capsuleService.analyzeAndRecommend(userId);
         return Result.success(recommendation);
     }
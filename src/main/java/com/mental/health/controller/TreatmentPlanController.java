@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.TreatmentPlanService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -18,21 +19,13 @@ public class TreatmentPlanController {
 
     @Autowired
     private TreatmentPlanService planService;
-
-    @Autowired
-    private JwtUtil jwtUtil;
-
-    private Long extractUserId(String token) {
-        return jwtUtil.getUserIdFromToken(token.substring(7));
-    }
-
     // ===== Plans =====
 
     @GetMapping
     public Result<List<TreatmentPlan>> getMyPlans(
             @RequestParam(required = false) String status,
-            @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         return Result.success(planService.getDoctorPlans(doctorId, status));
     }
 
@@ -45,8 +38,8 @@ public class TreatmentPlanController {
 
     @PostMapping
     public Result<TreatmentPlan> createPlan(@RequestBody TreatmentPlan plan,
-                                             @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                             @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         plan.setDoctorId(doctorId);
         return Result.success("创建成功", planService.createPlan(plan));
     }
@@ -60,8 +53,8 @@ public class TreatmentPlanController {
 
     @PostMapping("/{id}/activate")
     public Result<String> activatePlan(@PathVariable Long id,
-                                       @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                       @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         if (planService.activatePlan(id, doctorId)) {
             return Result.success("已激活");
         }
@@ -70,8 +63,8 @@ public class TreatmentPlanController {
 
     @PostMapping("/{id}/complete")
     public Result<String> completePlan(@PathVariable Long id,
-                                       @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                       @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         if (planService.completePlan(id, doctorId)) {
             return Result.success("已完成");
         }
@@ -97,8 +90,8 @@ public class TreatmentPlanController {
     @PostMapping("/goals/{goalId}/progress")
     public Result<String> updateGoalProgress(@PathVariable Long goalId,
                                               @RequestBody Map<String, Object> body,
-                                              @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                              @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         int progressPct = (int) body.getOrDefault("progressPct", 0);
         String note = (String) body.get("note");
         if (planService.updateGoalProgress(goalId, doctorId, progressPct, note)) {
@@ -132,8 +125,8 @@ public class TreatmentPlanController {
 
     @PostMapping("/session-notes")
     public Result<SessionNote> createSessionNote(@RequestBody SessionNote note,
-                                                  @RequestHeader("Authorization") String token) {
-        Long doctorId = extractUserId(token);
+                                                  @CurrentUser AuthenticatedUser currentUser) {
+        Long doctorId = currentUser.userId();
         note.setDoctorId(doctorId);
         return Result.success("创建成功", planService.createSessionNote(note));
     }
@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.*;
 import com.mental.health.service.TreatmentPlanPhaseService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,7 +17,6 @@ import java.util.Map;
 public class TreatmentPlanPhaseController {
 
     @Autowired private TreatmentPlanPhaseService phaseService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 阶段 =====
     @GetMapping("/treatment-plans/{planId}/phases")
@@ -31,17 +31,17 @@ public class TreatmentPlanPhaseController {
     }
 
     @PostMapping("/treatment-plans/{planId}/phases/{phaseId}/activate")
-    public Result<Void> activatePhase(@RequestHeader("Authorization") String token,
+    public Result<Void> activatePhase(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long planId, @PathVariable Long phaseId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         phaseService.activatePhase(planId, phaseId, doctorId);
         return Result.success();
     }
 
     @PostMapping("/treatment-plans/{planId}/phases/{phaseId}/complete")
-    public Result<Void> completePhase(@RequestHeader("Authorization") String token,
+    public Result<Void> completePhase(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long planId, @PathVariable Long phaseId, @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         phaseService.completePhase(planId, phaseId, doctorId, body.get("note"));
         return Result.success();
     }
@@ -61,9 +61,9 @@ public class TreatmentPlanPhaseController {
     }
 
     @PostMapping("/treatment-plan-reviews/{reviewId}/complete")
-    public Result<Void> completeReview(@RequestHeader("Authorization") String token,
+    public Result<Void> completeReview(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long reviewId, @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         phaseService.completeReview(reviewId, doctorId, body.get("conclusionCode"),
                 body.get("summaryText"), body.get("actionPlanJson"));
         return Result.success();
@@ -71,27 +71,27 @@ public class TreatmentPlanPhaseController {
 
     // ===== 修订 =====
     @PostMapping("/treatment-plans/{planId}/revisions")
-    public Result<Long> proposeRevision(@RequestHeader("Authorization") String token,
+    public Result<Long> proposeRevision(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long planId, @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         Long reviewId = body.get("reviewId") != null ? Long.valueOf(body.get("reviewId")) : null;
         return Result.success(phaseService.proposeRevision(planId, doctorId,
                 body.get("changeSummary"), body.get("changeDetailJson"), body.get("reason"), reviewId));
     }
 
     @PostMapping("/treatment-plan-revisions/{revisionId}/approve")
-    public Result<Void> approveRevision(@RequestHeader("Authorization") String token,
+    public Result<Void> approveRevision(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long revisionId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         phaseService.approveAndApplyRevision(revisionId, doctorId);
         return Result.success();
     }
 
     // ===== 干预任务 =====
     @PostMapping("/patients/{patientId}/intervention-tasks")
-    public Result<Long> assignTask(@RequestHeader("Authorization") String token,
+    public Result<Long> assignTask(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long patientId, @RequestBody Map<String, Object> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         Long planId = Long.valueOf(body.get("planId").toString());
         Long phaseId = body.get("phaseId") != null ? Long.valueOf(body.get("phaseId").toString()) : null;
         Long interventionId = body.get("interventionId") != null ? Long.valueOf(body.get("interventionId").toString()) : null;
@@ -101,9 +101,9 @@ public class TreatmentPlanPhaseController {
     }
 
     @PostMapping("/intervention-tasks/{taskId}/review")
-    public Result<Void> reviewTask(@RequestHeader("Authorization") String token,
+    public Result<Void> reviewTask(@CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long taskId, @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         phaseService.reviewTask(taskId, doctorId, body.get("resultCode"), body.get("note"));
         return Result.success();
     }
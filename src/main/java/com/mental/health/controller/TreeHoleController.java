@@ -1,9 +1,10 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.TreeHole;
 import com.mental.health.service.TreeHoleService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -22,18 +23,15 @@ public class TreeHoleController {
     @Autowired
     private TreeHoleService treeHoleService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 添加倾诉记录
      */
     @PostMapping("/add")
     public Result<TreeHole> addTreeHole(
             @RequestBody TreeHole treeHole,
-            @RequestHeader("Authorization") String token
+            @CurrentUser AuthenticatedUser currentUser
     ) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long userId = currentUser.userId();
 
         // 验证必填字段
         if (treeHole.getSpeakToType() == null || treeHole.getSpeakToName() == null ||
@@ -49,8 +47,8 @@ public class TreeHoleController {
      * 获取活跃的倾诉记录（未过期的）
      */
     @GetMapping("/active")
-    public Result<List<TreeHole>> getActiveTreeHoles(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<List<TreeHole>> getActiveTreeHoles(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         List<TreeHole> treeHoles = treeHoleService.getActiveTreeHoles(userId);
         return Result.success(treeHoles);
     }
@@ -59,8 +57,8 @@ public class TreeHoleController {
      * 获取档案馆（所有记录）
      */
     @GetMapping("/archive")
-    public Result<Map<String, List<TreeHole>>> getArchive(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, List<TreeHole>>> getArchive(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
 
         // 检查是否有权限查看档案馆
         if (!treeHoleService.canViewArchive(userId)) {
@@ -75,8 +73,8 @@ public class TreeHoleController {
      * 检查是否可以查看档案馆
      */
     @GetMapping("/can-view-archive")
-    public Result<Boolean> canViewArchive(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Boolean> canViewArchive(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         boolean canView = treeHoleService.canViewArchive(userId);
         return Result.success(canView);
     }
@@ -87,9 +85,9 @@ public class TreeHoleController {
     @GetMapping("/view/{id}")
     public Result<TreeHole> viewTreeHole(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String token
+            @CurrentUser AuthenticatedUser currentUser
     ) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long userId = currentUser.userId();
 
         // 先检查记录是否存在
         TreeHole treeHole = treeHoleService.getTreeHoleById(id, userId);
@@ -114,9 +112,9 @@ public class TreeHoleController {
     @DeleteMapping("/delete/{id}")
     public Result<String> deleteTreeHole(
             @PathVariable Long id,
-            @RequestHeader("Authorization") String token
+            @CurrentUser AuthenticatedUser currentUser
     ) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+        Long userId = currentUser.userId();
         boolean success = treeHoleService.deleteTreeHole(id, userId);
 
         if (success) {
@@ -130,8 +128,8 @@ public class TreeHoleController {
      * 获取统计数据
      */
     @GetMapping("/stats")
-    public Result<Map<String, Integer>> getStats(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Integer>> getStats(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Integer> stats = treeHoleService.getStatsByType(userId);
         return Result.success(stats);
     }
@@ -1,10 +1,11 @@
 package com.mental.health.controller;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.User;
 import com.mental.health.service.UserService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -23,16 +24,13 @@ public class UserController {
     @Autowired
     private UserService userService;
 
-    @Autowired
-    private JwtUtil jwtUtil;
-
     /**
      * 获取当前用户信息
      */
     @GetMapping("/user/profile")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<User> getProfile(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<User> getProfile(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         User user = userService.getUserById(userId);
         
         if (user != null) {
@@ -48,8 +46,8 @@ public class UserController {
      */
     @PutMapping("/user/profile")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<String> updateProfile(@RequestBody User user, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> updateProfile(@RequestBody User user, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         user.setId(userId);
         
         boolean success = userService.updateUser(user);
@@ -65,8 +63,8 @@ public class UserController {
      */
     @PostMapping("/user/change-password")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<String> changePassword(@RequestBody Map<String, String> request, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> changePassword(@RequestBody Map<String, String> request, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String oldPassword = request.get("oldPassword");
         String newPassword = request.get("newPassword");
 
@@ -83,8 +81,8 @@ public class UserController {
      */
     @GetMapping("/user/stats")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<Map<String, Object>> getUserStats(@RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<Map<String, Object>> getUserStats(@CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         Map<String, Object> stats = userService.getUserStats(userId);
         return Result.success(stats);
     }
@@ -96,8 +94,8 @@ public class UserController {
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
     public Result<Map<String, String>> uploadAvatar(
             @RequestParam("file") org.springframework.web.multipart.MultipartFile file,
-            @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+            @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
 
         try {
             String avatarUrl = userService.uploadAvatar(userId, file);
@@ -114,8 +112,8 @@ public class UserController {
      */
     @PostMapping("/user/change-phone")
     @PreAuthorize("hasAnyRole('PATIENT', 'DOCTOR', 'ADMIN')")
-    public Result<String> changePhone(@RequestBody Map<String, String> request, @RequestHeader("Authorization") String token) {
-        Long userId = jwtUtil.getUserIdFromToken(token.substring(7));
+    public Result<String> changePhone(@RequestBody Map<String, String> request, @CurrentUser AuthenticatedUser currentUser) {
+        Long userId = currentUser.userId();
         String newPhone = request.get("newPhone");
         String code = request.get("code");
 
@@ -1,13 +1,17 @@
 package com.mental.health.controller;
 
-import com.mental.health.common.JwtUtil;
 import com.mental.health.common.Result;
 import com.mental.health.entity.WaitlistOffer;
 import com.mental.health.service.WaitlistManagementService;
+import com.mental.health.security.AuthenticatedUser;
+import com.mental.health.security.CurrentUser;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -16,42 +20,41 @@ import java.util.Map;
 public class WaitlistManagementController {
 
     @Autowired private WaitlistManagementService waitlistService;
-    @Autowired private JwtUtil jwtUtil;
 
     // ===== 患者端 =====
 
     @GetMapping("/patient/waitlist-offers")
     public Result<List<WaitlistOffer>> getMyOffers(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @RequestParam(required = false) String status) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         return Result.success(waitlistService.getPatientOffers(patientId, status));
     }
 
     @PostMapping("/patient/waitlist-offers/{offerId}/accept")
     public Result<Long> acceptOffer(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long offerId) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         Long appointmentId = waitlistService.acceptOffer(offerId, patientId);
         return Result.success(appointmentId);
     }
 
     @PostMapping("/patient/waitlist-offers/{offerId}/decline")
     public Result<Void> declineOffer(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long offerId,
             @RequestBody Map<String, String> body) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         waitlistService.declineOffer(offerId, patientId, body.get("reason"));
         return Result.success();
     }
 
     @PostMapping("/patient/appointments/{appointmentId}/check-in")
     public Result<Void> checkIn(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long appointmentId) {
-        Long patientId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long patientId = currentUser.userId();
         waitlistService.checkIn(appointmentId, patientId);
         return Result.success();
     }
@@ -60,19 +63,19 @@ public class WaitlistManagementController {
 
     @PostMapping("/doctor/appointments/{appointmentId}/no-show")
     public Result<Void> markNoShow(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long appointmentId) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         waitlistService.markNoShow(appointmentId, doctorId);
         return Result.success();
     }
 
     @PostMapping("/doctor/appointments/{appointmentId}/reschedule")
     public Result<Long> reschedule(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long appointmentId,
             @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         LocalDateTime newTime = LocalDateTime.parse(body.get("newTime"));
         Long id = waitlistService.rescheduleAppointment(
                 appointmentId, newTime, doctorId, "DOCTOR", body.get("reason"));
@@ -81,11 +84,27 @@ public class WaitlistManagementController {
 
     @PostMapping("/doctor/appointments/{appointmentId}/cancel")
     public Result<Void> cancelAppointment(
-            @RequestHeader("Authorization") String token,
+            @CurrentUser AuthenticatedUser currentUser,
             @PathVariable Long appointmentId,
             @RequestBody Map<String, String> body) {
-        Long doctorId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+        Long doctorId = currentUser.userId();
         waitlistService.onAppointmentCancelled(appointmentId, doctorId, body.get("reason"));
         return Result.success();
     }
+
+    /**
+     * 批量放出空缺时段（如临时加号），一次分配给候补；body 为 [{"date": "...", "time": "HH:mm"}]
+     */
+    @PostMapping("/doctor/waitlist/match-vacancies")
+    public Result<Integer> matchVacancies(
+            @CurrentUser AuthenticatedUser currentUser,
+            @RequestBody List<Map<String, String>> body) {
+        Long doctorId = currentUser.userId();
+        List<WaitlistManagementService.Vacancy> vacancies = new ArrayList<>();
+        for (Map<String, String> item : body) {
+            vacancies.add(new WaitlistManagementService.Vacancy(
+                    LocalDate.parse(item.get("date")), LocalTime.parse(item.get("time"))));
+        }
+        return Result.success(waitlistService.matchVacancies(doctorId, vacancies));
+    }
 }
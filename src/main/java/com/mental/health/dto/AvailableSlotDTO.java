@@ -0,0 +1,23 @@
+package com.mental.health.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailableSlotDTO {
+    private Long doctorId;
+    private String doctorName;
+    private String specialization;
+    private LocalDate date;
+    private LocalTime startTime;
+    private LocalTime endTime;
+    private int available; // remaining capacity
+    private int total;     // max capacity
+    private String location;
+}
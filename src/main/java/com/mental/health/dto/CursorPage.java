@@ -0,0 +1,69 @@
+package com.mental.health.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 游标分页结果
+ *
+ * records 按时间正序；beforeCursor 用于继续加载更早的记录（没有更早记录时为 null），
+ * afterCursor 用于拉取此后的新记录（有记录或请求带游标时返回，可用于轮询）。
+ */
+@Data
+public class CursorPage<T> {
+    private List<T> records;
+    private String beforeCursor;
+    private String afterCursor;
+    private Boolean hasMore;
+
+    /**
+     * 由“游标之前”查询结果构建；newestFirst 为倒序且多取一条用于判断是否还有更早记录
+     */
+    public static <T> CursorPage<T> before(List<T> newestFirst, int limit, Function<T, String> cursorOf) {
+        boolean more = newestFirst.size() > limit;
+        List<T> records = new ArrayList<>(more ? newestFirst.subList(0, limit) : newestFirst);
+        Collections.reverse(records);
+
+        CursorPage<T> page = new CursorPage<>();
+        page.setRecords(records);
+        page.setHasMore(more);
+        if (!records.isEmpty()) {
+            page.setBeforeCursor(more ? cursorOf.apply(records.get(0)) : null);
+            page.setAfterCursor(cursorOf.apply(records.get(records.size() - 1)));
+        }
+        return page;
+    }
+
+    /**
+     * 由“游标之后”查询结果构建；oldestFirst 为正序且多取一条用于判断是否还有更新记录
+     */
+    public static <T> CursorPage<T> after(List<T> oldestFirst, int limit, Function<T, String> cursorOf,
+                                          String requestCursor) {
+        boolean more = oldestFirst.size() > limit;
+        List<T> records = new ArrayList<>(more ? oldestFirst.subList(0, limit) : oldestFirst);
+
+        CursorPage<T> page = new CursorPage<>();
+        page.setRecords(records);
+        page.setHasMore(more);
+        // 游标本身之前一定还有记录
+        page.setBeforeCursor(records.isEmpty() ? requestCursor : cursorOf.apply(records.get(0)));
+        page.setAfterCursor(records.isEmpty() ? requestCursor : cursorOf.apply(records.get(records.size() - 1)));
+        return page;
+    }
+
+    /**
+     * 转换记录类型，游标不变
+     */
+    public <R> CursorPage<R> map(Function<List<T>, List<R>> converter) {
+        CursorPage<R> page = new CursorPage<>();
+        page.setRecords(converter.apply(records));
+        page.setBeforeCursor(beforeCursor);
+        page.setAfterCursor(afterCursor);
+        page.setHasMore(hasMore);
+        return page;
+    }
+}
@@ -0,0 +1,27 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("analytics_job_partition")
+public class AnalyticsJobPartition {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Long jobId;
+    private Integer partitionNo;
+    private Long rangeStart;
+    private Long rangeEnd;
+    private Long lastCommittedId;
+    private String partitionStatus; // PENDING,RUNNING,DONE,FAILED
+    private Integer recordsProcessed;
+    private Integer chunksCommitted;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private String errorMessage;
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
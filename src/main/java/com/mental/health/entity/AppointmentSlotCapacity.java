@@ -0,0 +1,28 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@Data
+@TableName("appointment_slot_capacity")
+public class AppointmentSlotCapacity {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    private Long doctorId;
+    private LocalDate slotDate;
+    private LocalTime slotStart;
+    private LocalTime slotEnd;
+    private Integer capacity;
+    private Integer booked;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
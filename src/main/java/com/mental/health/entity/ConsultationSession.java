@@ -27,6 +27,27 @@ public class ConsultationSession {
 
     private LocalDateTime endTime;
 
+    /**
+     * 会话摘要：只由发送消息/标记已读的专用 SQL 维护，updateById 不覆盖
+     */
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Long lastMessageId;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private String lastMessagePreview;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private String lastMessageType;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private LocalDateTime lastMessageTime;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer patientUnread;
+
+    @TableField(updateStrategy = FieldStrategy.NEVER)
+    private Integer doctorUnread;
+
     private LocalDateTime createTime;
 
     private LocalDateTime updateTime;
@@ -12,7 +12,7 @@ public class PatientDailyMetric {
     private Long id;
     private Long patientId;
     private LocalDateTime metricAt;
-    private String metricStatus; // CALCULATED,LOCKED,RECALCULATED
+    private String metricStatus; // CALCULATED,LOCKED,RECALCULATED,REALTIME
     private BigDecimal moodAvg;
     private BigDecimal sleepAvg;
     private BigDecimal stressAvg;
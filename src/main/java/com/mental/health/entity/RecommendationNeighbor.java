@@ -0,0 +1,13 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+@Data
+@TableName("recommendation_neighbor")
+public class RecommendationNeighbor {
+    private Long userId;
+    private Integer rankNo;
+    private Long neighborUserId;
+    private Float similarity;
+}
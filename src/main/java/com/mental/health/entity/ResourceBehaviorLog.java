@@ -0,0 +1,23 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("resource_behavior_log")
+public class ResourceBehaviorLog {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Long userId;
+    private Long resourceId;
+    private Integer viewCount;
+    private Integer likeCount;
+    private Integer downloadCount;
+    private Integer completeCount;
+    private Float explicitRating;
+    private LocalDateTime firstEventTime;
+    private LocalDateTime lastEventTime;
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+}
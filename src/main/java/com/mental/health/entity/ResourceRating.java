@@ -0,0 +1,22 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("resource_rating")
+public class ResourceRating {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Long userId;
+    private Long resourceId;
+    private Float rating;
+    private Float implicitScore;
+    private Float explicitRating;
+    private LocalDateTime lastEventTime;
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
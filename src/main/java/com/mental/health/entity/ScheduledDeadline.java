@@ -0,0 +1,26 @@
+package com.mental.health.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@TableName("scheduled_deadline")
+public class ScheduledDeadline {
+
+    @TableId(type = IdType.AUTO)
+    private Long id;
+
+    private String taskType;
+    private Long refId;
+    private LocalDateTime fireAt;
+    private String status; // PENDING,RUNNING,FAILED
+    private Integer attempts;
+    private String lastError;
+
+    @TableField(fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+
+    @TableField(fill = FieldFill.INSERT_UPDATE)
+    private LocalDateTime updateTime;
+}
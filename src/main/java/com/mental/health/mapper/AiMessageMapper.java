@@ -3,7 +3,31 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.AiMessage;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface AiMessageMapper extends BaseMapper<AiMessage> {
+
+    /**
+     * 游标之前（更早）的消息，按时间倒序；游标为空时取最新的消息。走 idx_ai_message_session
+     */
+    @Select("<script>SELECT * FROM ai_message WHERE session_id = #{sessionId} AND deleted = 0 " +
+            "<if test='cursorTime != null'>AND (create_time &lt; #{cursorTime} " +
+            "OR (create_time = #{cursorTime} AND id &lt; #{cursorId})) </if>" +
+            "ORDER BY create_time DESC, id DESC LIMIT #{limit}</script>")
+    List<AiMessage> selectBefore(@Param("sessionId") Long sessionId, @Param("cursorTime") LocalDateTime cursorTime,
+                                 @Param("cursorId") Long cursorId, @Param("limit") int limit);
+
+    /**
+     * 游标之后（更新）的消息，按时间正序
+     */
+    @Select("SELECT * FROM ai_message WHERE session_id = #{sessionId} AND deleted = 0 " +
+            "AND (create_time > #{cursorTime} OR (create_time = #{cursorTime} AND id > #{cursorId})) " +
+            "ORDER BY create_time ASC, id ASC LIMIT #{limit}")
+    List<AiMessage> selectAfter(@Param("sessionId") Long sessionId, @Param("cursorTime") LocalDateTime cursorTime,
+                                @Param("cursorId") Long cursorId, @Param("limit") int limit);
 }
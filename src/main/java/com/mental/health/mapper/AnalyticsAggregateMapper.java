@@ -0,0 +1,133 @@
+package com.mental.health.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分析聚合 Mapper — 集合化 GROUP BY 扫描
+ *
+ * 患者维度查询按患者ID闭区间 [fromId, toId] 分块，以流式游标返回（fetchSize=MIN_VALUE），每行一个患者；
+ * 医生维度查询结果集规模为医生数，直接返回列表。
+ */
+@Mapper
+public interface AnalyticsAggregateMapper {
+
+    String ACTIVE_PATIENT_JOIN = "JOIN user u ON u.id = t.pid AND u.role = 'PATIENT' AND u.status = 1 AND u.deleted = 0 ";
+
+    // ===== 患者日指标 =====
+
+    @Select("SELECT t.pid AS patientId, t.diaryCount, t.moodAvg, t.sleepAvg, t.stressAvg, t.energyAvg FROM (" +
+            "SELECT user_id AS pid, COUNT(*) AS diaryCount, " +
+            "COALESCE(AVG(mood_score), 0) AS moodAvg, COALESCE(AVG(sleep_quality), 0) AS sleepAvg, " +
+            "COALESCE(AVG(stress_level), 0) AS stressAvg, COALESCE(AVG(energy_level), 0) AS energyAvg " +
+            "FROM mood_diary WHERE deleted = 0 AND user_id BETWEEN #{fromId} AND #{toId} AND create_time BETWEEN #{start} AND #{end} GROUP BY user_id) t " +
+            ACTIVE_PATIENT_JOIN)
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamDiaryStats(@Param("fromId") long fromId, @Param("toId") long toId,
+                          @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                          ResultHandler<Map<String, Object>> handler);
+
+    @Select("SELECT t.pid AS patientId, t.cnt FROM (" +
+            "SELECT user_id AS pid, COUNT(*) AS cnt FROM risk_event " +
+            "WHERE deleted = 0 AND user_id BETWEEN #{fromId} AND #{toId} AND detected_at BETWEEN #{start} AND #{end} GROUP BY user_id) t " +
+            ACTIVE_PATIENT_JOIN)
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamRiskEventCounts(@Param("fromId") long fromId, @Param("toId") long toId,
+                               @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                               ResultHandler<Map<String, Object>> handler);
+
+    @Select("SELECT t.pid AS patientId, t.cnt FROM (" +
+            "SELECT patient_id AS pid, COUNT(*) AS cnt FROM appointment " +
+            "WHERE deleted = 0 AND patient_id BETWEEN #{fromId} AND #{toId} AND attendance_status = 'NO_SHOW' AND appointment_time BETWEEN #{start} AND #{end} " +
+            "GROUP BY patient_id) t " +
+            ACTIVE_PATIENT_JOIN)
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamNoShowCounts(@Param("fromId") long fromId, @Param("toId") long toId,
+                            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                            ResultHandler<Map<String, Object>> handler);
+
+    @Select("SELECT t.pid AS patientId, t.minutes FROM (" +
+            "SELECT user_id AS pid, SUM(FLOOR(COALESCE(actual_seconds, 0) / 60)) AS minutes FROM meditation_session " +
+            "WHERE deleted = 0 AND user_id BETWEEN #{fromId} AND #{toId} AND session_status = 'COMPLETED' AND started_at BETWEEN #{start} AND #{end} " +
+            "GROUP BY user_id) t " +
+            ACTIVE_PATIENT_JOIN)
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamMeditationMinutes(@Param("fromId") long fromId, @Param("toId") long toId,
+                                 @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                 ResultHandler<Map<String, Object>> handler);
+
+    @Select("SELECT t.pid AS patientId, t.total, t.completed FROM (" +
+            "SELECT patient_id AS pid, COUNT(*) AS total, SUM(task_status = 'COMPLETED') AS completed " +
+            "FROM intervention_task WHERE deleted = 0 AND patient_id BETWEEN #{fromId} AND #{toId} AND due_at BETWEEN #{start} AND #{end} GROUP BY patient_id) t " +
+            ACTIVE_PATIENT_JOIN)
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamTaskStats(@Param("fromId") long fromId, @Param("toId") long toId,
+                         @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                         ResultHandler<Map<String, Object>> handler);
+
+    /**
+     * 水位线之后有数据变更（含逻辑删除）的患者ID集合
+     */
+    @Select("SELECT user_id AS patientId FROM mood_diary WHERE user_id BETWEEN #{fromId} AND #{toId} AND create_time BETWEEN #{start} AND #{end} AND update_time >= #{watermark} " +
+            "UNION SELECT user_id FROM risk_event WHERE user_id BETWEEN #{fromId} AND #{toId} AND detected_at BETWEEN #{start} AND #{end} AND update_time >= #{watermark} " +
+            "UNION SELECT patient_id FROM appointment WHERE patient_id BETWEEN #{fromId} AND #{toId} AND appointment_time BETWEEN #{start} AND #{end} AND update_time >= #{watermark} " +
+            "UNION SELECT user_id FROM meditation_session WHERE user_id BETWEEN #{fromId} AND #{toId} AND started_at BETWEEN #{start} AND #{end} AND update_time >= #{watermark} " +
+            "UNION SELECT patient_id FROM intervention_task WHERE patient_id BETWEEN #{fromId} AND #{toId} AND due_at BETWEEN #{start} AND #{end} AND update_time >= #{watermark}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Long.class)
+    void streamChangedPatientIds(@Param("fromId") long fromId, @Param("toId") long toId,
+                                 @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                 @Param("watermark") LocalDateTime watermark, ResultHandler<Long> handler);
+
+    /**
+     * 患者ID上下界，用于划分批处理分区
+     */
+    @Select("SELECT MIN(id) AS minId, MAX(id) AS maxId FROM user WHERE role = 'PATIENT' AND deleted = 0")
+    Map<String, Object> findPatientIdBounds();
+
+    // ===== 医生工作负载 =====
+
+    @Select("SELECT id FROM user WHERE role = 'DOCTOR' AND status = 1 AND deleted = 0")
+    List<Long> findActiveDoctorIds();
+
+    @Select("SELECT doctor_id AS doctorId, COUNT(*) AS scheduled, SUM(status = 2) AS completed, " +
+            "SUM(attendance_status = 'NO_SHOW') AS noShow FROM appointment " +
+            "WHERE deleted = 0 AND appointment_time BETWEEN #{start} AND #{end} GROUP BY doctor_id")
+    List<Map<String, Object>> appointmentStatsByDoctor(@Param("start") LocalDateTime start,
+                                                       @Param("end") LocalDateTime end);
+
+    @Select("SELECT owner_doctor_id AS doctorId, COUNT(*) AS openCount, SUM(sla_deadline <= #{now}) AS overdueCount " +
+            "FROM crisis_case WHERE deleted = 0 AND owner_doctor_id IS NOT NULL " +
+            "AND case_status NOT IN ('RESOLVED', 'POST_REVIEW') GROUP BY owner_doctor_id")
+    List<Map<String, Object>> openCrisisByDoctor(@Param("now") LocalDateTime now);
+
+    @Select("SELECT doctor_id AS doctorId, COUNT(*) AS cnt FROM treatment_plan " +
+            "WHERE deleted = 0 AND plan_status = 'ACTIVE' GROUP BY doctor_id")
+    List<Map<String, Object>> activePlansByDoctor();
+
+    @Select("SELECT to_doctor_id AS doctorId, COUNT(*) AS cnt FROM referral_case " +
+            "WHERE deleted = 0 AND referral_status IN ('INITIATED', 'ACCEPTED', 'HANDOFF_READY') GROUP BY to_doctor_id")
+    List<Map<String, Object>> activeReferralsByDoctor();
+
+    @Select("SELECT reviewer_id AS doctorId, COUNT(*) AS cnt FROM treatment_plan_review " +
+            "WHERE deleted = 0 AND review_status = 'PENDING' GROUP BY reviewer_id")
+    List<Map<String, Object>> pendingReviewsByDoctor();
+
+    @Select("SELECT assigned_doctor_id AS doctorId, COUNT(*) AS cnt FROM ai_handoff_task " +
+            "WHERE deleted = 0 AND task_status IN ('OPEN', 'ACKNOWLEDGED') GROUP BY assigned_doctor_id")
+    List<Map<String, Object>> pendingHandoffsByDoctor();
+
+    @Select("SELECT doctor_id AS doctorId, COUNT(*) AS cnt FROM appointment_waitlist " +
+            "WHERE deleted = 0 AND status = 'WAITING' GROUP BY doctor_id")
+    List<Map<String, Object>> waitingByDoctor();
+}
@@ -3,7 +3,19 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.AnalyticsJobLog;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
 
 @Mapper
 public interface AnalyticsJobLogMapper extends BaseMapper<AnalyticsJobLog> {
+
+    /**
+     * 某统计日期上一次成功作业的开始时间，作为增量重算水位线
+     */
+    @Select("SELECT MAX(started_at) FROM analytics_job_log WHERE job_scope_code = #{scopeCode} " +
+            "AND target_date = #{targetDate} AND job_status = 'SUCCESS' AND deleted = 0")
+    LocalDateTime findWatermark(@Param("scopeCode") String scopeCode,
+                                @Param("targetDate") LocalDateTime targetDate);
 }
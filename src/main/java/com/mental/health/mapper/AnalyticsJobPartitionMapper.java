@@ -0,0 +1,45 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.AnalyticsJobPartition;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface AnalyticsJobPartitionMapper extends BaseMapper<AnalyticsJobPartition> {
+
+    @Select("SELECT * FROM analytics_job_partition WHERE job_id = #{jobId} ORDER BY partition_no")
+    List<AnalyticsJobPartition> findByJobId(@Param("jobId") Long jobId);
+
+    /**
+     * 推进检查点，与块数据写入在同一事务内提交
+     */
+    @Update("UPDATE analytics_job_partition SET last_committed_id = #{committedId}, " +
+            "records_processed = records_processed + #{records}, chunks_committed = chunks_committed + 1, " +
+            "update_time = NOW() WHERE id = #{id}")
+    int advanceCheckpoint(@Param("id") Long id, @Param("committedId") long committedId, @Param("records") int records);
+
+    @Update("UPDATE analytics_job_partition SET partition_status = 'RUNNING', started_at = #{now}, " +
+            "finished_at = NULL, error_message = NULL, update_time = NOW() WHERE id = #{id}")
+    int markRunning(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Update("UPDATE analytics_job_partition SET partition_status = #{status}, finished_at = #{now}, " +
+            "error_message = #{error}, update_time = NOW() WHERE id = #{id}")
+    int markFinished(@Param("id") Long id, @Param("status") String status,
+                     @Param("now") LocalDateTime now, @Param("error") String error);
+
+    /**
+     * 中断的作业：仍为 RUNNING 且所有分区在 staleBefore 之后都没有推进
+     */
+    @Select("SELECT DISTINCT j.id FROM analytics_job_log j JOIN analytics_job_partition p ON p.job_id = j.id " +
+            "WHERE j.deleted = 0 AND j.job_status = 'RUNNING' AND j.job_scope_code = 'PATIENT_DAILY' " +
+            "AND j.started_at >= #{since} AND NOT EXISTS (SELECT 1 FROM analytics_job_partition q " +
+            "WHERE q.job_id = j.id AND q.update_time > #{staleBefore})")
+    List<Long> findInterruptedJobIds(@Param("since") LocalDateTime since,
+                                     @Param("staleBefore") LocalDateTime staleBefore);
+}
@@ -3,10 +3,24 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.Appointment;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 预约Mapper接口
  */
 @Mapper
 public interface AppointmentMapper extends BaseMapper<Appointment> {
+
+    /**
+     * 医生在时间窗内占用号源的预约时间（待确认 + 已确认）
+     */
+    @Select("SELECT appointment_time FROM appointment WHERE doctor_id = #{doctorId} " +
+            "AND appointment_time >= #{from} AND appointment_time < #{to} AND status IN (0, 1) AND deleted = 0")
+    List<LocalDateTime> selectBookedTimes(@Param("doctorId") Long doctorId,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to);
 }
@@ -0,0 +1,75 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.AppointmentSlotCapacity;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+@Mapper
+public interface AppointmentSlotCapacityMapper extends BaseMapper<AppointmentSlotCapacity> {
+
+    /**
+     * 条件占位：未满时 booked + 1，返回 0 表示已满或行不存在
+     */
+    @Update("UPDATE appointment_slot_capacity SET booked = booked + 1, capacity = #{capacity} " +
+            "WHERE doctor_id = #{doctorId} AND slot_date = #{slotDate} AND slot_start = #{slotStart} " +
+            "AND booked < #{capacity}")
+    int acquire(@Param("doctorId") Long doctorId,
+                @Param("slotDate") LocalDate slotDate,
+                @Param("slotStart") LocalTime slotStart,
+                @Param("capacity") int capacity);
+
+    /**
+     * 首次占位前补建计数行：已占用 = 有效预约 + 候补锁位；行已存在时不插入
+     * 须在读已提交的独立事务中执行，SELECT 部分才是不加锁的一致性读
+     */
+    @Insert("INSERT IGNORE INTO appointment_slot_capacity " +
+            "(doctor_id, slot_date, slot_start, slot_end, capacity, booked, create_time, update_time) " +
+            "SELECT #{doctorId}, #{slotDate}, #{slotStart}, #{slotEnd}, #{capacity}, " +
+            "(SELECT COUNT(*) FROM appointment WHERE doctor_id = #{doctorId} " +
+            "AND appointment_time >= TIMESTAMP(#{slotDate}, #{slotStart}) " +
+            "AND appointment_time < TIMESTAMP(#{slotDate}, #{slotEnd}) " +
+            "AND status IN (0, 1) AND deleted = 0) + " +
+            "(SELECT COUNT(*) FROM appointment_slot_hold WHERE doctor_id = #{doctorId} " +
+            "AND slot_date = #{slotDate} AND slot_start = #{slotStart} AND hold_status = 'HELD' " +
+            "AND hold_source = 'WAITLIST_OFFER' AND deleted = 0), NOW(), NOW()")
+    int seed(@Param("doctorId") Long doctorId,
+             @Param("slotDate") LocalDate slotDate,
+             @Param("slotStart") LocalTime slotStart,
+             @Param("slotEnd") LocalTime slotEnd,
+             @Param("capacity") int capacity);
+
+    /**
+     * 归还一个名额：按存储的时段边界定位，排班调整后仍能找到原时段
+     */
+    @Update("UPDATE appointment_slot_capacity SET booked = booked - 1 " +
+            "WHERE doctor_id = #{doctorId} AND slot_date = #{slotDate} " +
+            "AND slot_start <= #{time} AND slot_end > #{time} AND booked > 0 " +
+            "ORDER BY slot_start DESC LIMIT 1")
+    int release(@Param("doctorId") Long doctorId,
+                @Param("slotDate") LocalDate slotDate,
+                @Param("time") LocalTime time);
+
+    /**
+     * 按实际预约与锁位重算今天及以后的计数
+     */
+    @Update("UPDATE appointment_slot_capacity c SET c.booked = " +
+            "(SELECT COUNT(*) FROM appointment a WHERE a.doctor_id = c.doctor_id " +
+            "AND a.appointment_time >= TIMESTAMP(c.slot_date, c.slot_start) " +
+            "AND a.appointment_time < TIMESTAMP(c.slot_date, c.slot_end) " +
+            "AND a.status IN (0, 1) AND a.deleted = 0) + " +
+            "(SELECT COUNT(*) FROM appointment_slot_hold h WHERE h.doctor_id = c.doctor_id " +
+            "AND h.slot_date = c.slot_date AND h.slot_start = c.slot_start AND h.hold_status = 'HELD' " +
+            "AND h.hold_source = 'WAITLIST_OFFER' AND h.deleted = 0) " +
+            "WHERE c.slot_date >= CURDATE()")
+    int reconcile();
+
+    @Delete("DELETE FROM appointment_slot_capacity WHERE slot_date < #{before}")
+    int deleteBefore(@Param("before") LocalDate before);
+}
@@ -2,12 +2,17 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.AppointmentSlotHold;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -23,4 +28,48 @@ public interface AppointmentSlotHoldMapper extends BaseMapper<AppointmentSlotHol
     @Select("SELECT * FROM appointment_slot_hold WHERE hold_status = 'HELD' " +
             "AND expire_at <= NOW() AND deleted = 0")
     List<AppointmentSlotHold> findExpiredHolds();
+
+    /**
+     * 医生在若干日期上的有效锁位（批量候补匹配时一次查出）
+     */
+    @Select("<script>SELECT * FROM appointment_slot_hold WHERE doctor_id = #{doctorId} " +
+            "AND slot_date IN <foreach collection='dates' item='d' open='(' separator=',' close=')'>#{d}</foreach> " +
+            "AND hold_status = 'HELD' AND deleted = 0</script>")
+    List<AppointmentSlotHold> findActiveHolds(@Param("doctorId") Long doctorId,
+                                              @Param("dates") Collection<LocalDate> dates);
+
+    /**
+     * 医生日期区间内占用号源的有效锁位起始时间（可用性日历与号源计数口径一致）
+     */
+    @Select("SELECT TIMESTAMP(slot_date, slot_start) FROM appointment_slot_hold WHERE doctor_id = #{doctorId} " +
+            "AND slot_date BETWEEN #{from} AND #{to} AND hold_status = 'HELD' " +
+            "AND hold_source = 'WAITLIST_OFFER' AND deleted = 0")
+    List<LocalDateTime> selectHeldTimes(@Param("doctorId") Long doctorId,
+                                        @Param("from") LocalDate from,
+                                        @Param("to") LocalDate to);
+
+    /**
+     * 结束锁位（释放/过期）；只改仍为 HELD 的行，返回 0 表示已被其他路径处理，不能再归还名额
+     */
+    @Update("UPDATE appointment_slot_hold SET hold_status = #{status}, update_time = NOW() " +
+            "WHERE id = #{id} AND hold_status = 'HELD' AND deleted = 0")
+    int finishHeld(@Param("id") Long id, @Param("status") String status);
+
+    /**
+     * 锁位转正为预约；只改仍为 HELD 的行
+     */
+    @Update("UPDATE appointment_slot_hold SET hold_status = 'CONVERTED', converted_at = #{convertedAt}, " +
+            "resulting_appointment_id = #{appointmentId}, update_time = NOW() " +
+            "WHERE id = #{id} AND hold_status = 'HELD' AND deleted = 0")
+    int convertHeld(@Param("id") Long id, @Param("appointmentId") Long appointmentId,
+                    @Param("convertedAt") LocalDateTime convertedAt);
+
+    @Insert("<script>INSERT INTO appointment_slot_hold (doctor_id, patient_id, slot_date, slot_start, slot_end, " +
+            "hold_status, hold_source, source_id, held_at, expire_at, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='h' separator=','>" +
+            "(#{h.doctorId}, #{h.patientId}, #{h.slotDate}, #{h.slotStart}, #{h.slotEnd}, #{h.holdStatus}, " +
+            "#{h.holdSource}, #{h.sourceId}, #{h.heldAt}, #{h.expireAt}, #{h.heldAt}, #{h.heldAt})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertBatch(@Param("rows") List<AppointmentSlotHold> rows);
 }
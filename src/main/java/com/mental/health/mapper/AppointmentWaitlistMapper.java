@@ -3,9 +3,12 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.AppointmentWaitlist;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -16,4 +19,18 @@ public interface AppointmentWaitlistMapper extends BaseMapper<AppointmentWaitlis
 
     @Select("SELECT * FROM appointment_waitlist WHERE patient_id = #{patientId} AND status IN ('WAITING', 'NOTIFIED') AND deleted = 0 ORDER BY preferred_date ASC")
     List<AppointmentWaitlist> findActiveByPatient(Long patientId);
+
+    /**
+     * 锁定仍处于 WAITING 的候补，返回其ID（批量匹配前校验内存队列是否过期）
+     */
+    @Select("<script>SELECT id FROM appointment_waitlist WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND status = 'WAITING' AND deleted = 0 FOR UPDATE</script>")
+    List<Long> lockWaiting(@Param("ids") Collection<Long> ids);
+
+    @Update("<script>UPDATE appointment_waitlist SET status = 'NOTIFIED', notified_at = NOW(), " +
+            "version = version + 1, update_time = NOW() WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND status = 'WAITING' AND deleted = 0</script>")
+    int markNotified(@Param("ids") Collection<Long> ids);
 }
@@ -3,10 +3,56 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.ConsultationSession;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 在线咨询会话Mapper
  */
 @Mapper
 public interface ConsultationSessionMapper extends BaseMapper<ConsultationSession> {
+
+    /**
+     * 新消息计入接收方未读数并刷新会话时间；同时取得会话行锁，与标记已读串行
+     */
+    @Update("UPDATE consultation_session SET " +
+            "patient_unread = patient_unread + IF(patient_id = #{receiverId}, 1, 0), " +
+            "doctor_unread = doctor_unread + IF(doctor_id = #{receiverId}, 1, 0), " +
+            "update_time = #{time} WHERE id = #{sessionId}")
+    int incrementUnread(@Param("sessionId") Long sessionId, @Param("receiverId") Long receiverId,
+                        @Param("time") LocalDateTime time);
+
+    /**
+     * 记录最后一条消息摘要；只前进不后退（last_message_id 最后赋值，前面各列比较的是旧值）
+     */
+    @Update("UPDATE consultation_session SET " +
+            "last_message_preview = IF(last_message_id IS NULL OR last_message_id < #{messageId}, #{preview}, last_message_preview), " +
+            "last_message_type = IF(last_message_id IS NULL OR last_message_id < #{messageId}, #{type}, last_message_type), " +
+            "last_message_time = IF(last_message_id IS NULL OR last_message_id < #{messageId}, #{time}, last_message_time), " +
+            "last_message_id = IF(last_message_id IS NULL OR last_message_id < #{messageId}, #{messageId}, last_message_id) " +
+            "WHERE id = #{sessionId}")
+    int updateLastMessage(@Param("sessionId") Long sessionId, @Param("messageId") Long messageId,
+                          @Param("preview") String preview, @Param("type") String type,
+                          @Param("time") LocalDateTime time);
+
+    /**
+     * 清零某参与方的未读数；保留 update_time，已读不应把会话顶到收件箱最前
+     */
+    @Update("UPDATE consultation_session SET " +
+            "patient_unread = IF(patient_id = #{userId}, 0, patient_unread), " +
+            "doctor_unread = IF(doctor_id = #{userId}, 0, doctor_unread), " +
+            "update_time = update_time " +
+            "WHERE id = #{sessionId}")
+    int resetUnread(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
+
+    /**
+     * 用户的会话联系人（患者的医生 / 医生的患者）
+     */
+    @Select("SELECT doctor_id FROM consultation_session WHERE patient_id = #{userId} AND deleted = 0 " +
+            "UNION SELECT patient_id FROM consultation_session WHERE doctor_id = #{userId} AND deleted = 0")
+    List<Long> selectContactIds(@Param("userId") Long userId);
 }
@@ -2,8 +2,34 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.DoctorWorkloadSnapshot;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface DoctorWorkloadSnapshotMapper extends BaseMapper<DoctorWorkloadSnapshot> {
+
+    /**
+     * 批量写入负载快照，依赖 uk_doctor_workload(doctor_id, snapshot_at) 做 upsert
+     */
+    @Insert("<script>INSERT INTO doctor_workload_snapshot (doctor_id, snapshot_at, snapshot_status, scheduled_appointments, " +
+            "completed_appointments, no_show_count, crisis_open_count, crisis_overdue_count, active_plans, " +
+            "active_referrals, pending_reviews, pending_handoff_tasks, waitlist_pending_count, version, deleted, " +
+            "create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='s' separator=','>" +
+            "(#{s.doctorId}, #{s.snapshotAt}, 'CALCULATED', #{s.scheduledAppointments}, #{s.completedAppointments}, " +
+            "#{s.noShowCount}, #{s.crisisOpenCount}, #{s.crisisOverdueCount}, #{s.activePlans}, #{s.activeReferrals}, " +
+            "#{s.pendingReviews}, #{s.pendingHandoffTasks}, #{s.waitlistPendingCount}, 0, 0, NOW(), NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE snapshot_status = 'RECALCULATED', " +
+            "scheduled_appointments = VALUES(scheduled_appointments), completed_appointments = VALUES(completed_appointments), " +
+            "no_show_count = VALUES(no_show_count), crisis_open_count = VALUES(crisis_open_count), " +
+            "crisis_overdue_count = VALUES(crisis_overdue_count), active_plans = VALUES(active_plans), " +
+            "active_referrals = VALUES(active_referrals), pending_reviews = VALUES(pending_reviews), " +
+            "pending_handoff_tasks = VALUES(pending_handoff_tasks), waitlist_pending_count = VALUES(waitlist_pending_count), " +
+            "version = version + 1, deleted = 0, update_time = NOW()" +
+            "</script>")
+    int upsertBatch(@Param("rows") List<DoctorWorkloadSnapshot> rows);
 }
@@ -3,10 +3,21 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.MentalResource;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 
 /**
  * 心理资源Mapper接口
  */
 @Mapper
 public interface MentalResourceMapper extends BaseMapper<MentalResource> {
+
+    /**
+     * 按合并后的增量更新计数器（每个资源每个刷新窗口一次）
+     */
+    @Update("UPDATE mental_resource SET view_count = COALESCE(view_count, 0) + #{views}, " +
+            "like_count = COALESCE(like_count, 0) + #{likes}, " +
+            "download_count = COALESCE(download_count, 0) + #{downloads} WHERE id = #{id}")
+    int applyCounterDelta(@Param("id") Long id, @Param("views") int views,
+                          @Param("likes") int likes, @Param("downloads") int downloads);
 }
@@ -3,8 +3,12 @@ package com.mental.health.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.MoodDiary;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -56,4 +60,28 @@ public interface MoodDiaryMapper extends BaseMapper<MoodDiary> {
             "WHERE user_id = #{userId} AND deleted = 0 AND create_time >= DATE_SUB(NOW(), INTERVAL ${days} DAY) " +
             "ORDER BY create_time")
     List<Map<String, Object>> getDiaryDataPoints(@Param("userId") Long userId, @Param("days") int days);
+
+    /**
+     * 单个用户按天的心情/睡眠/压力计数与和（趋势窗口加载用）
+     */
+    @Select("SELECT DATE(create_time) AS day, " +
+            "COUNT(mood_score) AS moodCount, COALESCE(SUM(mood_score), 0) AS moodSum, " +
+            "COUNT(sleep_quality) AS sleepCount, COALESCE(SUM(sleep_quality), 0) AS sleepSum, " +
+            "COUNT(stress_level) AS stressCount, COALESCE(SUM(stress_level), 0) AS stressSum " +
+            "FROM mood_diary WHERE user_id = #{userId} AND deleted = 0 AND create_time >= #{since} " +
+            "GROUP BY DATE(create_time)")
+    List<Map<String, Object>> dailyTrendStats(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+
+    /**
+     * 所有近期写过日记的用户按天的计数与和，按用户ID排序流式返回（趋势窗口预热用）
+     */
+    @Select("SELECT user_id AS userId, DATE(create_time) AS day, " +
+            "COUNT(mood_score) AS moodCount, COALESCE(SUM(mood_score), 0) AS moodSum, " +
+            "COUNT(sleep_quality) AS sleepCount, COALESCE(SUM(sleep_quality), 0) AS sleepSum, " +
+            "COUNT(stress_level) AS stressCount, COALESCE(SUM(stress_level), 0) AS stressSum " +
+            "FROM mood_diary WHERE deleted = 0 AND create_time >= #{since} " +
+            "GROUP BY user_id, DATE(create_time) ORDER BY user_id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamDailyTrendStats(@Param("since") LocalDateTime since, ResultHandler<Map<String, Object>> handler);
 }
@@ -2,8 +2,22 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.NotificationDelivery;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface NotificationDeliveryMapper extends BaseMapper<NotificationDelivery> {
+
+    @Insert("<script>INSERT INTO notification_delivery (notification_id, user_id, channel_code, delivery_status, " +
+            "sent_at, delivered_at, failed_at, failure_reason, retry_count, coalesced_key, coalesced_count, escalated_flag) " +
+            "VALUES " +
+            "<foreach collection='rows' item='d' separator=','>" +
+            "(#{d.notificationId}, #{d.userId}, #{d.channelCode}, #{d.deliveryStatus}, #{d.sentAt}, " +
+            "#{d.deliveredAt}, #{d.failedAt}, #{d.failureReason}, #{d.retryCount}, #{d.coalescedKey}, #{d.coalescedCount}, " +
+            "#{d.escalatedFlag})" +
+            "</foreach></script>")
+    int insertBatch(@Param("rows") List<NotificationDelivery> rows);
 }
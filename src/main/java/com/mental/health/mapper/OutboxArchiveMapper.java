@@ -0,0 +1,47 @@
+package com.mental.health.mapper;
+
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Outbox 归档 Mapper：热表 -> outbox_event_archive 批量迁移与分区维护
+ */
+@Mapper
+public interface OutboxArchiveMapper {
+
+    @Select("SELECT id FROM outbox_event WHERE status = #{status} AND update_time < #{before} " +
+            "ORDER BY update_time LIMIT #{limit}")
+    List<Long> findArchivableIds(@Param("status") String status, @Param("before") LocalDateTime before,
+                                 @Param("limit") int limit);
+
+    @Insert("<script>INSERT IGNORE INTO outbox_event_archive (id, aggregate_type, aggregate_id, event_type, event_key, " +
+            "payload, headers, status, retry_count, last_error, created_by, create_time, update_time, archived_at) " +
+            "SELECT id, aggregate_type, aggregate_id, event_type, event_key, payload, headers, status, retry_count, " +
+            "last_error, created_by, COALESCE(create_time, update_time, NOW()), update_time, NOW() FROM outbox_event " +
+            "WHERE status IN ('SENT', 'DEAD') AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int copyToArchive(@Param("ids") List<Long> ids);
+
+    @Delete("<script>DELETE FROM outbox_event WHERE status IN ('SENT', 'DEAD') AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int deleteArchived(@Param("ids") List<Long> ids);
+
+    // ===== 分区维护 =====
+
+    @Select("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'outbox_event_archive' AND PARTITION_NAME IS NOT NULL " +
+            "ORDER BY PARTITION_ORDINAL_POSITION")
+    List<String> listPartitions();
+
+    /**
+     * 从 pmax 拆出新的月分区；参数由服务端按 pYYYYMM / yyyy-MM-dd 生成，不接受外部输入
+     */
+    @Update("ALTER TABLE outbox_event_archive REORGANIZE PARTITION pmax INTO (" +
+            "PARTITION ${name} VALUES LESS THAN ('${lessThan}'), PARTITION pmax VALUES LESS THAN (MAXVALUE))")
+    void addPartition(@Param("name") String name, @Param("lessThan") String lessThan);
+
+    @Update("ALTER TABLE outbox_event_archive DROP PARTITION ${name}")
+    void dropPartition(@Param("name") String name);
+}
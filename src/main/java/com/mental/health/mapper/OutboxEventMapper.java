@@ -2,7 +2,9 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.OutboxEvent;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
@@ -13,17 +15,77 @@ import java.util.List;
 @Mapper
 public interface OutboxEventMapper extends BaseMapper<OutboxEvent> {
 
-    @Select("SELECT COUNT(1) FROM outbox_event WHERE event_key = #{eventKey}")
-    boolean existsByEventKey(@Param("eventKey") String eventKey);
+    String INSERT_COLUMNS = "INSERT INTO outbox_event (aggregate_type, aggregate_id, event_type, event_key, " +
+            "payload, headers, status, retry_count, max_retry_count, next_retry_time, created_by, create_time, update_time) VALUES ";
 
-    @Select("SELECT * FROM outbox_event " +
-            "WHERE status IN ('PENDING', 'FAILED') AND next_retry_time <= #{now} " +
-            "ORDER BY next_retry_time ASC LIMIT #{batchSize} FOR UPDATE SKIP LOCKED")
-    List<OutboxEvent> lockNextBatch(@Param("batchSize") int batchSize,
-                                   @Param("now") LocalDateTime now);
+    /**
+     * 只吞掉重复键；INSERT IGNORE 会把截断、非空等错误也降级为警告
+     */
+    String ON_DUPLICATE_KEY = " ON DUPLICATE KEY UPDATE id = id";
 
-    @Update("UPDATE outbox_event SET status = 'SENT', update_time = NOW() WHERE id = #{id}")
-    int markSent(@Param("id") Long id);
+    /**
+     * 依赖 uk_outbox_event_key 的幂等写入；重复键时不回填 id
+     */
+    @Insert(INSERT_COLUMNS +
+            "(#{aggregateType}, #{aggregateId}, #{eventType}, #{eventKey}, #{payload}, #{headers}, #{status}, " +
+            "#{retryCount}, #{maxRetryCount}, #{nextRetryTime}, #{createdBy}, NOW(), NOW())" + ON_DUPLICATE_KEY)
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertIgnore(OutboxEvent event);
+
+    /**
+     * 多行幂等写入。驱动默认按匹配行计数，重复键也计入返回值，各行回填的 id 不可靠
+     */
+    @Insert("<script>" + INSERT_COLUMNS +
+            "<foreach collection='events' item='e' separator=','>" +
+            "(#{e.aggregateType}, #{e.aggregateId}, #{e.eventType}, #{e.eventKey}, #{e.payload}, #{e.headers}, #{e.status}, " +
+            "#{e.retryCount}, #{e.maxRetryCount}, #{e.nextRetryTime}, #{e.createdBy}, NOW(), NOW())" +
+            "</foreach>" + ON_DUPLICATE_KEY + "</script>")
+    @Options(useGeneratedKeys = true, keyProperty = "events.id", keyColumn = "id")
+    int insertIgnoreBatch(@Param("events") List<OutboxEvent> events);
+
+    /**
+     * 只在 (status, next_retry_time) 索引上锁定到期事件的ID（二级索引隐含主键，无需回表），
+     * 整行随后按ID读取
+     */
+    @Select("SELECT id FROM outbox_event " +
+            "WHERE status IN ('PENDING', 'FAILED', 'PROCESSING') AND next_retry_time <= #{now} " +
+            "ORDER BY next_retry_time ASC, id ASC LIMIT #{batchSize} FOR UPDATE SKIP LOCKED")
+    List<Long> lockDueIds(@Param("batchSize") int batchSize, @Param("now") LocalDateTime now);
+
+    @Select("<script>SELECT * FROM outbox_event WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "ORDER BY next_retry_time ASC, id ASC</script>")
+    List<OutboxEvent> selectByIdsOrdered(@Param("ids") List<Long> ids);
+
+    /**
+     * 死信重放：置回 PENDING 并清零重试次数，next_retry_time 控制何时被领取
+     */
+    @Update("<script>UPDATE outbox_event SET status = 'PENDING', retry_count = 0, last_error = NULL, " +
+            "next_retry_time = #{at}, update_time = NOW() WHERE status = 'DEAD' AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int requeueDead(@Param("ids") List<Long> ids, @Param("at") LocalDateTime at);
+
+    /**
+     * 按ID锁定刚提交的事件（提交后唤醒的快速路径），已被其他投递者领取的跳过
+     */
+    @Select("<script>SELECT * FROM outbox_event WHERE status = 'PENDING' AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "ORDER BY id FOR UPDATE SKIP LOCKED</script>")
+    List<OutboxEvent> lockByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 领取事件：置为 PROCESSING，next_retry_time 作为租约到期时间。
+     * 重新领取租约已到期的 PROCESSING 事件计一次重试（retry_count 须在 status 之前赋值）
+     */
+    @Update("<script>UPDATE outbox_event SET retry_count = retry_count + IF(status = 'PROCESSING', 1, 0), " +
+            "status = 'PROCESSING', next_retry_time = #{leaseUntil}, update_time = NOW() WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int claimBatch(@Param("ids") List<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Update("<script>UPDATE outbox_event SET status = 'SENT', update_time = NOW() " +
+            "WHERE status = 'PROCESSING' AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int markSentBatch(@Param("ids") List<Long> ids);
 
     @Update("UPDATE outbox_event SET status = 'FAILED', retry_count = retry_count + 1, " +
             "next_retry_time = #{nextRetryTime}, last_error = #{error}, update_time = NOW() " +
@@ -2,8 +2,68 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.PatientDailyMetric;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface PatientDailyMetricMapper extends BaseMapper<PatientDailyMetric> {
+
+    /**
+     * 批量写入日指标，依赖 uk_patient_daily_metric(patient_id, metric_at) 做 upsert
+     */
+    @Insert("<script>INSERT INTO patient_daily_metric (patient_id, metric_at, metric_status, mood_avg, sleep_avg, stress_avg, " +
+            "energy_avg, diary_count, task_completion_rate, meditation_minutes, risk_event_count, no_show_count, " +
+            "source_window_start, source_window_end, version, deleted, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='m' separator=','>" +
+            "(#{m.patientId}, #{m.metricAt}, 'CALCULATED', #{m.moodAvg}, #{m.sleepAvg}, #{m.stressAvg}, " +
+            "#{m.energyAvg}, #{m.diaryCount}, #{m.taskCompletionRate}, #{m.meditationMinutes}, #{m.riskEventCount}, " +
+            "#{m.noShowCount}, #{m.sourceWindowStart}, #{m.sourceWindowEnd}, 0, 0, NOW(), NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE metric_status = 'RECALCULATED', mood_avg = VALUES(mood_avg), " +
+            "sleep_avg = VALUES(sleep_avg), stress_avg = VALUES(stress_avg), energy_avg = VALUES(energy_avg), " +
+            "diary_count = VALUES(diary_count), task_completion_rate = VALUES(task_completion_rate), " +
+            "meditation_minutes = VALUES(meditation_minutes), risk_event_count = VALUES(risk_event_count), " +
+            "no_show_count = VALUES(no_show_count), source_window_start = VALUES(source_window_start), " +
+            "source_window_end = VALUES(source_window_end), version = version + 1, deleted = 0, update_time = NOW()" +
+            "</script>")
+    int upsertBatch(@Param("rows") List<PatientDailyMetric> rows);
+
+    /**
+     * 实时指标 checkpoint：每行是上次 checkpoint 以来的增量（均值为增量内的均值，计数为增量计数）。
+     * 新行以 REALTIME 写入；已存在的行仅在仍为 REALTIME 时按日记数加权合并均值、累加计数，
+     * 不会覆盖每夜批处理已重算（CALCULATED/RECALCULATED）或锁定的行。多个节点的增量互不覆盖。
+     * ON DUPLICATE KEY UPDATE 按书写顺序赋值，均值必须在 diary_count 累加之前计算。
+     */
+    @Insert("<script>INSERT INTO patient_daily_metric (patient_id, metric_at, metric_status, mood_avg, sleep_avg, stress_avg, " +
+            "energy_avg, diary_count, meditation_minutes, risk_event_count, no_show_count, " +
+            "source_window_start, source_window_end, version, deleted, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='m' separator=','>" +
+            "(#{m.patientId}, #{m.metricAt}, 'REALTIME', #{m.moodAvg}, #{m.sleepAvg}, #{m.stressAvg}, " +
+            "#{m.energyAvg}, #{m.diaryCount}, #{m.meditationMinutes}, #{m.riskEventCount}, 0, " +
+            "#{m.sourceWindowStart}, #{m.sourceWindowEnd}, 0, 0, NOW(), NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE " +
+            "mood_avg = IF(metric_status <> 'REALTIME' OR VALUES(mood_avg) IS NULL, mood_avg, " +
+            "IF(mood_avg IS NULL OR diary_count = 0, VALUES(mood_avg), ROUND((mood_avg * diary_count + " +
+            "VALUES(mood_avg) * VALUES(diary_count)) / (diary_count + VALUES(diary_count)), 2))), " +
+            "sleep_avg = IF(metric_status <> 'REALTIME' OR VALUES(sleep_avg) IS NULL, sleep_avg, " +
+            "IF(sleep_avg IS NULL OR diary_count = 0, VALUES(sleep_avg), ROUND((sleep_avg * diary_count + " +
+            "VALUES(sleep_avg) * VALUES(diary_count)) / (diary_count + VALUES(diary_count)), 2))), " +
+            "stress_avg = IF(metric_status <> 'REALTIME' OR VALUES(stress_avg) IS NULL, stress_avg, " +
+            "IF(stress_avg IS NULL OR diary_count = 0, VALUES(stress_avg), ROUND((stress_avg * diary_count + " +
+            "VALUES(stress_avg) * VALUES(diary_count)) / (diary_count + VALUES(diary_count)), 2))), " +
+            "energy_avg = IF(metric_status <> 'REALTIME' OR VALUES(energy_avg) IS NULL, energy_avg, " +
+            "IF(energy_avg IS NULL OR diary_count = 0, VALUES(energy_avg), ROUND((energy_avg * diary_count + " +
+            "VALUES(energy_avg) * VALUES(diary_count)) / (diary_count + VALUES(diary_count)), 2))), " +
+            "diary_count = IF(metric_status = 'REALTIME', diary_count + VALUES(diary_count), diary_count), " +
+            "meditation_minutes = IF(metric_status = 'REALTIME', " +
+            "meditation_minutes + VALUES(meditation_minutes), meditation_minutes), " +
+            "risk_event_count = IF(metric_status = 'REALTIME', " +
+            "risk_event_count + VALUES(risk_event_count), risk_event_count), " +
+            "update_time = IF(metric_status = 'REALTIME', NOW(), update_time)" +
+            "</script>")
+    int applyRealtimeDeltaBatch(@Param("rows") List<PatientDailyMetric> rows);
 }
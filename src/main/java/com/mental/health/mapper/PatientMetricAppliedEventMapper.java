@@ -0,0 +1,28 @@
+package com.mental.health.mapper;
+
+import org.apache.ibatis.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 实时日指标已计入的事件键
+ */
+@Mapper
+public interface PatientMetricAppliedEventMapper {
+
+    @Select("<script>SELECT event_key FROM patient_metric_applied_event WHERE event_key IN " +
+            "<foreach collection='keys' item='k' open='(' separator=',' close=')'>#{k}</foreach></script>")
+    List<String> findExisting(@Param("keys") Collection<String> keys);
+
+    /**
+     * 与指标增量同一事务写入；并发节点抢先写入同一键时主键冲突，整个事务回滚后下次 checkpoint 再判重
+     */
+    @Insert("<script>INSERT INTO patient_metric_applied_event (event_key, create_time) VALUES " +
+            "<foreach collection='keys' item='k' separator=','>(#{k}, NOW())</foreach></script>")
+    int insertBatch(@Param("keys") Collection<String> keys);
+
+    @Delete("DELETE FROM patient_metric_applied_event WHERE create_time < #{before} LIMIT #{limit}")
+    int deleteBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
@@ -0,0 +1,30 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.RecommendationNeighbor;
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.List;
+
+@Mapper
+public interface RecommendationNeighborMapper extends BaseMapper<RecommendationNeighbor> {
+
+    @Select("SELECT user_id, rank_no, neighbor_user_id, similarity FROM recommendation_neighbor ORDER BY user_id, rank_no")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(RecommendationNeighbor.class)
+    void streamAll(ResultHandler<RecommendationNeighbor> handler);
+
+    @Delete("<script>DELETE FROM recommendation_neighbor WHERE user_id IN " +
+            "<foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int deleteByUserIds(@Param("userIds") List<Long> userIds);
+
+    @Delete("DELETE FROM recommendation_neighbor")
+    int deleteAll();
+
+    @Insert("<script>INSERT INTO recommendation_neighbor (user_id, rank_no, neighbor_user_id, similarity) VALUES " +
+            "<foreach collection='rows' item='r' separator=','>" +
+            "(#{r.userId}, #{r.rankNo}, #{r.neighborUserId}, #{r.similarity})</foreach></script>")
+    int insertBatch(@Param("rows") List<RecommendationNeighbor> rows);
+}
@@ -0,0 +1,21 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.ResourceBehaviorLog;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface ResourceBehaviorLogMapper extends BaseMapper<ResourceBehaviorLog> {
+
+    @Insert("<script>INSERT INTO resource_behavior_log (user_id, resource_id, view_count, like_count, download_count, " +
+            "complete_count, explicit_rating, first_event_time, last_event_time, create_time) VALUES " +
+            "<foreach collection='rows' item='r' separator=','>" +
+            "(#{r.userId}, #{r.resourceId}, #{r.viewCount}, #{r.likeCount}, #{r.downloadCount}, " +
+            "#{r.completeCount}, #{r.explicitRating}, #{r.firstEventTime}, #{r.lastEventTime}, NOW())" +
+            "</foreach></script>")
+    int insertBatch(@Param("rows") List<ResourceBehaviorLog> rows);
+}
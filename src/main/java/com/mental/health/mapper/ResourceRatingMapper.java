@@ -0,0 +1,59 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.ResourceRating;
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface ResourceRatingMapper extends BaseMapper<ResourceRating> {
+
+    /**
+     * 流式读取全部评分（MySQL fetchSize=MIN_VALUE 开启逐行流式结果集，不整表载入内存）
+     */
+    @Select("SELECT user_id, resource_id, rating, explicit_rating, last_event_time FROM resource_rating")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(ResourceRating.class)
+    void streamAll(ResultHandler<ResourceRating> handler);
+
+    @Select("SELECT COUNT(1) FROM resource_rating")
+    long countAll();
+
+    /**
+     * 指定时间之后评分有变化的用户（增量重建水位线，走 idx_resource_rating_update）
+     */
+    @Select("SELECT DISTINCT user_id FROM resource_rating WHERE update_time >= #{since}")
+    List<Long> selectUserIdsUpdatedSince(@Param("since") LocalDateTime since);
+
+    /**
+     * 指定用户的全部评分（增量重建时整行替换）
+     */
+    @Select("<script>SELECT user_id, resource_id, rating, explicit_rating, last_event_time FROM resource_rating " +
+            "WHERE user_id IN <foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    List<ResourceRating> selectByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 批量折叠行为增量：隐式分先按半衰期衰减到本次事件时间再累加，显式评分优先于隐式分
+     */
+    @Insert("<script>INSERT INTO resource_rating (user_id, resource_id, rating, implicit_score, explicit_rating, " +
+            "last_event_time, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='r' separator=','>" +
+            "(#{r.userId}, #{r.resourceId}, #{r.rating}, #{r.implicitScore}, #{r.explicitRating}, #{r.lastEventTime}, NOW(), NOW())" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE " +
+            "implicit_score = implicit_score * POW(0.5, GREATEST(0, TIMESTAMPDIFF(SECOND, " +
+            "COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time))) / #{halfLifeSeconds}) + VALUES(implicit_score), " +
+            "explicit_rating = COALESCE(VALUES(explicit_rating), explicit_rating), " +
+            "last_event_time = GREATEST(COALESCE(last_event_time, VALUES(last_event_time)), VALUES(last_event_time)), " +
+            "rating = COALESCE(explicit_rating, LEAST(#{maxRating}, implicit_score)), " +
+            "update_time = NOW()</script>")
+    int upsertBehaviorBatch(@Param("rows") List<ResourceRating> rows,
+                            @Param("halfLifeSeconds") long halfLifeSeconds,
+                            @Param("maxRating") float maxRating);
+}
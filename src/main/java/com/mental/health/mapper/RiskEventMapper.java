@@ -2,8 +2,43 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.RiskEvent;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface RiskEventMapper extends BaseMapper<RiskEvent> {
+
+    @Insert("<script>INSERT INTO risk_event (user_id, source_type, source_id, content_snapshot, matched_rules, " +
+            "computed_score, computed_level, decision, detected_at, create_time, update_time) VALUES " +
+            "<foreach collection='events' item='e' separator=','>" +
+            "(#{e.userId}, #{e.sourceType}, #{e.sourceId}, #{e.contentSnapshot}, #{e.matchedRules}, " +
+            "#{e.computedScore}, #{e.computedLevel}, #{e.decision}, #{e.detectedAt}, NOW(), NOW())" +
+            "</foreach></script>")
+    int insertBatch(@Param("events") List<RiskEvent> events);
+
+    /**
+     * 删除指定来源ID上指定决策的风险事件（批量重算前清理本次重算过的来源上一次的结果，保证重跑幂等）
+     */
+    @Delete("<script>DELETE FROM risk_event WHERE source_type = #{sourceType} AND decision = #{decision} " +
+            "AND source_id IN <foreach collection='sourceIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int deleteBySourceIds(@Param("sourceType") String sourceType, @Param("decision") String decision,
+                          @Param("sourceIds") List<Long> sourceIds);
+
+    /**
+     * 用户已有风险事件的最高等级（4=CRITICAL, 3=HIGH, 2=MEDIUM, 1=LOW），排除指定决策
+     */
+    @Select("<script>SELECT user_id AS userId, MAX(CASE computed_level WHEN 'CRITICAL' THEN 4 WHEN 'HIGH' THEN 3 " +
+            "WHEN 'MEDIUM' THEN 2 ELSE 1 END) AS levelOrder FROM risk_event " +
+            "WHERE deleted = 0 AND decision &lt;&gt; #{excludeDecision} AND user_id IN " +
+            "<foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "GROUP BY user_id</script>")
+    List<Map<String, Object>> maxLevelByUsers(@Param("userIds") List<Long> userIds,
+                                              @Param("excludeDecision") String excludeDecision);
 }
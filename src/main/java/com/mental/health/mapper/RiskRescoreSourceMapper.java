@@ -0,0 +1,58 @@
+package com.mental.health.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * 风险批量重算的数据源 Mapper
+ *
+ * 日记/聊天消息/评估按主键闭区间 [fromId, toId] 分块流式读取（fetchSize=MIN_VALUE），
+ * 单块结果不整体驻留内存；时间窗口只作为块内过滤条件。
+ */
+@Mapper
+public interface RiskRescoreSourceMapper {
+
+    @Select("SELECT MIN(id) AS minId, MAX(id) AS maxId FROM mood_diary")
+    Map<String, Object> findDiaryIdBounds();
+
+    @Select("SELECT MIN(id) AS minId, MAX(id) AS maxId FROM message")
+    Map<String, Object> findMessageIdBounds();
+
+    @Select("SELECT MIN(id) AS minId, MAX(id) AS maxId FROM assessment_session")
+    Map<String, Object> findAssessmentIdBounds();
+
+    @Select("SELECT id, user_id AS userId, content, create_time AS createTime FROM mood_diary " +
+            "WHERE id BETWEEN #{fromId} AND #{toId} AND deleted = 0 AND create_time BETWEEN #{start} AND #{end}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamDiaries(@Param("fromId") long fromId, @Param("toId") long toId,
+                       @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                       ResultHandler<Map<String, Object>> handler);
+
+    @Select("SELECT id, sender_id AS userId, content, create_time AS createTime FROM message " +
+            "WHERE id BETWEEN #{fromId} AND #{toId} AND create_time BETWEEN #{start} AND #{end}")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamMessages(@Param("fromId") long fromId, @Param("toId") long toId,
+                        @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                        ResultHandler<Map<String, Object>> handler);
+
+    /**
+     * 已完成评估的逐题答案，按会话ID排序，调用方把相邻行合并为一个会话
+     */
+    @Select("SELECT s.id, s.user_id AS userId, s.submitted_at AS createTime, i.item_code AS itemCode, " +
+            "r.answer_value AS answerValue FROM assessment_session s " +
+            "JOIN assessment_response r ON r.session_id = s.id AND r.deleted = 0 " +
+            "JOIN assessment_scale_item i ON i.id = r.item_id " +
+            "WHERE s.id BETWEEN #{fromId} AND #{toId} AND s.deleted = 0 AND s.session_status = 'COMPLETED' " +
+            "AND s.submitted_at BETWEEN #{start} AND #{end} ORDER BY s.id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(Map.class)
+    void streamAssessmentAnswers(@Param("fromId") long fromId, @Param("toId") long toId,
+                                 @Param("start") LocalDateTime start, @Param("end") LocalDateTime end,
+                                 ResultHandler<Map<String, Object>> handler);
+}
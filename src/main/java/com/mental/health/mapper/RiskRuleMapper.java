@@ -16,4 +16,10 @@ public interface RiskRuleMapper extends BaseMapper<RiskRule> {
 
     @Select("SELECT * FROM risk_rule WHERE active = 1 AND deleted = 0")
     List<RiskRule> findAllActive();
+
+    /**
+     * 规则集指纹：增删改（含逻辑删除、启停）都会改变行数或最大更新时间
+     */
+    @Select("SELECT CONCAT(COUNT(*), '@', COALESCE(MAX(update_time), ''), '@', COALESCE(SUM(active), 0)) FROM risk_rule")
+    String rulesFingerprint();
 }
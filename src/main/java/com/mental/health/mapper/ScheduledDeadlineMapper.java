@@ -0,0 +1,69 @@
+package com.mental.health.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.mental.health.entity.ScheduledDeadline;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface ScheduledDeadlineMapper extends BaseMapper<ScheduledDeadline> {
+
+    /**
+     * 登记或改期；同一业务只保留一个时间点
+     */
+    @Insert("<script>INSERT INTO scheduled_deadline (task_type, ref_id, fire_at, status, attempts, " +
+            "create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='r' separator=','>" +
+            "(#{r.taskType}, #{r.refId}, #{r.fireAt}, 'PENDING', 0, NOW(), NOW())" +
+            "</foreach> ON DUPLICATE KEY UPDATE fire_at = VALUES(fire_at), status = 'PENDING', " +
+            "attempts = 0, last_error = NULL, update_time = NOW()</script>")
+    int upsertBatch(@Param("rows") List<ScheduledDeadline> rows);
+
+    @Delete("DELETE FROM scheduled_deadline WHERE task_type = #{taskType} AND ref_id = #{refId}")
+    int deleteByRef(@Param("taskType") String taskType, @Param("refId") Long refId);
+
+    /**
+     * 领取：只有仍是同一时间点且未被其他节点领取时才成功
+     */
+    @Update("UPDATE scheduled_deadline SET status = 'RUNNING', update_time = NOW() " +
+            "WHERE task_type = #{taskType} AND ref_id = #{refId} AND fire_at = #{fireAt} AND status = 'PENDING'")
+    int claim(@Param("taskType") String taskType, @Param("refId") Long refId,
+              @Param("fireAt") LocalDateTime fireAt);
+
+    /**
+     * 执行完成后删除；执行期间被改期（已回到 PENDING）的不删
+     */
+    @Delete("DELETE FROM scheduled_deadline WHERE task_type = #{taskType} AND ref_id = #{refId} " +
+            "AND fire_at = #{fireAt} AND status = 'RUNNING'")
+    int deleteClaimed(@Param("taskType") String taskType, @Param("refId") Long refId,
+                      @Param("fireAt") LocalDateTime fireAt);
+
+    /**
+     * 执行失败：未到上限时改到 retryAt 重试，否则置为 FAILED
+     */
+    @Update("UPDATE scheduled_deadline SET " +
+            "status = IF(attempts + 1 >= #{maxAttempts}, 'FAILED', 'PENDING'), " +
+            "fire_at = #{retryAt}, last_error = #{error}, attempts = attempts + 1, update_time = NOW() " +
+            "WHERE task_type = #{taskType} AND ref_id = #{refId} AND fire_at = #{fireAt} AND status = 'RUNNING'")
+    int fail(@Param("taskType") String taskType, @Param("refId") Long refId,
+             @Param("fireAt") LocalDateTime fireAt, @Param("retryAt") LocalDateTime retryAt,
+             @Param("maxAttempts") int maxAttempts, @Param("error") String error);
+
+    /**
+     * 领取后长时间未完成（节点宕机）的放回待触发
+     */
+    @Update("UPDATE scheduled_deadline SET status = 'PENDING', update_time = NOW() " +
+            "WHERE status = 'RUNNING' AND update_time < #{before}")
+    int resetStale(@Param("before") LocalDateTime before);
+
+    @Select("SELECT task_type, ref_id, fire_at FROM scheduled_deadline " +
+            "WHERE status = 'PENDING' AND fire_at < #{before} ORDER BY fire_at LIMIT #{limit}")
+    List<ScheduledDeadline> findPendingBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
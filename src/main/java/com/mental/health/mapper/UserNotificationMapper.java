@@ -2,11 +2,15 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.UserNotification;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
+import java.util.List;
+
 @Mapper
 public interface UserNotificationMapper extends BaseMapper<UserNotification> {
 
@@ -15,4 +19,19 @@ public interface UserNotificationMapper extends BaseMapper<UserNotification> {
 
     @Update("UPDATE user_notification SET read_status = 1, read_time = NOW(), update_time = NOW() WHERE user_id = #{userId} AND read_status = 0 AND deleted = 0")
     int markAllRead(@Param("userId") Long userId);
+
+    /**
+     * 多行插入通知，回填自增ID
+     */
+    @Insert("<script>INSERT INTO user_notification (user_id, category, priority, title, content, action_type, " +
+            "action_payload, source_type, source_id, template_code, must_ack, ack_deadline, delivery_status, " +
+            "coalesced_key, coalesced_count, escalation_status, read_status, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='n' separator=','>" +
+            "(#{n.userId}, #{n.category}, #{n.priority}, #{n.title}, #{n.content}, #{n.actionType}, " +
+            "#{n.actionPayload}, #{n.sourceType}, #{n.sourceId}, #{n.templateCode}, #{n.mustAck}, #{n.ackDeadline}, " +
+            "#{n.deliveryStatus}, #{n.coalescedKey}, #{n.coalescedCount}, #{n.escalationStatus}, #{n.readStatus}, " +
+            "#{n.createTime}, #{n.createTime})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertBatch(@Param("rows") List<UserNotification> rows);
 }
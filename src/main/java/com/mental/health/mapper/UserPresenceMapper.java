@@ -2,8 +2,26 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.UserPresence;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface UserPresenceMapper extends BaseMapper<UserPresence> {
+
+    /**
+     * 批量写入在线状态（写后合并刷新）；连接时间为空时保留原值
+     */
+    @Insert("<script>INSERT INTO user_presence (user_id, websocket_session_id, client_type, online_status, " +
+            "last_seen_at, connect_time, disconnect_time) VALUES " +
+            "<foreach collection='rows' item='r' separator=','>" +
+            "(#{r.userId}, #{r.websocketSessionId}, 'WEB', #{r.onlineStatus}, #{r.lastSeenAt}, " +
+            "#{r.connectTime}, #{r.disconnectTime})" +
+            "</foreach> ON DUPLICATE KEY UPDATE websocket_session_id = VALUES(websocket_session_id), " +
+            "online_status = VALUES(online_status), last_seen_at = VALUES(last_seen_at), " +
+            "connect_time = COALESCE(VALUES(connect_time), connect_time), " +
+            "disconnect_time = VALUES(disconnect_time)</script>")
+    int upsertBatch(@Param("rows") List<UserPresence> rows);
 }
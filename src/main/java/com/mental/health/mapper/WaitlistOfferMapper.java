@@ -2,10 +2,14 @@ package com.mental.health.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.mental.health.entity.WaitlistOffer;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -14,4 +18,43 @@ public interface WaitlistOfferMapper extends BaseMapper<WaitlistOffer> {
     @Select("SELECT * FROM waitlist_offer WHERE offer_status = 'PENDING' " +
             "AND expire_at <= NOW() AND deleted = 0")
     List<WaitlistOffer> findExpiredOffers();
+
+    /**
+     * Offer 过期；只改仍为 PENDING 的行，返回 0 表示已被接受/拒绝或已过期
+     */
+    @Update("UPDATE waitlist_offer SET offer_status = 'EXPIRED', update_time = NOW() " +
+            "WHERE id = #{id} AND offer_status = 'PENDING' AND deleted = 0")
+    int expirePending(@Param("id") Long id);
+
+    /**
+     * 接受 Offer；只改仍为 PENDING 的行，与到期处理互斥
+     */
+    @Update("UPDATE waitlist_offer SET offer_status = 'ACCEPTED', responded_at = #{respondedAt}, " +
+            "resulting_appointment_id = #{appointmentId}, update_time = NOW() " +
+            "WHERE id = #{id} AND offer_status = 'PENDING' AND deleted = 0")
+    int acceptPending(@Param("id") Long id, @Param("appointmentId") Long appointmentId,
+                      @Param("respondedAt") LocalDateTime respondedAt);
+
+    /**
+     * 拒绝 Offer；只改仍为 PENDING 的行
+     */
+    @Update("UPDATE waitlist_offer SET offer_status = 'DECLINED', responded_at = #{respondedAt}, " +
+            "decline_reason = #{reason}, update_time = NOW() " +
+            "WHERE id = #{id} AND offer_status = 'PENDING' AND deleted = 0")
+    int declinePending(@Param("id") Long id, @Param("reason") String reason,
+                       @Param("respondedAt") LocalDateTime respondedAt);
+
+    /**
+     * 批量发出Offer（批量候补匹配），回填主键
+     */
+    @Insert("<script>INSERT INTO waitlist_offer (waitlist_id, patient_id, doctor_id, offered_slot_date, " +
+            "offered_slot_start, offered_slot_end, offer_status, priority_score, priority_factors_json, offered_at, " +
+            "expire_at, create_time, update_time) VALUES " +
+            "<foreach collection='rows' item='o' separator=','>" +
+            "(#{o.waitlistId}, #{o.patientId}, #{o.doctorId}, #{o.offeredSlotDate}, #{o.offeredSlotStart}, " +
+            "#{o.offeredSlotEnd}, #{o.offerStatus}, #{o.priorityScore}, #{o.priorityFactorsJson}, #{o.offeredAt}, " +
+            "#{o.expireAt}, #{o.offeredAt}, #{o.offeredAt})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insertBatch(@Param("rows") List<WaitlistOffer> rows);
 }
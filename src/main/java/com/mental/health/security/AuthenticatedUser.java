@@ -0,0 +1,21 @@
+package com.mental.health.security;
+
+import java.security.Principal;
+
+/**
+ * 已认证用户（JWT 验签后由 {@link JwtAuthenticationFilter} 放入安全上下文）
+ *
+ * getName() 返回用户名，兼容 authentication.getName() 的既有用法；
+ * 控制器通过 {@link CurrentUser} 注入，无需再解析令牌或按用户名查库。
+ */
+public record AuthenticatedUser(Long userId, String username, String role) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public boolean hasRole(String expected) {
+        return expected != null && expected.equals(role);
+    }
+}
@@ -0,0 +1,17 @@
+package com.mental.health.security;
+
+import java.lang.annotation.*;
+
+/**
+ * 注入当前登录用户，参数类型为 {@link AuthenticatedUser}
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+
+    /**
+     * 为 false 时未登录注入 null，否则返回 401
+     */
+    boolean required() default true;
+}
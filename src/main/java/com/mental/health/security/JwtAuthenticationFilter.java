@@ -40,22 +40,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = getTokenFromRequest(request);
 
             if (StringUtils.hasText(token)) {
-                if (jwtUtil.isTokenExpired(token)) {
-                    logger.warn("Token已过期 - 请求路径: " + requestPath);
+                JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+                if (verified == null) {
+                    logger.warn("Token无效或已过期 - 请求路径: " + requestPath);
                 } else {
-                    String username = jwtUtil.getUsernameFromToken(token);
-                    Long userId = jwtUtil.getUserIdFromToken(token);
-                    String role = jwtUtil.getRoleFromToken(token);
+                    String username = verified.username();
+                    String role = verified.role();
 
                     if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                                username,
+                                new AuthenticatedUser(verified.userId(), username, role),
                                 null,
                                 Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role))
                         );
                         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                         SecurityContextHolder.getContext().setAuthentication(authentication);
-                        logger.debug("JWT认证成功 - 用户: " + username + ", 角色: ROLE_" + role + ", 路径: " + requestPath);
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("JWT认证成功 - 用户: " + username + ", 角色: ROLE_" + role + ", 路径: " + requestPath);
+                        }
                     }
                 }
             } else {
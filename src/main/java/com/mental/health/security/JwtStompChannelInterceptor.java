@@ -2,7 +2,6 @@ package com.mental.health.security;
 
 import com.mental.health.common.JwtUtil;
 import com.mental.health.service.UserPresenceService;
-import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,15 +44,15 @@ public class JwtStompChannelInterceptor implements ChannelInterceptor {
             }
 
             String token = bearer.substring(7);
-            Claims claims = jwtUtil.getClaimsFromToken(token);
-            if (claims == null || jwtUtil.isTokenExpired(token)) {
+            JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+            if (verified == null) {
                 log.warn("WebSocket CONNECT rejected: invalid or expired token");
                 throw new SecurityException("JWT令牌无效或已过期");
             }
 
-            Long userId = Long.valueOf(claims.get("userId").toString());
-            String username = claims.getSubject();
-            String role = claims.get("role").toString();
+            Long userId = verified.userId();
+            String username = verified.username();
+            String role = verified.role();
 
             // Principal name uses userId string for convertAndSendToUser compatibility
             Authentication auth = new UsernamePasswordAuthenticationToken(
@@ -77,6 +76,9 @@ public class JwtStompChannelInterceptor implements ChannelInterceptor {
                 userPresenceService.markOffline(userId, accessor.getSessionId());
                 log.info("WebSocket DISCONNECT: userId={}, session={}", userId, accessor.getSessionId());
             }
+        } else if (!StompCommand.CONNECT.equals(accessor.getCommand())) {
+            // 心跳与其他入站帧刷新在线时间
+            userPresenceService.touch(getUserIdFromSession(accessor), accessor.getSessionId());
         }
 
         return message;
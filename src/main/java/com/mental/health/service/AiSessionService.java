@@ -4,7 +4,9 @@ import com.alibaba.fastjson2.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.mental.health.common.CursorToken;
 import com.mental.health.dto.CreateNotificationCommand;
+import com.mental.health.dto.CursorPage;
 import com.mental.health.entity.*;
 import com.mental.health.mapper.*;
 import org.slf4j.Logger;
@@ -46,6 +48,7 @@ public class AiSessionService {
 
     private static final int ROLLING_SUMMARY_INTERVAL = 10; // 每10条消息更新一次摘要
     private static final int MAX_CONTEXT_MESSAGES = 20;      // 送给AI的最大上下文消息数
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;     // 游标分页单页上限
 
     @Autowired private AiSessionMapper sessionMapper;
     @Autowired private AiMessageMapper messageMapper;
@@ -287,6 +290,34 @@ public class AiSessionService {
         return messageMapper.selectPage(page, w);
     }
 
+    /**
+     * 游标分页获取会话消息：after 不为空时取游标之后的新消息，否则取 before 游标之前（为空则最新）的消息
+     */
+    public CursorPage<AiMessage> getSessionMessagesByCursor(Long sessionId, Long patientId,
+            String before, String after, int limit) {
+        AiSession session = sessionMapper.selectById(sessionId);
+        if (session == null || !session.getPatientId().equals(patientId)) {
+            throw new RuntimeException("会话不存在");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+
+        CursorToken afterToken = CursorToken.decode(after);
+        if (afterToken != null) {
+            return CursorPage.after(
+                    messageMapper.selectAfter(sessionId, afterToken.time(), afterToken.id(), size + 1),
+                    size, AiSessionService::cursorOf, after);
+        }
+        CursorToken beforeToken = CursorToken.decode(before);
+        return CursorPage.before(
+                messageMapper.selectBefore(sessionId, beforeToken != null ? beforeToken.time() : null,
+                        beforeToken != null ? beforeToken.id() : null, size + 1),
+                size, AiSessionService::cursorOf);
+    }
+
+    private static String cursorOf(AiMessage msg) {
+        return CursorToken.encode(msg.getCreateTime(), msg.getId());
+    }
+
     public IPage<AiHandoffTask> getDoctorHandoffTasks(Long doctorId, String status, int pageNum, int pageSize) {
         Page<AiHandoffTask> page = new Page<>(pageNum, pageSize);
         LambdaQueryWrapper<AiHandoffTask> w = new LambdaQueryWrapper<>();
@@ -1,49 +1,84 @@
 package com.mental.health.service;
 
-import com.alibaba.fastjson2.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mental.health.entity.*;
 import com.mental.health.mapper.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * 分析聚合服务 — 患者日指标/医生负载/分析作业
  *
  * 每夜批处理: aggregatePatientDailyMetric + aggregateDoctorWorkload
- * 支持手动触发和增量重算
+ * 集合化实现: 按患者/医生 GROUP BY 扫描 + 流式游标 + 批量 INSERT ... ON DUPLICATE KEY UPDATE
+ * 患者日指标按ID区间分区并行，分块提交并在 analytics_job_partition 记录检查点，中断后可续跑
+ * 支持手动触发和增量重算（以上次成功作业开始时间为水位线）
  */
 @Service
 public class AnalyticsAggregationService {
 
     private static final Logger log = LoggerFactory.getLogger(AnalyticsAggregationService.class);
 
+    private static final int UPSERT_BATCH_SIZE = 500;
+
     @Autowired private PatientDailyMetricMapper metricMapper;
     @Autowired private DoctorWorkloadSnapshotMapper workloadMapper;
     @Autowired private AnalyticsJobLogMapper jobLogMapper;
-    @Autowired private MoodDiaryMapper moodDiaryMapper;
-    @Autowired private AppointmentMapper appointmentMapper;
-    @Autowired private MeditationSessionMapper meditationSessionMapper;
-    @Autowired private InterventionTaskMapper taskMapper;
-    @Autowired private RiskEventMapper riskEventMapper;
-    @Autowired private CrisisCaseMapper crisisCaseMapper;
-    @Autowired private TreatmentPlanMapper planMapper;
-    @Autowired private TreatmentPlanReviewMapper reviewMapper;
-    @Autowired private ReferralCaseMapper referralCaseMapper;
-    @Autowired private AiHandoffTaskMapper handoffTaskMapper;
-    @Autowired private AppointmentWaitlistMapper waitlistMapper;
-    @Autowired private UserMapper userMapper;
+    @Autowired private AnalyticsAggregateMapper aggregateMapper;
+    @Autowired private AnalyticsJobPartitionMapper partitionMapper;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private RealtimePatientMetricService realtimeMetricService;
+
+    @Value("${analytics.batch.partitions:8}")
+    private int partitionCount;
+
+    @Value("${analytics.batch.parallelism:4}")
+    private int parallelism;
+
+    @Value("${analytics.batch.chunk-size:2000}")
+    private int chunkSize;
+
+    @Value("${analytics.batch.stale-minutes:10}")
+    private long staleMinutes;
+
+    /** 本进程内正在执行的作业，防止定时恢复与夜间批处理重复执行同一作业 */
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+
+    private ExecutorService partitionExecutor;
+
+    @PostConstruct
+    public void initExecutor() {
+        AtomicInteger seq = new AtomicInteger();
+        partitionExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "analytics-partition-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdownExecutor() {
+        partitionExecutor.shutdownNow();
+    }
 
     // ===== 每夜批处理 =====
 
@@ -52,227 +87,368 @@ public class AnalyticsAggregationService {
         LocalDate yesterday = LocalDate.now().minusDays(1);
         log.info("开始每夜分析批处理, 目标日期: {}", yesterday);
 
-        Long jobId = startJob("NIGHTLY_BATCH", "PATIENT_DAILY", yesterday);
+        // 同一日期存在未完成的作业时续跑，而不是从头重算
+        AnalyticsJobLog unfinished = findUnfinishedJob("PATIENT_DAILY", yesterday);
+        Long jobId;
+        if (unfinished != null) {
+            // 先占位再改状态：正在续跑的作业不能被重新打开，更不能被标记失败
+            if (!runningJobs.add(unfinished.getId())) {
+                log.warn("分析作业 {} 正在执行中，跳过本次每夜批处理", unfinished.getId());
+                return;
+            }
+            jobId = reopenJob(unfinished);
+        } else {
+            jobId = startJob("NIGHTLY_BATCH", "PATIENT_DAILY", yesterday);
+            runningJobs.add(jobId);
+        }
         try {
-            int patientCount = aggregatePatientDailyMetrics(yesterday);
+            int patientCount = executePatientJob(jobId, yesterday);
             int doctorCount = aggregateDoctorWorkloads(yesterday);
             finishJob(jobId, "SUCCESS", patientCount + doctorCount, null);
             log.info("每夜批处理完成: 患者{}条, 医生{}条", patientCount, doctorCount);
         } catch (Exception e) {
-            finishJob(jobId, "FAILED", 0, e.getMessage());
+            finishJob(jobId, "FAILED", partitionRecords(jobId), e.getMessage());
             log.error("每夜批处理失败: {}", e.getMessage(), e);
+        } finally {
+            runningJobs.remove(jobId);
+        }
+    }
+
+    /**
+     * 恢复进程崩溃/重启而中断的作业（RUNNING 且分区长时间未推进）
+     */
+    @Scheduled(initialDelayString = "${analytics.batch.resume-initial-delay-ms:60000}",
+            fixedDelayString = "${analytics.batch.resume-interval-ms:600000}")
+    public void resumeInterruptedJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> jobIds = partitionMapper.findInterruptedJobIds(now.minusDays(3), now.minusMinutes(staleMinutes));
+        for (Long jobId : jobIds) {
+            if (runningJobs.contains(jobId)) continue;
+            try {
+                resumeJob(jobId);
+            } catch (Exception e) {
+                log.error("恢复分析作业 {} 失败: {}", jobId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从最后一个已提交块继续执行患者日指标作业
+     */
+    public Long resumeJob(Long jobId) {
+        AnalyticsJobLog job = jobLogMapper.selectById(jobId);
+        if (job == null) {
+            throw new RuntimeException("作业不存在");
+        }
+        if (!"PATIENT_DAILY".equals(job.getJobScopeCode())) {
+            throw new RuntimeException("该作业不支持续跑");
+        }
+        if ("SUCCESS".equals(job.getJobStatus())) {
+            throw new RuntimeException("作业已完成");
+        }
+        if (!runningJobs.add(jobId)) {
+            throw new RuntimeException("作业正在执行中");
+        }
+        try {
+            reopenJob(job);
+            LocalDate targetDate = job.getTargetDate().toLocalDate();
+            log.info("续跑分析作业 {}, 目标日期: {}", jobId, targetDate);
+            try {
+                int count = executePatientJob(jobId, targetDate);
+                if ("NIGHTLY_BATCH".equals(job.getJobCode())) {
+                    count += aggregateDoctorWorkloads(targetDate);
+                }
+                finishJob(jobId, "SUCCESS", count, null);
+                return jobId;
+            } catch (Exception e) {
+                finishJob(jobId, "FAILED", partitionRecords(jobId), e.getMessage());
+                throw new RuntimeException("续跑失败: " + e.getMessage());
+            }
+        } finally {
+            runningJobs.remove(jobId);
         }
     }
 
     // ===== 患者日指标 =====
 
-    @Transactional
-    public int aggregatePatientDailyMetrics(LocalDate targetDate) {
+    /**
+     * 按患者ID区间分区并行执行。首次执行时切分分区并落库；
+     * 每个分区按 chunkSize 个ID一块，块数据与检查点在同一事务提交，失败后从检查点续跑。
+     *
+     * @return 作业累计写入的记录数（含此前已完成的分区）
+     */
+    public int runPatientJob(Long jobId, LocalDate targetDate) {
+        if (!runningJobs.add(jobId)) {
+            throw new RuntimeException("作业正在执行中");
+        }
+        try {
+            return executePatientJob(jobId, targetDate);
+        } finally {
+            runningJobs.remove(jobId);
+        }
+    }
+
+    /**
+     * 调用方须已在 runningJobs 中占位
+     */
+    private int executePatientJob(Long jobId, LocalDate targetDate) {
         LocalDateTime dayStart = targetDate.atStartOfDay();
         LocalDateTime dayEnd = targetDate.atTime(LocalTime.MAX);
+        LocalDateTime watermark = jobLogMapper.findWatermark("PATIENT_DAILY", dayStart);
 
-        // 查找当天有活动的患者
-        LambdaQueryWrapper<User> userWrapper = new LambdaQueryWrapper<>();
-        userWrapper.eq(User::getRole, "PATIENT").eq(User::getStatus, 1);
-        List<User> patients = userMapper.selectList(userWrapper);
+        List<AnalyticsJobPartition> partitions = partitionMapper.findByJobId(jobId);
+        if (partitions.isEmpty()) {
+            partitions = planPartitions(jobId);
+        }
 
-        int count = 0;
-        for (User patient : patients) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (AnalyticsJobPartition partition : partitions) {
+            if (!"DONE".equals(partition.getPartitionStatus())) {
+                futures.add(partitionExecutor.submit(() -> runPartition(partition, dayStart, dayEnd, watermark)));
+            }
+        }
+        int failed = 0;
+        for (Future<?> future : futures) {
             try {
-                PatientDailyMetric metric = calculatePatientMetric(patient.getId(), dayStart, dayEnd);
-                if (metric != null) {
-                    // Upsert
-                    LambdaQueryWrapper<PatientDailyMetric> existWrapper = new LambdaQueryWrapper<>();
-                    existWrapper.eq(PatientDailyMetric::getPatientId, patient.getId())
-                            .eq(PatientDailyMetric::getMetricAt, dayStart);
-                    PatientDailyMetric existing = metricMapper.selectOne(existWrapper);
-
-                    if (existing != null) {
-                        metric.setId(existing.getId());
-                        metric.setMetricStatus("RECALCULATED");
-                        metricMapper.updateById(metric);
-                    } else {
-                        metricMapper.insert(metric);
-                    }
-                    count++;
-                }
-            } catch (Exception e) {
-                log.warn("计算患者#{} 日指标失败: {}", patient.getId(), e.getMessage());
+                future.get();
+            } catch (ExecutionException e) {
+                failed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("作业被中断");
             }
         }
-        return count;
+        if (failed > 0) {
+            throw new RuntimeException(failed + "/" + partitions.size() + " 个分区执行失败，可续跑");
+        }
+        return partitionRecords(jobId);
     }
 
-    private PatientDailyMetric calculatePatientMetric(Long patientId, LocalDateTime start, LocalDateTime end) {
-        // 查询日记
-        LambdaQueryWrapper<MoodDiary> diaryW = new LambdaQueryWrapper<>();
-        diaryW.eq(MoodDiary::getUserId, patientId)
-                .between(MoodDiary::getCreateTime, start, end);
-        List<MoodDiary> diaries = moodDiaryMapper.selectList(diaryW);
-
-        // 查询风险事件
-        LambdaQueryWrapper<RiskEvent> riskW = new LambdaQueryWrapper<>();
-        riskW.eq(RiskEvent::getUserId, patientId)
-                .between(RiskEvent::getDetectedAt, start, end);
-        long riskCount = riskEventMapper.selectCount(riskW);
-
-        // 查询爽约
-        LambdaQueryWrapper<Appointment> apptW = new LambdaQueryWrapper<>();
-        apptW.eq(Appointment::getPatientId, patientId)
-                .between(Appointment::getAppointmentTime, start, end)
-                .eq(Appointment::getAttendanceStatus, "NO_SHOW");
-        long noShowCount = appointmentMapper.selectCount(apptW);
-
-        // 查询冥想
-        LambdaQueryWrapper<MeditationSession> medW = new LambdaQueryWrapper<>();
-        medW.eq(MeditationSession::getUserId, patientId)
-                .eq(MeditationSession::getSessionStatus, "COMPLETED")
-                .between(MeditationSession::getStartedAt, start, end);
-        List<MeditationSession> medSessions = meditationSessionMapper.selectList(medW);
-        int medMinutes = medSessions.stream()
-                .mapToInt(s -> s.getActualSeconds() != null ? s.getActualSeconds() / 60 : 0)
-                .sum();
-
-        // 任务完成率
-        LambdaQueryWrapper<InterventionTask> taskW = new LambdaQueryWrapper<>();
-        taskW.eq(InterventionTask::getPatientId, patientId)
-                .between(InterventionTask::getDueAt, start, end);
-        List<InterventionTask> tasks = taskMapper.selectList(taskW);
-        BigDecimal taskRate = null;
-        if (!tasks.isEmpty()) {
-            long completed = tasks.stream().filter(t -> "COMPLETED".equals(t.getTaskStatus())).count();
-            taskRate = BigDecimal.valueOf(completed).divide(BigDecimal.valueOf(tasks.size()), 2, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100));
+    private List<AnalyticsJobPartition> planPartitions(Long jobId) {
+        Map<String, Object> bounds = aggregateMapper.findPatientIdBounds();
+        Long minId = bounds != null ? toLong(bounds.get("minId")) : null;
+        Long maxId = bounds != null ? toLong(bounds.get("maxId")) : null;
+        if (minId == null || maxId == null) {
+            return List.of();
+        }
+        long span = maxId - minId + 1;
+        int count = (int) Math.max(1, Math.min(partitionCount, span));
+        long width = (span + count - 1) / count;
+
+        List<AnalyticsJobPartition> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = minId + i * width;
+            if (start > maxId) break;
+            AnalyticsJobPartition p = new AnalyticsJobPartition();
+            p.setJobId(jobId);
+            p.setPartitionNo(i);
+            p.setRangeStart(start);
+            p.setRangeEnd(Math.min(maxId, start + width - 1));
+            p.setLastCommittedId(start - 1);
+            p.setPartitionStatus("PENDING");
+            p.setRecordsProcessed(0);
+            p.setChunksCommitted(0);
+            partitionMapper.insert(p);
+            partitions.add(p);
         }
+        return partitions;
+    }
 
-        // 如果没有任何活动数据，跳过
-        if (diaries.isEmpty() && riskCount == 0 && noShowCount == 0 && medMinutes == 0 && tasks.isEmpty()) {
-            return null;
+    private void runPartition(AnalyticsJobPartition partition, LocalDateTime dayStart, LocalDateTime dayEnd,
+                              LocalDateTime watermark) {
+        partitionMapper.markRunning(partition.getId(), LocalDateTime.now());
+        long cursor = partition.getLastCommittedId();
+        try {
+            while (cursor < partition.getRangeEnd()) {
+                long fromId = cursor + 1;
+                long toId = Math.min(partition.getRangeEnd(), cursor + chunkSize);
+                transactionTemplate.executeWithoutResult(status -> {
+                    int records = aggregatePatientRange(fromId, toId, dayStart, dayEnd, watermark);
+                    partitionMapper.advanceCheckpoint(partition.getId(), toId, records);
+                });
+                cursor = toId;
+            }
+            partitionMapper.markFinished(partition.getId(), "DONE", LocalDateTime.now(), null);
+        } catch (Exception e) {
+            log.error("分析作业 {} 分区 {} 在患者ID {} 之后失败: {}",
+                    partition.getJobId(), partition.getPartitionNo(), cursor, e.getMessage(), e);
+            partitionMapper.markFinished(partition.getId(), "FAILED", LocalDateTime.now(), abbreviate(e.getMessage()));
+            throw e;
+        }
+    }
+
+    /**
+     * 集合化计算一段患者ID区间的日指标：5 条按患者 GROUP BY 的流式扫描合并后批量 upsert。
+     * 有水位线时（该日期已有成功作业），只重算水位线之后源数据有变更的患者。事务由调用方提供。
+     */
+    int aggregatePatientRange(long fromId, long toId, LocalDateTime dayStart, LocalDateTime dayEnd,
+                              LocalDateTime watermark) {
+        Set<Long> changed = null;
+        if (watermark != null) {
+            Set<Long> ids = new HashSet<>();
+            aggregateMapper.streamChangedPatientIds(fromId, toId, dayStart, dayEnd, watermark,
+                    ctx -> ids.add(ctx.getResultObject()));
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            changed = ids;
         }
 
-        PatientDailyMetric metric = new PatientDailyMetric();
-        metric.setPatientId(patientId);
-        metric.setMetricAt(start);
-        metric.setMetricStatus("CALCULATED");
-        metric.setDiaryCount(diaries.size());
-        metric.setRiskEventCount((int) riskCount);
-        metric.setNoShowCount((int) noShowCount);
-        metric.setMeditationMinutes(medMinutes);
-        metric.setTaskCompletionRate(taskRate);
-        metric.setSourceWindowStart(start);
-        metric.setSourceWindowEnd(end);
-
-        if (!diaries.isEmpty()) {
-            metric.setMoodAvg(avgOf(diaries, MoodDiary::getMoodScore));
-            metric.setSleepAvg(avgOf(diaries, MoodDiary::getSleepQuality));
-            metric.setStressAvg(avgOf(diaries, MoodDiary::getStressLevel));
-            metric.setEnergyAvg(avgOf(diaries, MoodDiary::getEnergyLevel));
+        Map<Long, PatientDailyMetric> metrics = new HashMap<>();
+        Set<Long> filter = changed;
+        aggregateMapper.streamDiaryStats(fromId, toId, dayStart, dayEnd, ctx -> {
+            Map<String, Object> row = ctx.getResultObject();
+            PatientDailyMetric m = metricFor(metrics, filter, row, dayStart, dayEnd);
+            if (m == null) return;
+            m.setDiaryCount(toInt(row.get("diaryCount")));
+            m.setMoodAvg(toScaled(row.get("moodAvg")));
+            m.setSleepAvg(toScaled(row.get("sleepAvg")));
+            m.setStressAvg(toScaled(row.get("stressAvg")));
+            m.setEnergyAvg(toScaled(row.get("energyAvg")));
+        });
+        aggregateMapper.streamRiskEventCounts(fromId, toId, dayStart, dayEnd, ctx -> {
+            PatientDailyMetric m = metricFor(metrics, filter, ctx.getResultObject(), dayStart, dayEnd);
+            if (m != null) m.setRiskEventCount(toInt(ctx.getResultObject().get("cnt")));
+        });
+        aggregateMapper.streamNoShowCounts(fromId, toId, dayStart, dayEnd, ctx -> {
+            PatientDailyMetric m = metricFor(metrics, filter, ctx.getResultObject(), dayStart, dayEnd);
+            if (m != null) m.setNoShowCount(toInt(ctx.getResultObject().get("cnt")));
+        });
+        aggregateMapper.streamMeditationMinutes(fromId, toId, dayStart, dayEnd, ctx -> {
+            PatientDailyMetric m = metricFor(metrics, filter, ctx.getResultObject(), dayStart, dayEnd);
+            if (m != null) m.setMeditationMinutes(toInt(ctx.getResultObject().get("minutes")));
+        });
+        aggregateMapper.streamTaskStats(fromId, toId, dayStart, dayEnd, ctx -> {
+            Map<String, Object> row = ctx.getResultObject();
+            PatientDailyMetric m = metricFor(metrics, filter, row, dayStart, dayEnd);
+            int total = toInt(row.get("total"));
+            if (m == null || total == 0) return;
+            m.setTaskCompletionRate(BigDecimal.valueOf(toInt(row.get("completed")))
+                    .divide(BigDecimal.valueOf(total), 2, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)));
+        });
+
+        List<PatientDailyMetric> rows = new ArrayList<>(metrics.values());
+        for (int from = 0; from < rows.size(); from += UPSERT_BATCH_SIZE) {
+            metricMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + UPSERT_BATCH_SIZE)));
         }
+        return rows.size();
+    }
 
-        return metric;
+    private PatientDailyMetric metricFor(Map<Long, PatientDailyMetric> metrics, Set<Long> filter,
+                                         Map<String, Object> row, LocalDateTime start, LocalDateTime end) {
+        Long patientId = toLong(row.get("patientId"));
+        if (patientId == null || (filter != null && !filter.contains(patientId))) {
+            return null;
+        }
+        return metrics.computeIfAbsent(patientId, id -> {
+            PatientDailyMetric metric = new PatientDailyMetric();
+            metric.setPatientId(id);
+            metric.setMetricAt(start);
+            metric.setMetricStatus("CALCULATED");
+            metric.setDiaryCount(0);
+            metric.setRiskEventCount(0);
+            metric.setNoShowCount(0);
+            metric.setMeditationMinutes(0);
+            metric.setSourceWindowStart(start);
+            metric.setSourceWindowEnd(end);
+            return metric;
+        });
     }
 
     // ===== 医生工作负载 =====
 
+    /**
+     * 集合化计算医生工作负载：7 条按医生 GROUP BY 的查询替代原先每位医生 9 次 COUNT
+     */
     @Transactional
     public int aggregateDoctorWorkloads(LocalDate targetDate) {
-        LambdaQueryWrapper<User> doctorW = new LambdaQueryWrapper<>();
-        doctorW.eq(User::getRole, "DOCTOR").eq(User::getStatus, 1);
-        List<User> doctors = userMapper.selectList(doctorW);
+        LocalDateTime dayStart = targetDate.atStartOfDay();
+        LocalDateTime dayEnd = targetDate.atTime(LocalTime.MAX);
 
-        int count = 0;
-        for (User doctor : doctors) {
-            try {
-                DoctorWorkloadSnapshot snapshot = calculateDoctorWorkload(doctor.getId(), targetDate);
-                // Upsert
-                LambdaQueryWrapper<DoctorWorkloadSnapshot> existW = new LambdaQueryWrapper<>();
-                existW.eq(DoctorWorkloadSnapshot::getDoctorId, doctor.getId())
-                        .eq(DoctorWorkloadSnapshot::getSnapshotAt, targetDate.atStartOfDay());
-                DoctorWorkloadSnapshot existing = workloadMapper.selectOne(existW);
-
-                if (existing != null) {
-                    snapshot.setId(existing.getId());
-                    snapshot.setSnapshotStatus("RECALCULATED");
-                    workloadMapper.updateById(snapshot);
-                } else {
-                    workloadMapper.insert(snapshot);
-                }
-                count++;
-            } catch (Exception e) {
-                log.warn("计算医生#{} 工作负载失败: {}", doctor.getId(), e.getMessage());
-            }
+        Map<Long, DoctorWorkloadSnapshot> snapshots = new LinkedHashMap<>();
+        for (Long doctorId : aggregateMapper.findActiveDoctorIds()) {
+            snapshots.put(doctorId, emptySnapshot(doctorId, dayStart));
+        }
+        if (snapshots.isEmpty()) {
+            return 0;
         }
-        return count;
-    }
 
-    private DoctorWorkloadSnapshot calculateDoctorWorkload(Long doctorId, LocalDate targetDate) {
-        LocalDateTime dayStart = targetDate.atStartOfDay();
-        LocalDateTime dayEnd = targetDate.atTime(LocalTime.MAX);
+        applyByDoctor(snapshots, aggregateMapper.appointmentStatsByDoctor(dayStart, dayEnd), (s, row) -> {
+            s.setScheduledAppointments(toInt(row.get("scheduled")));
+            s.setCompletedAppointments(toInt(row.get("completed")));
+            s.setNoShowCount(toInt(row.get("noShow")));
+        });
+        applyByDoctor(snapshots, aggregateMapper.openCrisisByDoctor(LocalDateTime.now()), (s, row) -> {
+            s.setCrisisOpenCount(toInt(row.get("openCount")));
+            s.setCrisisOverdueCount(toInt(row.get("overdueCount")));
+        });
+        applyByDoctor(snapshots, aggregateMapper.activePlansByDoctor(),
+                (s, row) -> s.setActivePlans(toInt(row.get("cnt"))));
+        applyByDoctor(snapshots, aggregateMapper.activeReferralsByDoctor(),
+                (s, row) -> s.setActiveReferrals(toInt(row.get("cnt"))));
+        applyByDoctor(snapshots, aggregateMapper.pendingReviewsByDoctor(),
+                (s, row) -> s.setPendingReviews(toInt(row.get("cnt"))));
+        applyByDoctor(snapshots, aggregateMapper.pendingHandoffsByDoctor(),
+                (s, row) -> s.setPendingHandoffTasks(toInt(row.get("cnt"))));
+        applyByDoctor(snapshots, aggregateMapper.waitingByDoctor(),
+                (s, row) -> s.setWaitlistPendingCount(toInt(row.get("cnt"))));
+
+        List<DoctorWorkloadSnapshot> rows = new ArrayList<>(snapshots.values());
+        for (int from = 0; from < rows.size(); from += UPSERT_BATCH_SIZE) {
+            workloadMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + UPSERT_BATCH_SIZE)));
+        }
+        return rows.size();
+    }
 
+    private DoctorWorkloadSnapshot emptySnapshot(Long doctorId, LocalDateTime dayStart) {
         DoctorWorkloadSnapshot s = new DoctorWorkloadSnapshot();
         s.setDoctorId(doctorId);
         s.setSnapshotAt(dayStart);
         s.setSnapshotStatus("CALCULATED");
-
-        // 预约统计
-        LambdaQueryWrapper<Appointment> apptW = new LambdaQueryWrapper<>();
-        apptW.eq(Appointment::getDoctorId, doctorId).between(Appointment::getAppointmentTime, dayStart, dayEnd);
-        List<Appointment> appts = appointmentMapper.selectList(apptW);
-        s.setScheduledAppointments(appts.size());
-        s.setCompletedAppointments((int) appts.stream().filter(a -> a.getStatus() != null && a.getStatus() == 2).count());
-        s.setNoShowCount((int) appts.stream().filter(a -> "NO_SHOW".equals(a.getAttendanceStatus())).count());
-
-        // 危机案例
-        LambdaQueryWrapper<CrisisCase> crisisW = new LambdaQueryWrapper<>();
-        crisisW.eq(CrisisCase::getOwnerDoctorId, doctorId)
-                .notIn(CrisisCase::getCaseStatus, "RESOLVED", "POST_REVIEW");
-        s.setCrisisOpenCount(crisisCaseMapper.selectCount(crisisW).intValue());
-
-        LambdaQueryWrapper<CrisisCase> overdueW = new LambdaQueryWrapper<>();
-        overdueW.eq(CrisisCase::getOwnerDoctorId, doctorId)
-                .notIn(CrisisCase::getCaseStatus, "RESOLVED", "POST_REVIEW")
-                .le(CrisisCase::getSlaDeadline, LocalDateTime.now());
-        s.setCrisisOverdueCount(crisisCaseMapper.selectCount(overdueW).intValue());
-
-        // 治疗计划
-        LambdaQueryWrapper<TreatmentPlan> planW = new LambdaQueryWrapper<>();
-        planW.eq(TreatmentPlan::getDoctorId, doctorId).eq(TreatmentPlan::getPlanStatus, "ACTIVE");
-        s.setActivePlans(planMapper.selectCount(planW).intValue());
-
-        // 转诊
-        LambdaQueryWrapper<ReferralCase> refW = new LambdaQueryWrapper<>();
-        refW.eq(ReferralCase::getToDoctorId, doctorId)
-                .in(ReferralCase::getReferralStatus, "INITIATED", "ACCEPTED", "HANDOFF_READY");
-        s.setActiveReferrals(referralCaseMapper.selectCount(refW).intValue());
-
-        // 评审
-        LambdaQueryWrapper<TreatmentPlanReview> revW = new LambdaQueryWrapper<>();
-        revW.eq(TreatmentPlanReview::getReviewerId, doctorId)
-                .eq(TreatmentPlanReview::getReviewStatus, "PENDING");
-        s.setPendingReviews(reviewMapper.selectCount(revW).intValue());
-
-        // 转人工任务
-        LambdaQueryWrapper<AiHandoffTask> handoffW = new LambdaQueryWrapper<>();
-        handoffW.eq(AiHandoffTask::getAssignedDoctorId, doctorId)
-                .in(AiHandoffTask::getTaskStatus, "OPEN", "ACKNOWLEDGED");
-        s.setPendingHandoffTasks(handoffTaskMapper.selectCount(handoffW).intValue());
-
-        // 候补
-        LambdaQueryWrapper<AppointmentWaitlist> waitW = new LambdaQueryWrapper<>();
-        waitW.eq(AppointmentWaitlist::getDoctorId, doctorId)
-                .eq(AppointmentWaitlist::getStatus, "WAITING");
-        s.setWaitlistPendingCount(waitlistMapper.selectCount(waitW).intValue());
-
+        s.setScheduledAppointments(0);
+        s.setCompletedAppointments(0);
+        s.setNoShowCount(0);
+        s.setCrisisOpenCount(0);
+        s.setCrisisOverdueCount(0);
+        s.setActivePlans(0);
+        s.setActiveReferrals(0);
+        s.setPendingReviews(0);
+        s.setPendingHandoffTasks(0);
+        s.setWaitlistPendingCount(0);
         return s;
     }
 
+    private void applyByDoctor(Map<Long, DoctorWorkloadSnapshot> snapshots, List<Map<String, Object>> rows,
+                               BiConsumer<DoctorWorkloadSnapshot, Map<String, Object>> setter) {
+        for (Map<String, Object> row : rows) {
+            DoctorWorkloadSnapshot s = snapshots.get(toLong(row.get("doctorId")));
+            if (s != null) {
+                setter.accept(s, row);
+            }
+        }
+    }
+
     // ===== 患者轨迹查询 =====
 
+    /**
+     * 患者轨迹。区间包含今天时，用内存中的实时部分桶替换当天行（不触发任何聚合查询）
+     */
     public List<PatientDailyMetric> getPatientTrajectory(Long patientId, LocalDateTime from, LocalDateTime to) {
         LambdaQueryWrapper<PatientDailyMetric> w = new LambdaQueryWrapper<>();
         w.eq(PatientDailyMetric::getPatientId, patientId)
                 .between(PatientDailyMetric::getMetricAt, from, to)
                 .orderByAsc(PatientDailyMetric::getMetricAt);
-        return metricMapper.selectList(w);
+        List<PatientDailyMetric> metrics = metricMapper.selectList(w);
+
+        LocalDateTime today = LocalDate.now().atStartOfDay();
+        if (!today.isBefore(from) && !today.isAfter(to)) {
+            PatientDailyMetric partial = realtimeMetricService.currentMetric(patientId, today.toLocalDate());
+            if (partial != null) {
+                metrics.removeIf(m -> today.equals(m.getMetricAt()));
+                metrics.add(partial);
+            }
+        }
+        return metrics;
     }
 
     public List<DoctorWorkloadSnapshot> getDoctorWorkloadTrend(Long doctorId, LocalDateTime from, LocalDateTime to) {
@@ -287,22 +463,111 @@ public class AnalyticsAggregationService {
 
     public Long triggerAggregation(String scopeCode, LocalDate targetDate, Long triggeredBy) {
         Long jobId = startJob("MANUAL_TRIGGER", scopeCode, targetDate);
+        runningJobs.add(jobId);
         try {
             int count = switch (scopeCode) {
-                case "PATIENT_DAILY" -> aggregatePatientDailyMetrics(targetDate);
+                case "PATIENT_DAILY" -> executePatientJob(jobId, targetDate);
                 case "DOCTOR_DAILY" -> aggregateDoctorWorkloads(targetDate);
                 default -> 0;
             };
             finishJob(jobId, "SUCCESS", count, null);
             return jobId;
         } catch (Exception e) {
-            finishJob(jobId, "FAILED", 0, e.getMessage());
+            finishJob(jobId, "FAILED", partitionRecords(jobId), e.getMessage());
             throw new RuntimeException("聚合失败: " + e.getMessage());
+        } finally {
+            runningJobs.remove(jobId);
         }
     }
 
     // ===== 作业管理 =====
 
+    /**
+     * 作业分区进度：每分区吞吐（记录/秒）、剩余患者ID数与预计剩余时间
+     */
+    public Map<String, Object> getJobProgress(Long jobId) {
+        AnalyticsJobLog job = jobLogMapper.selectById(jobId);
+        if (job == null) {
+            throw new RuntimeException("作业不存在");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Map<String, Object>> partitionStats = new ArrayList<>();
+        long totalIds = 0;
+        long remainingIds = 0;
+        int totalRecords = 0;
+        double throughput = 0;
+        for (AnalyticsJobPartition p : partitionMapper.findByJobId(jobId)) {
+            long span = p.getRangeEnd() - p.getRangeStart() + 1;
+            long remaining = p.getRangeEnd() - p.getLastCommittedId();
+            LocalDateTime end = p.getFinishedAt() != null ? p.getFinishedAt() : now;
+            double seconds = p.getStartedAt() != null
+                    ? Math.max(1, Duration.between(p.getStartedAt(), end).getSeconds()) : 0;
+            double recordsPerSec = seconds > 0 ? p.getRecordsProcessed() / seconds : 0;
+            double idsPerSec = seconds > 0 ? (span - remaining) / seconds : 0;
+
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("partitionNo", p.getPartitionNo());
+            stat.put("status", p.getPartitionStatus());
+            stat.put("rangeStart", p.getRangeStart());
+            stat.put("rangeEnd", p.getRangeEnd());
+            stat.put("lastCommittedId", p.getLastCommittedId());
+            stat.put("recordsProcessed", p.getRecordsProcessed());
+            stat.put("chunksCommitted", p.getChunksCommitted());
+            stat.put("recordsPerSecond", round2(recordsPerSec));
+            stat.put("remainingIds", remaining);
+            stat.put("etaSeconds", remaining == 0 ? 0 : idsPerSec > 0 ? Math.round(remaining / idsPerSec) : null);
+            stat.put("lastProgressAt", p.getUpdateTime());
+            stat.put("errorMessage", p.getErrorMessage());
+            partitionStats.add(stat);
+
+            totalIds += span;
+            remainingIds += remaining;
+            totalRecords += p.getRecordsProcessed();
+            if ("RUNNING".equals(p.getPartitionStatus())) {
+                throughput += recordsPerSec;
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jobId", jobId);
+        result.put("jobStatus", job.getJobStatus());
+        result.put("targetDate", job.getTargetDate());
+        result.put("startedAt", job.getStartedAt());
+        result.put("finishedAt", job.getFinishedAt());
+        result.put("recordsProcessed", totalRecords);
+        result.put("progressPercent", totalIds == 0 ? 0 : round2(100.0 * (totalIds - remainingIds) / totalIds));
+        result.put("remainingIds", remainingIds);
+        result.put("recordsPerSecond", round2(throughput));
+        result.put("partitions", partitionStats);
+        return result;
+    }
+
+    private AnalyticsJobLog findUnfinishedJob(String scopeCode, LocalDate targetDate) {
+        LambdaQueryWrapper<AnalyticsJobLog> w = new LambdaQueryWrapper<>();
+        w.eq(AnalyticsJobLog::getJobScopeCode, scopeCode)
+                .eq(AnalyticsJobLog::getTargetDate, targetDate.atStartOfDay())
+                .in(AnalyticsJobLog::getJobStatus, "RUNNING", "FAILED")
+                .orderByDesc(AnalyticsJobLog::getId)
+                .last("LIMIT 1");
+        return jobLogMapper.selectOne(w);
+    }
+
+    private Long reopenJob(AnalyticsJobLog job) {
+        job.setJobStatus("RUNNING");
+        job.setFinishedAt(null);
+        job.setErrorMessage(null);
+        jobLogMapper.updateById(job);
+        return job.getId();
+    }
+
+    private int partitionRecords(Long jobId) {
+        int total = 0;
+        for (AnalyticsJobPartition p : partitionMapper.findByJobId(jobId)) {
+            total += p.getRecordsProcessed();
+        }
+        return total;
+    }
+
     private Long startJob(String jobCode, String scopeCode, LocalDate targetDate) {
         AnalyticsJobLog job = new AnalyticsJobLog();
         job.setJobCode(jobCode);
@@ -321,19 +586,31 @@ public class AnalyticsAggregationService {
         job.setJobStatus(status);
         job.setFinishedAt(LocalDateTime.now());
         job.setRecordsProcessed(recordsProcessed);
-        job.setErrorMessage(error);
+        job.setErrorMessage(abbreviate(error));
         jobLogMapper.updateById(job);
     }
 
     // ===== 工具方法 =====
 
-    private <T> BigDecimal avgOf(List<T> list, java.util.function.Function<T, Integer> getter) {
-        double avg = list.stream()
-                .map(getter)
-                .filter(Objects::nonNull)
-                .mapToInt(Integer::intValue)
-                .average()
-                .orElse(0);
-        return BigDecimal.valueOf(avg).setScale(2, RoundingMode.HALF_UP);
+    private static Long toLong(Object value) {
+        return value instanceof Number n ? n.longValue() : null;
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number n ? n.intValue() : 0;
+    }
+
+    private static double round2(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String abbreviate(String message) {
+        return message != null && message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private static BigDecimal toScaled(Object value) {
+        if (value == null) return null;
+        BigDecimal d = value instanceof BigDecimal b ? b : new BigDecimal(value.toString());
+        return d.setScale(2, RoundingMode.HALF_UP);
     }
 }
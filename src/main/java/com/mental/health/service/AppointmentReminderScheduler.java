@@ -1,6 +1,7 @@
 package com.mental.health.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.mental.health.dto.CreateNotificationCommand;
 import com.mental.health.entity.Appointment;
 import com.mental.health.entity.User;
@@ -9,19 +10,30 @@ import com.mental.health.mapper.UserMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Component
 public class AppointmentReminderScheduler {
 
     private static final Logger log = LoggerFactory.getLogger(AppointmentReminderScheduler.class);
     private static final DateTimeFormatter FMT = DateTimeFormatter.ofPattern("MM月dd日 HH:mm");
+    private static final long REMIND_BEFORE_MINUTES = 60;
+
+    /** 到期调度任务类型 */
+    public static final String REMINDER = "APPOINTMENT_REMINDER";
+    public static final String EXPIRY = "APPOINTMENT_EXPIRY";
 
     @Autowired
     private AppointmentMapper appointmentMapper;
@@ -30,14 +42,62 @@ public class AppointmentReminderScheduler {
     private UserMapper userMapper;
 
     @Autowired
-    private UserNotificationService notificationService;
+    private NotificationDeliveryPipeline deliveryPipeline;
+
+    @Autowired
+    private DeadlineScheduler deadlineScheduler;
 
     /**
-     * Every 5 minutes, find confirmed appointments starting within 1 hour
-     * that haven't been reminded yet, and send reminders.
+     * Register the reminder / expiry deadline that matches the appointment's current state.
+     * Call after an appointment is created, confirmed, rescheduled or cancelled.
      */
-    @Scheduled(fixedDelay = 300_000)
-    @Transactional
+    public void track(Appointment apt) {
+        Integer status = apt.getStatus();
+        if (status != null && status == 0) {
+            deadlineScheduler.schedule(EXPIRY, apt.getId(), apt.getAppointmentTime());
+        } else if (status != null && status == 1) {
+            deadlineScheduler.cancel(EXPIRY, apt.getId());
+            if (apt.getReminderSent() == null || apt.getReminderSent() == 0) {
+                deadlineScheduler.schedule(REMINDER, apt.getId(),
+                        apt.getAppointmentTime().minusMinutes(REMIND_BEFORE_MINUTES));
+            }
+        } else {
+            deadlineScheduler.cancel(EXPIRY, apt.getId());
+            deadlineScheduler.cancel(REMINDER, apt.getId());
+        }
+    }
+
+    /**
+     * Fires at the registered second (see {@link DeadlineScheduler}); re-checks state before acting.
+     */
+    @EventListener
+    public void onDeadline(DeadlineScheduler.DeadlineDueEvent event) {
+        if (REMINDER.equals(event.type())) {
+            Appointment apt = appointmentMapper.selectById(event.refId());
+            if (apt == null || apt.getStatus() == null || apt.getStatus() != 1
+                    || (apt.getReminderSent() != null && apt.getReminderSent() == 1)
+                    || apt.getAppointmentTime().isBefore(LocalDateTime.now())) {
+                return;
+            }
+            // The deadline claim already keeps other nodes out; reminder_sent is set once delivery is persisted
+            sendReminderNotification(apt, users(List.of(apt)));
+        } else if (EXPIRY.equals(event.type())) {
+            int expired = appointmentMapper.update(null, new LambdaUpdateWrapper<Appointment>()
+                    .eq(Appointment::getId, event.refId())
+                    .eq(Appointment::getStatus, 0)
+                    .le(Appointment::getAppointmentTime, LocalDateTime.now())
+                    .set(Appointment::getStatus, 4));
+            if (expired > 0) {
+                log.info("Expired appointment {}", event.refId());
+            }
+        }
+    }
+
+    /**
+     * Safety-net sweep: reminders normally fire from their deadline, this only
+     * catches appointments that were never registered (e.g. edited directly by admins).
+     */
+    @Scheduled(fixedDelayString = "${deadline.sweep-interval-ms:900000}")
     public void sendReminders() {
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime oneHourLater = now.plusHours(1);
@@ -52,11 +112,12 @@ public class AppointmentReminderScheduler {
 
         log.info("Found {} appointments to remind", upcoming.size());
 
+        // One batch lookup for every doctor and patient in this round
+        Map<Long, User> users = users(upcoming);
+
         for (Appointment apt : upcoming) {
             try {
-                sendReminderNotification(apt);
-                apt.setReminderSent(1);
-                appointmentMapper.updateById(apt);
+                sendReminderNotification(apt, users);
             } catch (Exception e) {
                 log.error("Failed to send reminder for appointment {}", apt.getId(), e);
             }
@@ -64,9 +125,10 @@ public class AppointmentReminderScheduler {
     }
 
     /**
-     * Every 10 minutes, expire pending appointments that are past their time.
+     * Safety-net sweep for pending appointments that are past their time;
+     * registered ones expire from their deadline.
      */
-    @Scheduled(fixedDelay = 600_000)
+    @Scheduled(fixedDelayString = "${deadline.sweep-interval-ms:900000}")
     @Transactional
     public void expirePastAppointments() {
         LocalDateTime now = LocalDateTime.now();
@@ -83,11 +145,32 @@ public class AppointmentReminderScheduler {
         }
     }
 
-    private void sendReminderNotification(Appointment apt) {
+    private Map<Long, User> users(List<Appointment> appointments) {
+        Set<Long> userIds = new HashSet<>();
+        for (Appointment apt : appointments) {
+            userIds.add(apt.getDoctorId());
+            userIds.add(apt.getPatientId());
+        }
+        userIds.remove(null);
+        return userIds.isEmpty() ? Map.of() : userMapper.selectBatchIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, u -> u, (a, b) -> a));
+    }
+
+    /**
+     * Queue both reminders; the appointment is flagged reminder_sent only after both are persisted,
+     * so a reminder the pipeline gives up on is picked up again by the sweep.
+     */
+    private void sendReminderNotification(Appointment apt, Map<Long, User> users) {
         String timeStr = apt.getAppointmentTime().format(FMT);
+        AtomicInteger pending = new AtomicInteger(2);
+        Runnable onPersisted = () -> {
+            if (pending.decrementAndGet() == 0) {
+                markReminded(apt.getId());
+            }
+        };
 
         // Remind patient
-        User doctor = userMapper.selectById(apt.getDoctorId());
+        User doctor = users.get(apt.getDoctorId());
         String doctorName = doctor != null ?
                 (doctor.getNickname() != null ? doctor.getNickname() : doctor.getUsername()) : "医生";
 
@@ -99,10 +182,10 @@ public class AppointmentReminderScheduler {
         patientNotif.setContent("您与" + doctorName + "的预约将于" + timeStr + "开始，请提前做好准备。");
         patientNotif.setSourceType("APPOINTMENT");
         patientNotif.setSourceId(apt.getId());
-        notificationService.createNotification(patientNotif);
+        deliveryPipeline.submit(patientNotif, onPersisted);
 
         // Remind doctor
-        User patient = userMapper.selectById(apt.getPatientId());
+        User patient = users.get(apt.getPatientId());
         String patientName = patient != null ?
                 (patient.getNickname() != null ? patient.getNickname() : patient.getUsername()) : "患者";
 
@@ -114,6 +197,13 @@ public class AppointmentReminderScheduler {
         doctorNotif.setContent("患者" + patientName + "的预约将于" + timeStr + "开始。");
         doctorNotif.setSourceType("APPOINTMENT");
         doctorNotif.setSourceId(apt.getId());
-        notificationService.createNotification(doctorNotif);
+        deliveryPipeline.submit(doctorNotif, onPersisted);
+    }
+
+    private void markReminded(Long appointmentId) {
+        appointmentMapper.update(null, new LambdaUpdateWrapper<Appointment>()
+                .eq(Appointment::getId, appointmentId)
+                .and(w -> w.eq(Appointment::getReminderSent, 0).or().isNull(Appointment::getReminderSent))
+                .set(Appointment::getReminderSent, 1));
     }
 }
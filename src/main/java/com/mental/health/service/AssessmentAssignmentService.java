@@ -40,6 +40,7 @@ public class AssessmentAssignmentService {
     @Autowired private AssessmentScaleMapper scaleMapper;
     @Autowired private AssessmentSessionMapper sessionMapper;
     @Autowired private UserNotificationService notificationService;
+    @Autowired private NotificationDeliveryPipeline deliveryPipeline;
     @Autowired private OutboxService outboxService;
 
     // ===== 协议触发 =====
@@ -266,7 +267,7 @@ public class AssessmentAssignmentService {
             cmd.setSourceType("ASSESSMENT_ASSIGNMENT");
             cmd.setSourceId(a.getId());
             try {
-                notificationService.createNotification(cmd);
+                deliveryPipeline.submit(cmd);
             } catch (Exception e) {
                 log.error("发送逾期通知失败: {}", e.getMessage());
             }
@@ -71,6 +71,23 @@ public class AuthService {
      * 用户登录
      */
     public Map<String, Object> login(String username, String password) {
+        return login(username, password, null);
+    }
+
+    /**
+     * 用户登录（带来源 IP，按用户名与 IP 分别限流）
+     */
+    public Map<String, Object> login(String username, String password, String clientIp) {
+        // 检查来源 IP 是否因失败过多被限制
+        if (loginAttemptService.isIpBlocked(clientIp)) {
+            int remaining = loginAttemptService.getRemainingIpBlockTime(clientIp);
+            logger.warn("来源 {} 登录失败过多，已限制 {} 秒", clientIp, remaining);
+            Map<String, Object> blockedResult = new HashMap<>();
+            blockedResult.put("ipBlocked", true);
+            blockedResult.put("lockTime", remaining);
+            return blockedResult;
+        }
+
         // 检查账户是否被锁定
         if (loginAttemptService.isLocked(username)) {
             int remaining = loginAttemptService.getRemainingLockTime(username);
@@ -86,13 +103,13 @@ public class AuthService {
         User user = userMapper.selectOne(queryWrapper);
 
         if (user == null) {
-            loginAttemptService.loginFailed(username);
+            loginAttemptService.loginFailed(username, clientIp);
             logger.warn("登录失败：用户 {} 不存在", username);
             return null;
         }
 
         if (!passwordEncoder.matches(password, user.getPassword())) {
-            loginAttemptService.loginFailed(username);
+            loginAttemptService.loginFailed(username, clientIp);
             int remaining = loginAttemptService.getRemainingAttempts(username);
             logger.warn("登录失败：用户 {} 密码错误，剩余尝试次数 {}", username, remaining);
             return null;
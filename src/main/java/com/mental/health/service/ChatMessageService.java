@@ -4,6 +4,8 @@ import com.alibaba.fastjson2.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.mental.health.common.CursorToken;
+import com.mental.health.dto.CursorPage;
 import com.mental.health.entity.ConsultationSession;
 import com.mental.health.entity.Message;
 import com.mental.health.entity.User;
@@ -16,9 +18,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -27,6 +32,12 @@ import java.util.stream.Collectors;
 @Service
 public class ChatMessageService {
 
+    /** 会话摘要中最后一条消息预览的最大长度，与 last_message_preview 列一致 */
+    private static final int PREVIEW_LENGTH = 200;
+
+    /** 游标分页单页上限 */
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+
     @Autowired
     private MessageMapper messageMapper;
 
@@ -39,51 +50,78 @@ public class ChatMessageService {
     @Autowired
     private OutboxService outboxService;
 
+    @Autowired
+    private UserPresenceService userPresenceService;
+
     /**
      * 获取用户的聊天列表
      */
     public List<Map<String, Object>> getChatList(Long userId, String role) {
-        List<Map<String, Object>> result = new ArrayList<>();
+        List<ConsultationSession> sessions = sessionMapper.selectList(inboxWrapper(userId, role));
+        return toChatInfos(sessions, userId, role);
+    }
+
+    /**
+     * 分页获取收件箱：一次会话分页查询 + 一次批量用户查询，最后消息与未读数直接取会话摘要
+     */
+    public Map<String, Object> getInbox(Long userId, String role, int pageNum, int pageSize) {
+        Page<ConsultationSession> page = sessionMapper.selectPage(
+                new Page<>(pageNum, pageSize), inboxWrapper(userId, role));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", toChatInfos(page.getRecords(), userId, role));
+        result.put("total", page.getTotal());
+        result.put("pageNum", pageNum);
+        result.put("pageSize", pageSize);
+        return result;
+    }
 
-        // 查询用户参与的所有会话
+    private LambdaQueryWrapper<ConsultationSession> inboxWrapper(Long userId, String role) {
         LambdaQueryWrapper<ConsultationSession> wrapper = new LambdaQueryWrapper<>();
         if ("PATIENT".equals(role)) {
             wrapper.eq(ConsultationSession::getPatientId, userId);
         } else if ("DOCTOR".equals(role)) {
             wrapper.eq(ConsultationSession::getDoctorId, userId);
         }
-        wrapper.orderByDesc(ConsultationSession::getUpdateTime);
+        wrapper.orderByDesc(ConsultationSession::getUpdateTime)
+               .orderByDesc(ConsultationSession::getId);
+        return wrapper;
+    }
 
-        List<ConsultationSession> sessions = sessionMapper.selectList(wrapper);
+    private List<Map<String, Object>> toChatInfos(List<ConsultationSession> sessions, Long userId, String role) {
+        boolean patient = "PATIENT".equals(role);
+        Map<Long, User> users = loadUsers(sessions.stream()
+                .map(session -> patient ? session.getDoctorId() : session.getPatientId())
+                .collect(Collectors.toSet()));
+        Map<Long, Boolean> online = userPresenceService.onlineStatus(users.keySet());
 
+        List<Map<String, Object>> result = new ArrayList<>(sessions.size());
         for (ConsultationSession session : sessions) {
             Map<String, Object> chatInfo = new HashMap<>();
             chatInfo.put("sessionId", session.getId());
             chatInfo.put("sessionStatus", session.getSessionStatus());
 
-            // 获取对方用户信息
-            Long targetUserId = "PATIENT".equals(role) ?
-                session.getDoctorId() : session.getPatientId();
-            User targetUser = userMapper.selectById(targetUserId);
-
+            // 对方用户信息
+            User targetUser = users.get(patient ? session.getDoctorId() : session.getPatientId());
             if (targetUser != null) {
                 chatInfo.put("userId", targetUser.getId());
                 chatInfo.put("name", targetUser.getNickname() != null ?
                     targetUser.getNickname() : targetUser.getUsername());
                 chatInfo.put("avatar", targetUser.getAvatar());
-                chatInfo.put("online", false);
+                chatInfo.put("online", online.getOrDefault(targetUser.getId(), false));
             }
 
-            // 获取最后一条消息
-            Message lastMsg = getLastMessage(session.getId());
-            if (lastMsg != null) {
-                chatInfo.put("lastMessage", lastMsg.getContent());
-                chatInfo.put("lastTime", lastMsg.getCreateTime());
+            // 最后一条消息
+            if (session.getLastMessageId() != null) {
+                chatInfo.put("lastMessage", session.getLastMessagePreview());
+                chatInfo.put("lastMessageType", session.getLastMessageType());
+                chatInfo.put("lastTime", session.getLastMessageTime());
             }
 
-            // 获取未读消息数
-            int unreadCount = getUnreadCount(session.getId(), userId);
-            chatInfo.put("unreadCount", unreadCount);
+            // 未读消息数
+            Integer unread = userId.equals(session.getPatientId()) ? session.getPatientUnread()
+                    : userId.equals(session.getDoctorId()) ? session.getDoctorUnread() : null;
+            chatInfo.put("unreadCount", unread != null ? unread : 0);
 
             result.add(chatInfo);
         }
@@ -91,26 +129,13 @@ public class ChatMessageService {
         return result;
     }
 
-    /**
-     * 获取会话的最后一条消息
-     */
-    private Message getLastMessage(Long sessionId) {
-        LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Message::getConsultationId, sessionId)
-               .orderByDesc(Message::getCreateTime)
-               .last("LIMIT 1");
-        return messageMapper.selectOne(wrapper);
-    }
-
-    /**
-     * 获取未读消息数
-     */
-    private int getUnreadCount(Long sessionId, Long userId) {
-        LambdaQueryWrapper<Message> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Message::getConsultationId, sessionId)
-               .eq(Message::getReceiverId, userId)
-               .eq(Message::getIsRead, 0);
-        return Math.toIntExact(messageMapper.selectCount(wrapper));
+    private Map<Long, User> loadUsers(Collection<Long> userIds) {
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return userMapper.selectBatchIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, u -> u, (a, b) -> a));
     }
 
     /**
@@ -125,13 +150,16 @@ public class ChatMessageService {
 
         Page<Message> resultPage = messageMapper.selectPage(page, wrapper);
 
-        // 转换为前端需要的格式
+        // 转换为前端需要的格式（发送者一次批量查询）
+        Map<Long, User> senders = loadUsers(resultPage.getRecords().stream()
+            .map(Message::getSenderId)
+            .collect(Collectors.toSet()));
         List<Map<String, Object>> messages = resultPage.getRecords().stream()
-            .map(msg -> convertMessageToMap(msg, userId))
+            .map(msg -> convertMessageToMap(msg, userId, senders.get(msg.getSenderId())))
             .collect(Collectors.toList());
 
         // 反转顺序，让最新消息在最后
-        java.util.Collections.reverse(messages);
+        Collections.reverse(messages);
 
         Map<String, Object> result = new HashMap<>();
         result.put("records", messages);
@@ -142,10 +170,50 @@ public class ChatMessageService {
         return result;
     }
 
+    /**
+     * 游标分页获取消息历史：after 不为空时取游标之后的新消息，否则取 before 游标之前（为空则最新）的消息。
+     * 键集查询，不做 COUNT，新消息到达时已加载的页不会偏移。
+     */
+    public CursorPage<Map<String, Object>> getMessagesByCursor(Long sessionId, Long userId,
+            String before, String after, int limit) {
+        ConsultationSession session = sessionMapper.selectById(sessionId);
+        if (session == null || !(userId.equals(session.getPatientId()) || userId.equals(session.getDoctorId()))) {
+            throw new RuntimeException("会话不存在");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_CURSOR_PAGE_SIZE));
+
+        CursorPage<Message> page;
+        CursorToken afterToken = CursorToken.decode(after);
+        if (afterToken != null) {
+            page = CursorPage.after(
+                    messageMapper.selectAfter(sessionId, afterToken.time(), afterToken.id(), size + 1),
+                    size, ChatMessageService::cursorOf, after);
+        } else {
+            CursorToken beforeToken = CursorToken.decode(before);
+            page = CursorPage.before(
+                    messageMapper.selectBefore(sessionId, beforeToken != null ? beforeToken.time() : null,
+                            beforeToken != null ? beforeToken.id() : null, size + 1),
+                    size, ChatMessageService::cursorOf);
+        }
+
+        return page.map(records -> {
+            Map<Long, User> senders = loadUsers(records.stream()
+                    .map(Message::getSenderId)
+                    .collect(Collectors.toSet()));
+            return records.stream()
+                    .map(msg -> convertMessageToMap(msg, userId, senders.get(msg.getSenderId())))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    private static String cursorOf(Message msg) {
+        return CursorToken.encode(msg.getCreateTime(), msg.getId());
+    }
+
     /**
      * 转换消息为Map格式
      */
-    private Map<String, Object> convertMessageToMap(Message msg, Long currentUserId) {
+    private Map<String, Object> convertMessageToMap(Message msg, Long currentUserId, User sender) {
         Map<String, Object> map = new HashMap<>();
         map.put("id", msg.getId());
         map.put("content", msg.getContent());
@@ -154,8 +222,7 @@ public class ChatMessageService {
         map.put("isSelf", msg.getSenderId().equals(currentUserId));
         map.put("isRead", msg.getIsRead());
 
-        // 获取发送者信息
-        User sender = userMapper.selectById(msg.getSenderId());
+        // 发送者信息
         if (sender != null) {
             map.put("senderName", sender.getNickname() != null ?
                 sender.getNickname() : sender.getUsername());
@@ -172,6 +239,10 @@ public class ChatMessageService {
     public Map<String, Object> sendMessage(Long sessionId, Long senderId,
             Long receiverId, String content, String type) {
 
+        LocalDateTime now = LocalDateTime.now();
+        // 先更新会话（接收方未读数 + 会话时间），取得会话行锁，与标记已读串行
+        sessionMapper.incrementUnread(sessionId, receiverId, now);
+
         Message message = new Message();
         message.setConsultationId(sessionId);
         message.setSenderId(senderId);
@@ -179,9 +250,11 @@ public class ChatMessageService {
         message.setContent(content);
         message.setMessageType(type != null ? type : "text");
         message.setIsRead(0);
-        message.setCreateTime(LocalDateTime.now());
+        message.setCreateTime(now);
 
         messageMapper.insert(message);
+        sessionMapper.updateLastMessage(sessionId, message.getId(), preview(content),
+                message.getMessageType(), now);
 
         try {
             Map<String, Object> eventPayload = new HashMap<>();
@@ -196,14 +269,18 @@ public class ChatMessageService {
             // outbox failure should not block message sending
         }
 
-        // 更新会话时间
-        ConsultationSession session = sessionMapper.selectById(sessionId);
-        if (session != null) {
-            session.setUpdateTime(LocalDateTime.now());
-            sessionMapper.updateById(session);
-        }
+        return convertMessageToMap(message, senderId, userMapper.selectById(senderId));
+    }
 
-        return convertMessageToMap(message, senderId);
+    private static String preview(String content) {
+        if (content == null) {
+            return null;
+        }
+        if (content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        int end = Character.isHighSurrogate(content.charAt(PREVIEW_LENGTH - 1)) ? PREVIEW_LENGTH - 1 : PREVIEW_LENGTH;
+        return content.substring(0, end);
     }
 
     /**
@@ -211,6 +288,9 @@ public class ChatMessageService {
      */
     @Transactional
     public void markAsRead(Long sessionId, Long userId) {
+        // 先清零会话上的未读数（持有会话行锁），并发发送的新消息会排在其后重新计数
+        sessionMapper.resetUnread(sessionId, userId);
+
         LambdaUpdateWrapper<Message> wrapper = new LambdaUpdateWrapper<>();
         wrapper.eq(Message::getConsultationId, sessionId)
                .eq(Message::getReceiverId, userId)
@@ -0,0 +1,457 @@
+package com.mental.health.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群感知的 WebSocket 用户消息投递
+ *
+ * SimpleBroker 只能投递给连在本 JVM 上的会话。本服务在其上加一层：
+ * - 本节点维护 用户→会话 表，首个会话建立/最后一个会话断开时更新 {@link ClusterTransport} 中的用户→节点路由，并定期续期
+ * - 发送时查路由：本节点有会话则本地投递，其他节点的帧按节点攒批后经传输层中继，对端收到后再本地投递
+ * - 所有投递经过刷新线程按固定间隔成批发出；每个用户待投递帧数有上限，超出时丢弃非关键帧，危机预警等关键帧不丢弃
+ *
+ * 负载先序列化为 JSON 字节，本地与跨节点投递的帧内容一致。
+ */
+@Service
+@DependsOn("userPresenceService") // 停机时先于在线状态服务销毁，本节点路由注销后再判断用户是否已完全离线
+public class ClusterMessagingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMessagingService.class);
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ClusterTransport transport;
+
+    @Value("${websocket.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${websocket.cluster.flush-interval-ms:10}")
+    private long flushIntervalMs;
+
+    @Value("${websocket.cluster.batch-size:200}")
+    private int batchSize;
+
+    @Value("${websocket.cluster.max-pending-per-user:100}")
+    private int maxPendingPerUser;
+
+    @Value("${websocket.cluster.max-pending-per-node:20000}")
+    private int maxPendingPerNode;
+
+    @Value("${websocket.cluster.route-ttl-seconds:90}")
+    private long routeTtlSeconds;
+
+    private String nodeId;
+    private ScheduledExecutorService executor;
+
+    private final Map<Long, Set<String>> localSessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Frame> localQueue = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Integer> pendingByUser = new ConcurrentHashMap<>();
+    private final Map<String, NodeQueue> remoteQueues = new ConcurrentHashMap<>();
+
+    private final AtomicLong deliveredLocal = new AtomicLong();
+    private final AtomicLong relayedFrames = new AtomicLong();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong unreachableFrames = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        nodeId = configuredNodeId != null && !configuredNodeId.isBlank() ? configuredNodeId : defaultNodeId();
+        transport.subscribe(nodeId, this::onRelayBatch);
+        executor = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "ws-cluster-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        long refreshMs = Math.max(1000L, routeTtlSeconds * 1000L / 3);
+        executor.scheduleWithFixedDelay(this::refreshRoutes, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        log.info("WebSocket 集群投递已启动: node={}, transport={}", nodeId, transport.getClass().getSimpleName());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        flush();
+        transport.unsubscribe(nodeId);
+        for (Long userId : localSessions.keySet()) {
+            try {
+                transport.unregister(userId, nodeId);
+            } catch (Exception e) {
+                log.debug("注销用户路由失败: {}", e.getMessage());
+                break;
+            }
+        }
+    }
+
+    // ==================== 会话登记 ====================
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Long userId = userIdOf(event.getUser());
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        if (userId != null && sessionId != null) {
+            sessionOpened(userId, sessionId);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        Long userId = userIdOf(event.getUser());
+        if (userId != null) {
+            sessionClosed(userId, event.getSessionId());
+        }
+    }
+
+    /**
+     * 在线状态清扫掉的会话从路由表移除，清扫后重新心跳的会话重新登记
+     */
+    @EventListener
+    public void onLocalSession(UserPresenceService.LocalSessionEvent event) {
+        if (event.active()) {
+            sessionOpened(event.userId(), event.sessionId());
+        } else {
+            sessionClosed(event.userId(), event.sessionId());
+        }
+    }
+
+    public void sessionOpened(Long userId, String sessionId) {
+        boolean[] first = {false};
+        localSessions.compute(userId, (k, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                first[0] = true;
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+        if (first[0]) {
+            try {
+                transport.register(userId, nodeId);
+            } catch (Exception e) {
+                log.warn("登记用户 {} 路由失败，续期时重试: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    public void sessionClosed(Long userId, String sessionId) {
+        boolean[] last = {false};
+        localSessions.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(sessionId);
+            if (sessions.isEmpty()) {
+                last[0] = true;
+                return null;
+            }
+            return sessions;
+        });
+        if (last[0]) {
+            try {
+                transport.unregister(userId, nodeId);
+            } catch (Exception e) {
+                log.warn("注销用户 {} 路由失败，将随 TTL 过期: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    public boolean hasLocalSession(Long userId) {
+        return localSessions.containsKey(userId);
+    }
+
+    // ==================== 发送 ====================
+
+    public void sendToUser(Long userId, String destination, Object payload) {
+        sendToUsers(List.of(userId), destination, payload, false);
+    }
+
+    public void sendToUser(Long userId, String destination, Object payload, boolean critical) {
+        sendToUsers(List.of(userId), destination, payload, critical);
+    }
+
+    /**
+     * 向一组用户投递同一负载（只序列化一次、只查一次路由）
+     */
+    public void sendToUsers(Collection<Long> userIds, String destination, Object payload, boolean critical) {
+        String json = serialize(payload);
+        Set<Long> targets = new HashSet<>(userIds);
+        targets.remove(null);
+        if (targets.isEmpty()) {
+            return;
+        }
+        for (Long userId : targets) {
+            if (localSessions.containsKey(userId)) {
+                enqueueLocal(new Frame(userId, destination, json, critical));
+            }
+        }
+        Map<Long, Set<String>> routes;
+        try {
+            routes = transport.routes(targets);
+        } catch (Exception e) {
+            log.warn("查询用户路由失败，仅本节点投递: {}", e.getMessage());
+            return;
+        }
+        for (Map.Entry<Long, Set<String>> route : routes.entrySet()) {
+            for (String node : route.getValue()) {
+                if (!nodeId.equals(node)) {
+                    enqueueRemote(node, new Frame(route.getKey(), destination, json, critical));
+                }
+            }
+        }
+    }
+
+    private boolean enqueueLocal(Frame frame) {
+        boolean[] accepted = {true};
+        pendingByUser.compute(frame.userId, (k, pending) -> {
+            int n = pending == null ? 0 : pending;
+            if (!frame.critical && n >= maxPendingPerUser) {
+                accepted[0] = false;
+                return pending;
+            }
+            return n + 1;
+        });
+        if (!accepted[0]) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        localQueue.add(frame);
+        return true;
+    }
+
+    private void enqueueRemote(String node, Frame frame) {
+        NodeQueue queue = remoteQueues.computeIfAbsent(node, NodeQueue::new);
+        if (!frame.critical && queue.size.get() >= maxPendingPerNode) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        queue.size.incrementAndGet();
+        queue.frames.add(frame);
+    }
+
+    // ==================== 刷新与中继 ====================
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("WebSocket 帧刷新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 发出所有待投递帧：本地帧交给 SimpleBroker，远端帧按节点每 batchSize 条发布一次
+     */
+    public synchronized void flush() {
+        Frame frame;
+        while ((frame = localQueue.poll()) != null) {
+            deliverLocal(frame);
+        }
+        for (NodeQueue queue : remoteQueues.values()) {
+            while (!queue.frames.isEmpty()) {
+                List<Frame> chunk = new ArrayList<>(Math.min(batchSize, queue.size.get()));
+                while (chunk.size() < batchSize && (frame = queue.frames.poll()) != null) {
+                    queue.size.decrementAndGet();
+                    chunk.add(frame);
+                }
+                if (!chunk.isEmpty()) {
+                    publish(queue.nodeId, chunk);
+                }
+            }
+        }
+    }
+
+    private void deliverLocal(Frame frame) {
+        try {
+            // 负载已是 JSON，直接构造消息发送；经 convertAndSend 时 byte[] 会被 Jackson 再编码成 base64 字符串
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+            accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + frame.userId + frame.destination,
+                    MessageBuilder.createMessage(frame.payload.getBytes(StandardCharsets.UTF_8),
+                            accessor.getMessageHeaders()));
+            deliveredLocal.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("本地投递失败: user={}, dest={}, {}", frame.userId, frame.destination, e.getMessage());
+        } finally {
+            pendingByUser.computeIfPresent(frame.userId, (k, pending) -> pending <= 1 ? null : pending - 1);
+        }
+    }
+
+    private void publish(String node, List<Frame> chunk) {
+        JSONArray batch = new JSONArray(chunk.size());
+        for (Frame f : chunk) {
+            JSONObject item = new JSONObject();
+            item.put("u", f.userId);
+            item.put("d", f.destination);
+            item.put("p", f.payload);
+            if (f.critical) {
+                item.put("c", true);
+            }
+            batch.add(item);
+        }
+        boolean received;
+        try {
+            received = transport.publish(node, batch.toJSONString());
+        } catch (Exception e) {
+            log.warn("向节点 {} 中继 {} 帧失败: {}", node, chunk.size(), e.getMessage());
+            unreachableFrames.addAndGet(chunk.size());
+            return;
+        }
+        if (received) {
+            publishedBatches.incrementAndGet();
+            relayedFrames.addAndGet(chunk.size());
+            return;
+        }
+        // 目标节点已不在线：清理指向它的陈旧路由
+        unreachableFrames.addAndGet(chunk.size());
+        Set<Long> stale = new HashSet<>();
+        for (Frame f : chunk) {
+            stale.add(f.userId);
+        }
+        for (Long userId : stale) {
+            try {
+                transport.unregister(userId, node);
+            } catch (Exception e) {
+                break;
+            }
+        }
+        log.warn("节点 {} 无订阅者，丢弃 {} 帧并清理 {} 条路由", node, chunk.size(), stale.size());
+        NodeQueue queue = remoteQueues.get(node);
+        if (queue != null && queue.frames.isEmpty()) {
+            remoteQueues.remove(node, queue);
+        }
+    }
+
+    /**
+     * 收到其他节点中继来的一批帧：逐条进入本地队列（同样受每用户上限约束）
+     */
+    void onRelayBatch(String payload) {
+        JSONArray batch = JSON.parseArray(payload);
+        for (int i = 0; i < batch.size(); i++) {
+            JSONObject item = batch.getJSONObject(i);
+            Long userId = item.getLong("u");
+            if (userId == null || !localSessions.containsKey(userId)) {
+                continue;
+            }
+            enqueueLocal(new Frame(userId, item.getString("d"), item.getString("p"),
+                    item.getBooleanValue("c")));
+        }
+    }
+
+    private void refreshRoutes() {
+        if (localSessions.isEmpty()) {
+            return;
+        }
+        try {
+            transport.refresh(new ArrayList<>(localSessions.keySet()), nodeId);
+        } catch (Exception e) {
+            log.warn("续期用户路由失败: {}", e.getMessage());
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("localUsers", localSessions.size());
+        stats.put("pendingLocal", localQueue.size());
+        stats.put("deliveredLocal", deliveredLocal.get());
+        stats.put("relayedFrames", relayedFrames.get());
+        stats.put("publishedBatches", publishedBatches.get());
+        stats.put("droppedFrames", droppedFrames.get());
+        stats.put("unreachableFrames", unreachableFrames.get());
+        return stats;
+    }
+
+    private String serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("消息序列化失败", e);
+        }
+    }
+
+    private static Long userIdOf(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        try {
+            // STOMP 连接的 Principal 名称即用户ID（见 JwtStompChannelInterceptor）
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private record Frame(Long userId, String destination, String payload, boolean critical) {
+    }
+
+    private static final class NodeQueue {
+        final String nodeId;
+        final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+
+        NodeQueue(String nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+}
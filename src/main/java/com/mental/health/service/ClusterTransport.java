@@ -0,0 +1,49 @@
+package com.mental.health.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket 集群投递的底层传输：用户→节点路由表 + 节点间消息中继
+ *
+ * 单机部署使用 {@link InMemoryClusterTransport}；开启 Redis 时使用 {@link RedisClusterTransport}。
+ */
+public interface ClusterTransport {
+
+    /**
+     * 登记用户在某节点上有连接
+     */
+    void register(Long userId, String nodeId);
+
+    /**
+     * 用户在某节点上的连接全部断开
+     */
+    void unregister(Long userId, String nodeId);
+
+    /**
+     * 续期本节点上所有在线用户的路由（路由带过期时间，节点宕机后自动失效）
+     */
+    void refresh(Collection<Long> userIds, String nodeId);
+
+    /**
+     * 批量查询用户所在节点；没有连接的用户不出现在结果中
+     */
+    Map<Long, Set<String>> routes(Collection<Long> userIds);
+
+    /**
+     * 向目标节点发布一批帧；返回目标节点是否在线接收
+     */
+    boolean publish(String nodeId, String batch);
+
+    /**
+     * 订阅发往本节点的帧
+     */
+    void subscribe(String nodeId, Consumer<String> listener);
+
+    /**
+     * 取消订阅（节点关闭时调用）
+     */
+    void unsubscribe(String nodeId);
+}
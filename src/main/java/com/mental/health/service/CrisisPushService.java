@@ -1,21 +1,18 @@
 package com.mental.health.service;
 
-import com.mental.health.dto.UserNotificationDTO;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 @Service
 public class CrisisPushService {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterMessagingService clusterMessagingService;
 
+    /**
+     * 危机预警为关键帧，不受每用户待投递上限限制
+     */
     public void pushCrisisAlert(Long doctorId, Object alertPayload) {
-        messagingTemplate.convertAndSendToUser(
-                doctorId.toString(),
-                "/queue/crisis-alerts",
-                alertPayload
-        );
+        clusterMessagingService.sendToUser(doctorId, "/queue/crisis-alerts", alertPayload, true);
     }
 }
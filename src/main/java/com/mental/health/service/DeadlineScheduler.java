@@ -0,0 +1,279 @@
+package com.mental.health.service;
+
+import com.mental.health.common.TimingWheel;
+import com.mental.health.entity.ScheduledDeadline;
+import com.mental.health.mapper.ScheduledDeadlineMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 到期调度：业务在创建 Offer、锁位、预约、待确认通知时登记到期时间点，到点按秒触发
+ *
+ * - 时间点先写 scheduled_deadline（与业务同一事务），提交后放入内存分层时间轮（秒/分/时三层，覆盖约一天）
+ * - 单线程每秒推进时间轮，到期的交给工作线程：按 (类型, 业务ID, 时间点) 领取成功后发布
+ *   {@link DeadlineDueEvent}，由各业务服务监听处理，处理成功删除记录，失败按间隔重试
+ * - 领取保证多节点只有一个执行；监听方需按业务当前状态判断是否仍需处理
+ * - 低频对账：放回宕机节点未完成的领取，把一天内到期但不在本机时间轮的记录补进来（含重启恢复）
+ */
+@Service
+public class DeadlineScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadlineScheduler.class);
+
+    private static final int RECOVER_BATCH_SIZE = 10000;
+
+    @Autowired
+    private ScheduledDeadlineMapper deadlineMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${deadline.workers:4}")
+    private int workerCount;
+
+    @Value("${deadline.retry-delay-seconds:30}")
+    private long retryDelaySeconds;
+
+    @Value("${deadline.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${deadline.stale-running-seconds:300}")
+    private long staleRunningSeconds;
+
+    /** 秒 × 60、分 × 60、时 × 24 */
+    private final TimingWheel<Deadline> wheel = new TimingWheel<>(epochSecond(LocalDateTime.now()), 60, 60, 24);
+
+    /** 类型:业务ID → 时间轮中的任务，改期时取消旧任务 */
+    private final Map<String, TimingWheel.Entry<Deadline>> armed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger fired = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+
+    /**
+     * 到期时间点
+     */
+    public record Deadline(String type, Long refId, LocalDateTime fireAt) {
+    }
+
+    /**
+     * 到期事件；监听方按 type 过滤
+     */
+    public record DeadlineDueEvent(String type, Long refId, LocalDateTime fireAt) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        AtomicInteger seq = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Math.max(1, workerCount), r -> {
+            Thread t = new Thread(r, "deadline-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deadline-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::tick, 1, 1, TimeUnit.SECONDS);
+        log.info("到期调度已启动: workers={}", workerCount);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 登记或改期；同一 (类型, 业务ID) 只保留最后一次登记
+     */
+    public void schedule(String type, Long refId, LocalDateTime fireAt) {
+        schedule(List.of(new Deadline(type, refId, fireAt)));
+    }
+
+    public void schedule(List<Deadline> deadlines) {
+        if (deadlines.isEmpty()) {
+            return;
+        }
+        List<ScheduledDeadline> rows = new ArrayList<>(deadlines.size());
+        List<Deadline> normalized = new ArrayList<>(deadlines.size());
+        for (Deadline d : deadlines) {
+            // 向上取整到秒：不早于业务上的到期时间触发
+            LocalDateTime at = d.fireAt().getNano() == 0 ? d.fireAt()
+                    : d.fireAt().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+            Deadline deadline = new Deadline(d.type(), d.refId(), at);
+            normalized.add(deadline);
+            ScheduledDeadline row = new ScheduledDeadline();
+            row.setTaskType(d.type());
+            row.setRefId(d.refId());
+            row.setFireAt(at);
+            rows.add(row);
+        }
+        deadlineMapper.upsertBatch(rows);
+        afterCommit(() -> normalized.forEach(this::arm));
+    }
+
+    /**
+     * 业务已提前结束（接受、拒绝、确认等），撤销时间点
+     */
+    public void cancel(String type, Long refId) {
+        deadlineMapper.deleteByRef(type, refId);
+        afterCommit(() -> disarm(key(type, refId)));
+    }
+
+    /**
+     * 低频对账，启动后立即执行一次以恢复重启前登记的时间点
+     */
+    @Scheduled(fixedDelayString = "${deadline.reconcile-interval-ms:600000}", initialDelay = 0)
+    public void reconcile() {
+        try {
+            int reset = deadlineMapper.resetStale(LocalDateTime.now().minusSeconds(staleRunningSeconds));
+            LocalDateTime horizon = LocalDateTime.now().plusHours(23);
+            int loaded = 0;
+            for (ScheduledDeadline row : deadlineMapper.findPendingBefore(horizon, RECOVER_BATCH_SIZE)) {
+                TimingWheel.Entry<Deadline> entry = armed.get(key(row.getTaskType(), row.getRefId()));
+                if (entry == null || !entry.value().fireAt().equals(row.getFireAt())) {
+                    arm(new Deadline(row.getTaskType(), row.getRefId(), row.getFireAt()));
+                    loaded++;
+                }
+            }
+            if (reset > 0 || loaded > 0) {
+                log.info("到期调度对账: 放回超时领取 {} 条, 补入时间轮 {} 条", reset, loaded);
+            }
+        } catch (Exception e) {
+            log.error("到期调度对账失败: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        synchronized (wheel) {
+            return Map.of("armed", armed.size(), "wheelSize", wheel.size(),
+                    "fired", fired.get(), "failed", failed.get());
+        }
+    }
+
+    void tick() {
+        try {
+            List<TimingWheel.Entry<Deadline>> due;
+            synchronized (wheel) {
+                due = wheel.advance(epochSecond(LocalDateTime.now()));
+                for (TimingWheel.Entry<Deadline> e : due) {
+                    armed.remove(key(e.value().type(), e.value().refId()), e);
+                }
+            }
+            for (TimingWheel.Entry<Deadline> e : due) {
+                workers.execute(() -> fire(e.value()));
+            }
+        } catch (Exception e) {
+            log.error("推进时间轮失败: {}", e.getMessage(), e);
+        }
+    }
+
+    void fire(Deadline d) {
+        try {
+            if (deadlineMapper.claim(d.type(), d.refId(), d.fireAt()) == 0) {
+                return; // 已撤销、改期或被其他节点领取
+            }
+        } catch (Exception e) {
+            log.warn("领取到期任务失败 {}#{}: {}", d.type(), d.refId(), e.getMessage());
+            return; // 记录仍为 PENDING，由对账补回
+        }
+        try {
+            eventPublisher.publishEvent(new DeadlineDueEvent(d.type(), d.refId(), d.fireAt()));
+            deadlineMapper.deleteClaimed(d.type(), d.refId(), d.fireAt());
+            fired.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            LocalDateTime retryAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).plusSeconds(retryDelaySeconds);
+            String error = e.getMessage() != null && e.getMessage().length() > 500
+                    ? e.getMessage().substring(0, 500) : e.getMessage();
+            log.error("到期任务执行失败 {}#{}: {}", d.type(), d.refId(), error);
+            try {
+                deadlineMapper.fail(d.type(), d.refId(), d.fireAt(), retryAt, maxAttempts, error);
+                arm(new Deadline(d.type(), d.refId(), retryAt));
+            } catch (Exception ex) {
+                log.warn("记录到期任务失败状态失败 {}#{}: {}", d.type(), d.refId(), ex.getMessage());
+            }
+        }
+    }
+
+    private void arm(Deadline d) {
+        String key = key(d.type(), d.refId());
+        synchronized (wheel) {
+            TimingWheel.Entry<Deadline> previous = armed.remove(key);
+            if (previous != null) {
+                previous.cancel();
+            }
+            // 超出一圈的留在表里，临近时由对账放入
+            TimingWheel.Entry<Deadline> entry = wheel.add(d, epochSecond(d.fireAt()));
+            if (entry != null) {
+                armed.put(key, entry);
+            }
+        }
+    }
+
+    private void disarm(String key) {
+        synchronized (wheel) {
+            TimingWheel.Entry<Deadline> entry = armed.remove(key);
+            if (entry != null) {
+                entry.cancel();
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static String key(String type, Long refId) {
+        return type + ":" + refId;
+    }
+
+    private static long epochSecond(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+}
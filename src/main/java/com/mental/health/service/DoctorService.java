@@ -42,15 +42,11 @@ public class DoctorService {
     /**
      * Get doctor's dashboard statistics
      */
-    public Map<String, Object> getDashboardStatistics(String username) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public Map<String, Object> getDashboardStatistics(Long doctorId) {
+        if (doctorId == null) {
             return new HashMap<>();
         }
 
-        Long doctorId = doctor.getId();
         Map<String, Object> stats = new HashMap<>();
 
         // Total patients count (from patient_doctor_relationship table)
@@ -98,16 +94,11 @@ public class DoctorService {
     /**
      * Get doctor's patients with pagination
      */
-    public Map<String, Object> getPatients(String username, int pageNum, int pageSize, String keyword) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public Map<String, Object> getPatients(Long doctorId, int pageNum, int pageSize, String keyword) {
+        if (doctorId == null) {
             return new HashMap<>();
         }
 
-        Long doctorId = doctor.getId();
-
         // Get patients from relationship table
         List<Map<String, Object>> allPatients = patientDoctorRelationshipService.getDoctorPatients(doctorId);
 
@@ -164,16 +155,11 @@ public class DoctorService {
     /**
      * Get patient detail
      */
-    public Map<String, Object> getPatientDetail(String username, Long patientId) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public Map<String, Object> getPatientDetail(Long doctorId, Long patientId) {
+        if (doctorId == null) {
             return null;
         }
 
-        Long doctorId = doctor.getId();
-
         // Verify doctor has access to this patient (through patient_doctor_relationship)
         if (!patientDoctorRelationshipService.hasRelationship(doctorId, patientId)) {
             return null; // No permission
@@ -217,16 +203,11 @@ public class DoctorService {
     /**
      * Get doctor's assessment reports
      */
-    public Map<String, Object> getReports(String username, int pageNum, int pageSize, Long patientId) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public Map<String, Object> getReports(Long doctorId, int pageNum, int pageSize, Long patientId) {
+        if (doctorId == null) {
             return new HashMap<>();
         }
 
-        Long doctorId = doctor.getId();
-
         Page<AssessmentReport> page = new Page<>(pageNum, pageSize);
         LambdaQueryWrapper<AssessmentReport> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(AssessmentReport::getDoctorId, doctorId);
@@ -272,16 +253,13 @@ public class DoctorService {
     /**
      * Get report detail
      */
-    public AssessmentReport getReportDetail(String username, Long reportId) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public AssessmentReport getReportDetail(Long doctorId, Long reportId) {
+        if (doctorId == null) {
             return null;
         }
 
         AssessmentReport report = assessmentReportMapper.selectById(reportId);
-        if (report == null || !report.getDoctorId().equals(doctor.getId())) {
+        if (report == null || !report.getDoctorId().equals(doctorId)) {
             return null; // No permission
         }
 
@@ -292,15 +270,12 @@ public class DoctorService {
      * Create assessment report
      */
     @Transactional
-    public boolean createReport(String username, AssessmentReport report) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public boolean createReport(Long doctorId, AssessmentReport report) {
+        if (doctorId == null) {
             return false;
         }
 
-        report.setDoctorId(doctor.getId());
+        report.setDoctorId(doctorId);
         // Note: userId should be set from the controller's patientId parameter
         return assessmentReportMapper.insert(report) > 0;
     }
@@ -309,16 +284,13 @@ public class DoctorService {
      * Update assessment report
      */
     @Transactional
-    public boolean updateReport(String username, AssessmentReport report) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public boolean updateReport(Long doctorId, AssessmentReport report) {
+        if (doctorId == null) {
             return false;
         }
 
         AssessmentReport existing = assessmentReportMapper.selectById(report.getId());
-        if (existing == null || !existing.getDoctorId().equals(doctor.getId())) {
+        if (existing == null || !existing.getDoctorId().equals(doctorId)) {
             return false; // No permission
         }
 
@@ -329,16 +301,13 @@ public class DoctorService {
      * Delete assessment report
      */
     @Transactional
-    public boolean deleteReport(String username, Long reportId) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public boolean deleteReport(Long doctorId, Long reportId) {
+        if (doctorId == null) {
             return false;
         }
 
         AssessmentReport report = assessmentReportMapper.selectById(reportId);
-        if (report == null || !report.getDoctorId().equals(doctor.getId())) {
+        if (report == null || !report.getDoctorId().equals(doctorId)) {
             return false; // No permission
         }
 
@@ -348,16 +317,11 @@ public class DoctorService {
     /**
      * Get doctor's appointments
      */
-    public Map<String, Object> getAppointments(String username, int pageNum, int pageSize, Integer status) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public Map<String, Object> getAppointments(Long doctorId, int pageNum, int pageSize, Integer status) {
+        if (doctorId == null) {
             return new HashMap<>();
         }
 
-        Long doctorId = doctor.getId();
-
         Page<Appointment> page = new Page<>(pageNum, pageSize);
         LambdaQueryWrapper<Appointment> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(Appointment::getDoctorId, doctorId);
@@ -404,16 +368,11 @@ public class DoctorService {
     /**
      * Get recent appointments for dashboard
      */
-    public List<Map<String, Object>> getRecentAppointments(String username) {
-        User doctor = userMapper.selectOne(new LambdaQueryWrapper<User>()
-                .eq(User::getUsername, username));
-
-        if (doctor == null) {
+    public List<Map<String, Object>> getRecentAppointments(Long doctorId) {
+        if (doctorId == null) {
             return List.of();
         }
 
-        Long doctorId = doctor.getId();
-
         LambdaQueryWrapper<Appointment> wrapper = new LambdaQueryWrapper<>();
         wrapper.eq(Appointment::getDoctorId, doctorId);
         wrapper.orderByDesc(Appointment::getAppointmentTime);
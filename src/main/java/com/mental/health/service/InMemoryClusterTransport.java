@@ -0,0 +1,70 @@
+package com.mental.health.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的集群传输：单机部署时的默认实现，也用于在一个 JVM 内模拟多节点（测试）
+ *
+ * 发布直接在调用线程上交给目标节点的订阅者。
+ */
+public class InMemoryClusterTransport implements ClusterTransport {
+
+    private final Map<Long, Set<String>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<String>> subscribers = new ConcurrentHashMap<>();
+
+    @Override
+    public void register(Long userId, String nodeId) {
+        routes.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(nodeId);
+    }
+
+    @Override
+    public void unregister(Long userId, String nodeId) {
+        routes.computeIfPresent(userId, (k, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public void refresh(Collection<Long> userIds, String nodeId) {
+        // 进程内路由不会过期
+    }
+
+    @Override
+    public Map<Long, Set<String>> routes(Collection<Long> userIds) {
+        Map<Long, Set<String>> result = new HashMap<>();
+        for (Long userId : userIds) {
+            Set<String> nodes = routes.get(userId);
+            if (nodes != null && !nodes.isEmpty()) {
+                result.put(userId, Collections.unmodifiableSet(nodes));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean publish(String nodeId, String batch) {
+        Consumer<String> listener = subscribers.get(nodeId);
+        if (listener == null) {
+            return false;
+        }
+        listener.accept(batch);
+        return true;
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<String> listener) {
+        subscribers.put(nodeId, listener);
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        subscribers.remove(nodeId);
+    }
+}
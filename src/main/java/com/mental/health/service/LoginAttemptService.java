@@ -1,83 +1,309 @@
 package com.mental.health.service;
 
+import com.mental.health.algorithm.SlidingWindowCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import jakarta.annotation.PostConstruct;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 登录尝试限制服务
- * 防止暴力破解密码
+ * 防止暴力破解密码与撞库
+ *
+ * - 按用户名（user:）与来源 IP（ip:）两个键前缀分别限流，各自有独立的窗口、阈值与锁定时长
+ * - 滑动窗口计数，计数与锁定判定原子完成；锁定到期后重新计数
+ * - 开启 spring.data.redis.enabled 时计数放在 Redis（Lua 脚本，键自动过期），多节点共享；
+ *   Redis 不可用时回退到本机计数
+ * - 本机计数为定长表，海量不同用户名只会淘汰最久未活动的键，内存上限固定
  */
 @Service
 public class LoginAttemptService {
 
+    private static final Logger log = LoggerFactory.getLogger(LoginAttemptService.class);
+
+    static final String USER_PREFIX = "user:";
+    static final String IP_PREFIX = "ip:";
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final long FALLBACK_LOG_INTERVAL_MS = 60_000L;
+
+    /**
+     * KEYS[1] 计数哈希，KEYS[2] 锁定键；ARGV 窗口毫秒、阈值、锁定毫秒。返回估计次数 × 1000。
+     * 以 Redis 服务器时间为准，避免各节点时钟不一致；触发锁定时清空计数，锁定到期后重新计数。
+     */
+    private static final DefaultRedisScript<Long> HIT_SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local window = tonumber(ARGV[1])
+            local limit = tonumber(ARGV[2])
+            local lockMs = tonumber(ARGV[3])
+            local v = redis.call('HMGET', KEYS[1], 's', 'c', 'p')
+            local start = tonumber(v[1]) or now
+            local cur = tonumber(v[2]) or 0
+            local prev = tonumber(v[3]) or 0
+            local elapsed = now - start
+            if elapsed >= window then
+              if elapsed < 2 * window then prev = cur else prev = 0 end
+              cur = 0
+              start = now - (elapsed % window)
+            end
+            cur = cur + 1
+            local weight = 1 - (now - start) / window
+            if weight < 0 then weight = 0 end
+            local est = prev * weight + cur
+            if est >= limit and lockMs > 0 then
+              redis.call('SET', KEYS[2], '1', 'PX', lockMs)
+              redis.call('DEL', KEYS[1])
+            else
+              redis.call('HSET', KEYS[1], 's', start, 'c', cur, 'p', prev)
+              redis.call('PEXPIRE', KEYS[1], 2 * window)
+            end
+            return math.floor(est * 1000)
+            """, Long.class);
+
+    private static final DefaultRedisScript<Long> ESTIMATE_SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local window = tonumber(ARGV[1])
+            local v = redis.call('HMGET', KEYS[1], 's', 'c', 'p')
+            if not v[1] then return 0 end
+            local start = tonumber(v[1])
+            local cur = tonumber(v[2]) or 0
+            local prev = tonumber(v[3]) or 0
+            local elapsed = now - start
+            if elapsed >= 2 * window then return 0 end
+            if elapsed >= window then
+              prev = cur
+              cur = 0
+              start = now - (elapsed % window)
+            end
+            local weight = 1 - (now - start) / window
+            if weight < 0 then weight = 0 end
+            return math.floor((prev * weight + cur) * 1000)
+            """, Long.class);
+
     @Value("${security.login.max-attempts:5}")
     private int maxAttempts;
 
     @Value("${security.login.lock-duration:300}")
     private int lockDurationSeconds;
 
-    private final Map<String, Integer> attemptsCache = new ConcurrentHashMap<>();
-    private final Map<String, Long> lockCache = new ConcurrentHashMap<>();
+    @Value("${security.login.window-seconds:900}")
+    private int windowSeconds;
+
+    @Value("${security.login.ip-max-attempts:50}")
+    private int ipMaxAttempts;
+
+    @Value("${security.login.ip-window-seconds:600}")
+    private int ipWindowSeconds;
+
+    @Value("${security.login.ip-lock-duration:900}")
+    private int ipLockDurationSeconds;
+
+    @Value("${security.login.max-tracked-keys:131072}")
+    private int maxTrackedKeys;
+
+    @Value("${security.login.redis-key-prefix:login:limit:}")
+    private String redisKeyPrefix;
+
+    @Value("${spring.data.redis.enabled:false}")
+    private boolean redisEnabled;
+
+    @Autowired(required = false)
+    private StringRedisTemplate redisTemplate;
+
+    private Policy userPolicy;
+    private Policy ipPolicy;
+    private volatile long lastFallbackLog;
+
+    @PostConstruct
+    public void init() {
+        userPolicy = new Policy(USER_PREFIX, windowSeconds, maxAttempts, lockDurationSeconds, maxTrackedKeys);
+        ipPolicy = new Policy(IP_PREFIX, ipWindowSeconds, ipMaxAttempts, ipLockDurationSeconds, maxTrackedKeys);
+        if (redisEnabled && redisTemplate != null) {
+            log.info("登录限流使用 Redis 计数，键前缀 {}", redisKeyPrefix);
+        }
+    }
 
     /**
      * 登录失败时调用
      */
     public void loginFailed(String username) {
-        int attempts = attemptsCache.getOrDefault(username, 0) + 1;
-        attemptsCache.put(username, attempts);
+        loginFailed(username, null);
+    }
 
-        if (attempts >= maxAttempts) {
-            lockCache.put(username, System.currentTimeMillis());
+    /**
+     * 登录失败时调用，同时计入用户名与来源 IP
+     */
+    public void loginFailed(String username, String ip) {
+        String user = normalizeUsername(username);
+        if (user != null) {
+            hit(userPolicy, user);
+        }
+        String addr = normalize(ip);
+        if (addr != null) {
+            hit(ipPolicy, addr);
         }
     }
 
     /**
-     * 登录成功时调用，清除记录
+     * 登录成功时调用，清除该用户名的记录（IP 计数不清除，避免用一个可登录账号洗白撞库来源）
      */
     public void loginSucceeded(String username) {
-        attemptsCache.remove(username);
-        lockCache.remove(username);
+        String user = normalizeUsername(username);
+        if (user == null) {
+            return;
+        }
+        if (useRedis()) {
+            try {
+                redisTemplate.delete(List.of(redisKey(userPolicy, user), lockKey(userPolicy, user)));
+            } catch (Exception e) {
+                fallback(e);
+            }
+        }
+        userPolicy.local.reset(userPolicy.prefix + user);
     }
 
     /**
      * 检查账户是否被锁定
      */
     public boolean isLocked(String username) {
-        Long lockTime = lockCache.get(username);
-        if (lockTime == null) {
-            return false;
-        }
-
-        long elapsed = (System.currentTimeMillis() - lockTime) / 1000;
-        if (elapsed >= lockDurationSeconds) {
-            // 锁定时间已过，解锁
-            lockCache.remove(username);
-            attemptsCache.remove(username);
-            return false;
-        }
-        return true;
+        return getRemainingLockTime(username) > 0;
     }
 
     /**
      * 获取剩余锁定时间（秒）
      */
     public int getRemainingLockTime(String username) {
-        Long lockTime = lockCache.get(username);
-        if (lockTime == null) {
-            return 0;
-        }
-        long elapsed = (System.currentTimeMillis() - lockTime) / 1000;
-        return Math.max(0, lockDurationSeconds - (int) elapsed);
+        String user = normalizeUsername(username);
+        return user == null ? 0 : lockSeconds(userPolicy, user);
+    }
+
+    /**
+     * 来源 IP 是否因失败过多被限制
+     */
+    public boolean isIpBlocked(String ip) {
+        return getRemainingIpBlockTime(ip) > 0;
+    }
+
+    /**
+     * 来源 IP 剩余限制时间（秒）
+     */
+    public int getRemainingIpBlockTime(String ip) {
+        String addr = normalize(ip);
+        return addr == null ? 0 : lockSeconds(ipPolicy, addr);
     }
 
     /**
      * 获取剩余尝试次数
      */
     public int getRemainingAttempts(String username) {
-        int attempts = attemptsCache.getOrDefault(username, 0);
-        return Math.max(0, maxAttempts - attempts);
+        String user = normalizeUsername(username);
+        if (user == null) {
+            return maxAttempts;
+        }
+        double used = userPolicy.local.estimate(userPolicy.prefix + user, System.currentTimeMillis());
+        if (useRedis()) {
+            try {
+                Long scaled = redisTemplate.execute(ESTIMATE_SCRIPT, List.of(redisKey(userPolicy, user)),
+                        String.valueOf(userPolicy.windowMillis));
+                used = Math.max(used, scaled == null ? 0d : scaled / 1000d);
+            } catch (Exception e) {
+                fallback(e);
+            }
+        }
+        return Math.max(0, maxAttempts - (int) Math.ceil(used));
+    }
+
+    private void hit(Policy policy, String id) {
+        if (useRedis()) {
+            try {
+                redisTemplate.execute(HIT_SCRIPT, List.of(redisKey(policy, id), lockKey(policy, id)),
+                        String.valueOf(policy.windowMillis), String.valueOf(policy.limit),
+                        String.valueOf(policy.lockMillis));
+                return;
+            } catch (Exception e) {
+                fallback(e);
+            }
+        }
+        policy.local.hit(policy.prefix + id, System.currentTimeMillis());
+    }
+
+    private int lockSeconds(Policy policy, String id) {
+        long remainingMillis = 0L;
+        if (useRedis()) {
+            try {
+                Long ttl = redisTemplate.getExpire(lockKey(policy, id), TimeUnit.MILLISECONDS);
+                remainingMillis = ttl != null && ttl > 0 ? ttl : 0L;
+            } catch (Exception e) {
+                fallback(e);
+            }
+        }
+        // 回退期间在本机产生的锁定也要生效
+        remainingMillis = Math.max(remainingMillis,
+                policy.local.lockRemaining(policy.prefix + id, System.currentTimeMillis()));
+        return (int) ((remainingMillis + 999) / 1000);
+    }
+
+    private boolean useRedis() {
+        return redisEnabled && redisTemplate != null;
+    }
+
+    private void fallback(Exception e) {
+        long now = System.currentTimeMillis();
+        if (now - lastFallbackLog > FALLBACK_LOG_INTERVAL_MS) {
+            lastFallbackLog = now;
+            log.warn("登录限流 Redis 不可用，暂用本机计数: {}", e.getMessage());
+        }
+    }
+
+    private String redisKey(Policy policy, String id) {
+        return redisKeyPrefix + policy.prefix + id;
+    }
+
+    private String lockKey(Policy policy, String id) {
+        return redisKeyPrefix + policy.prefix + id + ":lock";
+    }
+
+    /**
+     * 用户名大小写不敏感（与数据库默认排序规则一致），超长部分截断，避免攻击者用超长键放大存储
+     */
+    private static String normalizeUsername(String username) {
+        String value = normalize(username);
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        return trimmed.length() > MAX_KEY_LENGTH ? trimmed.substring(0, MAX_KEY_LENGTH) : trimmed;
+    }
+
+    private static final class Policy {
+        final String prefix;
+        final long windowMillis;
+        final int limit;
+        final long lockMillis;
+        final SlidingWindowCounter local;
+
+        Policy(String prefix, int windowSeconds, int limit, int lockSeconds, int capacity) {
+            this.prefix = prefix;
+            this.windowMillis = Math.max(1, windowSeconds) * 1000L;
+            this.limit = Math.max(1, limit);
+            this.lockMillis = Math.max(0, lockSeconds) * 1000L;
+            this.local = new SlidingWindowCounter(capacity, windowMillis, this.limit, lockMillis);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package com.mental.health.service;
 
+import com.alibaba.fastjson2.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +26,9 @@ public class MeditationService {
     @Autowired
     private MeditationSessionMapper sessionMapper;
 
+    @Autowired
+    private OutboxService outboxService;
+
     public List<MeditationExercise> getExercises() {
         return exerciseMapper.findAllActive();
     }
@@ -59,6 +64,14 @@ public class MeditationService {
         session.setCompletedAt(LocalDateTime.now());
         session.setActualSeconds(actualSeconds != null ? actualSeconds : 0);
         sessionMapper.updateById(session);
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("sessionId", session.getId());
+        payload.put("userId", userId);
+        payload.put("actualSeconds", session.getActualSeconds());
+        payload.put("startedAt", session.getStartedAt());
+        outboxService.append("MEDITATION_SESSION", session.getId(), "MEDITATION_COMPLETED",
+                "MEDITATION_COMPLETED:" + session.getId(), JSON.toJSONString(payload));
     }
 
     public IPage<MeditationSession> getHistory(Long userId, int pageNum, int pageSize) {
@@ -10,6 +10,8 @@ import com.mental.health.mapper.WeatherConfigMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -31,6 +33,9 @@ public class MoodDiaryService {
     @Autowired
     private OutboxService outboxService;
 
+    @Autowired
+    private MoodTrendWindowService trendWindowService;
+
     /**
      * 添加日记
      */
@@ -74,6 +79,10 @@ public class MoodDiaryService {
         diary.setInteractionCount(JSON.toJSONString(interactions));
 
         moodDiaryMapper.insert(diary);
+        // 先于 outbox 的提交后通知登记，风险评估读取趋势窗口时已包含本条日记
+        afterCommit(() -> trendWindowService.recordDiary(diary.getUserId(),
+                diary.getCreateTime() != null ? diary.getCreateTime() : LocalDateTime.now(),
+                diary.getMoodScore(), diary.getSleepQuality(), diary.getStressLevel()));
 
         try {
             Map<String, Object> payload = new HashMap<>();
@@ -83,6 +92,8 @@ public class MoodDiaryService {
             payload.put("moodScore", diary.getMoodScore());
             payload.put("sleepQuality", diary.getSleepQuality());
             payload.put("stressLevel", diary.getStressLevel());
+            payload.put("energyLevel", diary.getEnergyLevel());
+            payload.put("createTime", diary.getCreateTime() != null ? diary.getCreateTime() : LocalDateTime.now());
             outboxService.append("MOOD_DIARY", diary.getId(), "DIARY_CREATED",
                     "DIARY_CREATED:" + diary.getId(), JSON.toJSONString(payload));
         } catch (Exception e) {
@@ -175,4 +186,17 @@ public class MoodDiaryService {
                 .last("LIMIT " + limit);
         return moodDiaryMapper.selectList(wrapper);
     }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
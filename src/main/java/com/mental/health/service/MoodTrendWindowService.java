@@ -0,0 +1,289 @@
+package com.mental.health.service;
+
+import com.mental.health.mapper.MoodDiaryMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户心情趋势滚动窗口
+ *
+ * 每个用户一个固定长度的按天环形桶（心情/睡眠/压力的计数与和，全部为基本类型数组），
+ * 日记创建时 O(1) 累加，趋势规则读取近 N 天均值时只遍历 N 个桶，不访问数据库。
+ * 用户表按ID分段，每段是访问顺序的 LRU，总容量有上限；未命中时从 mood_diary 按天聚合加载一次。
+ *
+ * 窗口按自然日计算：近 3 天 = 今天及前 2 天。
+ */
+@Service
+public class MoodTrendWindowService {
+
+    private static final Logger log = LoggerFactory.getLogger(MoodTrendWindowService.class);
+
+    public static final int MOOD = 0;
+    public static final int SLEEP = 1;
+    public static final int STRESS = 2;
+    private static final int METRICS = 3;
+
+    private static final int STRIPES = 32;
+    private static final String[] COUNT_COLUMNS = {"moodCount", "sleepCount", "stressCount"};
+    private static final String[] SUM_COLUMNS = {"moodSum", "sleepSum", "stressSum"};
+
+    @Autowired
+    private MoodDiaryMapper moodDiaryMapper;
+
+    private final int windowDays;
+    private final long maxAgeMillis;
+    private final boolean warmUpEnabled;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public MoodTrendWindowService(@Value("${risk.trend.window-days:7}") int windowDays,
+                                  @Value("${risk.trend.max-users:50000}") int maxUsers,
+                                  @Value("${risk.trend.max-age-minutes:360}") long maxAgeMinutes,
+                                  @Value("${risk.trend.warm-up:true}") boolean warmUpEnabled) {
+        this.windowDays = Math.max(1, windowDays);
+        this.maxAgeMillis = maxAgeMinutes * 60_000L;
+        this.warmUpEnabled = warmUpEnabled;
+        int perStripe = Math.max(1, maxUsers / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * 日记提交后调用。只更新已在内存中的用户；未加载的用户下次读取时从数据库加载，已包含这条日记。
+     * 无论是否命中都递增分段版本号，让同时进行中的加载放弃缓存结果。
+     */
+    public void recordDiary(Long userId, LocalDateTime createTime, Integer mood, Integer sleep, Integer stress) {
+        if (userId == null) {
+            return;
+        }
+        int day = (int) (createTime != null ? createTime.toLocalDate() : LocalDate.now()).toEpochDay();
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            stripe.epoch++;
+            UserWindow window = stripe.users.get(userId);
+            if (window == null) {
+                return;
+            }
+            window.add(day, MOOD, mood);
+            window.add(day, SLEEP, sleep);
+            window.add(day, STRESS, stress);
+        }
+    }
+
+    /**
+     * 近 days 天某指标均值；无数据返回 null。days 超出窗口长度时回退到数据库查询。
+     */
+    public Double average(Long userId, int metric, int days) {
+        if (userId == null) {
+            return null;
+        }
+        if (days > windowDays) {
+            return switch (metric) {
+                case MOOD -> moodDiaryMapper.avgMoodScore(userId, days);
+                case SLEEP -> moodDiaryMapper.avgSleepQuality(userId, days);
+                default -> moodDiaryMapper.avgStressLevel(userId, days);
+            };
+        }
+        int today = (int) LocalDate.now().toEpochDay();
+        Stripe stripe = stripeOf(userId);
+        long epochAtStart;
+        synchronized (stripe) {
+            UserWindow window = stripe.users.get(userId);
+            if (window != null && !window.isExpired(System.currentTimeMillis(), maxAgeMillis)) {
+                return window.average(today, metric, days);
+            }
+            epochAtStart = stripe.epoch;
+        }
+        UserWindow loaded = load(userId, today);
+        synchronized (stripe) {
+            UserWindow window = stripe.users.get(userId);
+            if (window != null && !window.isExpired(System.currentTimeMillis(), maxAgeMillis)) {
+                return window.average(today, metric, days);
+            }
+            // 加载期间本段有日记写入：查询结果可能不含该日记，本次只用不缓存，下次读取重新加载
+            if (stripe.epoch == epochAtStart) {
+                stripe.users.put(userId, loaded);
+            }
+            return loaded.average(today, metric, days);
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                total += stripe.users.size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 启动预热：一次流式扫描载入窗口期内写过日记的用户，直到容量上限。
+     * 扫描开始前记下各分段版本号，扫描期间所在分段有日记写入的用户不放入，留给按需加载。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmUpEnabled) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int today = (int) LocalDate.now().toEpochDay();
+            LocalDateTime since = LocalDate.ofEpochDay(today - windowDays + 1L).atStartOfDay();
+            long[] epochs = new long[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                synchronized (stripes[i]) {
+                    epochs[i] = stripes[i].epoch;
+                }
+            }
+            long[] currentUser = {Long.MIN_VALUE};
+            UserWindow[] current = {null};
+            int[] loaded = {0};
+            moodDiaryMapper.streamDailyTrendStats(since, ctx -> {
+                Map<String, Object> row = ctx.getResultObject();
+                long userId = ((Number) row.get("userId")).longValue();
+                if (userId != currentUser[0]) {
+                    if (current[0] != null) {
+                        loaded[0] += putIfRoom(currentUser[0], current[0], epochs);
+                    }
+                    currentUser[0] = userId;
+                    current[0] = new UserWindow(windowDays);
+                }
+                current[0].addAggregate(row);
+            });
+            if (current[0] != null) {
+                loaded[0] += putIfRoom(currentUser[0], current[0], epochs);
+            }
+            log.info("趋势窗口预热完成: 用户{}个, 耗时{}ms", loaded[0], System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("趋势窗口预热失败，改为按需加载: {}", e.getMessage());
+        }
+    }
+
+    private int putIfRoom(long userId, UserWindow window, long[] epochs) {
+        Stripe stripe = stripeOf(userId);
+        synchronized (stripe) {
+            if (stripe.epoch != epochs[stripeIndex(userId)]
+                    || stripe.users.size() >= stripe.capacity || stripe.users.containsKey(userId)) {
+                return 0;
+            }
+            stripe.users.put(userId, window);
+            return 1;
+        }
+    }
+
+    private UserWindow load(Long userId, int today) {
+        UserWindow window = new UserWindow(windowDays);
+        LocalDateTime since = LocalDate.ofEpochDay(today - windowDays + 1L).atStartOfDay();
+        List<Map<String, Object>> rows = moodDiaryMapper.dailyTrendStats(userId, since);
+        for (Map<String, Object> row : rows) {
+            window.addAggregate(row);
+        }
+        return window;
+    }
+
+    private Stripe stripeOf(Long userId) {
+        return stripes[stripeIndex(userId)];
+    }
+
+    private static int stripeIndex(long userId) {
+        return (int) ((userId ^ (userId >>> 32)) & (STRIPES - 1));
+    }
+
+    private static final class Stripe {
+        final int capacity;
+        final LinkedHashMap<Long, UserWindow> users;
+        /** 每次日记写入或失效递增，加载期间有变化则加载结果不缓存；受分段锁保护 */
+        long epoch;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.users = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserWindow> eldest) {
+                    return size() > Stripe.this.capacity;
+                }
+            };
+        }
+    }
+
+    /**
+     * 单个用户的环形日桶：槽位 = epochDay mod 窗口天数，槽位记录所属日期，过期槽位写入时清零
+     */
+    private static final class UserWindow {
+        final int[] days;
+        final int[] counts;
+        final long[] sums;
+        final long loadedAt = System.currentTimeMillis();
+
+        UserWindow(int windowDays) {
+            days = new int[windowDays];
+            Arrays.fill(days, Integer.MIN_VALUE);
+            counts = new int[windowDays * METRICS];
+            sums = new long[windowDays * METRICS];
+        }
+
+        boolean isExpired(long now, long maxAgeMillis) {
+            return maxAgeMillis > 0 && now - loadedAt > maxAgeMillis;
+        }
+
+        void add(int day, int metric, Integer value) {
+            if (value != null) {
+                addAll(day, metric, 1, value);
+            }
+        }
+
+        void addAggregate(Map<String, Object> row) {
+            Object d = row.get("day");
+            LocalDate date = d instanceof java.sql.Date sqlDate ? sqlDate.toLocalDate() : (LocalDate) d;
+            int day = (int) date.toEpochDay();
+            for (int m = 0; m < METRICS; m++) {
+                Number count = (Number) row.get(COUNT_COLUMNS[m]);
+                Number sum = (Number) row.get(SUM_COLUMNS[m]);
+                if (count != null && count.intValue() > 0) {
+                    addAll(day, m, count.intValue(), sum != null ? sum.longValue() : 0L);
+                }
+            }
+        }
+
+        private void addAll(int day, int metric, int count, long sum) {
+            int slot = Math.floorMod(day, days.length);
+            if (days[slot] != day) {
+                if (days[slot] > day) {
+                    return; // 早于窗口的数据
+                }
+                days[slot] = day;
+                Arrays.fill(counts, slot * METRICS, slot * METRICS + METRICS, 0);
+                Arrays.fill(sums, slot * METRICS, slot * METRICS + METRICS, 0L);
+            }
+            counts[slot * METRICS + metric] += count;
+            sums[slot * METRICS + metric] += sum;
+        }
+
+        Double average(int today, int metric, int windowDays) {
+            long sum = 0;
+            int count = 0;
+            for (int day = today - windowDays + 1; day <= today; day++) {
+                int slot = Math.floorMod(day, days.length);
+                if (days[slot] == day) {
+                    count += counts[slot * METRICS + metric];
+                    sum += sums[slot * METRICS + metric];
+                }
+            }
+            return count == 0 ? null : (double) sum / count;
+        }
+    }
+}
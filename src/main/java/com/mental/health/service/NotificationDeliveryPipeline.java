@@ -0,0 +1,567 @@
+package com.mental.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mental.health.common.CompiledTemplate;
+import com.mental.health.dto.CreateNotificationCommand;
+import com.mental.health.entity.NotificationDelivery;
+import com.mental.health.entity.NotificationPreference;
+import com.mental.health.entity.NotificationTemplate;
+import com.mental.health.entity.UserNotification;
+import com.mental.health.mapper.NotificationDeliveryMapper;
+import com.mental.health.mapper.NotificationPreferenceMapper;
+import com.mental.health.mapper.NotificationTemplateMapper;
+import com.mental.health.mapper.UserNotificationMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 通知递送管道
+ *
+ * 发送方只把渲染好的通知草稿放入有界队列（不碰数据库）；定时取出一个窗口内的草稿后：
+ * 1) 同一用户、同一聚合键（同一业务对象）的低/普通优先级通知合并为一条（coalesced_count 记录合并数）
+ * 2) 一次批量查询加载本批用户的 IN_APP 偏好并过滤
+ * 3) 按用户分片交给工作线程，每片一个事务内多行插入通知与 IN_APP 递送记录，提交后再推送 WebSocket，
+ *    推送结果（DELIVERED/FAILED）随后批量写入 WEBSOCKET 递送记录
+ *
+ * 队列满时由发送线程同步执行一次刷新（背压），不丢通知。分片写入失败时草稿退回重试队列，
+ * 延迟后随下一轮刷新重写，超过次数才放弃；发送方可传入回调，在通知真正落库后得到通知。
+ * 模板按编码缓存预编译结果。
+ */
+@Service
+public class NotificationDeliveryPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificationDeliveryPipeline.class);
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int PREFERENCE_QUERY_BATCH = 1000;
+
+    @Autowired private UserNotificationMapper userNotificationMapper;
+    @Autowired private NotificationDeliveryMapper deliveryMapper;
+    @Autowired private NotificationPreferenceMapper preferenceMapper;
+    @Autowired private NotificationTemplateMapper templateMapper;
+    @Autowired private NotificationPushService pushService;
+    @Autowired private UserPresenceService userPresenceService;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private DeadlineScheduler deadlineScheduler;
+
+    @Value("${notification.pipeline.workers:4}")
+    private int workers;
+
+    @Value("${notification.pipeline.max-drain:20000}")
+    private int maxDrain;
+
+    @Value("${notification.pipeline.template-cache-seconds:300}")
+    private long templateCacheSeconds;
+
+    @Value("${notification.pipeline.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${notification.pipeline.retry-delay-ms:2000}")
+    private long retryDelayMillis;
+
+    private final BlockingQueue<Draft> queue;
+    /** 写入失败待重试的草稿 */
+    private final Queue<Draft> retrying = new ConcurrentLinkedQueue<>();
+    private final Map<String, TemplateEntry> templates = new ConcurrentHashMap<>();
+    private ExecutorService workerPool;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong filtered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerFlushes = new AtomicLong();
+
+    public NotificationDeliveryPipeline(@Value("${notification.pipeline.queue-capacity:50000}") int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "notify-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ==================== 提交 ====================
+
+    public void submit(CreateNotificationCommand cmd) {
+        submit(cmd, null);
+    }
+
+    /**
+     * @param onPersisted 该通知（或合并了它的通知）落库提交后、或按用户偏好不发送时，在工作线程回调；
+     *                    多次重试仍写入失败而放弃时不回调
+     */
+    public void submit(CreateNotificationCommand cmd, Runnable onPersisted) {
+        UserNotification n = new UserNotification();
+        n.setUserId(cmd.getUserId());
+        n.setCategory(cmd.getCategory());
+        n.setPriority(cmd.getPriority() != null ? cmd.getPriority() : "NORMAL");
+        n.setTitle(cmd.getTitle());
+        n.setContent(cmd.getContent());
+        n.setActionType(cmd.getActionType());
+        n.setActionPayload(cmd.getActionPayload());
+        n.setSourceType(cmd.getSourceType());
+        n.setSourceId(cmd.getSourceId());
+        enqueue(n, onPersisted);
+    }
+
+    /**
+     * 按模板发送给单个用户
+     *
+     * @return 模板不存在时返回 false
+     */
+    public boolean submitTemplate(String templateCode, Long userId, Map<String, String> variables) {
+        return submitTemplate(templateCode, Collections.singletonList(userId), variables) > 0;
+    }
+
+    /**
+     * 按模板广播：模板只渲染一次，每个用户一份草稿
+     *
+     * @return 入队数量
+     */
+    public int submitTemplate(String templateCode, Collection<Long> userIds, Map<String, String> variables) {
+        TemplateEntry entry = template(templateCode);
+        if (entry == null) {
+            log.warn("通知模板不存在: {}", templateCode);
+            return 0;
+        }
+        NotificationTemplate template = entry.template();
+        String title = entry.title().render(variables);
+        String content = entry.content().render(variables);
+        int count = 0;
+        for (Long userId : userIds) {
+            if (userId == null) {
+                continue;
+            }
+            UserNotification n = new UserNotification();
+            n.setUserId(userId);
+            n.setCategory(template.getCategory());
+            n.setPriority(template.getDefaultPriority());
+            n.setTitle(title);
+            n.setContent(content);
+            n.setActionType(template.getActionType());
+            n.setTemplateCode(templateCode);
+            if (template.getMustAck() != null && template.getMustAck() == 1) {
+                n.setMustAck(1);
+                if (template.getAckDeadlineMinutes() != null) {
+                    n.setAckDeadline(LocalDateTime.now().plusMinutes(template.getAckDeadlineMinutes()));
+                }
+            }
+            if (template.getEscalationEnabled() != null && template.getEscalationEnabled() == 1) {
+                n.setEscalationStatus("PENDING");
+            }
+            enqueue(n, null);
+            count++;
+        }
+        return count;
+    }
+
+    private void enqueue(UserNotification n, Runnable onPersisted) {
+        n.setReadStatus(0);
+        if (n.getMustAck() == null) {
+            n.setMustAck(0);
+        }
+        n.setCreateTime(LocalDateTime.now());
+        Draft draft = new Draft(n);
+        if (onPersisted != null) {
+            draft.onPersisted.add(onPersisted);
+        }
+        while (!queue.offer(draft)) {
+            // 队列满：发送线程自己刷一轮，腾出空间
+            callerFlushes.incrementAndGet();
+            flush();
+        }
+    }
+
+    // ==================== 刷新 ====================
+
+    @Scheduled(fixedDelayString = "${notification.pipeline.flush-interval-ms:500}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("通知管道刷新失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            while (!queue.isEmpty() || !retrying.isEmpty()) {
+                if (flush() == 0 && queue.isEmpty()) {
+                    Thread.sleep(Math.min(retryDelayMillis, 1000));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("停机前刷新通知队列失败: {}", e.getMessage());
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+
+    /**
+     * 取出队列中的草稿，合并、过滤后分片落库并推送
+     *
+     * @return 本次写入的通知数
+     */
+    public synchronized int flush() {
+        List<Draft> drafts = new ArrayList<>(Math.min(queue.size() + retrying.size(), maxDrain));
+        long nowMillis = System.currentTimeMillis();
+        for (int i = retrying.size(); i > 0 && drafts.size() < maxDrain; i--) {
+            Draft d = retrying.poll();
+            if (d == null) {
+                break;
+            }
+            if (d.retryAt > nowMillis) {
+                retrying.add(d);
+            } else {
+                drafts.add(d);
+            }
+        }
+        queue.drainTo(drafts, maxDrain - drafts.size());
+        if (drafts.isEmpty()) {
+            return 0;
+        }
+
+        List<Draft> merged = coalesce(drafts);
+        coalesced.addAndGet(drafts.size() - merged.size());
+
+        Map<String, NotificationPreference> prefs = loadPreferences(merged);
+        LocalTime now = LocalTime.now();
+        List<Draft> accepted = new ArrayList<>(merged.size());
+        for (Draft d : merged) {
+            UserNotification n = d.notification;
+            if (allows(prefs.get(n.getUserId() + ":" + n.getCategory()), n.getPriority(), now)) {
+                accepted.add(d);
+            } else {
+                completed(d);
+            }
+        }
+        filtered.addAndGet(merged.size() - accepted.size());
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+
+        // 按用户分片，同一用户的通知由同一工作线程按顺序写入
+        int shards = Math.max(1, Math.min(workers, accepted.size() / INSERT_BATCH_SIZE + 1));
+        List<List<Draft>> parts = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Draft d : accepted) {
+            parts.get(Math.floorMod(d.notification.getUserId().hashCode(), shards)).add(d);
+        }
+
+        List<Future<Integer>> futures = new ArrayList<>(shards);
+        for (List<Draft> part : parts) {
+            if (!part.isEmpty()) {
+                futures.add(workerPool.submit(() -> deliverOrRetry(part)));
+            }
+        }
+        int written = 0;
+        for (Future<Integer> future : futures) {
+            try {
+                written += future.get();
+            } catch (ExecutionException e) {
+                log.error("通知分片处理异常: {}", e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 同一用户、同一聚合键（模板编码，或类别+来源类型；有来源ID时再加来源ID）的低/普通优先级通知合并为最新的一条，
+     * 不同业务对象（如不同预约）的通知不会互相覆盖；高优先级与必须确认的通知原样保留
+     */
+    private List<Draft> coalesce(List<Draft> drafts) {
+        Map<String, Draft> byKey = new LinkedHashMap<>();
+        List<Draft> result = new ArrayList<>(drafts.size());
+        for (Draft d : drafts) {
+            UserNotification n = d.notification;
+            // 重试回来的草稿可能已是合并结果，保留原合并数
+            int own = n.getCoalescedCount() != null ? n.getCoalescedCount() : 1;
+            if (!coalescible(n)) {
+                n.setCoalescedCount(own);
+                result.add(d);
+                continue;
+            }
+            String key = (n.getTemplateCode() != null ? n.getTemplateCode()
+                    : n.getCategory() + ":" + (n.getSourceType() != null ? n.getSourceType() : ""))
+                    + (n.getSourceId() != null ? ":" + n.getSourceId() : "");
+            Draft prev = byKey.get(n.getUserId() + "|" + key);
+            int count = own;
+            if (prev != null) {
+                count += prev.notification.getCoalescedCount();
+                d.onPersisted.addAll(prev.onPersisted);
+                d.attempts = Math.max(d.attempts, prev.attempts);
+            }
+            n.setCoalescedCount(count);
+            n.setCoalescedKey(count > 1 ? key : null);
+            byKey.put(n.getUserId() + "|" + key, d);
+        }
+        result.addAll(byKey.values());
+        return result;
+    }
+
+    private static boolean coalescible(UserNotification n) {
+        return (n.getMustAck() == null || n.getMustAck() == 0)
+                && ("LOW".equals(n.getPriority()) || "NORMAL".equals(n.getPriority()));
+    }
+
+    private Map<String, NotificationPreference> loadPreferences(List<Draft> drafts) {
+        List<Long> userIds = drafts.stream().map(d -> d.notification.getUserId()).distinct().toList();
+        Map<String, NotificationPreference> prefs = new HashMap<>();
+        for (int from = 0; from < userIds.size(); from += PREFERENCE_QUERY_BATCH) {
+            List<Long> chunk = userIds.subList(from, Math.min(userIds.size(), from + PREFERENCE_QUERY_BATCH));
+            LambdaQueryWrapper<NotificationPreference> wrapper = new LambdaQueryWrapper<>();
+            wrapper.in(NotificationPreference::getUserId, chunk)
+                    .eq(NotificationPreference::getChannelCode, "IN_APP");
+            for (NotificationPreference pref : preferenceMapper.selectList(wrapper)) {
+                prefs.put(pref.getUserId() + ":" + pref.getCategory(), pref);
+            }
+        }
+        return prefs;
+    }
+
+    /**
+     * 写入一个分片；失败时整片退回重试队列，超过次数的放弃
+     */
+    private int deliverOrRetry(List<Draft> part) {
+        try {
+            return deliver(part);
+        } catch (RuntimeException e) {
+            failed.addAndGet(part.size());
+            long retryAt = System.currentTimeMillis() + retryDelayMillis;
+            int requeued = 0;
+            for (Draft d : part) {
+                if (++d.attempts >= maxAttempts) {
+                    dropped.incrementAndGet();
+                    log.error("通知写入失败已达 {} 次, 放弃: 用户#{} {}", d.attempts,
+                            d.notification.getUserId(), d.notification.getTitle());
+                    continue;
+                }
+                d.notification.setId(null);
+                d.retryAt = retryAt;
+                retrying.add(d);
+                requeued++;
+            }
+            log.error("通知分片写入失败, {} 条稍后重试: {}", requeued, e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * 一个分片：事务内多行插入通知与 IN_APP 递送记录，提交后回调发送方，再推送给在线用户并记录推送结果
+     */
+    private int deliver(List<Draft> part) {
+        List<UserNotification> notifications = part.stream().map(d -> d.notification).toList();
+        Map<Long, Boolean> online = userPresenceService.onlineStatus(
+                notifications.stream().map(UserNotification::getUserId).collect(Collectors.toSet()));
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (int from = 0; from < notifications.size(); from += INSERT_BATCH_SIZE) {
+                List<UserNotification> chunk = notifications.subList(from,
+                        Math.min(notifications.size(), from + INSERT_BATCH_SIZE));
+                chunk.forEach(n -> n.setDeliveryStatus("SENT"));
+                userNotificationMapper.insertBatch(chunk);
+
+                List<NotificationDelivery> deliveries = new ArrayList<>(chunk.size());
+                for (UserNotification n : chunk) {
+                    deliveries.add(delivery(n, "IN_APP", "SENT", now));
+                }
+                deliveryMapper.insertBatch(deliveries);
+            }
+
+            // 待确认且可升级的通知登记确认期限，到点由升级链处理
+            List<DeadlineScheduler.Deadline> deadlines = new ArrayList<>();
+            for (UserNotification n : notifications) {
+                if (n.getAckDeadline() != null && "PENDING".equals(n.getEscalationStatus())) {
+                    deadlines.add(new DeadlineScheduler.Deadline(
+                            NotificationStrategyService.ESCALATION, n.getId(), n.getAckDeadline()));
+                }
+            }
+            deadlineScheduler.schedule(deadlines);
+        });
+        part.forEach(NotificationDeliveryPipeline::completed);
+
+        List<NotificationDelivery> pushes = new ArrayList<>();
+        for (UserNotification n : notifications) {
+            if (!online.getOrDefault(n.getUserId(), false)) {
+                continue;
+            }
+            LocalDateTime at = LocalDateTime.now();
+            try {
+                pushService.pushNotification(n.getUserId(), UserNotificationService.toDTO(n));
+                NotificationDelivery d = delivery(n, "WEBSOCKET", "DELIVERED", at);
+                d.setDeliveredAt(at);
+                pushes.add(d);
+            } catch (Exception e) {
+                log.warn("推送通知#{} 失败: {}", n.getId(), e.getMessage());
+                NotificationDelivery d = delivery(n, "WEBSOCKET", "FAILED", at);
+                d.setFailedAt(at);
+                d.setFailureReason(e.getMessage() != null && e.getMessage().length() > 490
+                        ? e.getMessage().substring(0, 490) : e.getMessage());
+                pushes.add(d);
+            }
+        }
+        recordPushes(pushes);
+        delivered.addAndGet(notifications.size());
+        return notifications.size();
+    }
+
+    /**
+     * 推送结果写入 WEBSOCKET 递送记录；通知已落库，写入失败只记日志，不触发分片重试
+     */
+    private void recordPushes(List<NotificationDelivery> pushes) {
+        try {
+            for (int from = 0; from < pushes.size(); from += INSERT_BATCH_SIZE) {
+                deliveryMapper.insertBatch(pushes.subList(from, Math.min(pushes.size(), from + INSERT_BATCH_SIZE)));
+            }
+        } catch (Exception e) {
+            log.warn("写入 {} 条推送记录失败: {}", pushes.size(), e.getMessage());
+        }
+    }
+
+    private static void completed(Draft d) {
+        for (Runnable callback : d.onPersisted) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.warn("通知落库回调失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static NotificationDelivery delivery(UserNotification n, String channel, String status,
+                                                 LocalDateTime now) {
+        NotificationDelivery d = new NotificationDelivery();
+        d.setNotificationId(n.getId());
+        d.setUserId(n.getUserId());
+        d.setChannelCode(channel);
+        d.setDeliveryStatus(status);
+        d.setSentAt(now);
+        d.setRetryCount(0);
+        d.setCoalescedKey(n.getCoalescedKey());
+        d.setCoalescedCount(n.getCoalescedCount());
+        d.setEscalatedFlag(0);
+        return d;
+    }
+
+    // ==================== 偏好与模板 ====================
+
+    /**
+     * IN_APP 偏好判定：无偏好默认发送；低于阈值或处于静默时段（URGENT 除外）时不发送
+     */
+    static boolean allows(NotificationPreference pref, String priority, LocalTime now) {
+        if (pref == null) return true;
+        if (pref.getEnabled() == 0) return false;
+
+        if (pref.getMinPriority() != null
+                && priorityOrder(priority) < priorityOrder(pref.getMinPriority())) {
+            return false;
+        }
+
+        if (pref.getQuietStart() != null && pref.getQuietEnd() != null
+                && pref.getQuietStart().isBefore(pref.getQuietEnd())
+                && now.isAfter(pref.getQuietStart()) && now.isBefore(pref.getQuietEnd())) {
+            return "URGENT".equals(priority);
+        }
+        return true;
+    }
+
+    private static int priorityOrder(String priority) {
+        if (priority == null) return 0;
+        return switch (priority) {
+            case "URGENT" -> 4;
+            case "HIGH" -> 3;
+            case "NORMAL" -> 2;
+            case "LOW" -> 1;
+            default -> 0;
+        };
+    }
+
+    /**
+     * 按编码取预编译模板，缓存 template-cache-seconds
+     */
+    TemplateEntry template(String templateCode) {
+        long now = System.currentTimeMillis();
+        TemplateEntry cached = templates.get(templateCode);
+        if (cached != null && cached.loadedAt() + templateCacheSeconds * 1000L > now) {
+            return cached;
+        }
+        NotificationTemplate template = templateMapper.findByCode(templateCode);
+        if (template == null) {
+            templates.remove(templateCode);
+            return null;
+        }
+        TemplateEntry entry = new TemplateEntry(template, CompiledTemplate.compile(template.getTitleTemplate()),
+                CompiledTemplate.compile(template.getContentTemplate()), now);
+        templates.put(templateCode, entry);
+        return entry;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("delivered", delivered.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("filteredByPreference", filtered.get());
+        stats.put("failed", failed.get());
+        stats.put("retrying", retrying.size());
+        stats.put("dropped", dropped.get());
+        stats.put("callerFlushes", callerFlushes.get());
+        return stats;
+    }
+
+    /**
+     * 队列中的通知草稿
+     */
+    private static final class Draft {
+        final UserNotification notification;
+        /** 落库（或按偏好过滤）后的回调，合并时一并转移 */
+        final List<Runnable> onPersisted = new ArrayList<>(1);
+        int attempts;
+        long retryAt;
+
+        Draft(UserNotification notification) {
+            this.notification = notification;
+        }
+    }
+
+    record TemplateEntry(NotificationTemplate template, CompiledTemplate title, CompiledTemplate content,
+                         long loadedAt) {
+    }
+}
@@ -2,20 +2,15 @@ package com.mental.health.service;
 
 import com.mental.health.dto.UserNotificationDTO;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 @Service
 public class NotificationPushService {
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private ClusterMessagingService clusterMessagingService;
 
     public void pushNotification(Long userId, UserNotificationDTO dto) {
-        messagingTemplate.convertAndSendToUser(
-                userId.toString(),
-                "/queue/notifications",
-                dto
-        );
+        clusterMessagingService.sendToUser(userId, "/queue/notifications", dto);
     }
 }
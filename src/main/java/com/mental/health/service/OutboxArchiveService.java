@@ -0,0 +1,215 @@
+package com.mental.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.mental.health.entity.OutboxEvent;
+import com.mental.health.mapper.OutboxArchiveMapper;
+import com.mental.health.mapper.OutboxEventMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Outbox 归档与死信重放
+ *
+ * - 归档：SENT 超过保留时长、DEAD 超过死信保留时长的事件按批（每批一个短事务）迁入按月分区的
+ *   outbox_event_archive，热表只保留待投递集合，lockDueIds 的扫描规模不再随历史增长
+ * - 分区：提前拆出未来月份分区，超过保留月数的分区整体 DROP
+ * - 死信重放：按设定速率错开 next_retry_time，由投递器按到期时间逐步领取
+ *
+ * 注意：归档后的事件键不再参与 uk_outbox_event_key 去重，幂等窗口等于 SENT 保留时长。
+ */
+@Service
+public class OutboxArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxArchiveService.class);
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final int REQUEUE_MAX_BATCH = 1000;
+    /** 单次重放上限：全部在一个事务里置回，避免长事务与一次放出过多 */
+    private static final int REPLAY_MAX = 1000;
+
+    @Autowired private OutboxArchiveMapper archiveMapper;
+    @Autowired private OutboxEventMapper outboxEventMapper;
+    @Autowired private TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.archive.sent-retention-hours:72}")
+    private long sentRetentionHours;
+
+    @Value("${outbox.archive.dead-retention-hours:720}")
+    private long deadRetentionHours;
+
+    @Value("${outbox.archive.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${outbox.archive.max-batches-per-run:100}")
+    private int maxBatchesPerRun;
+
+    @Value("${outbox.archive.pause-ms:50}")
+    private long pauseMillis;
+
+    @Value("${outbox.archive.retention-months:12}")
+    private int retentionMonths;
+
+    // ===== 归档 =====
+
+    @Scheduled(fixedDelayString = "${outbox.archive.interval-ms:300000}")
+    public void scheduledArchive() {
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("Outbox 归档失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行一轮归档，单轮批数有上限，批间短暂停顿，避免长时间占用热表
+     *
+     * @return 各状态归档条数
+     */
+    public synchronized Map<String, Integer> archive() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("SENT", archiveStatus("SENT", now.minusHours(sentRetentionHours)));
+        result.put("DEAD", archiveStatus("DEAD", now.minusHours(deadRetentionHours)));
+        if (result.values().stream().anyMatch(n -> n > 0)) {
+            log.info("Outbox 归档完成: {}", result);
+        }
+        return result;
+    }
+
+    private int archiveStatus(String status, LocalDateTime before) {
+        int total = 0;
+        for (int round = 0; round < maxBatchesPerRun; round++) {
+            Integer moved = transactionTemplate.execute(tx -> {
+                List<Long> ids = archiveMapper.findArchivableIds(status, before, batchSize);
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                archiveMapper.copyToArchive(ids);
+                return archiveMapper.deleteArchived(ids);
+            });
+            int n = moved != null ? moved : 0;
+            total += n;
+            if (n < batchSize) {
+                break;
+            }
+            pause();
+        }
+        return total;
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) return;
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ===== 分区维护 =====
+
+    @Scheduled(cron = "${outbox.archive.partition-cron:0 20 4 * * ?}")
+    public void maintainPartitions() {
+        try {
+            List<String> existing = archiveMapper.listPartitions();
+            YearMonth current = YearMonth.now();
+            // 提前准备当月及之后两个月的分区
+            for (int i = 0; i <= 2; i++) {
+                YearMonth month = current.plusMonths(i);
+                String name = month.format(PARTITION_NAME);
+                if (!existing.contains(name) && isAfterLastPartition(existing, month)) {
+                    archiveMapper.addPartition(name, month.plusMonths(1).atDay(1).toString());
+                    existing.add(existing.size() - 1, name);
+                    log.info("Outbox 归档表新增分区 {}", name);
+                }
+            }
+            String oldest = current.minusMonths(retentionMonths).format(PARTITION_NAME);
+            for (String name : existing) {
+                if (!"pmax".equals(name) && name.compareTo(oldest) < 0) {
+                    archiveMapper.dropPartition(name);
+                    log.info("Outbox 归档表删除过期分区 {}", name);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Outbox 归档分区维护失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * REORGANIZE 只能从 pmax 拆出比现有月分区都新的分区
+     */
+    private boolean isAfterLastPartition(List<String> existing, YearMonth month) {
+        String name = month.format(PARTITION_NAME);
+        for (String p : existing) {
+            if (!"pmax".equals(p) && p.compareTo(name) >= 0) {
+                return false;
+            }
+        }
+        return existing.contains("pmax");
+    }
+
+    // ===== 死信 =====
+
+    public IPage<OutboxEvent> listDeadLetters(String eventType, int pageNum, int pageSize) {
+        LambdaQueryWrapper<OutboxEvent> w = new LambdaQueryWrapper<>();
+        w.eq(OutboxEvent::getStatus, "DEAD")
+                .eq(eventType != null && !eventType.isBlank(), OutboxEvent::getEventType, eventType)
+                .orderByDesc(OutboxEvent::getUpdateTime);
+        return outboxEventMapper.selectPage(new Page<>(pageNum, pageSize), w);
+    }
+
+    /**
+     * 重放死信。指定 ids 时只重放这些事件，否则按 eventType（可空）取最早的 limit 条（至多 {@value #REPLAY_MAX} 条）；
+     * 每秒最多放出 ratePerSecond 条，通过错开 next_retry_time 实现，无需后台线程。
+     *
+     * @return 实际置回 PENDING 的事件数
+     */
+    public int replayDeadLetters(List<Long> ids, String eventType, int limit, int ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new RuntimeException("重放速率必须大于0");
+        }
+        if (ids != null && ids.size() > REPLAY_MAX) {
+            throw new RuntimeException("一次最多重放" + REPLAY_MAX + "条");
+        }
+        List<Long> targets = ids;
+        if (targets == null || targets.isEmpty()) {
+            LambdaQueryWrapper<OutboxEvent> w = new LambdaQueryWrapper<>();
+            w.select(OutboxEvent::getId)
+                    .eq(OutboxEvent::getStatus, "DEAD")
+                    .eq(eventType != null && !eventType.isBlank(), OutboxEvent::getEventType, eventType)
+                    .orderByAsc(OutboxEvent::getId)
+                    .last("LIMIT " + Math.max(1, Math.min(limit, REPLAY_MAX)));
+            targets = outboxEventMapper.selectList(w).stream().map(OutboxEvent::getId).toList();
+        }
+        if (targets.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> all = targets;
+        LocalDateTime start = LocalDateTime.now();
+        Integer requeued = transactionTemplate.execute(tx -> {
+            int count = 0;
+            int step = Math.min(ratePerSecond, REQUEUE_MAX_BATCH);
+            for (int from = 0; from < all.size(); from += step) {
+                List<Long> slice = all.subList(from, Math.min(all.size(), from + step));
+                // 第 i 条约在 start + i/rate 秒后到期（按批取整）
+                long offsetMillis = (long) from * 1000 / ratePerSecond;
+                count += outboxEventMapper.requeueDead(slice, start.plusNanos(offsetMillis * 1_000_000));
+            }
+            return count;
+        });
+        log.info("重放死信 {} 条, 速率 {}/s", requeued, ratePerSecond);
+        return requeued != null ? requeued : 0;
+    }
+}
@@ -0,0 +1,325 @@
+package com.mental.health.service;
+
+import com.mental.health.entity.OutboxEvent;
+import com.mental.health.mapper.OutboxEventMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Outbox 并行投递器
+ *
+ * 1) 领取：短事务内 SELECT ... FOR UPDATE SKIP LOCKED 后批量置为 PROCESSING（next_retry_time 作租约），立即提交
+ * 2) 分发：按 aggregateType:aggregateId 哈希到固定车道，每条车道单线程 FIFO，
+ *    同一聚合的事件保持顺序，不同聚合并行；每个事件在独立事务中执行处理器
+ * 3) 确认：成功的事件ID进入确认队列，由轮询线程合并为一条 UPDATE ... WHERE id IN (...) 写回
+ * 4) 轮询间隔自适应：批次打满时立即再取，空闲时指数退避到最大间隔
+ * 5) 提交后唤醒：{@link OutboxService#append} 在事务提交后调用 {@link #notifyCommitted}，
+ *    轮询线程被唤醒后优先按ID领取这些事件，轮询只作为兜底
+ *
+ * 投递语义为至少一次：处理器事务已提交但确认前进程退出时，租约到期后会被重新领取。
+ * 每次租约到期重新领取计一次重试，反复导致进程退出的事件最终进入 DEAD。
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private static final int ACK_BATCH_SIZE = 1000;
+
+    @Autowired
+    private OutboxEventMapper outboxEventMapper;
+
+    @Autowired
+    private OutboxRoutingRegistry routingRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.dispatcher.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.dispatcher.lanes:8}")
+    private int laneCount;
+
+    @Value("${outbox.dispatcher.max-in-flight:5000}")
+    private int maxInFlight;
+
+    @Value("${outbox.dispatcher.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${outbox.dispatcher.min-poll-ms:20}")
+    private long minPollMillis;
+
+    @Value("${outbox.dispatcher.max-poll-ms:5000}")
+    private long maxPollMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Long> committedIds = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> pendingAcks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingAckCount = new AtomicInteger();
+    private final Object signal = new Object();
+    private boolean signalled;
+
+    private ExecutorService[] lanes;
+    private Thread poller;
+    private volatile boolean running;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        lanes = new ExecutorService[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "outbox-lane-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        running = true;
+        poller = new Thread(this::pollLoop, "outbox-poller");
+        poller.setDaemon(true);
+        poller.start();
+        log.info("Outbox dispatcher started: lanes={}, batchSize={}", lanes.length, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        wakeup();
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            poller.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAcks();
+    }
+
+    /**
+     * 事务提交后通知：刚写入的事件跳过轮询等待，立即按ID领取投递
+     */
+    public void notifyCommitted(List<Long> ids) {
+        if (!running || ids.isEmpty()) {
+            return;
+        }
+        committedIds.addAll(ids);
+        wakeup();
+    }
+
+    /**
+     * 唤醒轮询线程立即领取一批
+     */
+    public void wakeup() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void pollLoop() {
+        long idleDelay = minPollMillis;
+        while (running) {
+            long delay;
+            try {
+                flushAcks();
+                dispatchCommitted();
+                int claimed = dispatchOnce();
+                if (claimed >= batchSize) {
+                    delay = 0;
+                    idleDelay = minPollMillis;
+                } else if (claimed > 0 || inFlight.get() >= maxInFlight) {
+                    delay = minPollMillis;
+                    idleDelay = minPollMillis;
+                } else {
+                    delay = idleDelay;
+                    idleDelay = Math.min(maxPollMillis, Math.max(1, idleDelay) * 2);
+                }
+            } catch (Exception e) {
+                log.error("Outbox poll failed: {}", e.getMessage(), e);
+                delay = maxPollMillis;
+            }
+            awaitSignal(delay);
+        }
+    }
+
+    /**
+     * 快速路径：领取提交后通知的事件。
+     * 同一聚合若还有更早的积压事件未被领取，快速路径可能先投递新事件；轮询路径保持原有顺序。
+     */
+    int dispatchCommitted() {
+        List<Long> ids = new ArrayList<>();
+        Long id;
+        while (ids.size() < batchSize && (id = committedIds.poll()) != null) {
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return claimAndSubmit(now -> outboxEventMapper.lockByIds(ids));
+    }
+
+    /**
+     * 领取一批并分发到车道
+     *
+     * @return 本次领取的事件数
+     */
+    int dispatchOnce() {
+        int capacity = Math.min(batchSize, maxInFlight - inFlight.get());
+        if (capacity <= 0) {
+            return 0;
+        }
+        return claimAndSubmit(now -> {
+            List<Long> ids = outboxEventMapper.lockDueIds(capacity, now);
+            return ids.isEmpty() ? List.of() : outboxEventMapper.selectByIdsOrdered(ids);
+        });
+    }
+
+    private int claimAndSubmit(Function<LocalDateTime, List<OutboxEvent>> locker) {
+        List<OutboxEvent> batch = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxEvent> locked = locker.apply(now);
+            List<OutboxEvent> claimed = new ArrayList<>(locked.size());
+            List<Long> ids = new ArrayList<>(locked.size());
+            for (OutboxEvent event : locked) {
+                // 租约到期被重新领取：上次投递未确认（进程退出或处理器卡住），计一次失败
+                if ("PROCESSING".equals(event.getStatus())) {
+                    if (event.getRetryCount() >= event.getMaxRetryCount()) {
+                        log.error("Outbox event {} lease expired after max retries, marking dead", event.getId());
+                        outboxEventMapper.markDead(event.getId(), "lease expired without acknowledgement");
+                        continue;
+                    }
+                    event.setRetryCount(event.getRetryCount() + 1);
+                }
+                claimed.add(event);
+                ids.add(event.getId());
+            }
+            if (!ids.isEmpty()) {
+                outboxEventMapper.claimBatch(ids, now.plusSeconds(leaseSeconds));
+            }
+            return claimed;
+        });
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("Dispatching {} outbox events", batch.size());
+        for (OutboxEvent event : batch) {
+            inFlight.incrementAndGet();
+            try {
+                lanes[laneOf(event)].execute(() -> process(event));
+            } catch (RejectedExecutionException e) {
+                // 停机中：事件保持 PROCESSING，租约到期后重新领取
+                inFlight.decrementAndGet();
+            }
+        }
+        return batch.size();
+    }
+
+    private void process(OutboxEvent event) {
+        try {
+            log.debug("Routing outbox event: type={}, key={}", event.getEventType(), event.getEventKey());
+            transactionTemplate.executeWithoutResult(status -> routingRegistry.route(event));
+            pendingAcks.add(event.getId());
+            if (pendingAckCount.incrementAndGet() >= ACK_BATCH_SIZE) {
+                wakeup();
+            }
+        } catch (Exception ex) {
+            handleFailure(event, ex);
+        } finally {
+            if (inFlight.decrementAndGet() == 0) {
+                wakeup();
+            }
+        }
+    }
+
+    private void handleFailure(OutboxEvent event, Exception ex) {
+        try {
+            if (event.getRetryCount() >= event.getMaxRetryCount()) {
+                log.error("Outbox event {} exceeded max retries, marking dead", event.getId(), ex);
+                outboxEventMapper.markDead(event.getId(), truncate(ex.getMessage(), 490));
+            } else {
+                LocalDateTime nextRetry = computeNextRetry(event.getRetryCount());
+                log.warn("Outbox event {} failed, scheduling retry at {}", event.getId(), nextRetry, ex);
+                outboxEventMapper.scheduleRetry(event.getId(), nextRetry, truncate(ex.getMessage(), 490));
+            }
+        } catch (Exception e) {
+            log.error("Failed to record outbox failure for event {}: {}", event.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 合并确认：一条 UPDATE 写回一批 SENT
+     */
+    private void flushAcks() {
+        List<Long> ids = new ArrayList<>();
+        Long id;
+        while ((id = pendingAcks.poll()) != null) {
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        pendingAckCount.addAndGet(-ids.size());
+        try {
+            for (int from = 0; from < ids.size(); from += ACK_BATCH_SIZE) {
+                outboxEventMapper.markSentBatch(ids.subList(from, Math.min(ids.size(), from + ACK_BATCH_SIZE)));
+            }
+        } catch (Exception e) {
+            // 未确认的事件租约到期后会被重新投递
+            log.error("Outbox ack of {} events failed: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    private void awaitSignal(long millis) {
+        synchronized (signal) {
+            if (!signalled && millis > 0 && running) {
+                try {
+                    signal.wait(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            signalled = false;
+        }
+    }
+
+    private int laneOf(OutboxEvent event) {
+        int h = (event.getAggregateType() + ":" + event.getAggregateId()).hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    private LocalDateTime computeNextRetry(int currentRetryCount) {
+        // Exponential backoff: 10s, 30s, 1m, 2m, 5m, 10m, 30m, 1h, 2h, 4h, 8h, 12h
+        long[] delaySeconds = {10, 30, 60, 120, 300, 600, 1800, 3600, 7200, 14400, 28800, 43200};
+        int index = Math.min(currentRetryCount, delaySeconds.length - 1);
+        return LocalDateTime.now().plusSeconds(delaySeconds[index]);
+    }
+
+    private String truncate(String s, int maxLen) {
+        if (s == null) return null;
+        return s.length() > maxLen ? s.substring(0, maxLen) : s;
+    }
+}
@@ -5,13 +5,20 @@ import com.mental.health.mapper.OutboxEventMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDateTime;
-import java.util.List;
+import java.util.*;
 
+/**
+ * Outbox 事件写入；事务提交后通知 {@link OutboxDispatcher} 立即投递
+ *
+ * 幂等依赖 uk_outbox_event_key + ON DUPLICATE KEY UPDATE id = id，一次往返完成；
+ * 进程内 LRU 记录最近已提交的事件键，重复事件在访问数据库前即被跳过。
+ */
 @Service
 public class OutboxService {
 
@@ -21,60 +28,85 @@ public class OutboxService {
     private OutboxEventMapper outboxEventMapper;
 
     @Autowired
-    private OutboxRoutingRegistry routingRegistry;
+    private OutboxDispatcher dispatcher;
+
+    private final Map<String, Boolean> recentKeys;
+
+    public OutboxService(@Value("${outbox.dedup.cache-size:20000}") int cacheSize) {
+        this.recentKeys = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
 
     @Transactional
     public void append(String aggregateType, Long aggregateId,
                        String eventType, String eventKey, String payload) {
-        if (outboxEventMapper.existsByEventKey(eventKey)) {
-            log.debug("Outbox event already exists, skipping: {}", eventKey);
-            return;
-        }
-        OutboxEvent event = OutboxEvent.pending(aggregateType, aggregateId,
-                eventType, eventKey, payload);
-        outboxEventMapper.insert(event);
+        appendAll(List.of(OutboxEvent.pending(aggregateType, aggregateId, eventType, eventKey, payload)));
     }
 
-    @Scheduled(fixedDelay = 5000)
+    /**
+     * 批量写入同一事务内产生的多个事件（一条多行 INSERT）
+     *
+     * @return 提交写库的事件数（进程内已知的重复键不计）
+     */
     @Transactional
-    public void dispatchBatch() {
-        List<OutboxEvent> batch = outboxEventMapper.lockNextBatch(100, LocalDateTime.now());
-        if (batch.isEmpty()) {
-            return;
+    public int appendAll(List<OutboxEvent> events) {
+        List<OutboxEvent> fresh = new ArrayList<>(events.size());
+        Set<String> keys = new HashSet<>();
+        for (OutboxEvent event : events) {
+            if (recentKeys.containsKey(event.getEventKey()) || !keys.add(event.getEventKey())) {
+                log.debug("Outbox event already exists, skipping: {}", event.getEventKey());
+                continue;
+            }
+            fresh.add(event);
+        }
+        if (fresh.isEmpty()) {
+            return 0;
         }
 
-        log.debug("Dispatching {} outbox events", batch.size());
-        for (OutboxEvent event : batch) {
-            try {
-                route(event);
-                outboxEventMapper.markSent(event.getId());
-            } catch (Exception ex) {
-                if (event.getRetryCount() >= event.getMaxRetryCount()) {
-                    log.error("Outbox event {} exceeded max retries, marking dead", event.getId(), ex);
-                    outboxEventMapper.markDead(event.getId(), truncate(ex.getMessage(), 490));
-                } else {
-                    LocalDateTime nextRetry = computeNextRetry(event.getRetryCount());
-                    log.warn("Outbox event {} failed, scheduling retry at {}", event.getId(), nextRetry, ex);
-                    outboxEventMapper.scheduleRetry(event.getId(), nextRetry, truncate(ex.getMessage(), 490));
-                }
+        // 单行写入遇到重复键时 id 不回填；多行写入无法区分重复行，回填的 id 不可靠，只唤醒轮询
+        List<Long> ids = null;
+        if (fresh.size() == 1) {
+            OutboxEvent event = fresh.get(0);
+            outboxEventMapper.insertIgnore(event);
+            if (event.getId() != null) {
+                ids = List.of(event.getId());
+            } else {
+                log.debug("Outbox event already exists, skipping: {}", event.getEventKey());
             }
+        } else {
+            outboxEventMapper.insertIgnoreBatch(fresh);
         }
+        afterCommit(keys, ids);
+        return fresh.size();
     }
 
-    private void route(OutboxEvent event) {
-        log.info("Routing outbox event: type={}, key={}", event.getEventType(), event.getEventKey());
-        routingRegistry.route(event);
-    }
-
-    private LocalDateTime computeNextRetry(int currentRetryCount) {
-        // Exponential backoff: 10s, 30s, 1m, 2m, 5m, 10m, 30m, 1h, 2h, 4h, 8h, 12h
-        long[] delaySeconds = {10, 30, 60, 120, 300, 600, 1800, 3600, 7200, 14400, 28800, 43200};
-        int index = Math.min(currentRetryCount, delaySeconds.length - 1);
-        return LocalDateTime.now().plusSeconds(delaySeconds[index]);
-    }
-
-    private String truncate(String s, int maxLen) {
-        if (s == null) return null;
-        return s.length() > maxLen ? s.substring(0, maxLen) : s;
+    /**
+     * 提交后登记事件键并唤醒投递器；回滚时都不做，避免把未落库的键当作重复
+     */
+    private void afterCommit(Set<String> keys, List<Long> ids) {
+        Runnable action = () -> {
+            for (String key : keys) {
+                recentKeys.put(key, Boolean.TRUE);
+            }
+            if (ids != null) {
+                dispatcher.notifyCommitted(ids);
+            } else {
+                dispatcher.wakeup();
+            }
+        };
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
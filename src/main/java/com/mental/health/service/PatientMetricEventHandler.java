@@ -0,0 +1,63 @@
+package com.mental.health.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.mental.health.entity.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * 把日记/冥想/风险事件折叠进患者实时日指标
+ */
+@Component
+public class PatientMetricEventHandler implements OutboxEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(PatientMetricEventHandler.class);
+
+    private static final Set<String> SUPPORTED = Set.of(
+            "DIARY_CREATED", "MEDITATION_COMPLETED", "RISK_EVENT_RECORDED");
+
+    @Autowired
+    private RealtimePatientMetricService realtimeMetricService;
+
+    @Override
+    public boolean supports(String eventType) {
+        return SUPPORTED.contains(eventType);
+    }
+
+    @Override
+    public void handle(OutboxEvent event) {
+        JSONObject payload = JSON.parseObject(event.getPayload());
+        if (payload == null) {
+            log.warn("Empty payload for event: {}", event.getEventKey());
+            return;
+        }
+        Long userId = payload.getLong("userId");
+        String key = event.getEventKey();
+
+        switch (event.getEventType()) {
+            case "DIARY_CREATED" -> realtimeMetricService.recordDiary(key, userId,
+                    occurredAt(payload, "createTime", event),
+                    payload.getInteger("moodScore"), payload.getInteger("sleepQuality"),
+                    payload.getInteger("stressLevel"), payload.getInteger("energyLevel"));
+            case "MEDITATION_COMPLETED" -> realtimeMetricService.recordMeditation(key, userId,
+                    occurredAt(payload, "startedAt", event), payload.getIntValue("actualSeconds"));
+            case "RISK_EVENT_RECORDED" -> realtimeMetricService.recordRiskEvent(key, userId,
+                    occurredAt(payload, "detectedAt", event));
+            default -> { }
+        }
+    }
+
+    /**
+     * 事件归属日期与批处理口径一致（日记创建时间/冥想开始时间/风险检测时间），缺失时退回事件写入时间
+     */
+    private LocalDateTime occurredAt(JSONObject payload, String field, OutboxEvent event) {
+        LocalDateTime at = payload.getObject(field, LocalDateTime.class);
+        return at != null ? at : event.getCreateTime();
+    }
+}
@@ -0,0 +1,88 @@
+package com.mental.health.service;
+
+import com.mental.health.mapper.ConsultationSessionMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上下线推送：把在线状态变化推送给用户的会话联系人（/user/queue/presence）
+ *
+ * 联系人在上线时查一次并缓存到下线；只推给在线的联系人。
+ * 通过事件与 {@link UserPresenceService} 解耦——后者被 STOMP 拦截器依赖，不能反过来依赖消息模板。
+ */
+@Component
+public class PresenceNotifier {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceNotifier.class);
+
+    public static final String DESTINATION = "/queue/presence";
+
+    @Autowired
+    private ConsultationSessionMapper sessionMapper;
+
+    @Autowired
+    private UserPresenceService userPresenceService;
+
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Value("${presence.contacts-cache-seconds:600}")
+    private long contactsCacheSeconds;
+
+    private final Map<Long, Contacts> contacts = new ConcurrentHashMap<>();
+
+    @EventListener
+    public void onPresenceChanged(UserPresenceService.PresenceChangedEvent event) {
+        try {
+            List<Long> contactIds = event.online() ? contactsOf(event.userId()) : evict(event.userId());
+            if (contactIds.isEmpty()) {
+                return;
+            }
+            List<Long> targets = userPresenceService.onlineStatus(contactIds).entrySet().stream()
+                    .filter(Map.Entry::getValue)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            if (targets.isEmpty()) {
+                return;
+            }
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("userId", event.userId());
+            payload.put("online", event.online());
+            payload.put("lastSeenAt", event.at());
+            clusterMessagingService.sendToUsers(targets, DESTINATION, payload, false);
+        } catch (Exception e) {
+            log.warn("推送用户 {} 在线状态失败: {}", event.userId(), e.getMessage());
+        }
+    }
+
+    private List<Long> contactsOf(Long userId) {
+        long now = System.currentTimeMillis();
+        Contacts cached = contacts.get(userId);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.ids;
+        }
+        List<Long> ids = sessionMapper.selectContactIds(userId);
+        contacts.put(userId, new Contacts(ids, now + contactsCacheSeconds * 1000L));
+        return ids;
+    }
+
+    private List<Long> evict(Long userId) {
+        Contacts cached = contacts.remove(userId);
+        if (cached != null) {
+            return cached.ids;
+        }
+        return sessionMapper.selectContactIds(userId);
+    }
+
+    private record Contacts(List<Long> ids, long expiresAt) {
+    }
+}
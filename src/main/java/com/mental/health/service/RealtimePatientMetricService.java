@@ -0,0 +1,428 @@
+package com.mental.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mental.health.entity.PatientDailyMetric;
+import com.mental.health.mapper.PatientDailyMetricMapper;
+import com.mental.health.mapper.PatientMetricAppliedEventMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * 患者实时日指标
+ *
+ * 由 outbox 事件（日记/冥想/风险事件）驱动，在内存中按 (患者, 日期) 维护滚动聚合：
+ * 心情/睡眠/压力/精力的计数、和、最小/最大值，冥想分钟数与风险事件数。
+ * 聚合表按患者ID分段加锁（striped），定时把有变化的桶 checkpoint 到 patient_daily_metric（metric_status=REALTIME）。
+ * 每夜批处理重算后状态变为 RECALCULATED，之后实时 checkpoint 不再覆盖该行。
+ *
+ * 每个桶 = 已落库部分 + 尚未 checkpoint 的事件增量。checkpoint 在一个事务内写入增量（累加而非覆盖，
+ * 多节点互不覆盖）并记录这些事件键；库中已有的键（重启前或其他节点已计入）剔除不计。
+ * 提交后按库中最新行重置已落库部分，其他节点计入的数据随之可见。
+ */
+@Service
+public class RealtimePatientMetricService {
+
+    private static final Logger log = LoggerFactory.getLogger(RealtimePatientMetricService.class);
+
+    public static final String STATUS_REALTIME = "REALTIME";
+
+    private static final int STRIPES = 64;
+    private static final int UPSERT_BATCH_SIZE = 500;
+
+    private static final int MOOD = 0;
+    private static final int SLEEP = 1;
+    private static final int STRESS = 2;
+    private static final int ENERGY = 3;
+
+    private static final int KEY_QUERY_BATCH = 1000;
+    private static final int PURGE_BATCH = 5000;
+
+    @Autowired
+    private PatientDailyMetricMapper metricMapper;
+
+    @Autowired
+    private PatientMetricAppliedEventMapper appliedEventMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${analytics.realtime.applied-key-retain-days:7}")
+    private int appliedKeyRetainDays;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public RealtimePatientMetricService() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // ===== 事件写入 =====
+
+    public void recordDiary(String eventKey, Long patientId, LocalDateTime at,
+                            Integer mood, Integer sleep, Integer stress, Integer energy) {
+        apply(patientId, at, new Delta(eventKey, 1, new Integer[]{mood, sleep, stress, energy}, 0, 0));
+    }
+
+    public void recordMeditation(String eventKey, Long patientId, LocalDateTime at, int actualSeconds) {
+        // 与批处理口径一致：每次会话向下取整到分钟
+        apply(patientId, at, new Delta(eventKey, 0, new Integer[4], Math.max(0, actualSeconds) / 60, 0));
+    }
+
+    public void recordRiskEvent(String eventKey, Long patientId, LocalDateTime at) {
+        apply(patientId, at, new Delta(eventKey, 0, new Integer[4], 0, 1));
+    }
+
+    /**
+     * 内存中的当日（或指定日期）部分指标，不访问数据库；无数据返回 null
+     */
+    public PatientDailyMetric currentMetric(Long patientId, LocalDate day) {
+        BucketKey key = new BucketKey(patientId, day);
+        Stripe stripe = stripeOf(patientId);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            return bucket == null ? null : bucket.toMetric(key);
+        }
+    }
+
+    /**
+     * 当日滚动聚合明细：各维度的计数/均值/最小/最大值
+     */
+    public Map<String, Object> currentStats(Long patientId, LocalDate day) {
+        BucketKey key = new BucketKey(patientId, day);
+        Stripe stripe = stripeOf(patientId);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                return Map.of();
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("patientId", patientId);
+            result.put("day", day);
+            PatientDailyMetric metric = bucket.toMetric(key);
+            result.put("diaryCount", metric.getDiaryCount());
+            result.put("meditationMinutes", metric.getMeditationMinutes());
+            result.put("riskEventCount", metric.getRiskEventCount());
+            String[] names = {"mood", "sleep", "stress", "energy"};
+            for (int m = 0; m < 4; m++) {
+                Map<String, Object> stat = new LinkedHashMap<>();
+                stat.put("count", bucket.count(m));
+                stat.put("avg", bucket.avg(m));
+                stat.put("min", bucket.observed[m] > 0 ? bucket.min[m] : null);
+                stat.put("max", bucket.observed[m] > 0 ? bucket.max[m] : null);
+                result.put(names[m], stat);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 已有桶只加锁更新；首次出现的桶先在锁外读取已 checkpoint 的行作为初值（进程重启后续接）。
+     * 同一事件键在本机只计一次；重启前或其他节点已计入的键在 checkpoint 时按库中记录剔除。
+     */
+    private void apply(Long patientId, LocalDateTime at, Delta delta) {
+        if (patientId == null) {
+            return;
+        }
+        BucketKey key = new BucketKey(patientId, (at != null ? at : LocalDateTime.now()).toLocalDate());
+        Stripe stripe = stripeOf(patientId);
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket != null) {
+                bucket.apply(delta);
+                return;
+            }
+        }
+        Bucket seeded = seedFromCheckpoint(key);
+        synchronized (stripe) {
+            stripe.buckets.putIfAbsent(key, seeded);
+            stripe.buckets.get(key).apply(delta);
+        }
+    }
+
+    private Bucket seedFromCheckpoint(BucketKey key) {
+        Bucket bucket = new Bucket();
+        LambdaQueryWrapper<PatientDailyMetric> w = new LambdaQueryWrapper<>();
+        w.eq(PatientDailyMetric::getPatientId, key.patientId())
+                .eq(PatientDailyMetric::getMetricAt, key.day().atStartOfDay());
+        PatientDailyMetric row = metricMapper.selectOne(w);
+        if (row != null) {
+            bucket.rebase(row);
+        }
+        return bucket;
+    }
+
+    // ===== checkpoint =====
+
+    @Scheduled(fixedDelayString = "${analytics.realtime.checkpoint-interval-ms:5000}")
+    public void scheduledCheckpoint() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            log.error("实时指标 checkpoint 失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void checkpointOnShutdown() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            log.warn("停机前 checkpoint 实时指标失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期清理已计入事件键；保留期需覆盖 outbox 可能重投的时间范围
+     */
+    @Scheduled(cron = "0 30 4 * * ?")
+    public void purgeAppliedKeys() {
+        LocalDateTime before = LocalDateTime.now().minusDays(appliedKeyRetainDays);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = appliedEventMapper.deleteBefore(before, PURGE_BATCH);
+            total += deleted;
+        } while (deleted == PURGE_BATCH);
+        log.info("清理实时指标已计入事件键 {} 条", total);
+    }
+
+    /**
+     * 把各桶未落库的增量与事件键在一个事务内写入，提交后按库中最新行重置已落库部分；
+     * 早于今天且无增量的桶从内存移除
+     *
+     * @return 写入的桶数
+     */
+    public synchronized int checkpoint() {
+        List<Pending> pending = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Map.Entry<BucketKey, Bucket>> it = stripe.buckets.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<BucketKey, Bucket> entry = it.next();
+                    Bucket bucket = entry.getValue();
+                    if (!bucket.pending.isEmpty()) {
+                        pending.add(new Pending(stripe, entry.getKey(), bucket, List.copyOf(bucket.pending)));
+                    } else if (entry.getKey().day().isBefore(today)) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        Integer written = transactionTemplate.execute(status -> {
+            List<String> keys = new ArrayList<>();
+            for (Pending p : pending) {
+                for (Delta d : p.deltas()) {
+                    if (d.eventKey() != null) {
+                        keys.add(d.eventKey());
+                    }
+                }
+            }
+            Set<String> existing = new HashSet<>();
+            for (int from = 0; from < keys.size(); from += KEY_QUERY_BATCH) {
+                existing.addAll(appliedEventMapper.findExisting(
+                        keys.subList(from, Math.min(keys.size(), from + KEY_QUERY_BATCH))));
+            }
+            List<String> fresh = keys.stream().filter(k -> !existing.contains(k)).toList();
+            for (int from = 0; from < fresh.size(); from += KEY_QUERY_BATCH) {
+                appliedEventMapper.insertBatch(fresh.subList(from, Math.min(fresh.size(), from + KEY_QUERY_BATCH)));
+            }
+
+            List<PatientDailyMetric> rows = new ArrayList<>(pending.size());
+            for (Pending p : pending) {
+                Bucket delta = new Bucket();
+                for (Delta d : p.deltas()) {
+                    if (d.eventKey() == null || !existing.contains(d.eventKey())) {
+                        delta.fold(d);
+                    }
+                }
+                if (delta.diaryCount > 0 || delta.meditationMinutes > 0 || delta.riskEventCount > 0) {
+                    rows.add(delta.toMetric(p.key()));
+                }
+            }
+            for (int from = 0; from < rows.size(); from += UPSERT_BATCH_SIZE) {
+                metricMapper.applyRealtimeDeltaBatch(
+                        rows.subList(from, Math.min(rows.size(), from + UPSERT_BATCH_SIZE)));
+            }
+            return rows.size();
+        });
+
+        Map<BucketKey, PatientDailyMetric> latest = reload(pending);
+        for (Pending p : pending) {
+            synchronized (p.stripe()) {
+                p.bucket().pending.subList(0, p.deltas().size()).clear();
+                PatientDailyMetric row = latest.get(p.key());
+                if (row != null) {
+                    p.bucket().rebase(row);
+                }
+            }
+        }
+        log.debug("实时指标 checkpoint: {} 个桶", written);
+        return written != null ? written : 0;
+    }
+
+    private Map<BucketKey, PatientDailyMetric> reload(List<Pending> pending) {
+        Map<BucketKey, PatientDailyMetric> result = new HashMap<>();
+        for (int from = 0; from < pending.size(); from += UPSERT_BATCH_SIZE) {
+            List<Pending> chunk = pending.subList(from, Math.min(pending.size(), from + UPSERT_BATCH_SIZE));
+            Set<BucketKey> wanted = new HashSet<>();
+            chunk.forEach(p -> wanted.add(p.key()));
+            LambdaQueryWrapper<PatientDailyMetric> w = new LambdaQueryWrapper<>();
+            w.in(PatientDailyMetric::getPatientId, wanted.stream().map(BucketKey::patientId).distinct().toList())
+                    .in(PatientDailyMetric::getMetricAt,
+                            wanted.stream().map(k -> k.day().atStartOfDay()).distinct().toList());
+            for (PatientDailyMetric row : metricMapper.selectList(w)) {
+                BucketKey key = new BucketKey(row.getPatientId(), row.getMetricAt().toLocalDate());
+                if (wanted.contains(key)) {
+                    result.put(key, row);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Stripe stripeOf(Long patientId) {
+        return stripes[(int) ((patientId ^ (patientId >>> 32)) & (STRIPES - 1))];
+    }
+
+    private static final class Stripe {
+        final Map<BucketKey, Bucket> buckets = new HashMap<>();
+    }
+
+    private record BucketKey(Long patientId, LocalDate day) {
+    }
+
+    private record Pending(Stripe stripe, BucketKey key, Bucket bucket, List<Delta> deltas) {
+    }
+
+    /**
+     * 单个事件的贡献
+     */
+    private record Delta(String eventKey, int diaries, Integer[] values, int meditationMinutes, int riskEvents) {
+    }
+
+    /**
+     * 单个 (患者, 日期) 的滚动聚合，由所在分段的锁保护
+     */
+    private static final class Bucket {
+        /** 已落库部分：均值只有按日记数还原的和 */
+        final int[] baseCount = new int[4];
+        final BigDecimal[] baseSum = new BigDecimal[4];
+        int baseDiaryCount;
+        int baseMeditationMinutes;
+        int baseRiskEventCount;
+
+        /** 尚未 checkpoint 的事件（按到达顺序） */
+        final List<Delta> pending = new ArrayList<>();
+
+        /** 增量部分的汇总，随 pending 一起维护 */
+        final int[] count = new int[4];
+        final long[] sum = new long[4];
+        int diaryCount;
+        int meditationMinutes;
+        int riskEventCount;
+
+        /** 本进程内观测到的取值个数（min/max 只基于这些取值） */
+        final int[] observed = new int[4];
+        final int[] min = new int[4];
+        final int[] max = new int[4];
+        final Set<String> appliedKeys = new HashSet<>();
+
+        void apply(Delta d) {
+            if (d.eventKey() != null && !appliedKeys.add(d.eventKey())) {
+                return;
+            }
+            pending.add(d);
+            fold(d);
+            for (int m = 0; m < 4; m++) {
+                Integer value = d.values()[m];
+                if (value == null) continue;
+                if (observed[m] == 0 || value < min[m]) min[m] = value;
+                if (observed[m] == 0 || value > max[m]) max[m] = value;
+                observed[m]++;
+            }
+        }
+
+        /** 计入增量汇总 */
+        void fold(Delta d) {
+            diaryCount += d.diaries();
+            meditationMinutes += d.meditationMinutes();
+            riskEventCount += d.riskEvents();
+            for (int m = 0; m < 4; m++) {
+                if (d.values()[m] != null) {
+                    count[m]++;
+                    sum[m] += d.values()[m];
+                }
+            }
+        }
+
+        /**
+         * 以库中最新行为已落库部分，并按剩余的 pending 重算增量汇总
+         */
+        void rebase(PatientDailyMetric row) {
+            baseDiaryCount = row.getDiaryCount() != null ? row.getDiaryCount() : 0;
+            baseMeditationMinutes = row.getMeditationMinutes() != null ? row.getMeditationMinutes() : 0;
+            baseRiskEventCount = row.getRiskEventCount() != null ? row.getRiskEventCount() : 0;
+            BigDecimal[] avgs = {row.getMoodAvg(), row.getSleepAvg(), row.getStressAvg(), row.getEnergyAvg()};
+            for (int m = 0; m < 4; m++) {
+                boolean seeded = avgs[m] != null && baseDiaryCount > 0;
+                baseCount[m] = seeded ? baseDiaryCount : 0;
+                baseSum[m] = seeded ? avgs[m].multiply(BigDecimal.valueOf(baseDiaryCount)) : null;
+            }
+            Arrays.fill(count, 0);
+            Arrays.fill(sum, 0);
+            diaryCount = 0;
+            meditationMinutes = 0;
+            riskEventCount = 0;
+            pending.forEach(this::fold);
+        }
+
+        int count(int metric) {
+            return baseCount[metric] + count[metric];
+        }
+
+        BigDecimal avg(int metric) {
+            int total = count(metric);
+            if (total == 0) return null;
+            BigDecimal s = BigDecimal.valueOf(sum[metric]);
+            if (baseSum[metric] != null) s = s.add(baseSum[metric]);
+            return s.divide(BigDecimal.valueOf(total), 2, RoundingMode.HALF_UP);
+        }
+
+        PatientDailyMetric toMetric(BucketKey key) {
+            PatientDailyMetric m = new PatientDailyMetric();
+            m.setPatientId(key.patientId());
+            m.setMetricAt(key.day().atStartOfDay());
+            m.setMetricStatus(STATUS_REALTIME);
+            m.setMoodAvg(avg(MOOD));
+            m.setSleepAvg(avg(SLEEP));
+            m.setStressAvg(avg(STRESS));
+            m.setEnergyAvg(avg(ENERGY));
+            m.setDiaryCount(baseDiaryCount + diaryCount);
+            m.setMeditationMinutes(baseMeditationMinutes + meditationMinutes);
+            m.setRiskEventCount(baseRiskEventCount + riskEventCount);
+            m.setNoShowCount(0);
+            m.setSourceWindowStart(key.day().atStartOfDay());
+            m.setSourceWindowEnd(key.day().atTime(LocalTime.MAX));
+            return m;
+        }
+    }
+}
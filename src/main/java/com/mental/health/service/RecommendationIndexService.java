@@ -0,0 +1,256 @@
+package com.mental.health.service;
+
+import com.mental.health.algorithm.CollaborativeFiltering;
+import com.mental.health.algorithm.SparseRatingMatrix;
+import com.mental.health.algorithm.TopKNeighborIndex;
+import com.mental.health.entity.RecommendationNeighbor;
+import com.mental.health.entity.ResourceRating;
+import com.mental.health.mapper.RecommendationNeighborMapper;
+import com.mental.health.mapper.ResourceRatingMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 协同过滤索引服务
+ *
+ * 内存中维护一份不可变快照（稀疏评分矩阵 + Top-K 近邻表），在线推荐只做查表与加权求和；
+ * 近邻表持久化到 recommendation_neighbor，启动后直接加载，无需全量重算。
+ * 评分变化通过 {@link #markDirty(Long)} 登记，由定时任务增量重建受影响用户：按 update_time 水位线
+ * 找出上次加载后评分有变化的用户（含其他节点写入的），只重读这些用户的评分行，其余行从当前快照复制。
+ * 复制的行沿用加载时的衰减值，每晚全量重建时统一刷新。
+ */
+@Service
+public class RecommendationIndexService {
+
+    private static final Logger log = LoggerFactory.getLogger(RecommendationIndexService.class);
+    private static final int PERSIST_BATCH_SIZE = 1000;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    /** update_time 取语句执行时刻，提交可能晚于水位线查询；回看一段时间补上提交较晚的行 */
+    private static final long WATERMARK_OVERLAP_SECONDS = 60;
+
+    @Autowired private CollaborativeFiltering collaborativeFiltering;
+    @Autowired private ResourceRatingMapper ratingMapper;
+    @Autowired private RecommendationNeighborMapper neighborMapper;
+    @Autowired private TransactionTemplate transactionTemplate;
+
+    @Value("${recommendation.cf.neighbors:20}")
+    private int neighborCount;
+
+    @Value("${recommendation.behavior.half-life-days:30}")
+    private long halfLifeDays;
+
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    private final Object rebuildLock = new Object();
+
+    private volatile Snapshot snapshot;
+    /** 当前快照对应的评分加载时刻，只在 rebuildLock 内读写 */
+    private LocalDateTime watermark;
+
+    /**
+     * 为用户推荐资源ID（按预测评分降序）
+     */
+    public long[] recommend(Long userId, int topN) {
+        Snapshot current = ensureLoaded();
+        return collaborativeFiltering.recommendTopN(userId, current.matrix, current.neighbors, topN);
+    }
+
+    /**
+     * 登记评分发生变化的用户，下次增量重建时重算其近邻
+     */
+    public void markDirty(Long userId) {
+        if (userId != null) {
+            dirtyUsers.add(userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.cf.incremental-interval-ms:300000}")
+    public void incrementalRebuild() {
+        if (snapshot == null) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            LocalDateTime loadedAt = LocalDateTime.now();
+            Set<Long> dirtySet = new HashSet<>(
+                    ratingMapper.selectUserIdsUpdatedSince(watermark.minusSeconds(WATERMARK_OVERLAP_SECONDS)));
+            dirtySet.addAll(drainDirty());
+            if (dirtySet.isEmpty()) {
+                watermark = loadedAt;
+                return;
+            }
+            long start = System.currentTimeMillis();
+            SparseRatingMatrix matrix = reloadRows(snapshot.matrix, dirtySet);
+            watermark = loadedAt;
+            long[] dirty = dirtySet.stream().mapToLong(Long::longValue).toArray();
+            Set<Long> changed = new HashSet<>();
+            TopKNeighborIndex neighbors = collaborativeFiltering.updateNeighborIndex(
+                    snapshot.neighbors, matrix, dirty, changed);
+            snapshot = new Snapshot(matrix, neighbors);
+            persist(neighbors, new ArrayList<>(changed));
+            log.info("协同过滤增量重建完成: 脏用户{}个, 耗时{}ms", dirty.length, System.currentTimeMillis() - start);
+        }
+    }
+
+    @Scheduled(cron = "${recommendation.cf.full-rebuild-cron:0 30 3 * * ?}")
+    public void fullRebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            dirtyUsers.clear();
+            LocalDateTime loadedAt = LocalDateTime.now();
+            SparseRatingMatrix matrix = loadMatrix();
+            watermark = loadedAt;
+            TopKNeighborIndex neighbors = collaborativeFiltering.buildNeighborIndex(matrix, neighborCount);
+            snapshot = new Snapshot(matrix, neighbors);
+            persist(neighbors, null);
+            log.info("协同过滤全量重建完成: 用户{}个, 资源{}个, 评分{}条, 耗时{}ms",
+                    matrix.userCount(), matrix.itemCount(), matrix.nonZeroCount(),
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    private Snapshot ensureLoaded() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (rebuildLock) {
+            if (snapshot == null) {
+                LocalDateTime loadedAt = LocalDateTime.now();
+                SparseRatingMatrix matrix = loadMatrix();
+                watermark = loadedAt;
+                TopKNeighborIndex neighbors = loadNeighbors(matrix.userCount());
+                if (neighbors.userCount() == 0 && matrix.userCount() > 0) {
+                    neighbors = collaborativeFiltering.buildNeighborIndex(matrix, neighborCount);
+                    persist(neighbors, null);
+                }
+                snapshot = new Snapshot(matrix, neighbors);
+            }
+            return snapshot;
+        }
+    }
+
+    private SparseRatingMatrix loadMatrix() {
+        SparseRatingMatrix.Builder builder = SparseRatingMatrix.builder();
+        LocalDateTime now = LocalDateTime.now();
+        long halfLifeSeconds = halfLifeDays * 86400;
+        ratingMapper.streamAll(ctx -> {
+            ResourceRating r = ctx.getResultObject();
+            if (r.getUserId() != null && r.getResourceId() != null) {
+                float rating = ResourceBehaviorPipeline.effectiveRating(r, now, halfLifeSeconds);
+                if (rating > 0f) {
+                    builder.add(r.getUserId(), r.getResourceId(), rating);
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * 只重读 userIds 的评分行，其余用户从 base 复制；评分已全部删除的用户从矩阵中消失
+     */
+    private SparseRatingMatrix reloadRows(SparseRatingMatrix base, Set<Long> userIds) {
+        SparseRatingMatrix.Builder builder = base.toBuilderExcept(userIds);
+        LocalDateTime now = LocalDateTime.now();
+        long halfLifeSeconds = halfLifeDays * 86400;
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += LOAD_BATCH_SIZE) {
+            for (ResourceRating r : ratingMapper.selectByUserIds(ids.subList(from, Math.min(ids.size(), from + LOAD_BATCH_SIZE)))) {
+                if (r.getResourceId() != null) {
+                    float rating = ResourceBehaviorPipeline.effectiveRating(r, now, halfLifeSeconds);
+                    if (rating > 0f) {
+                        builder.add(r.getUserId(), r.getResourceId(), rating);
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private TopKNeighborIndex loadNeighbors(int expectedUsers) {
+        TopKNeighborIndex index = new TopKNeighborIndex(neighborCount, expectedUsers);
+        long[] currentUser = {Long.MIN_VALUE};
+        long[][] ids = {new long[neighborCount]};
+        float[][] sims = {new float[neighborCount]};
+        int[] n = {0};
+        neighborMapper.streamAll(ctx -> {
+            RecommendationNeighbor row = ctx.getResultObject();
+            if (row.getUserId() != currentUser[0]) {
+                if (n[0] > 0) {
+                    index.put(currentUser[0], Arrays.copyOf(ids[0], n[0]), Arrays.copyOf(sims[0], n[0]));
+                }
+                currentUser[0] = row.getUserId();
+                n[0] = 0;
+            }
+            if (n[0] < neighborCount) {
+                ids[0][n[0]] = row.getNeighborUserId();
+                sims[0][n[0]++] = row.getSimilarity();
+            }
+        });
+        if (n[0] > 0) {
+            index.put(currentUser[0], Arrays.copyOf(ids[0], n[0]), Arrays.copyOf(sims[0], n[0]));
+        }
+        return index;
+    }
+
+    /**
+     * 持久化近邻表；userIds 为 null 时整表重写
+     */
+    private void persist(TopKNeighborIndex neighbors, List<Long> userIds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Long> targets = userIds;
+            if (targets == null) {
+                neighborMapper.deleteAll();
+                targets = new ArrayList<>(neighbors.userCount());
+                for (int slot = 0; slot < neighbors.userCount(); slot++) {
+                    targets.add(neighbors.userIdAt(slot));
+                }
+            } else {
+                for (int from = 0; from < targets.size(); from += PERSIST_BATCH_SIZE) {
+                    neighborMapper.deleteByUserIds(targets.subList(from, Math.min(targets.size(), from + PERSIST_BATCH_SIZE)));
+                }
+            }
+
+            List<RecommendationNeighbor> rows = new ArrayList<>(PERSIST_BATCH_SIZE);
+            for (Long userId : targets) {
+                long[] ids = neighbors.neighborIds(userId);
+                float[] sims = neighbors.similarities(userId);
+                for (int i = 0; i < ids.length; i++) {
+                    RecommendationNeighbor row = new RecommendationNeighbor();
+                    row.setUserId(userId);
+                    row.setRankNo(i);
+                    row.setNeighborUserId(ids[i]);
+                    row.setSimilarity(sims[i]);
+                    rows.add(row);
+                    if (rows.size() >= PERSIST_BATCH_SIZE) {
+                        neighborMapper.insertBatch(rows);
+                        rows.clear();
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                neighborMapper.insertBatch(rows);
+            }
+        });
+    }
+
+    private List<Long> drainDirty() {
+        List<Long> drained = new ArrayList<>(dirtyUsers);
+        dirtyUsers.removeAll(drained);
+        return drained;
+    }
+
+    private record Snapshot(SparseRatingMatrix matrix, TopKNeighborIndex neighbors) {
+    }
+}
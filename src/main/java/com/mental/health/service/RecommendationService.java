@@ -1,6 +1,6 @@
 package com.mental.health.service;
 
-import com.mental.health.algorithm.CollaborativeFiltering;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.mental.health.entity.MentalResource;
 import com.mental.health.mapper.MentalResourceMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,16 +11,20 @@ import java.util.stream.Collectors;
 
 /**
  * 推荐服务 - 基于协同过滤算法
+ * 近邻计算与存储见 {@link RecommendationIndexService}
  */
 @Service
 public class RecommendationService {
 
     @Autowired
-    private CollaborativeFiltering collaborativeFiltering;
+    private RecommendationIndexService recommendationIndexService;
 
     @Autowired
     private MentalResourceMapper mentalResourceMapper;
 
+    @Autowired
+    private ResourceBehaviorPipeline behaviorPipeline;
+
     /**
      * 为用户推荐资源
      * 
@@ -29,59 +33,33 @@ public class RecommendationService {
      * @return 推荐的资源列表
      */
     public List<MentalResource> recommendResources(Long userId, int topN) {
-        // 模拟用户评分数据（实际应从数据库获取）
-        Map<Long, Map<Long, Double>> userRatings = buildUserRatingsMatrix();
-
-        // 计算用户相似度
-        Map<Long, Map<Long, Double>> similarities = collaborativeFiltering.calculateUserSimilarities(userRatings);
-
-        // 获取推荐资源ID列表（K=10个最相似用户）
-        List<Long> recommendedIds = collaborativeFiltering.recommendTopN(userId, userRatings, similarities, 10, topN);
+        // 查近邻表 + 加权求和，不在请求路径上计算相似度
+        long[] recommendedIds = recommendationIndexService.recommend(userId, topN);
 
         // 根据ID获取资源详情
-        if (recommendedIds.isEmpty()) {
+        if (recommendedIds.length == 0) {
             // 如果没有推荐结果，返回热门资源
             return getHotResources(topN);
         }
 
-        return recommendedIds.stream()
-                .map(id -> mentalResourceMapper.selectById(id))
+        List<Long> ids = Arrays.stream(recommendedIds).boxed().collect(Collectors.toList());
+        Map<Long, MentalResource> resources = mentalResourceMapper.selectBatchIds(ids).stream()
+                .filter(r -> r.getStatus() == null || r.getStatus() == 1)
+                .collect(Collectors.toMap(MentalResource::getId, r -> r));
+        return ids.stream()
+                .map(resources::get)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
-    /**
-     * 构建用户-资源评分矩阵
-     * 实际应用中应从数据库的用户行为数据构建
-     */
-    private Map<Long, Map<Long, Double>> buildUserRatingsMatrix() {
-        // TODO: 从数据库获取真实的用户行为数据
-        // 这里返回模拟数据作为示例
-        Map<Long, Map<Long, Double>> userRatings = new HashMap<>();
-        
-        // 示例：用户1的评分
-        Map<Long, Double> user1Ratings = new HashMap<>();
-        user1Ratings.put(1L, 5.0);
-        user1Ratings.put(2L, 4.0);
-        user1Ratings.put(3L, 3.0);
-        userRatings.put(1L, user1Ratings);
-        
-        // 示例：用户2的评分
-        Map<Long, Double> user2Ratings = new HashMap<>();
-        user2Ratings.put(1L, 4.5);
-        user2Ratings.put(2L, 4.5);
-        user2Ratings.put(4L, 5.0);
-        userRatings.put(2L, user2Ratings);
-        
-        return userRatings;
-    }
-
     /**
      * 获取热门资源（备选方案）
      */
     private List<MentalResource> getHotResources(int limit) {
-        // 实现热门资源查询逻辑
-        return new ArrayList<>();
+        return mentalResourceMapper.selectList(new LambdaQueryWrapper<MentalResource>()
+                .eq(MentalResource::getStatus, 1)
+                .orderByDesc(MentalResource::getViewCount)
+                .last("LIMIT " + Math.max(1, limit)));
     }
 
     /**
@@ -94,9 +72,14 @@ public class RecommendationService {
 
     /**
      * 记录用户行为（用于更新评分矩阵）
+     * 行为进入 {@link ResourceBehaviorPipeline} 缓冲区，批量折叠为隐式评分
      */
     public void recordUserBehavior(Long userId, Long resourceId, String action, Double rating) {
-        // TODO: 记录用户浏览、下载、点赞等行为，用于协同过滤
-        // 这些行为数据将用于构建评分矩阵
+        String normalized = action != null ? action.trim().toUpperCase(Locale.ROOT) : null;
+        if (rating != null && !ResourceBehaviorPipeline.ACTION_RATE.equals(normalized)) {
+            // 携带评分的任意行为同时记录一次显式评分
+            behaviorPipeline.record(userId, resourceId, ResourceBehaviorPipeline.ACTION_RATE, rating);
+        }
+        behaviorPipeline.record(userId, resourceId, normalized, rating);
     }
 }
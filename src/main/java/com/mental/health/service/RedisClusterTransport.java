@@ -0,0 +1,158 @@
+package com.mental.health.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis 的集群传输
+ *
+ * - 路由表：每个用户一个哈希 ws:route:{userId}，字段为节点ID、值为最近续期时间；
+ *   读取时忽略超过 TTL 未续期的节点，节点宕机后路由自然失效
+ * - 中继：每个节点订阅自己的频道 ws:node:{nodeId}，发往该节点的帧成批 PUBLISH
+ * - 批量查询与续期都走 pipeline，一次往返
+ */
+public class RedisClusterTransport implements ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisClusterTransport.class);
+
+    private static final String ROUTE_PREFIX = "ws:route:";
+    private static final String CHANNEL_PREFIX = "ws:node:";
+    private static final int PIPELINE_BATCH = 500;
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer container;
+    private final long routeTtlMillis;
+    private final Map<String, MessageListener> listeners = new ConcurrentHashMap<>();
+
+    public RedisClusterTransport(StringRedisTemplate redisTemplate, RedisConnectionFactory connectionFactory,
+                                 long routeTtlMillis) {
+        this.redisTemplate = redisTemplate;
+        this.routeTtlMillis = routeTtlMillis;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @Override
+    public void register(Long userId, String nodeId) {
+        String key = ROUTE_PREFIX + userId;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hSet(key, nodeId, String.valueOf(System.currentTimeMillis()));
+            conn.pExpire(key, routeTtlMillis);
+            return null;
+        });
+    }
+
+    @Override
+    public void unregister(Long userId, String nodeId) {
+        redisTemplate.opsForHash().delete(ROUTE_PREFIX + userId, nodeId);
+    }
+
+    @Override
+    public void refresh(Collection<Long> userIds, String nodeId) {
+        List<Long> ids = new ArrayList<>(userIds);
+        String now = String.valueOf(System.currentTimeMillis());
+        for (int from = 0; from < ids.size(); from += PIPELINE_BATCH) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + PIPELINE_BATCH));
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long userId : chunk) {
+                    String key = ROUTE_PREFIX + userId;
+                    conn.hSet(key, nodeId, now);
+                    conn.pExpire(key, routeTtlMillis);
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<Long, Set<String>> routes(Collection<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        Map<Long, Set<String>> result = new HashMap<>();
+        long expiredBefore = System.currentTimeMillis() - routeTtlMillis;
+        for (int from = 0; from < ids.size(); from += PIPELINE_BATCH) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + PIPELINE_BATCH));
+            List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long userId : chunk) {
+                    conn.hGetAll(ROUTE_PREFIX + userId);
+                }
+                return null;
+            });
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<Object, Object> nodes = (Map<Object, Object>) replies.get(i);
+                if (nodes == null || nodes.isEmpty()) {
+                    continue;
+                }
+                Set<String> alive = new HashSet<>();
+                for (Map.Entry<Object, Object> e : nodes.entrySet()) {
+                    if (Long.parseLong(e.getValue().toString()) >= expiredBefore) {
+                        alive.add(e.getKey().toString());
+                    }
+                }
+                if (!alive.isEmpty()) {
+                    result.put(chunk.get(i), alive);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean publish(String nodeId, String batch) {
+        Long receivers = redisTemplate.convertAndSend(CHANNEL_PREFIX + nodeId, batch);
+        return receivers != null && receivers > 0;
+    }
+
+    @Override
+    public void subscribe(String nodeId, Consumer<String> listener) {
+        MessageListener adapter = (message, pattern) -> {
+            try {
+                listener.accept(new String(message.getBody(), StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                log.warn("处理集群中继帧失败: {}", e.getMessage());
+            }
+        };
+        listeners.put(nodeId, adapter);
+        container.addMessageListener(adapter, new ChannelTopic(CHANNEL_PREFIX + nodeId));
+    }
+
+    @Override
+    public void unsubscribe(String nodeId) {
+        MessageListener adapter = listeners.remove(nodeId);
+        if (adapter != null) {
+            container.removeMessageListener(adapter);
+        }
+    }
+
+    public void shutdown() {
+        try {
+            container.stop();
+            container.destroy();
+        } catch (Exception e) {
+            log.warn("关闭 Redis 订阅容器失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.mental.health.service;
+
+import com.mental.health.entity.ResourceBehaviorLog;
+import com.mental.health.entity.ResourceRating;
+import com.mental.health.mapper.MentalResourceMapper;
+import com.mental.health.mapper.ResourceBehaviorLogMapper;
+import com.mental.health.mapper.ResourceRatingMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 资源行为事件管道
+ *
+ * 浏览/点赞/下载/冥想完成等事件先写入有界环形缓冲区（请求线程不碰数据库），
+ * 定时批量取出后按 (用户, 资源) 合并，再在一个事务内：
+ * 1) 多行插入 resource_behavior_log
+ * 2) 按资源合并后的增量更新 mental_resource 计数器（每资源每窗口一次 UPDATE，而非每次浏览一次）
+ * 3) 折叠为带时间衰减的隐式评分写入 resource_rating，并通知推荐索引增量重建
+ *
+ * 事务失败时本批原始事件退回重试队列，下一轮与新事件一起重新合并写入；
+ * 同一事件失败达到最大次数后放弃并计数（{@link #stats()}）。
+ */
+@Service
+public class ResourceBehaviorPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceBehaviorPipeline.class);
+
+    public static final String ACTION_VIEW = "VIEW";
+    public static final String ACTION_LIKE = "LIKE";
+    public static final String ACTION_DOWNLOAD = "DOWNLOAD";
+    public static final String ACTION_MEDITATION_COMPLETE = "MEDITATION_COMPLETE";
+    public static final String ACTION_RATE = "RATE";
+
+    /** 隐式行为权重（评分尺度 1-5） */
+    private static final float WEIGHT_VIEW = 0.5f;
+    private static final float WEIGHT_LIKE = 2.0f;
+    private static final float WEIGHT_DOWNLOAD = 1.5f;
+    private static final float WEIGHT_COMPLETE = 2.0f;
+    public static final float MAX_RATING = 5.0f;
+
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    @Autowired private ResourceBehaviorLogMapper behaviorLogMapper;
+    @Autowired private ResourceRatingMapper ratingMapper;
+    @Autowired private MentalResourceMapper resourceMapper;
+    @Autowired private RecommendationIndexService recommendationIndexService;
+    @Autowired private TransactionTemplate transactionTemplate;
+
+    @Value("${recommendation.behavior.half-life-days:30}")
+    private long halfLifeDays;
+
+    @Value("${recommendation.behavior.max-drain:20000}")
+    private int maxDrain;
+
+    @Value("${recommendation.behavior.max-attempts:5}")
+    private int maxAttempts;
+
+    private final BlockingQueue<BehaviorEvent> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    /** 写入失败待重试的事件，只在 flush 内访问 */
+    private final List<BehaviorEvent> retrying = new ArrayList<>();
+    private final AtomicLong overflowTotal = new AtomicLong();
+    private final AtomicLong discardedTotal = new AtomicLong();
+
+    public ResourceBehaviorPipeline(@Value("${recommendation.behavior.buffer-capacity:65536}") int capacity) {
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 记录行为事件（非阻塞）。缓冲区满时丢弃并计数，不阻塞请求线程。
+     *
+     * @param userId 匿名浏览时为 null，只计入资源计数器
+     * @param rating 仅 RATE 行为使用
+     */
+    public boolean record(Long userId, Long resourceId, String action, Double rating) {
+        if (resourceId == null || action == null) {
+            return false;
+        }
+        String normalized = action.trim().toUpperCase(Locale.ROOT);
+        BehaviorEvent event = new BehaviorEvent(userId, resourceId, normalized,
+                rating != null ? rating.floatValue() : null, LocalDateTime.now(), 0);
+        if (!buffer.offer(event)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.behavior.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("行为事件刷新失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        try {
+            while (!buffer.isEmpty() || hasRetrying()) {
+                flush();
+            }
+        } catch (Exception e) {
+            log.warn("停机前刷新行为事件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取出重试队列与缓冲区事件，合并后批量落库
+     *
+     * @return 本次写入成功的原始事件数
+     */
+    public synchronized int flush() {
+        List<BehaviorEvent> events = new ArrayList<>(retrying);
+        retrying.clear();
+        int room = Math.max(0, maxDrain - events.size());
+        if (room > 0) {
+            buffer.drainTo(events, room);
+        }
+        long droppedCount = dropped.getAndSet(0);
+        if (droppedCount > 0) {
+            overflowTotal.addAndGet(droppedCount);
+            log.warn("行为事件缓冲区已满，丢弃 {} 条事件", droppedCount);
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        Map<PairKey, Aggregate> byPair = new HashMap<>();
+        Map<Long, int[]> counterDeltas = new TreeMap<>(); // 按资源ID排序更新，避免并发事务间死锁
+        for (BehaviorEvent e : events) {
+            int[] delta = counterDeltas.computeIfAbsent(e.resourceId(), id -> new int[3]);
+            switch (e.action()) {
+                case ACTION_VIEW -> delta[0]++;
+                case ACTION_LIKE -> delta[1]++;
+                case ACTION_DOWNLOAD -> delta[2]++;
+                default -> { }
+            }
+            if (e.userId() != null) {
+                byPair.computeIfAbsent(new PairKey(e.userId(), e.resourceId()), k -> new Aggregate()).add(e);
+            }
+        }
+
+        List<ResourceBehaviorLog> logs = new ArrayList<>(byPair.size());
+        List<ResourceRating> ratings = new ArrayList<>(byPair.size());
+        for (Map.Entry<PairKey, Aggregate> entry : byPair.entrySet()) {
+            PairKey key = entry.getKey();
+            Aggregate agg = entry.getValue();
+            logs.add(agg.toLog(key));
+            if (agg.implicitDelta() > 0 || agg.explicitRating != null) {
+                ratings.add(agg.toRating(key));
+            }
+        }
+
+        long halfLifeSeconds = Math.max(1, halfLifeDays * 86400);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int from = 0; from < logs.size(); from += INSERT_BATCH_SIZE) {
+                    behaviorLogMapper.insertBatch(logs.subList(from, Math.min(logs.size(), from + INSERT_BATCH_SIZE)));
+                }
+                for (int from = 0; from < ratings.size(); from += INSERT_BATCH_SIZE) {
+                    ratingMapper.upsertBehaviorBatch(ratings.subList(from, Math.min(ratings.size(), from + INSERT_BATCH_SIZE)),
+                            halfLifeSeconds, MAX_RATING);
+                }
+                counterDeltas.forEach((resourceId, d) -> {
+                    if (d[0] > 0 || d[1] > 0 || d[2] > 0) {
+                        resourceMapper.applyCounterDelta(resourceId, d[0], d[1], d[2]);
+                    }
+                });
+            });
+        } catch (Exception ex) {
+            requeue(events, ex);
+            return 0;
+        }
+
+        for (ResourceRating r : ratings) {
+            recommendationIndexService.markDirty(r.getUserId());
+        }
+        log.debug("行为事件刷新: 原始{}条, 合并为{}对, 资源计数{}个", events.size(), logs.size(), counterDeltas.size());
+        return events.size();
+    }
+
+    /**
+     * 整批回滚：事件逐条累加失败次数后退回重试队列，达到上限的放弃
+     */
+    private void requeue(List<BehaviorEvent> events, Exception cause) {
+        int discarded = 0;
+        for (BehaviorEvent e : events) {
+            if (e.attempts() + 1 >= maxAttempts) {
+                discarded++;
+            } else {
+                retrying.add(e.failedOnce());
+            }
+        }
+        discardedTotal.addAndGet(discarded);
+        if (discarded > 0) {
+            log.error("行为事件写入失败已达 {} 次，放弃 {} 条: {}", maxAttempts, discarded, cause.getMessage());
+        } else {
+            log.warn("行为事件写入失败，{} 条下一轮重试: {}", events.size(), cause.getMessage());
+        }
+    }
+
+    private synchronized boolean hasRetrying() {
+        return !retrying.isEmpty();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("buffered", buffer.size());
+        stats.put("retrying", retrying.size());
+        stats.put("overflowDropped", overflowTotal.get() + dropped.get());
+        stats.put("writeDiscarded", discardedTotal.get());
+        return stats;
+    }
+
+    /**
+     * 评分行在载入推荐矩阵时的有效值：显式评分优先，隐式分按距今时长继续衰减
+     */
+    public static float effectiveRating(ResourceRating r, LocalDateTime now, long halfLifeSeconds) {
+        if (r.getExplicitRating() != null) {
+            return r.getExplicitRating();
+        }
+        float rating = r.getRating() != null ? r.getRating() : 0f;
+        if (r.getLastEventTime() == null || halfLifeSeconds <= 0) {
+            return rating;
+        }
+        long age = Math.max(0, java.time.Duration.between(r.getLastEventTime(), now).getSeconds());
+        return (float) (rating * Math.pow(0.5, (double) age / halfLifeSeconds));
+    }
+
+    private record BehaviorEvent(Long userId, Long resourceId, String action, Float rating, LocalDateTime time,
+                                 int attempts) {
+        BehaviorEvent failedOnce() {
+            return new BehaviorEvent(userId, resourceId, action, rating, time, attempts + 1);
+        }
+    }
+
+    private record PairKey(Long userId, Long resourceId) {
+    }
+
+    private static final class Aggregate {
+        int views;
+        int likes;
+        int downloads;
+        int completes;
+        Float explicitRating;
+        LocalDateTime first;
+        LocalDateTime last;
+
+        void add(BehaviorEvent e) {
+            switch (e.action()) {
+                case ACTION_VIEW -> views++;
+                case ACTION_LIKE -> likes++;
+                case ACTION_DOWNLOAD -> downloads++;
+                case ACTION_MEDITATION_COMPLETE -> completes++;
+                case ACTION_RATE -> {
+                    if (e.rating() != null) {
+                        explicitRating = Math.max(1f, Math.min(MAX_RATING, e.rating()));
+                    }
+                }
+                default -> { }
+            }
+            if (first == null || e.time().isBefore(first)) first = e.time();
+            if (last == null || e.time().isAfter(last)) last = e.time();
+        }
+
+        float implicitDelta() {
+            return views * WEIGHT_VIEW + likes * WEIGHT_LIKE + downloads * WEIGHT_DOWNLOAD + completes * WEIGHT_COMPLETE;
+        }
+
+        ResourceBehaviorLog toLog(PairKey key) {
+            ResourceBehaviorLog row = new ResourceBehaviorLog();
+            row.setUserId(key.userId());
+            row.setResourceId(key.resourceId());
+            row.setViewCount(views);
+            row.setLikeCount(likes);
+            row.setDownloadCount(downloads);
+            row.setCompleteCount(completes);
+            row.setExplicitRating(explicitRating);
+            row.setFirstEventTime(first);
+            row.setLastEventTime(last);
+            return row;
+        }
+
+        ResourceRating toRating(PairKey key) {
+            ResourceRating row = new ResourceRating();
+            row.setUserId(key.userId());
+            row.setResourceId(key.resourceId());
+            row.setImplicitScore(implicitDelta());
+            row.setExplicitRating(explicitRating);
+            row.setRating(explicitRating != null ? explicitRating : Math.min(MAX_RATING, implicitDelta()));
+            row.setLastEventTime(last);
+            return row;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.Map;
 
 @Slf4j
@@ -26,6 +27,9 @@ public class RiskAlertService {
     @Autowired
     private CrisisAlertMapper crisisAlertMapper;
 
+    @Autowired
+    private OutboxEventMapper outboxEventMapper;
+
     @Autowired
     private CrisisAlertActionMapper crisisAlertActionMapper;
 
@@ -53,7 +57,7 @@ public class RiskAlertService {
 
         if ("LOW".equals(eval.getFinalLevel()) || eval.getMatchedRules().isEmpty()) {
             event.setDecision("NO_ALERT");
-            riskEventMapper.insert(event);
+            saveRiskEvent(event);
             return;
         }
 
@@ -62,13 +66,13 @@ public class RiskAlertService {
         if (existing != null) {
             event.setDecision("SUPPRESSED");
             event.setSuppressedByAlertId(existing.getId());
-            riskEventMapper.insert(event);
+            saveRiskEvent(event);
             log.info("Risk alert suppressed for user {} level {} (duplicate within 4h)", userId, eval.getFinalLevel());
             return;
         }
 
         event.setDecision("ALERTED");
-        riskEventMapper.insert(event);
+        saveRiskEvent(event);
 
         Long doctorId = findAssignedDoctor(userId);
         CrisisAlert alert = createAlert(event, doctorId, eval);
@@ -105,6 +109,21 @@ public class RiskAlertService {
         }
     }
 
+    /**
+     * 保存风险事件并在同一事务内写入 RISK_EVENT_RECORDED（供实时日指标消费）。
+     * 本服务在 outbox 处理器中被调用，这里直接用 mapper 写 outbox，避免与 OutboxService 形成循环依赖。
+     */
+    private void saveRiskEvent(RiskEvent event) {
+        riskEventMapper.insert(event);
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("riskEventId", event.getId());
+        payload.put("userId", event.getUserId());
+        payload.put("computedLevel", event.getComputedLevel());
+        payload.put("detectedAt", event.getDetectedAt());
+        outboxEventMapper.insertIgnore(OutboxEvent.pending("RISK_EVENT", event.getId(), "RISK_EVENT_RECORDED",
+                "RISK_EVENT_RECORDED:" + event.getId(), JSON.toJSONString(payload)));
+    }
+
     @Transactional
     public void acknowledge(Long alertId, Long doctorId, String note) {
         CrisisAlert alert = crisisAlertMapper.selectById(alertId);
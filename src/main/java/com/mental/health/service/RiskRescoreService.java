@@ -0,0 +1,431 @@
+package com.mental.health.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.mental.health.entity.RiskEvent;
+import com.mental.health.mapper.RiskEventMapper;
+import com.mental.health.mapper.RiskRescoreSourceMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 风险规则批量重算
+ *
+ * 规则新增或修改后，用同一份编译好的规则快照重新评估历史日记、聊天消息和评估：
+ * - 每类数据源按主键区间分块，块内流式读取，多个块并行评估，内存占用与总行数无关
+ * - 非试运行时，每块在一个事务内删除本块实际重算的来源（时间窗内）上次的结果（decision=BACKFILL）后批量写入 risk_event，
+ *   重跑幂等；窗口更窄的重跑不会删掉窗外的回填结果
+ * - 试运行只统计，不写库；两种模式都会给出差异报告：哪些患者会新越过 HIGH/CRITICAL
+ *
+ * 重算只使用内容类规则（关键词、PHQ-9 第9题），不产生告警和通知。同一时间只运行一个任务。
+ */
+@Service
+public class RiskRescoreService {
+
+    private static final Logger log = LoggerFactory.getLogger(RiskRescoreService.class);
+
+    public static final String DECISION_BACKFILL = "BACKFILL";
+    public static final List<String> SUPPORTED_SOURCES = List.of(
+            "DIARY_CREATED", "CHAT_MESSAGE_CREATED", "ASSESSMENT_COMPLETED");
+
+    private static final int INSERT_BATCH_SIZE = 500;
+    private static final int LEVEL_QUERY_BATCH_SIZE = 1000;
+    private static final int DIFF_REPORT_LIMIT = 1000;
+    private static final int KEEP_FINISHED_JOBS = 20;
+    private static final int HIGH = 3;
+
+    @Autowired private RiskRescoreSourceMapper sourceMapper;
+    @Autowired private RiskEventMapper riskEventMapper;
+    @Autowired private RiskScoringService riskScoringService;
+    @Autowired private TransactionTemplate transactionTemplate;
+
+    @Value("${risk.rescore.parallelism:4}")
+    private int parallelism;
+
+    @Value("${risk.rescore.chunk-size:5000}")
+    private int chunkSize;
+
+    private ExecutorService chunkExecutor;
+    private ExecutorService jobExecutor;
+    private final Map<String, RescoreJob> jobs = new LinkedHashMap<>();
+    private RescoreJob activeJob;
+
+    @PostConstruct
+    public void initExecutor() {
+        AtomicInteger seq = new AtomicInteger();
+        chunkExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "risk-rescore-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        jobExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "risk-rescore-job");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdownExecutor() {
+        jobExecutor.shutdownNow();
+        chunkExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交重算任务
+     *
+     * @param sources 数据源事件类型，为空时重算全部
+     * @param start   数据创建时间下限（含），可空
+     * @param end     数据创建时间上限（含），可空
+     * @param dryRun  试运行只生成差异报告，不写 risk_event
+     */
+    public synchronized Map<String, Object> submit(List<String> sources, LocalDateTime start, LocalDateTime end,
+                                                   boolean dryRun) {
+        if (activeJob != null) {
+            throw new RuntimeException("已有重算任务在执行: " + activeJob.jobId);
+        }
+        List<String> targets = sources == null || sources.isEmpty() ? SUPPORTED_SOURCES : sources;
+        for (String source : targets) {
+            if (!SUPPORTED_SOURCES.contains(source)) {
+                throw new RuntimeException("不支持的数据源: " + source);
+            }
+        }
+        LocalDateTime from = start != null ? start : LocalDateTime.of(1970, 1, 1, 0, 0);
+        LocalDateTime to = end != null ? end : LocalDateTime.now();
+        if (from.isAfter(to)) {
+            throw new RuntimeException("开始时间不能晚于结束时间");
+        }
+
+        RescoreJob job = new RescoreJob(UUID.randomUUID().toString().replace("-", "").substring(0, 16),
+                List.copyOf(targets), from, to, dryRun);
+        activeJob = job;
+        jobs.put(job.jobId, job);
+        trimFinishedJobs();
+        jobExecutor.execute(() -> run(job));
+        return job.toMap();
+    }
+
+    public synchronized Map<String, Object> getJob(String jobId) {
+        RescoreJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new RuntimeException("重算任务不存在");
+        }
+        return job.toMap();
+    }
+
+    public synchronized void cancel(String jobId) {
+        RescoreJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new RuntimeException("重算任务不存在");
+        }
+        job.cancelled = true;
+    }
+
+    private void run(RescoreJob job) {
+        long begin = System.currentTimeMillis();
+        try {
+            // 重新编译一次规则，确保使用刚修改的规则；整个任务共用这份快照
+            RiskRuleSnapshot rules = riskScoringService.reloadRules();
+            job.ruleCount = rules.ruleCount();
+            for (String source : job.sources) {
+                if (job.cancelled) break;
+                runSource(job, rules, source);
+            }
+            if (job.error.get() == null) {
+                job.diff = buildDiff(job);
+            }
+            job.status = job.error.get() != null ? "FAILED" : job.cancelled ? "CANCELLED" : "COMPLETED";
+        } catch (Exception e) {
+            job.error.compareAndSet(null, e.getMessage());
+            job.status = "FAILED";
+            log.error("风险重算任务 {} 失败: {}", job.jobId, e.getMessage(), e);
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            synchronized (this) {
+                activeJob = null;
+            }
+            log.info("风险重算任务 {} 结束: 状态{}, 扫描{}条, 命中{}条, 写入{}条, 耗时{}ms",
+                    job.jobId, job.status, job.scanned.get(), job.matched.get(), job.written.get(),
+                    System.currentTimeMillis() - begin);
+        }
+    }
+
+    /**
+     * 按主键区间分块并行处理一类数据源；在途块数有上限，不会一次性提交全部区间
+     */
+    private void runSource(RescoreJob job, RiskRuleSnapshot rules, String source) throws InterruptedException {
+        Map<String, Object> bounds = switch (source) {
+            case "DIARY_CREATED" -> sourceMapper.findDiaryIdBounds();
+            case "CHAT_MESSAGE_CREATED" -> sourceMapper.findMessageIdBounds();
+            default -> sourceMapper.findAssessmentIdBounds();
+        };
+        if (bounds == null || bounds.get("minId") == null || bounds.get("maxId") == null) {
+            return;
+        }
+        long minId = ((Number) bounds.get("minId")).longValue();
+        long maxId = ((Number) bounds.get("maxId")).longValue();
+        long width = Math.max(1, chunkSize);
+        job.chunksTotal.addAndGet((maxId - minId) / width + 1);
+
+        int maxInFlight = Math.max(1, parallelism) * 2;
+        Semaphore permits = new Semaphore(maxInFlight);
+        for (long from = minId; from <= maxId; from += width) {
+            if (job.cancelled || job.error.get() != null) break;
+            long fromId = from;
+            long toId = Math.min(maxId, from + width - 1);
+            permits.acquire();
+            try {
+                chunkExecutor.execute(() -> {
+                    try {
+                        processChunk(job, rules, source, fromId, toId);
+                    } catch (Exception e) {
+                        job.error.compareAndSet(null, source + " [" + fromId + ", " + toId + "]: " + e.getMessage());
+                        log.error("风险重算分块失败: {} [{}, {}]", source, fromId, toId, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw new RuntimeException("重算线程池已关闭");
+            }
+        }
+        // 等待本数据源全部在途分块完成
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+    }
+
+    private void processChunk(RescoreJob job, RiskRuleSnapshot rules, String source, long fromId, long toId) {
+        List<RiskEvent> events = new ArrayList<>();
+        // 本分块在作业时间窗内实际重算的来源ID；窗外的旧回填结果不动
+        List<Long> rescored = new ArrayList<>();
+        LocalDateTime detectedAt = job.createdAt;
+        SourceRowConsumer consumer = (sourceId, userId, text, data) -> {
+            job.scanned.incrementAndGet();
+            rescored.add(sourceId);
+            if (userId == null) {
+                return;
+            }
+            RiskScoringService.RiskEvaluation eval = riskScoringService.evaluateContent(rules, source, text, data);
+            if (eval.getMatchedRules().isEmpty()) {
+                return;
+            }
+            job.matched.incrementAndGet();
+            job.recordLevel(userId, eval.getFinalLevel(), source, sourceId);
+            if (!job.dryRun) {
+                events.add(toEvent(source, sourceId, userId, text, eval, detectedAt));
+            }
+        };
+
+        switch (source) {
+            case "DIARY_CREATED" -> sourceMapper.streamDiaries(fromId, toId, job.start, job.end, ctx -> {
+                Map<String, Object> row = ctx.getResultObject();
+                consumer.accept(toLong(row.get("id")), toLong(row.get("userId")), (String) row.get("content"), null);
+            });
+            case "CHAT_MESSAGE_CREATED" -> sourceMapper.streamMessages(fromId, toId, job.start, job.end, ctx -> {
+                Map<String, Object> row = ctx.getResultObject();
+                consumer.accept(toLong(row.get("id")), toLong(row.get("userId")), (String) row.get("content"), null);
+            });
+            default -> streamAssessments(job, fromId, toId, consumer);
+        }
+
+        if (!job.dryRun) {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int from = 0; from < rescored.size(); from += INSERT_BATCH_SIZE) {
+                    riskEventMapper.deleteBySourceIds(source, DECISION_BACKFILL,
+                            rescored.subList(from, Math.min(rescored.size(), from + INSERT_BATCH_SIZE)));
+                }
+                for (int from = 0; from < events.size(); from += INSERT_BATCH_SIZE) {
+                    riskEventMapper.insertBatch(events.subList(from, Math.min(events.size(), from + INSERT_BATCH_SIZE)));
+                }
+            });
+            job.written.addAndGet(events.size());
+        }
+        job.chunksDone.incrementAndGet();
+    }
+
+    /**
+     * 逐题答案按会话ID有序返回，相邻行合并为一次评估（与 ASSESSMENT_COMPLETED 载荷的 answers 结构一致）
+     */
+    private void streamAssessments(RescoreJob job, long fromId, long toId, SourceRowConsumer consumer) {
+        long[] currentId = {Long.MIN_VALUE};
+        Long[] currentUser = {null};
+        AtomicReference<Map<String, Object>> answers = new AtomicReference<>();
+        sourceMapper.streamAssessmentAnswers(fromId, toId, job.start, job.end, ctx -> {
+            Map<String, Object> row = ctx.getResultObject();
+            long sessionId = toLong(row.get("id"));
+            if (sessionId != currentId[0]) {
+                if (answers.get() != null) {
+                    consumer.accept(currentId[0], currentUser[0], null, Map.of("answers", answers.get()));
+                }
+                currentId[0] = sessionId;
+                currentUser[0] = toLong(row.get("userId"));
+                answers.set(new HashMap<>());
+            }
+            answers.get().put((String) row.get("itemCode"), row.get("answerValue"));
+        });
+        if (answers.get() != null) {
+            consumer.accept(currentId[0], currentUser[0], null, Map.of("answers", answers.get()));
+        }
+    }
+
+    private RiskEvent toEvent(String source, Long sourceId, Long userId, String text,
+                              RiskScoringService.RiskEvaluation eval, LocalDateTime detectedAt) {
+        RiskEvent event = new RiskEvent();
+        event.setUserId(userId);
+        event.setSourceType(source);
+        event.setSourceId(sourceId);
+        event.setContentSnapshot(text != null ? text.substring(0, Math.min(text.length(), 200)) : null);
+        event.setMatchedRules(JSON.toJSONString(eval.getMatchedRules()));
+        event.setComputedScore(eval.getTotalScore());
+        event.setComputedLevel(eval.getFinalLevel());
+        event.setDecision(DECISION_BACKFILL);
+        event.setDetectedAt(detectedAt);
+        return event;
+    }
+
+    /**
+     * 差异报告：重算后达到 HIGH/CRITICAL、且高于该患者已有（非重算）风险事件最高等级的患者
+     */
+    private Map<String, Object> buildDiff(RescoreJob job) {
+        List<Long> userIds = new ArrayList<>(job.userLevels.keySet());
+        Map<Long, Integer> existing = new HashMap<>();
+        for (int from = 0; from < userIds.size(); from += LEVEL_QUERY_BATCH_SIZE) {
+            List<Long> slice = userIds.subList(from, Math.min(userIds.size(), from + LEVEL_QUERY_BATCH_SIZE));
+            for (Map<String, Object> row : riskEventMapper.maxLevelByUsers(slice, DECISION_BACKFILL)) {
+                existing.put(toLong(row.get("userId")), ((Number) row.get("levelOrder")).intValue());
+            }
+        }
+
+        List<Map<String, Object>> crossed = new ArrayList<>();
+        int newlyHigh = 0;
+        int newlyCritical = 0;
+        for (Map.Entry<Long, UserLevel> entry : job.userLevels.entrySet()) {
+            UserLevel level = entry.getValue();
+            int before = existing.getOrDefault(entry.getKey(), 1);
+            if (level.order <= Math.max(before, HIGH - 1)) {
+                continue;
+            }
+            if ("CRITICAL".equals(level.level)) newlyCritical++; else newlyHigh++;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("userId", entry.getKey());
+            item.put("previousLevel", levelName(before, existing.containsKey(entry.getKey())));
+            item.put("rescoredLevel", level.level);
+            item.put("sourceType", level.sourceType);
+            item.put("sourceId", level.sourceId);
+            crossed.add(item);
+        }
+        crossed.sort(Comparator.<Map<String, Object>>comparingInt(m -> -RiskScoringService.levelOrder((String) m.get("rescoredLevel")))
+                .thenComparing(m -> (Long) m.get("userId")));
+
+        Map<String, Object> diff = new LinkedHashMap<>();
+        diff.put("newlyHigh", newlyHigh);
+        diff.put("newlyCritical", newlyCritical);
+        diff.put("truncated", crossed.size() > DIFF_REPORT_LIMIT);
+        diff.put("patients", crossed.size() > DIFF_REPORT_LIMIT ? crossed.subList(0, DIFF_REPORT_LIMIT) : crossed);
+        return diff;
+    }
+
+    private static String levelName(int order, boolean present) {
+        if (!present) return null;
+        return switch (order) {
+            case 4 -> "CRITICAL";
+            case 3 -> "HIGH";
+            case 2 -> "MEDIUM";
+            default -> "LOW";
+        };
+    }
+
+    private void trimFinishedJobs() {
+        Iterator<RescoreJob> it = jobs.values().iterator();
+        while (jobs.size() > KEEP_FINISHED_JOBS && it.hasNext()) {
+            if (it.next() != activeJob) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    @FunctionalInterface
+    private interface SourceRowConsumer {
+        void accept(Long sourceId, Long userId, String text, Map<String, Object> structuredData);
+    }
+
+    private record UserLevel(int order, String level, String sourceType, Long sourceId) {
+    }
+
+    private static final class RescoreJob {
+        final String jobId;
+        final List<String> sources;
+        final LocalDateTime start;
+        final LocalDateTime end;
+        final boolean dryRun;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong matched = new AtomicLong();
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong chunksTotal = new AtomicLong();
+        final AtomicLong chunksDone = new AtomicLong();
+        final AtomicReference<String> error = new AtomicReference<>();
+        /** 只记录达到 HIGH 及以上的患者，规模与高风险患者数成正比 */
+        final ConcurrentHashMap<Long, UserLevel> userLevels = new ConcurrentHashMap<>();
+        volatile String status = "RUNNING";
+        volatile boolean cancelled;
+        volatile int ruleCount;
+        volatile LocalDateTime finishedAt;
+        volatile Map<String, Object> diff;
+
+        RescoreJob(String jobId, List<String> sources, LocalDateTime start, LocalDateTime end, boolean dryRun) {
+            this.jobId = jobId;
+            this.sources = sources;
+            this.start = start;
+            this.end = end;
+            this.dryRun = dryRun;
+        }
+
+        void recordLevel(Long userId, String level, String sourceType, Long sourceId) {
+            int order = RiskScoringService.levelOrder(level);
+            if (order < HIGH) {
+                return;
+            }
+            UserLevel candidate = new UserLevel(order, level, sourceType, sourceId);
+            userLevels.merge(userId, candidate, (a, b) -> b.order() > a.order() ? b : a);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("jobId", jobId);
+            m.put("status", status);
+            m.put("dryRun", dryRun);
+            m.put("sources", sources);
+            m.put("start", start);
+            m.put("end", end);
+            m.put("ruleCount", ruleCount);
+            m.put("chunksDone", chunksDone.get());
+            m.put("chunksTotal", chunksTotal.get());
+            m.put("scanned", scanned.get());
+            m.put("matched", matched.get());
+            m.put("written", written.get());
+            m.put("createdAt", createdAt);
+            m.put("finishedAt", finishedAt);
+            m.put("error", error.get());
+            m.put("diff", diff);
+            return m;
+        }
+    }
+}
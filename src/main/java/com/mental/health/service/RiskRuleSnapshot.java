@@ -0,0 +1,191 @@
+package com.mental.health.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.mental.health.algorithm.AhoCorasick;
+import com.mental.health.entity.RiskRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编译后的风险规则集（不可变快照）
+ *
+ * - 所有 KEYWORD 规则的关键词合并为一个 Aho–Corasick 自动机，标签为规则下标，一次扫描得到全部命中规则
+ * - TREND_THRESHOLD 的 thresholdConfig 在编译时解析为谓词
+ * - 按事件来源预先分桶：每种事件来源只遍历可能命中的规则
+ *
+ * 规则变化时整体重新编译并替换引用，评估过程不访问数据库。
+ */
+public final class RiskRuleSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(RiskRuleSnapshot.class);
+
+    public static final String MATCHER_KEYWORD = "KEYWORD";
+    public static final String MATCHER_PHQ9_Q9 = "PHQ9_Q9";
+    public static final String MATCHER_TREND = "TREND_THRESHOLD";
+
+    private static final String[] KNOWN_SOURCES = {"DIARY_CREATED", "CHAT_MESSAGE_CREATED", "ASSESSMENT_COMPLETED"};
+
+    private final CompiledRule[] rules;
+    private final AhoCorasick keywords;
+    private final String fingerprint;
+    private final LocalDateTime compiledAt;
+    private final Map<String, CompiledRule[]> bySource = new ConcurrentHashMap<>();
+
+    private RiskRuleSnapshot(CompiledRule[] rules, AhoCorasick keywords, String fingerprint) {
+        this.rules = rules;
+        this.keywords = keywords;
+        this.fingerprint = fingerprint;
+        this.compiledAt = LocalDateTime.now();
+        for (String source : KNOWN_SOURCES) {
+            bySource.put(source, select(source));
+        }
+    }
+
+    /**
+     * 编译规则列表；matcherType 未知或配置无法解析的规则被跳过
+     */
+    public static RiskRuleSnapshot compile(List<RiskRule> activeRules, String fingerprint) {
+        List<CompiledRule> compiled = new ArrayList<>(activeRules.size());
+        AhoCorasick.Builder builder = AhoCorasick.builder();
+        for (RiskRule rule : activeRules) {
+            String matcher = rule.getMatcherType();
+            int index = compiled.size();
+            if (MATCHER_KEYWORD.equals(matcher)) {
+                if (rule.getKeywordPattern() == null) continue;
+                for (String kw : rule.getKeywordPattern().split(",")) {
+                    builder.add(kw.trim(), index);
+                }
+                compiled.add(new CompiledRule(index, rule, null));
+            } else if (MATCHER_PHQ9_Q9.equals(matcher)) {
+                compiled.add(new CompiledRule(index, rule, null));
+            } else if (MATCHER_TREND.equals(matcher)) {
+                TrendPredicate predicate = TrendPredicate.parse(rule.getThresholdConfig());
+                if (predicate == null) {
+                    log.warn("风险规则 {} 的阈值配置无效，已跳过: {}", rule.getRuleCode(), rule.getThresholdConfig());
+                    continue;
+                }
+                compiled.add(new CompiledRule(index, rule, predicate));
+            } else {
+                log.warn("风险规则 {} 的匹配类型 {} 不受支持，已跳过", rule.getRuleCode(), matcher);
+            }
+        }
+        return new RiskRuleSnapshot(compiled.toArray(new CompiledRule[0]), builder.build(), fingerprint);
+    }
+
+    /**
+     * 对某事件来源可能命中的规则（保持规则原有顺序）
+     */
+    public CompiledRule[] rulesFor(String eventSource) {
+        if (eventSource == null) {
+            return select(null);
+        }
+        return bySource.computeIfAbsent(eventSource, this::select);
+    }
+
+    /**
+     * 单次扫描文本，返回按规则下标索引的关键词命中表；文本为空时返回 null
+     */
+    public boolean[] matchKeywords(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        boolean[] hits = new boolean[rules.length];
+        keywords.scan(text, tag -> hits[tag] = true);
+        return hits;
+    }
+
+    public int ruleCount() {
+        return rules.length;
+    }
+
+    public int keywordCount() {
+        return keywords.patternCount();
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public LocalDateTime getCompiledAt() {
+        return compiledAt;
+    }
+
+    /**
+     * 与原逐条判断的口径一致：
+     * KEYWORD 按来源过滤；PHQ9_Q9 只作用于 ASSESSMENT_COMPLETED；TREND_THRESHOLD 对所有来源生效
+     */
+    private CompiledRule[] select(String eventSource) {
+        List<CompiledRule> selected = new ArrayList<>();
+        for (CompiledRule rule : rules) {
+            boolean applicable = switch (rule.matcherType()) {
+                case MATCHER_KEYWORD -> isSourceMatch(rule.rule().getSourceType(), eventSource);
+                case MATCHER_PHQ9_Q9 -> "ASSESSMENT_COMPLETED".equals(eventSource);
+                default -> true;
+            };
+            if (applicable) {
+                selected.add(rule);
+            }
+        }
+        return selected.toArray(new CompiledRule[0]);
+    }
+
+    private static boolean isSourceMatch(String ruleSource, String eventSource) {
+        if ("TREND".equals(ruleSource)) return true;
+        if (ruleSource == null) return false;
+        return ruleSource.equals(eventSource) ||
+                (ruleSource.equals("DIARY") && "DIARY_CREATED".equals(eventSource)) ||
+                (ruleSource.equals("CHAT") && "CHAT_MESSAGE_CREATED".equals(eventSource)) ||
+                (ruleSource.equals("ASSESSMENT") && "ASSESSMENT_COMPLETED".equals(eventSource));
+    }
+
+    /**
+     * 编译后的单条规则；index 即自动机中的标签
+     */
+    public record CompiledRule(int index, RiskRule rule, TrendPredicate trend) {
+
+        public String matcherType() {
+            return rule.getMatcherType();
+        }
+    }
+
+    /**
+     * 预解析的趋势阈值：field op value，例如 moodAvg3d &lt;= 3.0
+     */
+    public record TrendPredicate(String field, String op, double threshold) {
+
+        static TrendPredicate parse(String config) {
+            if (config == null) return null;
+            try {
+                JSONObject json = JSON.parseObject(config);
+                String field = json.getString("field");
+                String op = json.getString("op");
+                Double value = json.getDouble("value");
+                if (field == null || value == null || !isSupportedOp(op)) return null;
+                return new TrendPredicate(field, op, value);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        private static boolean isSupportedOp(String op) {
+            return "<=".equals(op) || "<".equals(op) || ">=".equals(op) || ">".equals(op);
+        }
+
+        public boolean test(double actual) {
+            return switch (op) {
+                case "<=" -> actual <= threshold;
+                case "<" -> actual < threshold;
+                case ">=" -> actual >= threshold;
+                case ">" -> actual > threshold;
+                default -> false;
+            };
+        }
+    }
+}
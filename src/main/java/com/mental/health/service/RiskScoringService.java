@@ -1,43 +1,79 @@
 package com.mental.health.service;
 
-import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONObject;
 import com.mental.health.entity.RiskRule;
-import com.mental.health.mapper.MoodDiaryMapper;
 import com.mental.health.mapper.RiskRuleMapper;
+import com.mental.health.service.RiskRuleSnapshot.CompiledRule;
+import com.mental.health.service.RiskRuleSnapshot.TrendPredicate;
 import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Objects;
+
+/**
+ * 风险评分
+ *
+ * 启用的规则编译为 {@link RiskRuleSnapshot} 常驻内存，评估时关键词只扫描一遍文本，
+ * 趋势指标读取 {@link MoodTrendWindowService} 的内存窗口；
+ * 定时比对 risk_rule 指纹（行数 + 最大更新时间），变化时重新编译并原子替换快照。
+ */
 @Service
 public class RiskScoringService {
 
+    private static final Logger log = LoggerFactory.getLogger(RiskScoringService.class);
+
     @Autowired
     private RiskRuleMapper riskRuleMapper;
 
     @Autowired
-    private MoodDiaryMapper moodDiaryMapper;
+    private MoodTrendWindowService trendWindowService;
+
+    private volatile RiskRuleSnapshot snapshot;
 
     public RiskEvaluation evaluate(String sourceType, Long userId, String textContent,
                                     Map<String, Object> structuredData) {
-        List<RiskRule> rules = riskRuleMapper.findAllActive();
+        return evaluate(currentRules(), sourceType, userId, textContent, structuredData, true);
+    }
+
+    /**
+     * 只按内容评估（关键词、PHQ-9 第9题），跳过趋势规则。
+     * 用于历史数据批量重算：趋势窗口反映的是当前状态，不适用于历史记录；整批共用同一份快照。
+     */
+    public RiskEvaluation evaluateContent(RiskRuleSnapshot rules, String sourceType, String textContent,
+                                          Map<String, Object> structuredData) {
+        return evaluate(rules, sourceType, null, textContent, structuredData, false);
+    }
+
+    private RiskEvaluation evaluate(RiskRuleSnapshot rules, String sourceType, Long userId, String textContent,
+                                    Map<String, Object> structuredData, boolean includeTrend) {
         int totalScore = 0;
         String maxLevel = "LOW";
         List<MatchedRule> matched = new ArrayList<>();
-
-        for (RiskRule rule : rules) {
-            boolean hit = switch (rule.getMatcherType()) {
-                case "KEYWORD" -> keywordMatch(rule, sourceType, textContent);
-                case "PHQ9_Q9" -> phq9Q9Match(rule, sourceType, structuredData);
-                case "TREND_THRESHOLD" -> trendMatch(rule, userId);
+        boolean[] keywordHits = null;
+        boolean keywordsScanned = false;
+
+        for (CompiledRule compiled : rules.rulesFor(sourceType)) {
+            boolean hit = switch (compiled.matcherType()) {
+                case RiskRuleSnapshot.MATCHER_KEYWORD -> {
+                    if (!keywordsScanned) {
+                        keywordHits = rules.matchKeywords(textContent);
+                        keywordsScanned = true;
+                    }
+                    yield keywordHits != null && keywordHits[compiled.index()];
+                }
+                case RiskRuleSnapshot.MATCHER_PHQ9_Q9 -> phq9Q9Match(structuredData);
+                case RiskRuleSnapshot.MATCHER_TREND -> includeTrend && trendMatch(compiled.trend(), userId);
                 default -> false;
             };
 
             if (hit) {
+                RiskRule rule = compiled.rule();
                 totalScore += rule.getScoreWeight();
                 maxLevel = higherLevel(maxLevel, rule.getRiskLevel());
                 matched.add(new MatchedRule(rule.getRuleCode(), rule.getRuleName(),
@@ -55,18 +91,60 @@ public class RiskScoringService {
         return eval;
     }
 
-    private boolean keywordMatch(RiskRule rule, String sourceType, String text) {
-        if (text == null || text.isBlank()) return false;
-        if (!isSourceMatch(rule.getSourceType(), sourceType)) return false;
-        String[] keywords = rule.getKeywordPattern().split(",");
-        for (String kw : keywords) {
-            if (text.contains(kw.trim())) return true;
+    // ===== 规则快照 =====
+
+    /**
+     * 当前规则快照，首次使用时加载
+     */
+    public RiskRuleSnapshot currentRules() {
+        RiskRuleSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = compileRules(riskRuleMapper.rulesFingerprint());
+            }
+            return snapshot;
         }
-        return false;
     }
 
-    private boolean phq9Q9Match(RiskRule rule, String sourceType, Map<String, Object> data) {
-        if (!"ASSESSMENT_COMPLETED".equals(sourceType)) return false;
+    @Scheduled(fixedDelayString = "${risk.rules.refresh-interval-ms:30000}")
+    public void refreshRules() {
+        try {
+            RiskRuleSnapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            String fingerprint = riskRuleMapper.rulesFingerprint();
+            if (!Objects.equals(fingerprint, current.getFingerprint())) {
+                reloadRules(fingerprint);
+            }
+        } catch (Exception e) {
+            log.error("刷新风险规则失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 立即重新编译规则（规则被修改后调用）
+     */
+    public RiskRuleSnapshot reloadRules() {
+        return reloadRules(riskRuleMapper.rulesFingerprint());
+    }
+
+    private synchronized RiskRuleSnapshot reloadRules(String fingerprint) {
+        snapshot = compileRules(fingerprint);
+        log.info("风险规则已重新编译: 规则{}条, 关键词{}个", snapshot.ruleCount(), snapshot.keywordCount());
+        return snapshot;
+    }
+
+    private RiskRuleSnapshot compileRules(String fingerprint) {
+        return RiskRuleSnapshot.compile(riskRuleMapper.findAllActive(), fingerprint);
+    }
+
+    // ===== 匹配器 =====
+
+    private boolean phq9Q9Match(Map<String, Object> data) {
         if (data == null) return false;
         Object answers = data.get("answers");
         if (answers instanceof Map) {
@@ -80,43 +158,21 @@ public class RiskScoringService {
         return false;
     }
 
-    private boolean trendMatch(RiskRule rule, Long userId) {
-        if (rule.getThresholdConfig() == null) return false;
+    private boolean trendMatch(TrendPredicate predicate, Long userId) {
         try {
-            JSONObject config = JSON.parseObject(rule.getThresholdConfig());
-            String field = config.getString("field");
-            String op = config.getString("op");
-            Double threshold = config.getDouble("value");
-            if (field == null || op == null || threshold == null) return false;
-
-            Double actual = switch (field) {
-                case "moodAvg3d" -> moodDiaryMapper.avgMoodScore(userId, 3);
-                case "moodAvg7d" -> moodDiaryMapper.avgMoodScore(userId, 7);
-                case "sleepAvg3d" -> moodDiaryMapper.avgSleepQuality(userId, 3);
+            Double actual = switch (predicate.field()) {
+                case "moodAvg3d" -> trendWindowService.average(userId, MoodTrendWindowService.MOOD, 3);
+                case "moodAvg7d" -> trendWindowService.average(userId, MoodTrendWindowService.MOOD, 7);
+                case "sleepAvg3d" -> trendWindowService.average(userId, MoodTrendWindowService.SLEEP, 3);
+                case "stressAvg3d" -> trendWindowService.average(userId, MoodTrendWindowService.STRESS, 3);
                 default -> null;
             };
-
-            if (actual == null) return false;
-            return switch (op) {
-                case "<=" -> actual <= threshold;
-                case "<" -> actual < threshold;
-                case ">=" -> actual >= threshold;
-                case ">" -> actual > threshold;
-                default -> false;
-            };
+            return actual != null && predicate.test(actual);
         } catch (Exception e) {
             return false;
         }
     }
 
-    private boolean isSourceMatch(String ruleSource, String eventSource) {
-        if ("TREND".equals(ruleSource)) return true;
-        return ruleSource.equals(eventSource) ||
-                (ruleSource.equals("DIARY") && "DIARY_CREATED".equals(eventSource)) ||
-                (ruleSource.equals("CHAT") && "CHAT_MESSAGE_CREATED".equals(eventSource)) ||
-                (ruleSource.equals("ASSESSMENT") && "ASSESSMENT_COMPLETED".equals(eventSource));
-    }
-
     private String normalizeByScore(int score) {
         if (score >= 60) return "CRITICAL";
         if (score >= 40) return "HIGH";
@@ -128,7 +184,7 @@ public class RiskScoringService {
         return levelOrder(a) >= levelOrder(b) ? a : b;
     }
 
-    private int levelOrder(String level) {
+    static int levelOrder(String level) {
         return switch (level) {
             case "CRITICAL" -> 4;
             case "HIGH" -> 3;
@@ -1,6 +1,7 @@
 package com.mental.health.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mental.health.dto.AvailableSlotDTO;
 import com.mental.health.dto.BookAppointmentRequest;
 import com.mental.health.dto.TimeSlotDTO;
 import com.mental.health.entity.*;
@@ -12,17 +13,24 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.ArrayList;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 public class SchedulingService {
 
     private static final Logger log = LoggerFactory.getLogger(SchedulingService.class);
 
+    private static final int MAX_SEARCH_DAYS = 60;
+    private static final int MAX_SEARCH_LIMIT = 100;
+
     @Autowired
     private DoctorScheduleMapper scheduleMapper;
 
@@ -44,6 +52,18 @@ public class SchedulingService {
     @Autowired
     private UserNotificationService notificationService;
 
+    @Autowired
+    private SlotAvailabilityEngine availabilityEngine;
+
+    @Autowired
+    private SlotCapacityService slotCapacityService;
+
+    @Autowired
+    private AppointmentReminderScheduler reminderScheduler;
+
+    @Autowired
+    private WaitlistPriorityQueue waitlistPriorityQueue;
+
     public List<DoctorSchedule> getDoctorSchedule(Long doctorId) {
         return scheduleMapper.findActiveByDoctorId(doctorId);
     }
@@ -81,6 +101,7 @@ public class SchedulingService {
         } else {
             scheduleMapper.insert(slot);
         }
+        availabilityEngine.invalidateDoctor(slot.getDoctorId());
         return slot;
     }
 
@@ -91,6 +112,7 @@ public class SchedulingService {
             throw new IllegalArgumentException("排班不存在");
         }
         scheduleMapper.deleteById(slotId);
+        availabilityEngine.invalidateDoctor(doctorId);
     }
 
     @Transactional
@@ -103,6 +125,7 @@ public class SchedulingService {
         } else {
             overrideMapper.insert(override);
         }
+        availabilityEngine.invalidateDoctor(doctorId);
         return override;
     }
 
@@ -114,83 +137,46 @@ public class SchedulingService {
      * Get available time slots for a doctor on a specific date range.
      */
     public List<TimeSlotDTO> getAvailableSlots(Long doctorId, LocalDate startDate, LocalDate endDate) {
-        List<DoctorSchedule> weeklySchedule = scheduleMapper.findActiveByDoctorId(doctorId);
-        List<DoctorScheduleOverride> overrides = overrideMapper.findByDoctorAndDateRange(doctorId, startDate, endDate);
-
-        List<TimeSlotDTO> slots = new ArrayList<>();
-        LocalDate current = startDate;
-        while (!current.isAfter(endDate)) {
-            List<TimeSlotDTO> daySlots = buildDaySlots(doctorId, current, weeklySchedule, overrides);
-            slots.addAll(daySlots);
-            current = current.plusDays(1);
-        }
-        return slots;
+        return availabilityEngine.availableSlots(doctorId, startDate, endDate);
     }
 
-    private List<TimeSlotDTO> buildDaySlots(Long doctorId, LocalDate date,
-                                             List<DoctorSchedule> weeklySchedule,
-                                             List<DoctorScheduleOverride> overrides) {
-        List<TimeSlotDTO> result = new ArrayList<>();
-
-        // Check override first
-        DoctorScheduleOverride override = overrides.stream()
-                .filter(o -> o.getOverrideDate().equals(date))
-                .findFirst().orElse(null);
-
-        if (override != null) {
-            if ("UNAVAILABLE".equals(override.getOverrideType())) {
-                return result; // Day off
-            }
-            // Use override times
-            int slotMin = override.getSlotDuration() != null ? override.getSlotDuration() : 50;
-            generateSlots(result, doctorId, date, override.getStartTime(), override.getEndTime(), slotMin, 1, null);
-            return result;
+    /**
+     * 按专业/地点检索日期区间内所有医生最早的 limit 个空闲时段
+     */
+    public List<AvailableSlotDTO> searchAvailableSlots(String specialization, String location,
+                                                       LocalDate startDate, LocalDate endDate, int limit) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("结束日期不能早于开始日期");
         }
-
-        // Use weekly schedule
-        int javaDow = date.getDayOfWeek().getValue(); // 1=Monday...7=Sunday
-        for (DoctorSchedule sched : weeklySchedule) {
-            if (sched.getDayOfWeek().equals(javaDow)) {
-                generateSlots(result, doctorId, date, sched.getStartTime(), sched.getEndTime(),
-                        sched.getSlotDuration(), sched.getMaxPatients(), sched.getLocation());
-            }
+        if (ChronoUnit.DAYS.between(startDate, endDate) >= MAX_SEARCH_DAYS) {
+            throw new IllegalArgumentException("检索区间不能超过" + MAX_SEARCH_DAYS + "天");
         }
-        return result;
-    }
-
-    private void generateSlots(List<TimeSlotDTO> result, Long doctorId, LocalDate date,
-                                LocalTime start, LocalTime end, int slotMinutes,
-                                int maxPatients, String location) {
-        LocalTime slotStart = start;
-        while (slotStart.plusMinutes(slotMinutes).compareTo(end) <= 0) {
-            LocalTime slotEnd = slotStart.plusMinutes(slotMinutes);
-
-            // Skip past slots
-            if (date.equals(LocalDate.now()) && slotStart.isBefore(LocalTime.now())) {
-                slotStart = slotEnd;
-                continue;
-            }
-
-            // Count existing bookings for this slot
-            int booked = countBookingsForSlot(doctorId, date, slotStart, slotEnd);
-            int available = maxPatients - booked;
-
-            if (available > 0) {
-                result.add(new TimeSlotDTO(date, slotStart, slotEnd, available, maxPatients, location));
-            }
-            slotStart = slotEnd;
+        if (limit <= 0 || limit > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("返回条数须在1到" + MAX_SEARCH_LIMIT + "之间");
+        }
+        LambdaQueryWrapper<User> wrapper = new LambdaQueryWrapper<User>()
+                .select(User::getId, User::getUsername, User::getNickname, User::getSpecialization)
+                .eq(User::getRole, "DOCTOR")
+                .eq(User::getStatus, 1);
+        if (specialization != null && !specialization.isBlank()) {
+            wrapper.eq(User::getSpecialization, specialization);
+        }
+        Map<Long, User> doctors = userMapper.selectList(wrapper).stream()
+                .collect(Collectors.toMap(User::getId, u -> u, (a, b) -> a, LinkedHashMap::new));
+        if (doctors.isEmpty()) {
+            return List.of();
         }
-    }
 
-    private int countBookingsForSlot(Long doctorId, LocalDate date, LocalTime slotStart, LocalTime slotEnd) {
-        LocalDateTime start = LocalDateTime.of(date, slotStart);
-        LocalDateTime end = LocalDateTime.of(date, slotEnd);
-        LambdaQueryWrapper<Appointment> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(Appointment::getDoctorId, doctorId)
-               .ge(Appointment::getAppointmentTime, start)
-               .lt(Appointment::getAppointmentTime, end)
-               .in(Appointment::getStatus, 0, 1); // pending or confirmed
-        return Math.toIntExact(appointmentMapper.selectCount(wrapper));
+        return availabilityEngine.earliestFree(doctors.keySet(), startDate, endDate, location, limit).stream()
+                .map(ds -> {
+                    User doctor = doctors.get(ds.doctorId());
+                    SlotAvailabilityEngine.Slot slot = ds.slot();
+                    return new AvailableSlotDTO(ds.doctorId(),
+                            doctor.getNickname() != null ? doctor.getNickname() : doctor.getUsername(),
+                            doctor.getSpecialization(), slot.date(), slot.start(), slot.end(),
+                            slot.available(), slot.capacity(), slot.location());
+                })
+                .toList();
     }
 
     /**
@@ -209,20 +195,13 @@ public class SchedulingService {
         LocalTime aptTimeOfDay = aptTime.toLocalTime();
 
         // 2. Check the slot is within doctor's schedule
-        int slotDuration = findSlotDuration(request.getDoctorId(), aptDate, aptTimeOfDay);
-        if (slotDuration <= 0) {
+        SlotAvailabilityEngine.Slot slot = availabilityEngine.slotContaining(request.getDoctorId(), aptDate, aptTimeOfDay);
+        if (slot == null) {
             throw new IllegalArgumentException("所选时间不在医生的出诊时段内");
         }
+        int slotDuration = (int) Duration.between(slot.start(), slot.end()).toMinutes();
 
-        // 3. Check slot availability
-        int booked = countBookingsForSlot(request.getDoctorId(), aptDate, aptTimeOfDay,
-                aptTimeOfDay.plusMinutes(slotDuration));
-        int maxPatients = findMaxPatients(request.getDoctorId(), aptDate, aptTimeOfDay);
-        if (booked >= maxPatients) {
-            throw new IllegalArgumentException("该时段已满，请选择其他时段或加入等候名单");
-        }
-
-        // 4. Check patient doesn't have conflicting appointment
+        // 3. Check patient doesn't have conflicting appointment
         LambdaQueryWrapper<Appointment> conflictWrapper = new LambdaQueryWrapper<>();
         conflictWrapper.eq(Appointment::getPatientId, patientId)
                        .eq(Appointment::getAppointmentTime, aptTime)
@@ -231,6 +210,11 @@ public class SchedulingService {
             throw new IllegalArgumentException("您在该时间段已有预约");
         }
 
+        // 4. Take one unit of slot capacity (conditional update, rolled back with the booking)
+        if (!slotCapacityService.tryAcquire(request.getDoctorId(), slot)) {
+            throw new IllegalArgumentException("该时段已满，请选择其他时段或加入等候名单");
+        }
+
         // 5. Create appointment
         Appointment appointment = new Appointment();
         appointment.setPatientId(patientId);
@@ -244,6 +228,8 @@ public class SchedulingService {
         appointment.setStatus(0); // pending
         appointment.setReminderSent(0);
         appointmentMapper.insert(appointment);
+        availabilityEngine.invalidate(request.getDoctorId(), aptDate);
+        reminderScheduler.track(appointment);
 
         // 6. Notify doctor via outbox
         String eventKey = "APPOINTMENT_BOOKED:" + appointment.getId();
@@ -258,41 +244,6 @@ public class SchedulingService {
         return appointment;
     }
 
-    private int findSlotDuration(Long doctorId, LocalDate date, LocalTime time) {
-        DoctorScheduleOverride override = overrideMapper.findByDoctorAndDate(doctorId, date);
-        if (override != null) {
-            if ("UNAVAILABLE".equals(override.getOverrideType())) return 0;
-            if (override.getStartTime() != null && override.getEndTime() != null) {
-                if (!time.isBefore(override.getStartTime()) && time.isBefore(override.getEndTime())) {
-                    return override.getSlotDuration() != null ? override.getSlotDuration() : 50;
-                }
-            }
-            return 0;
-        }
-
-        int dow = date.getDayOfWeek().getValue();
-        List<DoctorSchedule> schedules = scheduleMapper.findActiveByDoctorId(doctorId);
-        for (DoctorSchedule s : schedules) {
-            if (s.getDayOfWeek().equals(dow) &&
-                !time.isBefore(s.getStartTime()) && time.isBefore(s.getEndTime())) {
-                return s.getSlotDuration();
-            }
-        }
-        return 0;
-    }
-
-    private int findMaxPatients(Long doctorId, LocalDate date, LocalTime time) {
-        int dow = date.getDayOfWeek().getValue();
-        List<DoctorSchedule> schedules = scheduleMapper.findActiveByDoctorId(doctorId);
-        for (DoctorSchedule s : schedules) {
-            if (s.getDayOfWeek().equals(dow) &&
-                !time.isBefore(s.getStartTime()) && time.isBefore(s.getEndTime())) {
-                return s.getMaxPatients();
-            }
-        }
-        return 1;
-    }
-
     /**
      * Patient cancels their own appointment.
      */
@@ -310,6 +261,9 @@ public class SchedulingService {
         apt.setCancelReason(reason);
         apt.setCancelTime(LocalDateTime.now());
         appointmentMapper.updateById(apt);
+        slotCapacityService.release(apt.getDoctorId(), apt.getAppointmentTime());
+        reminderScheduler.track(apt);
+        availabilityEngine.invalidate(apt.getDoctorId(), apt.getAppointmentTime().toLocalDate());
 
         // Publish cancel event for waitlist processing
         String eventKey = "APPOINTMENT_CANCELLED:" + apt.getId();
@@ -337,6 +291,7 @@ public class SchedulingService {
         apt.setStatus(1);
         apt.setConfirmTime(LocalDateTime.now());
         appointmentMapper.updateById(apt);
+        reminderScheduler.track(apt);
 
         String eventKey = "APPOINTMENT_CONFIRMED:" + apt.getId();
         String payload = String.format("{\"appointmentId\":%d,\"patientId\":%d,\"doctorId\":%d,\"time\":\"%s\"}",
@@ -390,6 +345,9 @@ public class SchedulingService {
         apt.setCancelReason(reason);
         apt.setCancelTime(LocalDateTime.now());
         appointmentMapper.updateById(apt);
+        slotCapacityService.release(doctorId, apt.getAppointmentTime());
+        reminderScheduler.track(apt);
+        availabilityEngine.invalidate(doctorId, apt.getAppointmentTime().toLocalDate());
 
         String eventKey = "DOCTOR_CANCELLED_APPOINTMENT:" + apt.getId();
         String payload = String.format("{\"appointmentId\":%d,\"patientId\":%d,\"doctorId\":%d,\"time\":\"%s\",\"reason\":\"%s\"}",
@@ -408,7 +366,10 @@ public class SchedulingService {
     public AppointmentWaitlist joinWaitlist(Long patientId, AppointmentWaitlist waitlist) {
         waitlist.setPatientId(patientId);
         waitlist.setStatus("WAITING");
+        // 基础分入队时算好，等待时长加分在匹配时计算
+        waitlist.setPriorityScore(WaitlistPriorityQueue.baseScore(waitlist));
         waitlistMapper.insert(waitlist);
+        waitlistPriorityQueue.add(waitlist);
         return waitlist;
     }
 
@@ -424,6 +385,7 @@ public class SchedulingService {
         }
         wl.setStatus("CANCELLED");
         waitlistMapper.updateById(wl);
+        waitlistPriorityQueue.remove(wl.getDoctorId(), List.of(waitlistId));
         return true;
     }
 
@@ -0,0 +1,635 @@
+package com.mental.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mental.health.dto.TimeSlotDTO;
+import com.mental.health.entity.Appointment;
+import com.mental.health.entity.AppointmentSlotHold;
+import com.mental.health.entity.DoctorSchedule;
+import com.mental.health.entity.DoctorScheduleOverride;
+import com.mental.health.mapper.AppointmentMapper;
+import com.mental.health.mapper.AppointmentSlotHoldMapper;
+import com.mental.health.mapper.DoctorScheduleMapper;
+import com.mental.health.mapper.DoctorScheduleOverrideMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 号源可用性引擎：每位医生一份内存排班日历
+ *
+ * - 周排班按星期预先展开为时段模板（并行数组），无覆盖的日期共享同一模板
+ * - 每天一份已约人数数组 + "已满"位图，空闲时段直接扫位图得出
+ * - 缺失的日期区间一次加载：周排班、覆盖、已约预约时间、候补锁位各一次查询，不再逐时段 COUNT；
+ *   锁位与预约一样占用名额，与 {@link SlotCapacityService} 的计数口径一致
+ * - 预约/取消/排班变更时按天或按医生失效（事务提交后再失效一次），并以 TTL 兜底跨节点写入
+ * - 多医生检索时缺失的日历一起批量加载，再对各医生的空闲时段做堆归并
+ */
+@Service
+public class SlotAvailabilityEngine {
+
+    private static final int DEFAULT_SLOT_MINUTES = 50;
+
+    @Autowired
+    private DoctorScheduleMapper scheduleMapper;
+
+    @Autowired
+    private DoctorScheduleOverrideMapper overrideMapper;
+
+    @Autowired
+    private AppointmentMapper appointmentMapper;
+
+    @Autowired
+    private AppointmentSlotHoldMapper holdMapper;
+
+    @Value("${scheduling.availability.cache-ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${scheduling.availability.max-doctors:5000}")
+    private int maxDoctors;
+
+    private final Map<Long, DoctorCalendar> calendars = new ConcurrentHashMap<>();
+
+    /**
+     * 时段（含当前已约人数）
+     */
+    public record Slot(LocalDate date, LocalTime start, LocalTime end, int capacity, int booked, String location) {
+        public int available() {
+            return Math.max(0, capacity - booked);
+        }
+    }
+
+    /**
+     * 日期区间内的空闲时段，今天已过去的时段不返回
+     */
+    public List<TimeSlotDTO> availableSlots(Long doctorId, LocalDate startDate, LocalDate endDate) {
+        List<TimeSlotDTO> result = new ArrayList<>();
+        if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            return result;
+        }
+        DayState[] days = days(doctorId, startDate, endDate);
+        LocalDate today = LocalDate.now();
+        int nowMinute = minuteOf(LocalTime.now());
+        for (int d = 0; d < days.length; d++) {
+            DayState day = days[d];
+            LocalDate date = startDate.plusDays(d);
+            if (date.isBefore(today)) {
+                continue;
+            }
+            int from = date.equals(today) ? day.plan.firstStartingAt(nowMinute) : 0;
+            for (int i = day.nextFree(from); i >= 0; i = day.nextFree(i + 1)) {
+                DayPlan plan = day.plan;
+                result.add(new TimeSlotDTO(date, toTime(plan.starts[i]), toTime(plan.ends[i]),
+                        day.available(i), plan.capacity[i], plan.locations[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 包含给定时刻的出诊时段；不在出诊时段内返回 null
+     */
+    public Slot slotContaining(Long doctorId, LocalDate date, LocalTime time) {
+        DayState day = days(doctorId, date, date)[0];
+        int i = day.plan.indexContaining(minuteOf(time));
+        if (i < 0) {
+            return null;
+        }
+        DayPlan plan = day.plan;
+        return new Slot(date, toTime(plan.starts[i]), toTime(plan.ends[i]),
+                plan.capacity[i], day.booked[i], plan.locations[i]);
+    }
+
+    /**
+     * 多位医生的最早空闲时段：各医生的空闲时段本身按时间有序，用小顶堆做 K 路归并，取前 limit 个
+     *
+     * @param location 为空时不限地点
+     */
+    public List<DoctorSlot> earliestFree(Collection<Long> doctorIds, LocalDate startDate, LocalDate endDate,
+                                         String location, int limit) {
+        List<DoctorSlot> result = new ArrayList<>();
+        if (doctorIds.isEmpty() || limit <= 0 || endDate.isBefore(startDate)) {
+            return result;
+        }
+        Map<Long, DayState[]> calendarsByDoctor = days(doctorIds, startDate, endDate);
+        LocalDate today = LocalDate.now();
+        int todayIndex = (int) ChronoUnit.DAYS.between(startDate, today);
+        int nowMinute = minuteOf(LocalTime.now());
+        String wanted = location != null && !location.isBlank() ? location : null;
+
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(calendarsByDoctor.size());
+        for (Map.Entry<Long, DayState[]> e : calendarsByDoctor.entrySet()) {
+            Cursor cursor = new Cursor(e.getKey(), e.getValue(), wanted, todayIndex, nowMinute);
+            if (cursor.seek(Math.max(0, todayIndex), 0)) {
+                heap.add(cursor);
+            }
+        }
+        while (!heap.isEmpty() && result.size() < limit) {
+            Cursor cursor = heap.poll();
+            DayState day = cursor.days[cursor.day];
+            DayPlan plan = day.plan;
+            int i = cursor.slot;
+            result.add(new DoctorSlot(cursor.doctorId, new Slot(startDate.plusDays(cursor.day),
+                    toTime(plan.starts[i]), toTime(plan.ends[i]), plan.capacity[i], day.booked[i], plan.locations[i])));
+            if (cursor.seek(cursor.day, i + 1)) {
+                heap.add(cursor);
+            }
+        }
+        return result;
+    }
+
+    public record DoctorSlot(Long doctorId, Slot slot) {
+    }
+
+    /**
+     * 单个医生空闲时段上的游标，按 (日期, 开始时间, 医生ID) 排序
+     */
+    private static final class Cursor implements Comparable<Cursor> {
+        final Long doctorId;
+        final DayState[] days;
+        final String location;
+        final int todayIndex;
+        final int nowMinute;
+        int day;
+        int slot;
+        int startMinute;
+
+        Cursor(Long doctorId, DayState[] days, String location, int todayIndex, int nowMinute) {
+            this.doctorId = doctorId;
+            this.days = days;
+            this.location = location;
+            this.todayIndex = todayIndex;
+            this.nowMinute = nowMinute;
+        }
+
+        /** 从 (day, from) 起前进到下一个符合条件的空闲时段 */
+        boolean seek(int fromDay, int from) {
+            for (int d = fromDay; d < days.length; d++, from = 0) {
+                DayState state = days[d];
+                if (d == todayIndex) {
+                    from = Math.max(from, state.plan.firstStartingAt(nowMinute));
+                }
+                for (int i = state.nextFree(from); i >= 0; i = state.nextFree(i + 1)) {
+                    if (location == null || location.equals(state.plan.locations[i])) {
+                        day = d;
+                        slot = i;
+                        startMinute = state.plan.starts[i];
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            if (day != o.day) {
+                return Integer.compare(day, o.day);
+            }
+            if (startMinute != o.startMinute) {
+                return Integer.compare(startMinute, o.startMinute);
+            }
+            return Long.compare(doctorId, o.doctorId);
+        }
+    }
+
+    /**
+     * 某天的预约变化（预约、取消、改约）后调用
+     */
+    public void invalidate(Long doctorId, LocalDate date) {
+        if (doctorId == null || date == null) {
+            return;
+        }
+        Runnable action = () -> {
+            DoctorCalendar calendar = calendars.get(doctorId);
+            if (calendar != null) {
+                calendar.epoch.incrementAndGet();
+                calendar.days.remove(date);
+            }
+        };
+        action.run();
+        afterCompletion(action);
+    }
+
+    /**
+     * 排班或覆盖变更后调用，丢弃该医生的整份日历
+     */
+    public void invalidateDoctor(Long doctorId) {
+        if (doctorId == null) {
+            return;
+        }
+        Runnable action = () -> {
+            DoctorCalendar calendar = calendars.remove(doctorId);
+            if (calendar != null) {
+                calendar.epoch.incrementAndGet();
+            }
+        };
+        action.run();
+        afterCompletion(action);
+    }
+
+    public int cachedDoctors() {
+        return calendars.size();
+    }
+
+    // ==================== 加载 ====================
+
+    DayState[] days(Long doctorId, LocalDate startDate, LocalDate endDate) {
+        DoctorCalendar calendar = calendar(doctorId);
+        DayState[] result = new DayState[(int) ChronoUnit.DAYS.between(startDate, endDate) + 1];
+        int[] missing = calendar.collect(startDate, result);
+        if (missing != null) {
+            LocalDate from = startDate.plusDays(missing[0]);
+            LocalDate to = startDate.plusDays(missing[1]);
+            long epochAtStart = calendar.epoch.get();
+            List<DoctorScheduleOverride> overrides = overrideMapper.findByDoctorAndDateRange(doctorId, from, to);
+            List<LocalDateTime> bookings = new ArrayList<>(appointmentMapper.selectBookedTimes(
+                    doctorId, from.atStartOfDay(), to.plusDays(1).atStartOfDay()));
+            bookings.addAll(holdMapper.selectHeldTimes(doctorId, from, to));
+            calendar.fill(startDate, result, from, to, overrides, bookings, epochAtStart);
+        }
+        return result;
+    }
+
+    /**
+     * 多位医生同一日期区间：缺失的日历、覆盖、已约时间各用一次 IN 查询补齐
+     */
+    Map<Long, DayState[]> days(Collection<Long> doctorIds, LocalDate startDate, LocalDate endDate) {
+        int n = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        Map<Long, DoctorCalendar> loaded = calendars(doctorIds);
+        Map<Long, DayState[]> result = new LinkedHashMap<>();
+        Map<Long, int[]> missing = new HashMap<>();
+        Map<Long, Long> epochs = new HashMap<>();
+        int minFrom = Integer.MAX_VALUE;
+        int maxTo = -1;
+        for (Map.Entry<Long, DoctorCalendar> e : loaded.entrySet()) {
+            DayState[] days = new DayState[n];
+            result.put(e.getKey(), days);
+            int[] range = e.getValue().collect(startDate, days);
+            if (range != null) {
+                missing.put(e.getKey(), range);
+                epochs.put(e.getKey(), e.getValue().epoch.get());
+                minFrom = Math.min(minFrom, range[0]);
+                maxTo = Math.max(maxTo, range[1]);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        LocalDate from = startDate.plusDays(minFrom);
+        LocalDate to = startDate.plusDays(maxTo);
+        Map<Long, List<DoctorScheduleOverride>> overrides = overrideMapper.selectList(
+                new LambdaQueryWrapper<DoctorScheduleOverride>()
+                        .in(DoctorScheduleOverride::getDoctorId, missing.keySet())
+                        .between(DoctorScheduleOverride::getOverrideDate, from, to))
+                .stream().collect(Collectors.groupingBy(DoctorScheduleOverride::getDoctorId));
+        Map<Long, List<LocalDateTime>> bookings = appointmentMapper.selectList(
+                new LambdaQueryWrapper<Appointment>()
+                        .select(Appointment::getDoctorId, Appointment::getAppointmentTime)
+                        .in(Appointment::getDoctorId, missing.keySet())
+                        .ge(Appointment::getAppointmentTime, from.atStartOfDay())
+                        .lt(Appointment::getAppointmentTime, to.plusDays(1).atStartOfDay())
+                        .in(Appointment::getStatus, 0, 1))
+                .stream().collect(Collectors.groupingBy(Appointment::getDoctorId,
+                        Collectors.mapping(Appointment::getAppointmentTime, Collectors.toList())));
+        for (AppointmentSlotHold hold : holdMapper.selectList(
+                new LambdaQueryWrapper<AppointmentSlotHold>()
+                        .select(AppointmentSlotHold::getDoctorId, AppointmentSlotHold::getSlotDate,
+                                AppointmentSlotHold::getSlotStart)
+                        .in(AppointmentSlotHold::getDoctorId, missing.keySet())
+                        .between(AppointmentSlotHold::getSlotDate, from, to)
+                        .eq(AppointmentSlotHold::getHoldStatus, "HELD")
+                        .eq(AppointmentSlotHold::getHoldSource, "WAITLIST_OFFER"))) {
+            bookings.computeIfAbsent(hold.getDoctorId(), k -> new ArrayList<>())
+                    .add(LocalDateTime.of(hold.getSlotDate(), hold.getSlotStart()));
+        }
+
+        for (Map.Entry<Long, int[]> e : missing.entrySet()) {
+            Long doctorId = e.getKey();
+            int[] range = e.getValue();
+            loaded.get(doctorId).fill(startDate, result.get(doctorId),
+                    startDate.plusDays(range[0]), startDate.plusDays(range[1]),
+                    overrides.getOrDefault(doctorId, List.of()), bookings.getOrDefault(doctorId, List.of()),
+                    epochs.get(doctorId));
+        }
+        return result;
+    }
+
+    private DoctorCalendar calendar(Long doctorId) {
+        long now = System.currentTimeMillis();
+        DoctorCalendar calendar = calendars.get(doctorId);
+        if (calendar != null && calendar.loadedAt + cacheTtlSeconds * 1000L > now) {
+            return calendar;
+        }
+        return register(new DoctorCalendar(doctorId, scheduleMapper.findActiveByDoctorId(doctorId), now));
+    }
+
+    private Map<Long, DoctorCalendar> calendars(Collection<Long> doctorIds) {
+        long now = System.currentTimeMillis();
+        Map<Long, DoctorCalendar> result = new LinkedHashMap<>();
+        List<Long> stale = new ArrayList<>();
+        for (Long doctorId : doctorIds) {
+            DoctorCalendar calendar = calendars.get(doctorId);
+            if (calendar != null && calendar.loadedAt + cacheTtlSeconds * 1000L > now) {
+                result.put(doctorId, calendar);
+            } else if (doctorId != null) {
+                result.put(doctorId, null);
+                stale.add(doctorId);
+            }
+        }
+        if (!stale.isEmpty()) {
+            Map<Long, List<DoctorSchedule>> schedules = scheduleMapper.selectList(
+                    new LambdaQueryWrapper<DoctorSchedule>()
+                            .in(DoctorSchedule::getDoctorId, stale)
+                            .eq(DoctorSchedule::getActive, 1))
+                    .stream().collect(Collectors.groupingBy(DoctorSchedule::getDoctorId));
+            for (Long doctorId : stale) {
+                result.put(doctorId, register(new DoctorCalendar(doctorId,
+                        schedules.getOrDefault(doctorId, List.of()), now)));
+            }
+        }
+        return result;
+    }
+
+    private DoctorCalendar register(DoctorCalendar calendar) {
+        if (calendars.size() >= maxDoctors) {
+            evictOldest();
+        }
+        calendars.put(calendar.doctorId, calendar);
+        return calendar;
+    }
+
+    private void evictOldest() {
+        calendars.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().loadedAt))
+                .ifPresent(e -> calendars.remove(e.getKey(), e.getValue()));
+    }
+
+    private final class DoctorCalendar {
+        final Long doctorId;
+        final long loadedAt;
+        /** 下标 1..7 对应周一..周日 */
+        final DayPlan[] weekly = new DayPlan[8];
+        final Map<LocalDate, DayState> days = new ConcurrentHashMap<>();
+        /** 每次失效加一；加载期间发生失效则结果不入缓存 */
+        final AtomicLong epoch = new AtomicLong();
+
+        DoctorCalendar(Long doctorId, List<DoctorSchedule> schedules, long loadedAt) {
+            this.doctorId = doctorId;
+            this.loadedAt = loadedAt;
+            for (int dow = 1; dow <= 7; dow++) {
+                DayPlan.Builder builder = new DayPlan.Builder();
+                for (DoctorSchedule s : schedules) {
+                    if (s.getDayOfWeek() != null && s.getDayOfWeek() == dow) {
+                        builder.add(s.getStartTime(), s.getEndTime(),
+                                s.getSlotDuration() != null ? s.getSlotDuration() : DEFAULT_SLOT_MINUTES,
+                                s.getMaxPatients() != null ? s.getMaxPatients() : 1, s.getLocation());
+                    }
+                }
+                weekly[dow] = builder.build();
+            }
+        }
+
+        /**
+         * 把缓存中有效的日期填入 result，返回需要加载的下标区间 {first, last}，全部命中返回 null
+         */
+        int[] collect(LocalDate startDate, DayState[] result) {
+            long now = System.currentTimeMillis();
+            int first = -1;
+            int last = -1;
+            for (int d = 0; d < result.length; d++) {
+                DayState day = days.get(startDate.plusDays(d));
+                if (day != null && day.loadedAt + cacheTtlSeconds * 1000L > now) {
+                    result[d] = day;
+                } else {
+                    if (first < 0) {
+                        first = d;
+                    }
+                    last = d;
+                }
+            }
+            return first < 0 ? null : new int[]{first, last};
+        }
+
+        /**
+         * 由覆盖与已约时间构建 from..to 的每日状态，写入 result 对应下标并缓存
+         */
+        void fill(LocalDate startDate, DayState[] result, LocalDate from, LocalDate to,
+                  List<DoctorScheduleOverride> overrideList, List<LocalDateTime> bookings, long epochAtStart) {
+            Map<LocalDate, DoctorScheduleOverride> overrides = new HashMap<>();
+            for (DoctorScheduleOverride o : overrideList) {
+                overrides.put(o.getOverrideDate(), o);
+            }
+            Map<LocalDate, DayPlan> plans = new HashMap<>();
+            Map<LocalDate, int[]> booked = new HashMap<>();
+            for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+                DayPlan plan = planFor(date, overrides.get(date));
+                plans.put(date, plan);
+                booked.put(date, new int[plan.size()]);
+            }
+            for (LocalDateTime time : bookings) {
+                LocalDate date = time.toLocalDate();
+                DayPlan plan = plans.get(date);
+                if (plan == null) {
+                    continue;
+                }
+                int i = plan.indexContaining(minuteOf(time.toLocalTime()));
+                if (i >= 0) {
+                    booked.get(date)[i]++;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            Map<LocalDate, DayState> built = new HashMap<>();
+            for (Map.Entry<LocalDate, DayPlan> e : plans.entrySet()) {
+                DayState day = new DayState(e.getValue(), booked.get(e.getKey()), now);
+                built.put(e.getKey(), day);
+                int d = (int) ChronoUnit.DAYS.between(startDate, e.getKey());
+                if (d >= 0 && d < result.length) {
+                    result[d] = day;
+                }
+            }
+            if (epoch.get() == epochAtStart) {
+                days.putAll(built);
+            }
+        }
+
+        DayPlan planFor(LocalDate date, DoctorScheduleOverride override) {
+            if (override == null) {
+                return weekly[date.getDayOfWeek().getValue()];
+            }
+            if ("UNAVAILABLE".equals(override.getOverrideType())
+                    || override.getStartTime() == null || override.getEndTime() == null) {
+                return DayPlan.EMPTY;
+            }
+            DayPlan.Builder builder = new DayPlan.Builder();
+            builder.add(override.getStartTime(), override.getEndTime(),
+                    override.getSlotDuration() != null ? override.getSlotDuration() : DEFAULT_SLOT_MINUTES,
+                    1, null);
+            return builder.build();
+        }
+    }
+
+    // ==================== 紧凑结构 ====================
+
+    /**
+     * 一天的出诊时段模板：按开始分钟排序的并行数组
+     */
+    static final class DayPlan {
+        static final DayPlan EMPTY = new DayPlan(new short[0], new short[0], new short[0], new String[0]);
+
+        final short[] starts;
+        final short[] ends;
+        final short[] capacity;
+        final String[] locations;
+
+        private DayPlan(short[] starts, short[] ends, short[] capacity, String[] locations) {
+            this.starts = starts;
+            this.ends = ends;
+            this.capacity = capacity;
+            this.locations = locations;
+        }
+
+        int size() {
+            return starts.length;
+        }
+
+        /** 包含该分钟的时段下标，没有返回 -1 */
+        int indexContaining(int minute) {
+            int i = Arrays.binarySearch(starts, (short) minute);
+            if (i < 0) {
+                i = -i - 2;
+            }
+            return i >= 0 && minute < ends[i] ? i : -1;
+        }
+
+        /** 第一个开始时间不早于该分钟的时段下标 */
+        int firstStartingAt(int minute) {
+            int i = Arrays.binarySearch(starts, (short) minute);
+            return i >= 0 ? i : -i - 1;
+        }
+
+        static final class Builder {
+            private final List<int[]> slots = new ArrayList<>();
+            private final List<String> locations = new ArrayList<>();
+
+            void add(LocalTime start, LocalTime end, int slotMinutes, int capacity, String location) {
+                if (start == null || end == null || slotMinutes <= 0) {
+                    return;
+                }
+                int endMinute = minuteOf(end);
+                for (int s = minuteOf(start); s + slotMinutes <= endMinute; s += slotMinutes) {
+                    slots.add(new int[]{s, s + slotMinutes, capacity, locations.size()});
+                    locations.add(location);
+                }
+            }
+
+            DayPlan build() {
+                if (slots.isEmpty()) {
+                    return EMPTY;
+                }
+                slots.sort(Comparator.comparingInt(s -> s[0]));
+                int n = slots.size();
+                short[] starts = new short[n];
+                short[] ends = new short[n];
+                short[] capacity = new short[n];
+                String[] locs = new String[n];
+                for (int i = 0; i < n; i++) {
+                    int[] s = slots.get(i);
+                    starts[i] = (short) s[0];
+                    ends[i] = (short) s[1];
+                    capacity[i] = (short) s[2];
+                    locs[i] = locations.get(s[3]);
+                }
+                return new DayPlan(starts, ends, capacity, locs);
+            }
+        }
+    }
+
+    /**
+     * 一天的占用情况：已约人数 + 已满位图（超出时段数的高位预置为 1）
+     */
+    static final class DayState {
+        final DayPlan plan;
+        final int[] booked;
+        final long[] full;
+        final long loadedAt;
+
+        DayState(DayPlan plan, int[] booked, long loadedAt) {
+            this.plan = plan;
+            this.booked = booked;
+            this.loadedAt = loadedAt;
+            int n = plan.size();
+            this.full = new long[Math.max(1, (n + 63) >>> 6)];
+            for (int i = 0; i < n; i++) {
+                if (booked[i] >= plan.capacity[i]) {
+                    full[i >>> 6] |= 1L << i;
+                }
+            }
+            for (int i = n; i < full.length * 64; i++) {
+                full[i >>> 6] |= 1L << i;
+            }
+        }
+
+        int available(int i) {
+            return Math.max(0, plan.capacity[i] - booked[i]);
+        }
+
+        /** 从 from 起第一个未满时段的下标，没有返回 -1 */
+        int nextFree(int from) {
+            int word = from >>> 6;
+            if (word >= full.length) {
+                return -1;
+            }
+            long free = ~full[word] & (-1L << from);
+            while (true) {
+                if (free != 0) {
+                    return word * 64 + Long.numberOfTrailingZeros(free);
+                }
+                if (++word == full.length) {
+                    return -1;
+                }
+                free = ~full[word];
+            }
+        }
+    }
+
+    private static void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    private static int minuteOf(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+
+    private static LocalTime toTime(int minute) {
+        return LocalTime.of(minute / 60, minute % 60);
+    }
+}
@@ -0,0 +1,174 @@
+package com.mental.health.service;
+
+import com.mental.health.mapper.AppointmentSlotCapacityMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 号源容量计数
+ *
+ * - appointment_slot_capacity 每个时段一行，占位是一条 booked < capacity 的条件自增，影响行数为 0 即已满，
+ *   多节点并发也不会超卖；占位与预约写入同一事务，回滚时一并撤销
+ * - 本机首次占用某时段前按当前有效预约与候补锁位补建计数行，之后的占位不再 COUNT；
+ *   补建在独立的读已提交短事务中执行，统计预约不加共享锁，也不把间隙锁带进预约事务
+ * - 本机记住刚判定已满的时段，短时间内的后续请求直接拒绝，不再排队等同一行锁
+ * - 同一事务内归还的名额在提交后合并为一个 {@link CapacityReturnedEvent} 发布，候补按批匹配
+ * - 低频对账按实际预约重算计数，兜底未经本服务的状态变更（如管理端直接改预约）
+ */
+@Service
+public class SlotCapacityService {
+
+    private static final Logger log = LoggerFactory.getLogger(SlotCapacityService.class);
+
+    @Autowired
+    private AppointmentSlotCapacityMapper capacityMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${scheduling.capacity.full-cache-ms:2000}")
+    private long fullCacheMillis;
+
+    @Value("${scheduling.capacity.retain-days:7}")
+    private int retainDays;
+
+    /** 本机已确认存在计数行的时段 */
+    private final Set<SlotKey> seeded = ConcurrentHashMap.newKeySet();
+
+    /** 已满时段 → 判定有效期截止 */
+    private final Map<SlotKey, Long> fullUntil = new ConcurrentHashMap<>();
+
+    /**
+     * 归还的名额：time 所在时段
+     */
+    public record ReturnedSlot(Long doctorId, LocalDate date, LocalTime time) {
+    }
+
+    /**
+     * 名额归还事件；归还所在事务提交后发布（无事务时立即发布）
+     */
+    public record CapacityReturnedEvent(List<ReturnedSlot> slots) {
+    }
+
+    private record SlotKey(Long doctorId, LocalDate date, LocalTime start) {
+    }
+
+    /**
+     * 占用时段的一个名额
+     *
+     * @return false 表示已满
+     */
+    public boolean tryAcquire(Long doctorId, SlotAvailabilityEngine.Slot slot) {
+        SlotKey key = new SlotKey(doctorId, slot.date(), slot.start());
+        long now = System.currentTimeMillis();
+        Long until = fullUntil.get(key);
+        if (until != null) {
+            if (until > now) {
+                return false;
+            }
+            fullUntil.remove(key, until);
+        }
+
+        // 先确保计数行存在（并发补建时 INSERT IGNORE 返回 0，行同样已存在），只有条件自增落空才算已满
+        if (!seeded.contains(key)) {
+            seed(doctorId, slot);
+            seeded.add(key);
+        }
+        if (capacityMapper.acquire(doctorId, slot.date(), slot.start(), slot.capacity()) > 0) {
+            return true;
+        }
+        fullUntil.put(key, now + fullCacheMillis);
+        return false;
+    }
+
+    private void seed(Long doctorId, SlotAvailabilityEngine.Slot slot) {
+        TransactionTemplate tx = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        tx.executeWithoutResult(status -> capacityMapper.seed(
+                doctorId, slot.date(), slot.start(), slot.end(), slot.capacity()));
+    }
+
+    /**
+     * 归还 time 所在时段的一个名额
+     *
+     * @return 是否有名额被归还
+     */
+    public boolean release(Long doctorId, LocalDateTime time) {
+        return release(doctorId, time.toLocalDate(), time.toLocalTime());
+    }
+
+    public boolean release(Long doctorId, LocalDate date, LocalTime time) {
+        if (capacityMapper.release(doctorId, date, time) == 0) {
+            return false;
+        }
+        fullUntil.keySet().removeIf(k -> k.doctorId().equals(doctorId) && k.date().equals(date));
+        publishAfterCommit(new ReturnedSlot(doctorId, date, time));
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${scheduling.capacity.reconcile-interval-ms:3600000}",
+               initialDelayString = "${scheduling.capacity.reconcile-interval-ms:3600000}")
+    public void reconcile() {
+        try {
+            int rows = capacityMapper.reconcile();
+            int purged = capacityMapper.deleteBefore(LocalDate.now().minusDays(retainDays));
+            long now = System.currentTimeMillis();
+            fullUntil.values().removeIf(until -> until <= now);
+            LocalDate today = LocalDate.now();
+            seeded.removeIf(k -> k.date().isBefore(today));
+            log.info("号源容量对账: 重算 {} 行, 清理过期 {} 行", rows, purged);
+        } catch (Exception e) {
+            log.error("号源容量对账失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private void publishAfterCommit(ReturnedSlot slot) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventPublisher.publishEvent(new CapacityReturnedEvent(List.of(slot)));
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof ReturnedBatch batch) {
+                batch.slots.add(slot);
+                return;
+            }
+        }
+        ReturnedBatch batch = new ReturnedBatch();
+        batch.slots.add(slot);
+        TransactionSynchronizationManager.registerSynchronization(batch);
+    }
+
+    /**
+     * 当前事务内归还的名额
+     */
+    private final class ReturnedBatch implements TransactionSynchronization {
+        final List<ReturnedSlot> slots = new ArrayList<>();
+
+        @Override
+        public void afterCommit() {
+            eventPublisher.publishEvent(new CapacityReturnedEvent(List.copyOf(slots)));
+        }
+    }
+}
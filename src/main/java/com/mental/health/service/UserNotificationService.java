@@ -59,7 +59,7 @@ public class UserNotificationService {
 
         Page<UserNotificationDTO> dtoPage = new Page<>(pageNum, pageSize);
         dtoPage.setTotal(result.getTotal());
-        dtoPage.setRecords(result.getRecords().stream().map(this::toDTO).toList());
+        dtoPage.setRecords(result.getRecords().stream().map(UserNotificationService::toDTO).toList());
         return dtoPage;
     }
 
@@ -85,7 +85,7 @@ public class UserNotificationService {
         return userNotificationMapper.countUnread(userId);
     }
 
-    private UserNotificationDTO toDTO(UserNotification n) {
+    public static UserNotificationDTO toDTO(UserNotification n) {
         UserNotificationDTO dto = new UserNotificationDTO();
         dto.setId(n.getId());
         dto.setCategory(n.getCategory());
@@ -2,62 +2,380 @@ package com.mental.health.service;
 
 import com.mental.health.entity.UserPresence;
 import com.mental.health.mapper.UserPresenceMapper;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * 在线状态登记表
+ *
+ * - 内存中维护 userId → {会话ID → 最近心跳}，连接/断开/心跳只改内存，不再逐次查写 user_presence
+ * - 定时清扫超过 TTL 未心跳的会话（异常断线收不到 DISCONNECT 时兜底）
+ * - 状态变更按用户合并后写后批量落库；在线用户的 last_seen_at 最多每 persist-interval 写一次
+ * - 上下线时发布 {@link PresenceChangedEvent}，由 {@link PresenceNotifier} 推送给会话联系人
+ * - 清扫掉或重新登记的会话发布 {@link LocalSessionEvent}，由 {@link ClusterMessagingService} 同步路由表
+ * - 批量查询先查本机，其余走集群路由表
+ */
 @Service
 public class UserPresenceService {
 
     private static final Logger log = LoggerFactory.getLogger(UserPresenceService.class);
 
+    public static final String ONLINE = "ONLINE";
+    public static final String OFFLINE = "OFFLINE";
+
+    private static final int UPSERT_BATCH_SIZE = 500;
+
     @Autowired
     private UserPresenceMapper userPresenceMapper;
 
+    @Autowired
+    private ClusterTransport clusterTransport;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /** 只用于取本节点ID；延迟注入，避免 消息模板 → STOMP 拦截器 → 本服务 的循环依赖 */
+    @Lazy
+    @Autowired
+    private ClusterMessagingService clusterMessagingService;
+
+    @Value("${presence.session-ttl-seconds:90}")
+    private long sessionTtlSeconds;
+
+    @Value("${presence.persist-interval-seconds:60}")
+    private long persistIntervalSeconds;
+
+    private final Map<Long, Presence> online = new ConcurrentHashMap<>();
+
+    /** 待落库的状态，同一用户只保留最新一条 */
+    private final Map<Long, UserPresence> dirty = new ConcurrentHashMap<>();
+
+    /**
+     * 上下线事件
+     */
+    public record PresenceChangedEvent(Long userId, boolean online, LocalDateTime at) {
+    }
+
+    /**
+     * 本机会话被清扫（active=false）或清扫后收到心跳重新登记（active=true）
+     */
+    public record LocalSessionEvent(Long userId, String sessionId, boolean active) {
+    }
+
     public void markOnline(Long userId, String sessionId) {
-        UserPresence presence = userPresenceMapper.selectById(userId);
-        if (presence == null) {
-            presence = new UserPresence();
-            presence.setUserId(userId);
-            presence.setWebsocketSessionId(sessionId);
-            presence.setClientType("WEB");
-            presence.setOnlineStatus("ONLINE");
-            presence.setLastSeenAt(LocalDateTime.now());
-            presence.setConnectTime(LocalDateTime.now());
-            userPresenceMapper.insert(presence);
-        } else {
-            presence.setWebsocketSessionId(sessionId);
-            presence.setOnlineStatus("ONLINE");
-            presence.setLastSeenAt(LocalDateTime.now());
-            presence.setConnectTime(LocalDateTime.now());
-            presence.setDisconnectTime(null);
-            userPresenceMapper.updateById(presence);
-        }
-        log.info("User {} marked online, session={}", userId, sessionId);
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] cameOnline = {false};
+        Presence presence = online.compute(userId, (id, p) -> {
+            if (p == null) {
+                p = new Presence(now);
+                cameOnline[0] = true;
+            }
+            p.sessions.put(sessionId, now);
+            p.lastSeen = now;
+            return p;
+        });
+        if (cameOnline[0]) {
+            presence.lastPersisted = now;
+            enqueue(userId, sessionId, ONLINE, now, now, null);
+            eventPublisher.publishEvent(new PresenceChangedEvent(userId, true, toTime(now)));
+            log.info("User {} marked online, session={}", userId, sessionId);
+        }
     }
 
+    /**
+     * 关闭一个会话；sessionId 为空时关闭该用户在本机的全部会话。最后一个会话关闭时才算下线。
+     */
     public void markOffline(Long userId, String sessionId) {
-        if (userId == null) return;
-
-        UserPresence presence = userPresenceMapper.selectById(userId);
-        if (presence != null) {
-            // Only mark offline if session matches (prevents stale disconnects)
-            if (sessionId == null || sessionId.equals(presence.getWebsocketSessionId())) {
-                presence.setOnlineStatus("OFFLINE");
-                presence.setLastSeenAt(LocalDateTime.now());
-                presence.setDisconnectTime(LocalDateTime.now());
-                presence.setWebsocketSessionId(null);
-                userPresenceMapper.updateById(presence);
-                log.info("User {} marked offline", userId);
+        if (userId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] wentOffline = {false};
+        online.computeIfPresent(userId, (id, p) -> {
+            if (sessionId != null) {
+                p.sessions.remove(sessionId);
+            } else {
+                p.sessions.clear();
+            }
+            if (p.sessions.isEmpty()) {
+                wentOffline[0] = true;
+                return null;
             }
+            return p;
+        });
+        if (wentOffline[0]) {
+            goneOffline(Map.of(userId, now));
+        }
+    }
+
+    /**
+     * 会话上的任意入站帧（含 STOMP 心跳）都视为一次心跳
+     */
+    public void touch(Long userId, String sessionId) {
+        if (userId == null || sessionId == null) {
+            return;
+        }
+        Presence presence = online.get(userId);
+        if (presence == null || presence.sessions.replace(sessionId, System.currentTimeMillis()) == null) {
+            // 已被清扫但连接仍在，重新登记
+            markOnline(userId, sessionId);
+            eventPublisher.publishEvent(new LocalSessionEvent(userId, sessionId, true));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        presence.lastSeen = now;
+        if (now - presence.lastPersisted >= persistIntervalSeconds * 1000L) {
+            presence.lastPersisted = now;
+            enqueue(userId, sessionId, ONLINE, now, null, null);
         }
     }
 
     public boolean isOnline(Long userId) {
-        UserPresence presence = userPresenceMapper.selectById(userId);
-        return presence != null && "ONLINE".equals(presence.getOnlineStatus());
+        return userId != null && onlineStatus(List.of(userId)).getOrDefault(userId, false);
+    }
+
+    /**
+     * 批量查询在线状态：本机命中的不再查路由表，其余一次批量查询
+     */
+    public Map<Long, Boolean> onlineStatus(Collection<Long> userIds) {
+        Map<Long, Boolean> result = new HashMap<>();
+        List<Long> remote = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (userId == null || result.containsKey(userId)) {
+                continue;
+            }
+            boolean local = online.containsKey(userId);
+            result.put(userId, local);
+            if (!local) {
+                remote.add(userId);
+            }
+        }
+        if (!remote.isEmpty()) {
+            try {
+                clusterTransport.routes(remote).keySet().forEach(id -> result.put(id, true));
+            } catch (Exception e) {
+                log.warn("查询集群在线路由失败: {}", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 本机最近一次心跳时间，不在线返回 null
+     */
+    public LocalDateTime lastSeen(Long userId) {
+        Presence presence = online.get(userId);
+        return presence != null ? toTime(presence.lastSeen) : null;
+    }
+
+    public int localOnlineCount() {
+        return online.size();
+    }
+
+    @Scheduled(fixedDelayString = "${presence.sweep-interval-ms:15000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        long expiredBefore = now - sessionTtlSeconds * 1000L;
+        List<LocalSessionEvent> swept = new ArrayList<>();
+        Map<Long, Long> wentOfflineAt = new HashMap<>();
+        for (Map.Entry<Long, Presence> entry : online.entrySet()) {
+            Presence presence = entry.getValue();
+            if (presence.lastSeen >= expiredBefore) {
+                continue;
+            }
+            for (Iterator<Map.Entry<String, Long>> it = presence.sessions.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> session = it.next();
+                if (session.getValue() < expiredBefore) {
+                    it.remove();
+                    swept.add(new LocalSessionEvent(entry.getKey(), session.getKey(), false));
+                }
+            }
+            boolean[] wentOffline = {false};
+            online.computeIfPresent(entry.getKey(), (id, p) -> {
+                if (p.sessions.isEmpty()) {
+                    wentOffline[0] = true;
+                    return null;
+                }
+                return p;
+            });
+            if (wentOffline[0]) {
+                wentOfflineAt.put(entry.getKey(), presence.lastSeen);
+            }
+        }
+        if (!wentOfflineAt.isEmpty()) {
+            goneOffline(wentOfflineAt);
+        }
+        // 路由表里的会话一并移除，否则其他节点仍会把消息中继到本机
+        swept.forEach(eventPublisher::publishEvent);
+        if (!swept.isEmpty()) {
+            log.info("清扫超时会话 {} 个，当前在线用户 {}", swept.size(), online.size());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:5000}")
+    public void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("在线状态落库失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 停机时本机用户置为离线并落库；仍连在其他节点上的用户不写离线。
+     * {@link ClusterMessagingService} 先于本服务销毁并注销本节点路由，此时路由表里只剩其他节点。
+     */
+    @PreDestroy
+    public void shutdown() {
+        long now = System.currentTimeMillis();
+        List<Long> userIds = new ArrayList<>();
+        for (Long userId : Set.copyOf(online.keySet())) {
+            if (online.remove(userId) != null) {
+                userIds.add(userId);
+            }
+        }
+        Set<Long> elsewhere = Set.of();
+        if (!userIds.isEmpty()) {
+            try {
+                elsewhere = clusterTransport.routes(userIds).keySet();
+            } catch (Exception e) {
+                log.warn("停机时查询集群在线路由失败，本机用户全部置为离线: {}", e.getMessage());
+            }
+        }
+        for (Long userId : userIds) {
+            if (!elsewhere.contains(userId)) {
+                enqueue(userId, null, OFFLINE, now, null, now);
+            }
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("停机前写入在线状态失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 取出待落库状态批量 upsert；失败的行放回（已有更新的不覆盖）
+     *
+     * @return 写入行数
+     */
+    public synchronized int flush() {
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        List<UserPresence> rows = new ArrayList<>(dirty.size());
+        for (Long userId : Set.copyOf(dirty.keySet())) {
+            UserPresence row = dirty.remove(userId);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        int written = 0;
+        for (int from = 0; from < rows.size(); from += UPSERT_BATCH_SIZE) {
+            List<UserPresence> chunk = rows.subList(from, Math.min(rows.size(), from + UPSERT_BATCH_SIZE));
+            try {
+                userPresenceMapper.upsertBatch(chunk);
+                written += chunk.size();
+            } catch (RuntimeException e) {
+                rows.subList(from, rows.size()).forEach(row -> dirty.putIfAbsent(row.getUserId(), row));
+                throw e;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 本机最后一个会话关闭的用户：仍连在其他节点上的不写离线、不通知联系人
+     *
+     * @param lastSeenByUser userId → 最近心跳时间
+     */
+    private void goneOffline(Map<Long, Long> lastSeenByUser) {
+        Set<Long> elsewhere = connectedElsewhere(lastSeenByUser.keySet());
+        long now = System.currentTimeMillis();
+        lastSeenByUser.forEach((userId, lastSeen) -> {
+            if (elsewhere.contains(userId)) {
+                log.debug("User {} left this node but is still connected elsewhere", userId);
+                return;
+            }
+            enqueue(userId, null, OFFLINE, lastSeen, null, now);
+            eventPublisher.publishEvent(new PresenceChangedEvent(userId, false, toTime(lastSeen)));
+            log.info("User {} marked offline", userId);
+        });
+    }
+
+    /**
+     * 在本节点以外仍有路由的用户；查询失败时按已离线处理
+     */
+    private Set<Long> connectedElsewhere(Collection<Long> userIds) {
+        Set<Long> result = new HashSet<>();
+        try {
+            String self = clusterMessagingService.getNodeId();
+            clusterTransport.routes(userIds).forEach((userId, nodes) -> {
+                if (nodes.stream().anyMatch(node -> !node.equals(self))) {
+                    result.add(userId);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("查询集群在线路由失败，按离线处理: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    private void enqueue(Long userId, String sessionId, String status, long lastSeen,
+                         Long connectTime, Long disconnectTime) {
+        UserPresence row = new UserPresence();
+        row.setUserId(userId);
+        row.setWebsocketSessionId(sessionId);
+        row.setOnlineStatus(status);
+        row.setLastSeenAt(toTime(lastSeen));
+        row.setConnectTime(connectTime != null ? toTime(connectTime) : null);
+        row.setDisconnectTime(disconnectTime != null ? toTime(disconnectTime) : null);
+        // 心跳行不能冲掉尚未落库的上线行里的连接时间
+        dirty.merge(userId, row, (prev, next) -> {
+            if (next.getConnectTime() == null && ONLINE.equals(next.getOnlineStatus())
+                    && ONLINE.equals(prev.getOnlineStatus())) {
+                next.setConnectTime(prev.getConnectTime());
+                next.setWebsocketSessionId(Objects.requireNonNullElse(prev.getWebsocketSessionId(), sessionId));
+            }
+            return next;
+        });
+    }
+
+    private static LocalDateTime toTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static final class Presence {
+        final Map<String, Long> sessions = new ConcurrentHashMap<>();
+        volatile long lastSeen;
+        volatile long lastPersisted;
+
+        Presence(long now) {
+            this.lastSeen = now;
+        }
     }
 }
@@ -10,9 +10,14 @@ import com.mental.health.mapper.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -24,10 +29,10 @@ import java.util.stream.Collectors;
  * 候补转正与到诊管理服务
  *
  * 核心能力:
- * 1. 候补优先级评分: 风险等级、是否复诊、等待时长、治疗计划需求
- * 2. Vacancy事件驱动: 预约取消/排班变更时自动匹配候补
+ * 1. 候补优先级评分: 风险等级、是否复诊、治疗计划需求（入队时算好），等待时长（读取时计算）
+ * 2. Vacancy事件驱动: 预约取消/排班变更时自动匹配候补，多个空缺一次批量分配
  * 3. Offer管理: 发出、接受、拒绝、过期
- * 4. 锁位机制: 防止同一时段被多人抢占
+ * 4. 锁位机制: 防止同一时段被多人抢占，候补锁位同样占用号源容量
  * 5. 到诊管理: 签到、未到诊、迟到取消
  */
 @Service
@@ -38,13 +43,23 @@ public class WaitlistManagementService {
     private static final int OFFER_HOLD_MINUTES = 120; // Offer有效期2小时
     private static final int SLOT_HOLD_MINUTES = 15;   // 锁位15分钟
 
+    /** 到期调度任务类型 */
+    public static final String OFFER_EXPIRY = "WAITLIST_OFFER_EXPIRY";
+    public static final String HOLD_EXPIRY = "SLOT_HOLD_EXPIRY";
+
     @Autowired private WaitlistOfferMapper offerMapper;
     @Autowired private AppointmentSlotHoldMapper holdMapper;
     @Autowired private AppointmentRescheduleLogMapper rescheduleLogMapper;
     @Autowired private AppointmentWaitlistMapper waitlistMapper;
     @Autowired private AppointmentMapper appointmentMapper;
-    @Autowired private UserNotificationService notificationService;
+    @Autowired private NotificationDeliveryPipeline deliveryPipeline;
+    @Autowired private WaitlistPriorityQueue priorityQueue;
     @Autowired private OutboxService outboxService;
+    @Autowired private SlotAvailabilityEngine availabilityEngine;
+    @Autowired private SlotCapacityService slotCapacityService;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private DeadlineScheduler deadlineScheduler;
+    @Autowired private AppointmentReminderScheduler reminderScheduler;
 
     // ===== Vacancy事件处理 =====
 
@@ -55,18 +70,24 @@ public class WaitlistManagementService {
     public void onAppointmentCancelled(Long appointmentId, Long cancelledBy, String reason) {
         Appointment appointment = appointmentMapper.selectById(appointmentId);
         if (appointment == null) return;
+        boolean wasActive = appointment.getStatus() != null
+                && (appointment.getStatus() == 0 || appointment.getStatus() == 1);
 
         // 记录取消
         appointment.setStatus(3); // 已取消
         appointment.setCancelledBy(cancelledBy);
         appointment.setCancelReason(reason);
         appointmentMapper.updateById(appointment);
-
-        // 查找匹配的候补
-        matchWaitlistToVacancy(appointment.getDoctorId(),
-                appointment.getAppointmentTime().toLocalDate(),
-                appointment.getAppointmentTime().toLocalTime(),
-                appointment.getAppointmentTime().toLocalTime().plusMinutes(50));
+        reminderScheduler.track(appointment);
+        availabilityEngine.invalidate(appointment.getDoctorId(), appointment.getAppointmentTime().toLocalDate());
+
+        // 归还名额后由 onCapacityReturned 在提交后匹配候补；没有计数行的历史预约直接匹配
+        if (!wasActive || !slotCapacityService.release(appointment.getDoctorId(), appointment.getAppointmentTime())) {
+            matchWaitlistToVacancy(appointment.getDoctorId(),
+                    appointment.getAppointmentTime().toLocalDate(),
+                    appointment.getAppointmentTime().toLocalTime(),
+                    appointment.getAppointmentTime().toLocalTime().plusMinutes(50));
+        }
 
         log.info("预约#{} 已取消, 开始候补匹配", appointmentId);
     }
@@ -77,83 +98,174 @@ public class WaitlistManagementService {
     @Transactional
     public void matchWaitlistToVacancy(Long doctorId, LocalDate slotDate,
                                         LocalTime slotStart, LocalTime slotEnd) {
-        // 检查时段是否已被锁定
-        AppointmentSlotHold existingHold = holdMapper.findActiveHold(doctorId, slotDate, slotStart);
-        if (existingHold != null) return;
-
-        // 查找符合条件的候补，按优先级排序
-        LambdaQueryWrapper<AppointmentWaitlist> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(AppointmentWaitlist::getDoctorId, doctorId)
-                .eq(AppointmentWaitlist::getStatus, "WAITING")
-                .le(AppointmentWaitlist::getPreferredDate, slotDate)
-                .orderByDesc(AppointmentWaitlist::getPriorityScore)
-                .orderByAsc(AppointmentWaitlist::getCreateTime)
-                .last("LIMIT 3"); // 最多通知3人
-
-        List<AppointmentWaitlist> candidates = waitlistMapper.selectList(wrapper);
-        if (candidates.isEmpty()) return;
-
-        // 给最高优先级的候选人发Offer
-        AppointmentWaitlist topCandidate = candidates.get(0);
-        createOffer(topCandidate, slotDate, slotStart, slotEnd);
+        matchVacancies(doctorId, List.of(new Vacancy(slotDate, slotStart)));
     }
 
-    // ===== Offer管理 =====
+    /**
+     * 空缺时段；time 落在医生出诊时段内即可
+     */
+    public record Vacancy(LocalDate date, LocalTime time) {
+    }
 
+    /**
+     * 批量匹配：一次把医生的多个空缺时段分给候补
+     *
+     * 时段按时间先后，依次分给优先队列中当前得分最高、且本批尚未分到的患者；
+     * 锁位、Offer、候补状态与到期时间点在同一事务内批量写入，通知在提交后统一入队。
+     *
+     * @return 发出的Offer数
+     */
     @Transactional
-    public Long createOffer(AppointmentWaitlist waitlistEntry,
-                             LocalDate slotDate, LocalTime slotStart, LocalTime slotEnd) {
-        // 创建锁位
-        AppointmentSlotHold hold = new AppointmentSlotHold();
-        hold.setDoctorId(waitlistEntry.getDoctorId());
-        hold.setPatientId(waitlistEntry.getPatientId());
-        hold.setSlotDate(slotDate);
-        hold.setSlotStart(slotStart);
-        hold.setSlotEnd(slotEnd);
-        hold.setHoldStatus("HELD");
-        hold.setHoldSource("WAITLIST_OFFER");
-        hold.setSourceId(waitlistEntry.getId());
-        hold.setHeldAt(LocalDateTime.now());
-        hold.setExpireAt(LocalDateTime.now().plusMinutes(OFFER_HOLD_MINUTES));
-        holdMapper.insert(hold);
-
-        // 创建Offer
-        WaitlistOffer offer = new WaitlistOffer();
-        offer.setWaitlistId(waitlistEntry.getId());
-        offer.setPatientId(waitlistEntry.getPatientId());
-        offer.setDoctorId(waitlistEntry.getDoctorId());
-        offer.setOfferedSlotDate(slotDate);
-        offer.setOfferedSlotStart(slotStart);
-        offer.setOfferedSlotEnd(slotEnd);
-        offer.setOfferStatus("PENDING");
-        offer.setPriorityScore(waitlistEntry.getPriorityScore());
-        offer.setOfferedAt(LocalDateTime.now());
-        offer.setExpireAt(LocalDateTime.now().plusMinutes(OFFER_HOLD_MINUTES));
-        offerMapper.insert(offer);
+    public int matchVacancies(Long doctorId, List<Vacancy> vacancies) {
+        if (vacancies == null || vacancies.isEmpty()) return 0;
+
+        // 归一到出诊时段并去重；已结束或已有有效锁位的时段跳过
+        LocalDateTime now = LocalDateTime.now();
+        Map<LocalDateTime, SlotAvailabilityEngine.Slot> slots = new TreeMap<>();
+        for (Vacancy v : vacancies) {
+            SlotAvailabilityEngine.Slot slot = availabilityEngine.slotContaining(doctorId, v.date(), v.time());
+            if (slot != null && LocalDateTime.of(slot.date(), slot.end()).isAfter(now)) {
+                slots.putIfAbsent(LocalDateTime.of(slot.date(), slot.start()), slot);
+            }
+        }
+        if (slots.isEmpty()) return 0;
+        Set<LocalDate> dates = slots.values().stream()
+                .map(SlotAvailabilityEngine.Slot::date).collect(Collectors.toSet());
+        for (AppointmentSlotHold hold : holdMapper.findActiveHolds(doctorId, dates)) {
+            slots.remove(LocalDateTime.of(hold.getSlotDate(), hold.getSlotStart()));
+        }
 
-        // 更新候补状态
-        waitlistEntry.setStatus("NOTIFIED");
-        waitlistEntry.setNotifiedAt(LocalDateTime.now());
-        waitlistMapper.updateById(waitlistEntry);
+        // 分配；锁定选中的候补行，内存队列落后于数据库的（其他节点已处理）剔除后重新分配
+        Map<SlotAvailabilityEngine.Slot, WaitlistPriorityQueue.Candidate> picks = new LinkedHashMap<>();
+        Set<Long> takenPatients = new HashSet<>();
+        Set<Long> stale = new HashSet<>();
+        Collection<SlotAvailabilityEngine.Slot> pending = slots.values();
+        while (!pending.isEmpty()) {
+            Map<SlotAvailabilityEngine.Slot, WaitlistPriorityQueue.Candidate> round = new LinkedHashMap<>();
+            for (SlotAvailabilityEngine.Slot slot : pending) {
+                WaitlistPriorityQueue.Candidate c = priorityQueue.best(doctorId, slot.date(), takenPatients, stale);
+                if (c != null) {
+                    round.put(slot, c);
+                    takenPatients.add(c.patientId());
+                }
+            }
+            if (round.isEmpty()) break;
+            Set<Long> locked = new HashSet<>(waitlistMapper.lockWaiting(
+                    round.values().stream().map(WaitlistPriorityQueue.Candidate::waitlistId).toList()));
+            List<SlotAvailabilityEngine.Slot> retry = new ArrayList<>();
+            round.forEach((slot, c) -> {
+                if (locked.contains(c.waitlistId())) {
+                    picks.put(slot, c);
+                } else {
+                    stale.add(c.waitlistId());
+                    takenPatients.remove(c.patientId());
+                    retry.add(slot);
+                }
+            });
+            pending = retry;
+        }
+        if (!stale.isEmpty()) {
+            priorityQueue.invalidate(doctorId);
+        }
 
-        // 发送通知
+        // 锁位同样占用号源名额，已满的时段不发出
+        picks.keySet().removeIf(slot -> {
+            if (slotCapacityService.tryAcquire(doctorId, slot)) return false;
+            log.info("时段 {} {} 已无名额, 不发出候补Offer", slot.date(), slot.start());
+            return true;
+        });
+        if (picks.isEmpty()) return 0;
+
+        LocalDateTime expireAt = now.plusMinutes(OFFER_HOLD_MINUTES);
+        List<AppointmentSlotHold> holds = new ArrayList<>(picks.size());
+        List<WaitlistOffer> offers = new ArrayList<>(picks.size());
+        picks.forEach((slot, c) -> {
+            AppointmentSlotHold hold = new AppointmentSlotHold();
+            hold.setDoctorId(doctorId);
+            hold.setPatientId(c.patientId());
+            hold.setSlotDate(slot.date());
+            hold.setSlotStart(slot.start());
+            hold.setSlotEnd(slot.end());
+            hold.setHoldStatus("HELD");
+            hold.setHoldSource("WAITLIST_OFFER");
+            hold.setSourceId(c.waitlistId());
+            hold.setHeldAt(now);
+            hold.setExpireAt(expireAt);
+            holds.add(hold);
+
+            WaitlistOffer offer = new WaitlistOffer();
+            offer.setWaitlistId(c.waitlistId());
+            offer.setPatientId(c.patientId());
+            offer.setDoctorId(doctorId);
+            offer.setOfferedSlotDate(slot.date());
+            offer.setOfferedSlotStart(slot.start());
+            offer.setOfferedSlotEnd(slot.end());
+            offer.setOfferStatus("PENDING");
+            offer.setPriorityScore(c.score());
+            offer.setPriorityFactorsJson(JSON.toJSONString(
+                    Map.of("base", c.base(), "waiting", c.agingBonus())));
+            offer.setOfferedAt(now);
+            offer.setExpireAt(expireAt);
+            offers.add(offer);
+        });
+        holdMapper.insertBatch(holds);
+        holds.forEach(h -> availabilityEngine.invalidate(doctorId, h.getSlotDate()));
+        offerMapper.insertBatch(offers);
+        List<Long> waitlistIds = offers.stream().map(WaitlistOffer::getWaitlistId).toList();
+        waitlistMapper.markNotified(waitlistIds);
+        priorityQueue.remove(doctorId, waitlistIds);
+
+        // 到期即时触发过期，定时清理只作兜底。锁位与 Offer 同时到期，由 Offer 过期一并释放，不单独登记
+        List<DeadlineScheduler.Deadline> deadlines = new ArrayList<>(offers.size());
+        for (WaitlistOffer offer : offers) {
+            deadlines.add(new DeadlineScheduler.Deadline(OFFER_EXPIRY, offer.getId(), expireAt));
+        }
+        deadlineScheduler.schedule(deadlines);
+
+        afterCommit(() -> offers.forEach(this::notifyOffer));
+        log.info("医生#{} 候补匹配: 空缺 {} 个, 发出Offer {} 个", doctorId, slots.size(), offers.size());
+        return offers.size();
+    }
+
+    /**
+     * 名额归还（取消、拒绝、锁位过期）后匹配候补；归还所在事务提交后发布，按医生各开新事务批量匹配
+     */
+    @EventListener
+    public void onCapacityReturned(SlotCapacityService.CapacityReturnedEvent event) {
+        Map<Long, List<Vacancy>> byDoctor = new LinkedHashMap<>();
+        for (SlotCapacityService.ReturnedSlot slot : event.slots()) {
+            if (slot.date().isBefore(LocalDate.now())) continue;
+            byDoctor.computeIfAbsent(slot.doctorId(), k -> new ArrayList<>())
+                    .add(new Vacancy(slot.date(), slot.time()));
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        byDoctor.forEach((doctorId, vacancies) -> {
+            try {
+                tx.executeWithoutResult(status -> matchVacancies(doctorId, vacancies));
+            } catch (Exception e) {
+                log.error("名额归还后候补匹配失败: 医生#{} 空缺 {} 个: {}",
+                        doctorId, vacancies.size(), e.getMessage());
+            }
+        });
+    }
+
+    // ===== Offer管理 =====
+
+    private void notifyOffer(WaitlistOffer offer) {
         CreateNotificationCommand cmd = new CreateNotificationCommand();
-        cmd.setUserId(waitlistEntry.getPatientId());
+        cmd.setUserId(offer.getPatientId());
         cmd.setCategory("APPOINTMENT");
         cmd.setPriority("HIGH");
         cmd.setTitle("候补通知：有空余时段");
-        cmd.setContent("您关注的医生在" + slotDate + " " + slotStart + "有空余时段，" +
+        cmd.setContent("您关注的医生在" + offer.getOfferedSlotDate() + " " + offer.getOfferedSlotStart() + "有空余时段，" +
                 "请在" + OFFER_HOLD_MINUTES + "分钟内确认预约。");
         cmd.setActionType("ROUTE");
         cmd.setSourceType("WAITLIST_OFFER");
         cmd.setSourceId(offer.getId());
-        try { notificationService.createNotification(cmd); } catch (Exception e) {
+        try { deliveryPipeline.submit(cmd); } catch (Exception e) {
             log.error("发送候补通知失败: {}", e.getMessage());
         }
-
-        log.info("候补Offer#{} 已发出, 患者#{}, 时段={} {}", offer.getId(),
-                waitlistEntry.getPatientId(), slotDate, slotStart);
-        return offer.getId();
     }
 
     /**
@@ -185,16 +297,24 @@ public class WaitlistManagementService {
         appointment.setWaitlistId(offer.getWaitlistId());
         appointment.setPriorityCode("FOLLOWUP");
         appointmentMapper.insert(appointment);
+        availabilityEngine.invalidate(offer.getDoctorId(), offer.getOfferedSlotDate());
 
-        // 更新Offer
-        offer.setOfferStatus("ACCEPTED");
-        offer.setRespondedAt(LocalDateTime.now());
-        offer.setResultingAppointmentId(appointment.getId());
-        offerMapper.updateById(offer);
-
-        // 转正锁位
-        convertHold(offer.getDoctorId(), offer.getOfferedSlotDate(),
-                offer.getOfferedSlotStart(), appointment.getId());
+        // 更新Offer：到期处理可能同时在改同一行，只有仍为 PENDING 时才算接受成功，否则整体回滚
+        if (offerMapper.acceptPending(offerId, appointment.getId(), LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Offer已过期或已处理");
+        }
+        deadlineScheduler.cancel(OFFER_EXPIRY, offerId);
+        reminderScheduler.track(appointment);
+
+        // 转正锁位（锁位已占名额）；锁位已不在时重新占位
+        if (!convertHold(offer.getDoctorId(), offer.getOfferedSlotDate(),
+                offer.getOfferedSlotStart(), appointment.getId())) {
+            SlotAvailabilityEngine.Slot slot = availabilityEngine.slotContaining(
+                    offer.getDoctorId(), offer.getOfferedSlotDate(), offer.getOfferedSlotStart());
+            if (slot == null || !slotCapacityService.tryAcquire(offer.getDoctorId(), slot)) {
+                throw new RuntimeException("该时段已满");
+            }
+        }
 
         // 更新候补状态
         AppointmentWaitlist waitlist = waitlistMapper.selectById(offer.getWaitlistId());
@@ -218,10 +338,10 @@ public class WaitlistManagementService {
             throw new RuntimeException("Offer不存在或不属于当前用户");
         }
 
-        offer.setOfferStatus("DECLINED");
-        offer.setRespondedAt(LocalDateTime.now());
-        offer.setDeclineReason(reason);
-        offerMapper.updateById(offer);
+        if (offerMapper.declinePending(offerId, reason, LocalDateTime.now()) == 0) {
+            throw new RuntimeException("Offer已过期或已处理");
+        }
+        deadlineScheduler.cancel(OFFER_EXPIRY, offerId);
 
         // 释放锁位
         releaseHold(offer.getDoctorId(), offer.getOfferedSlotDate(), offer.getOfferedSlotStart());
@@ -231,7 +351,9 @@ public class WaitlistManagementService {
         if (waitlist != null) {
             waitlist.setStatus("WAITING");
             waitlist.setDeclineReason(reason);
-            waitlistMapper.updateById(waitlist);
+            if (waitlistMapper.updateById(waitlist) > 0) {
+                priorityQueue.add(waitlist);
+            }
         }
 
         // 尝试给下一个候选人发Offer
@@ -284,6 +406,22 @@ public class WaitlistManagementService {
         Appointment old = appointmentMapper.selectById(appointmentId);
         if (old == null) throw new RuntimeException("预约不存在");
 
+        // 先占新时段再归还原时段；同一时段内改时间不动名额
+        boolean active = old.getStatus() != null && (old.getStatus() == 0 || old.getStatus() == 1);
+        SlotAvailabilityEngine.Slot newSlot = availabilityEngine.slotContaining(
+                old.getDoctorId(), newTime.toLocalDate(), newTime.toLocalTime());
+        if (newSlot == null) throw new RuntimeException("新时间不在医生的出诊时段内");
+        LocalDateTime originalTime = old.getAppointmentTime();
+        boolean sameSlot = originalTime.toLocalDate().equals(newSlot.date())
+                && !originalTime.toLocalTime().isBefore(newSlot.start())
+                && originalTime.toLocalTime().isBefore(newSlot.end());
+        if (active && !sameSlot) {
+            if (!slotCapacityService.tryAcquire(old.getDoctorId(), newSlot)) {
+                throw new RuntimeException("新时段已满");
+            }
+            slotCapacityService.release(old.getDoctorId(), originalTime);
+        }
+
         // 记录改约日志
         AppointmentRescheduleLog rescheduleLog = new AppointmentRescheduleLog();
         rescheduleLog.setAppointmentId(appointmentId);
@@ -295,9 +433,14 @@ public class WaitlistManagementService {
         rescheduleLogMapper.insert(rescheduleLog);
 
         // 更新预约时间
+        LocalDate originalDate = old.getAppointmentTime().toLocalDate();
         old.setAppointmentTime(newTime);
         old.setRescheduledFromId(appointmentId);
+        old.setReminderSent(0);
         appointmentMapper.updateById(old);
+        reminderScheduler.track(old);
+        availabilityEngine.invalidate(old.getDoctorId(), originalDate);
+        availabilityEngine.invalidate(old.getDoctorId(), newTime.toLocalDate());
 
         return appointmentId;
     }
@@ -306,66 +449,92 @@ public class WaitlistManagementService {
 
     public int calculatePriority(Long patientId, Long doctorId, boolean isFollowUp,
                                   String riskLevel, Long treatmentPlanId) {
-        int score = 0;
-
-        // 风险等级权重
-        if ("CRITICAL".equals(riskLevel)) score += 100;
-        else if ("HIGH".equals(riskLevel)) score += 60;
-        else if ("MEDIUM".equals(riskLevel)) score += 30;
-
-        // 复诊权重
-        if (isFollowUp) score += 40;
-
-        // 有治疗计划权重
-        if (treatmentPlanId != null) score += 20;
-
-        // 等待时长权重（每天+2分）
-        LambdaQueryWrapper<AppointmentWaitlist> wrapper = new LambdaQueryWrapper<>();
-        wrapper.eq(AppointmentWaitlist::getPatientId, patientId)
-                .eq(AppointmentWaitlist::getDoctorId, doctorId)
-                .eq(AppointmentWaitlist::getStatus, "WAITING")
-                .orderByAsc(AppointmentWaitlist::getCreateTime)
-                .last("LIMIT 1");
-        AppointmentWaitlist existing = waitlistMapper.selectOne(wrapper);
-        if (existing != null) {
-            long waitDays = java.time.Duration.between(
-                    existing.getCreateTime(), LocalDateTime.now()).toDays();
-            score += (int) Math.min(waitDays * 2, 30); // 最多30分
-        }
-
-        return score;
+        // 风险等级、复诊、治疗计划 + 等待时长（每天+2分，最多30分，取自内存候补队列）
+        return WaitlistPriorityQueue.baseScore(riskLevel, isFollowUp, treatmentPlanId)
+                + priorityQueue.agingBonus(patientId, doctorId);
     }
 
-    // ===== 过期清理调度器 =====
+    // ===== 过期处理 =====
 
-    @Scheduled(fixedDelay = 60_000) // 每分钟
+    /**
+     * Offer/锁位到期（由 {@link DeadlineScheduler} 按秒触发）
+     */
+    @EventListener
+    public void onDeadline(DeadlineScheduler.DeadlineDueEvent event) {
+        if (OFFER_EXPIRY.equals(event.type())) {
+            transactionTemplate.executeWithoutResult(status -> {
+                WaitlistOffer offer = offerMapper.selectById(event.refId());
+                if (offer != null && "PENDING".equals(offer.getOfferStatus())
+                        && !offer.getExpireAt().isAfter(LocalDateTime.now())) {
+                    expireOffer(offer);
+                }
+            });
+        } else if (HOLD_EXPIRY.equals(event.type())) {
+            // 新发出的 Offer 不再单独登记锁位到期，这里处理此前已登记的
+            transactionTemplate.executeWithoutResult(status -> {
+                AppointmentSlotHold hold = holdMapper.selectById(event.refId());
+                if (hold != null && "HELD".equals(hold.getHoldStatus())
+                        && !hold.getExpireAt().isAfter(LocalDateTime.now())) {
+                    expireHold(hold);
+                }
+            });
+        }
+    }
+
+    /**
+     * 兜底清理：到期调度按秒处理，这里只低频扫一遍遗漏（未登记的历史数据等）。
+     * 与 {@link #onDeadline} 一样每条到期记录一个事务，单条失败不影响其余
+     */
+    @Scheduled(fixedDelayString = "${deadline.sweep-interval-ms:900000}")
     public void cleanupExpired() {
         // 清理过期Offer
         List<WaitlistOffer> expiredOffers = offerMapper.findExpiredOffers();
         for (WaitlistOffer offer : expiredOffers) {
-            offer.setOfferStatus("EXPIRED");
-            offerMapper.updateById(offer);
-
-            // 恢复候补状态
-            AppointmentWaitlist waitlist = waitlistMapper.selectById(offer.getWaitlistId());
-            if (waitlist != null && "NOTIFIED".equals(waitlist.getStatus())) {
-                waitlist.setStatus("WAITING");
-                waitlistMapper.updateById(waitlist);
+            try {
+                transactionTemplate.executeWithoutResult(status -> expireOffer(offer));
+            } catch (Exception e) {
+                log.error("过期Offer#{} 处理失败: {}", offer.getId(), e.getMessage());
             }
-
-            // 释放锁位
-            releaseHold(offer.getDoctorId(), offer.getOfferedSlotDate(), offer.getOfferedSlotStart());
-
-            // 尝试给下一个候选人
-            matchWaitlistToVacancy(offer.getDoctorId(), offer.getOfferedSlotDate(),
-                    offer.getOfferedSlotStart(), offer.getOfferedSlotEnd());
         }
 
         // 清理过期锁位
         List<AppointmentSlotHold> expiredHolds = holdMapper.findExpiredHolds();
         for (AppointmentSlotHold hold : expiredHolds) {
-            hold.setHoldStatus("EXPIRED");
-            holdMapper.updateById(hold);
+            try {
+                transactionTemplate.executeWithoutResult(status -> expireHold(hold));
+            } catch (Exception e) {
+                log.error("过期锁位#{} 处理失败: {}", hold.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void expireOffer(WaitlistOffer offer) {
+        if (offerMapper.expirePending(offer.getId()) == 0) {
+            return; // 已被并发处理
+        }
+        offer.setOfferStatus("EXPIRED");
+
+        // 恢复候补状态
+        AppointmentWaitlist waitlist = waitlistMapper.selectById(offer.getWaitlistId());
+        if (waitlist != null && "NOTIFIED".equals(waitlist.getStatus())) {
+            waitlist.setStatus("WAITING");
+            if (waitlistMapper.updateById(waitlist) > 0) {
+                priorityQueue.add(waitlist);
+            }
+        }
+
+        // 释放锁位
+        releaseHold(offer.getDoctorId(), offer.getOfferedSlotDate(), offer.getOfferedSlotStart());
+
+        // 尝试给下一个候选人
+        matchWaitlistToVacancy(offer.getDoctorId(), offer.getOfferedSlotDate(),
+                offer.getOfferedSlotStart(), offer.getOfferedSlotEnd());
+    }
+
+    private void expireHold(AppointmentSlotHold hold) {
+        // 条件更新：过期、Offer 到期、拒绝等路径可能同时处理同一锁位，名额只归还一次
+        if (holdMapper.finishHeld(hold.getId(), "EXPIRED") > 0) {
+            releaseHoldCapacity(hold);
         }
     }
 
@@ -381,21 +550,42 @@ public class WaitlistManagementService {
 
     // ===== 内部方法 =====
 
-    private void convertHold(Long doctorId, LocalDate slotDate, LocalTime slotStart, Long appointmentId) {
+    private boolean convertHold(Long doctorId, LocalDate slotDate, LocalTime slotStart, Long appointmentId) {
         AppointmentSlotHold hold = holdMapper.findActiveHold(doctorId, slotDate, slotStart);
         if (hold != null) {
-            hold.setHoldStatus("CONVERTED");
-            hold.setConvertedAt(LocalDateTime.now());
-            hold.setResultingAppointmentId(appointmentId);
-            holdMapper.updateById(hold);
+            deadlineScheduler.cancel(HOLD_EXPIRY, hold.getId());
+            return holdMapper.convertHeld(hold.getId(), appointmentId, LocalDateTime.now()) > 0;
         }
+        return false;
     }
 
     private void releaseHold(Long doctorId, LocalDate slotDate, LocalTime slotStart) {
         AppointmentSlotHold hold = holdMapper.findActiveHold(doctorId, slotDate, slotStart);
         if (hold != null) {
-            hold.setHoldStatus("RELEASED");
-            holdMapper.updateById(hold);
+            deadlineScheduler.cancel(HOLD_EXPIRY, hold.getId());
+            if (holdMapper.finishHeld(hold.getId(), "RELEASED") > 0) {
+                releaseHoldCapacity(hold);
+            }
+        }
+    }
+
+    private void releaseHoldCapacity(AppointmentSlotHold hold) {
+        if ("WAITLIST_OFFER".equals(hold.getHoldSource())) {
+            slotCapacityService.release(hold.getDoctorId(), hold.getSlotDate(), hold.getSlotStart());
+            availabilityEngine.invalidate(hold.getDoctorId(), hold.getSlotDate());
         }
     }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
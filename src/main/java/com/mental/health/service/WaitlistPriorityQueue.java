@@ -0,0 +1,274 @@
+package com.mental.health.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.mental.health.entity.AppointmentWaitlist;
+import com.mental.health.mapper.AppointmentWaitlistMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 候补优先队列：每位医生一份 WAITING 候补的内存有序集
+ *
+ * - 基础分（风险等级、复诊、治疗计划）入队时算好，按基础分降序、入队时间升序排列
+ * - 等待时长加分（每天 +2，最多 30）在读取时按当前时间计算，不回写也不重排
+ * - 取最优候补时，基础分加满等待分仍不及当前最优的，后面的都不必再看
+ * - 首次访问一次查询加载该医生全部 WAITING 候补；本机变更在事务提交后同步，TTL 兜底其他节点的写入
+ */
+@Service
+public class WaitlistPriorityQueue {
+
+    private static final int AGING_POINTS_PER_DAY = 2;
+    public static final int MAX_AGING_BONUS = 30;
+
+    private static final long DAY_MILLIS = 24L * 3600 * 1000;
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingInt(Entry::base).reversed()
+            .thenComparingLong(Entry::enqueuedAt)
+            .thenComparingLong(Entry::waitlistId);
+
+    @Autowired
+    private AppointmentWaitlistMapper waitlistMapper;
+
+    @Value("${waitlist.queue.cache-ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${waitlist.queue.max-doctors:5000}")
+    private int maxDoctors;
+
+    private final Map<Long, DoctorQueue> queues = new ConcurrentHashMap<>();
+
+    /** 每次本机变更递增；加载期间有变更则本次结果不缓存 */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * 候选人；score 为基础分加读取时的等待分
+     */
+    public record Candidate(Long waitlistId, Long patientId, LocalDate preferredDate, int base, int score) {
+        public int agingBonus() {
+            return score - base;
+        }
+    }
+
+    private record Entry(long waitlistId, Long patientId, LocalDate preferredDate, int base, long enqueuedAt) {
+    }
+
+    /**
+     * 基础分：风险等级 + 复诊 + 治疗计划
+     */
+    public static int baseScore(String riskLevel, boolean followUp, Long treatmentPlanId) {
+        int score = 0;
+        if ("CRITICAL".equals(riskLevel)) score += 100;
+        else if ("HIGH".equals(riskLevel)) score += 60;
+        else if ("MEDIUM".equals(riskLevel)) score += 30;
+        if (followUp) score += 40;
+        if (treatmentPlanId != null) score += 20;
+        return score;
+    }
+
+    public static int baseScore(AppointmentWaitlist w) {
+        String followUp = w.getIsFollowup();
+        return baseScore(w.getRiskLevel(),
+                "Y".equalsIgnoreCase(followUp) || "1".equals(followUp) || "true".equalsIgnoreCase(followUp),
+                w.getTreatmentPlanId());
+    }
+
+    /**
+     * 等待时长加分：每满一天 +2，最多 30
+     */
+    public static int agingBonus(long enqueuedAt, long now) {
+        long waitDays = Math.max(0, now - enqueuedAt) / DAY_MILLIS;
+        return (int) Math.min(waitDays * AGING_POINTS_PER_DAY, MAX_AGING_BONUS);
+    }
+
+    /**
+     * slotDate 可用的最优候补（preferredDate 不晚于 slotDate），同分先到先得
+     *
+     * @param excludedPatients 本批已分到时段的患者
+     * @param excludedIds      已确认不再处于 WAITING 的候补
+     */
+    public Candidate best(Long doctorId, LocalDate slotDate,
+                          Set<Long> excludedPatients, Set<Long> excludedIds) {
+        DoctorQueue queue = queue(doctorId);
+        long now = System.currentTimeMillis();
+        synchronized (queue) {
+            Entry best = null;
+            int bestScore = Integer.MIN_VALUE;
+            for (Entry e : queue.ordered) {
+                // 有序集按基础分降序：此后的候补加满等待分也追不上
+                if (e.base() + MAX_AGING_BONUS < bestScore) {
+                    break;
+                }
+                if (e.preferredDate() == null || e.preferredDate().isAfter(slotDate)
+                        || excludedPatients.contains(e.patientId()) || excludedIds.contains(e.waitlistId())) {
+                    continue;
+                }
+                int score = e.base() + agingBonus(e.enqueuedAt(), now);
+                if (score > bestScore || score == bestScore && e.enqueuedAt() < best.enqueuedAt()) {
+                    best = e;
+                    bestScore = score;
+                }
+            }
+            return best == null ? null
+                    : new Candidate(best.waitlistId(), best.patientId(), best.preferredDate(), best.base(), bestScore);
+        }
+    }
+
+    /**
+     * 患者在该医生处最早一条 WAITING 候补的等待分
+     */
+    public int agingBonus(Long patientId, Long doctorId) {
+        DoctorQueue queue = queue(doctorId);
+        synchronized (queue) {
+            long earliest = Long.MAX_VALUE;
+            for (Entry e : queue.byId.values()) {
+                if (e.patientId().equals(patientId)) {
+                    earliest = Math.min(earliest, e.enqueuedAt());
+                }
+            }
+            return earliest == Long.MAX_VALUE ? 0 : agingBonus(earliest, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 候补进入（或回到）WAITING；事务提交后入队
+     */
+    public void add(AppointmentWaitlist w) {
+        if (w.getId() == null || w.getDoctorId() == null) {
+            return;
+        }
+        Entry entry = entry(w);
+        afterCommit(() -> {
+            epoch.incrementAndGet();
+            DoctorQueue queue = queues.get(w.getDoctorId());
+            if (queue != null) {
+                synchronized (queue) {
+                    queue.remove(entry.waitlistId());
+                    queue.add(entry);
+                }
+            }
+        });
+    }
+
+    /**
+     * 候补离开 WAITING（发出Offer、取消）；事务提交后出队
+     */
+    public void remove(Long doctorId, Collection<Long> waitlistIds) {
+        List<Long> ids = List.copyOf(waitlistIds);
+        afterCommit(() -> {
+            epoch.incrementAndGet();
+            DoctorQueue queue = queues.get(doctorId);
+            if (queue != null) {
+                synchronized (queue) {
+                    ids.forEach(queue::remove);
+                }
+            }
+        });
+    }
+
+    /**
+     * 内存队列与数据库不一致时丢弃，下次访问重新加载
+     */
+    public void invalidate(Long doctorId) {
+        epoch.incrementAndGet();
+        queues.remove(doctorId);
+    }
+
+    public Map<String, Object> stats() {
+        int entries = 0;
+        for (DoctorQueue queue : queues.values()) {
+            synchronized (queue) {
+                entries += queue.byId.size();
+            }
+        }
+        return Map.of("doctors", queues.size(), "entries", entries);
+    }
+
+    private DoctorQueue queue(Long doctorId) {
+        long now = System.currentTimeMillis();
+        DoctorQueue queue = queues.get(doctorId);
+        if (queue != null && queue.loadedAt + cacheTtlSeconds * 1000L > now) {
+            return queue;
+        }
+        long epochAtStart = epoch.get();
+        LambdaQueryWrapper<AppointmentWaitlist> wrapper = new LambdaQueryWrapper<>();
+        wrapper.select(AppointmentWaitlist::getId, AppointmentWaitlist::getPatientId,
+                        AppointmentWaitlist::getDoctorId, AppointmentWaitlist::getPreferredDate,
+                        AppointmentWaitlist::getPriorityScore, AppointmentWaitlist::getRiskLevel,
+                        AppointmentWaitlist::getIsFollowup, AppointmentWaitlist::getTreatmentPlanId,
+                        AppointmentWaitlist::getCreateTime)
+                .eq(AppointmentWaitlist::getDoctorId, doctorId)
+                .eq(AppointmentWaitlist::getStatus, "WAITING");
+        DoctorQueue loaded = new DoctorQueue(now);
+        for (AppointmentWaitlist w : waitlistMapper.selectList(wrapper)) {
+            loaded.add(entry(w));
+        }
+        if (epoch.get() == epochAtStart) {
+            if (queues.size() >= maxDoctors && !queues.containsKey(doctorId)) {
+                queues.entrySet().stream()
+                        .min(Comparator.comparingLong(e -> e.getValue().loadedAt))
+                        .ifPresent(e -> queues.remove(e.getKey(), e.getValue()));
+            }
+            queues.put(doctorId, loaded);
+        }
+        return loaded;
+    }
+
+    private static Entry entry(AppointmentWaitlist w) {
+        int base = w.getPriorityScore() != null ? w.getPriorityScore() : baseScore(w);
+        LocalDateTime createTime = w.getCreateTime() != null ? w.getCreateTime() : LocalDateTime.now();
+        return new Entry(w.getId(), w.getPatientId(), w.getPreferredDate(), base,
+                createTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    private static final class DoctorQueue {
+        final long loadedAt;
+        final TreeSet<Entry> ordered = new TreeSet<>(ORDER);
+        final Map<Long, Entry> byId = new HashMap<>();
+
+        DoctorQueue(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+
+        void add(Entry e) {
+            byId.put(e.waitlistId(), e);
+            ordered.add(e);
+        }
+
+        void remove(Long waitlistId) {
+            Entry e = byId.remove(waitlistId);
+            if (e != null) {
+                ordered.remove(e);
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
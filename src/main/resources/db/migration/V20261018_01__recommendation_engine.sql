@@ -0,0 +1,25 @@
+-- ============================================================
+-- 推荐引擎: 用户-资源评分表 + Top-K 近邻持久化表
+-- ============================================================
+
+-- 1) 用户-资源评分（协同过滤输入）
+CREATE TABLE resource_rating (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    resource_id BIGINT NOT NULL COMMENT '资源ID',
+    rating FLOAT NOT NULL DEFAULT 0 COMMENT '评分',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_resource_rating (user_id, resource_id),
+    INDEX idx_resource_rating_update (update_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户资源评分';
+
+-- 2) 用户 Top-K 近邻
+CREATE TABLE recommendation_neighbor (
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    rank_no INT NOT NULL COMMENT '近邻名次(从0开始)',
+    neighbor_user_id BIGINT NOT NULL COMMENT '近邻用户ID',
+    similarity FLOAT NOT NULL COMMENT '余弦相似度',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, rank_no)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='协同过滤近邻表';
@@ -0,0 +1,26 @@
+-- ============================================================
+-- 资源行为事件管道: 合并后的行为流水 + 隐式评分字段
+-- ============================================================
+
+-- 1) 行为流水（按 用户+资源+刷新窗口 合并后写入）
+CREATE TABLE resource_behavior_log (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    user_id BIGINT NOT NULL COMMENT '用户ID',
+    resource_id BIGINT NOT NULL COMMENT '资源ID',
+    view_count INT NOT NULL DEFAULT 0 COMMENT '浏览次数',
+    like_count INT NOT NULL DEFAULT 0 COMMENT '点赞次数',
+    download_count INT NOT NULL DEFAULT 0 COMMENT '下载次数',
+    complete_count INT NOT NULL DEFAULT 0 COMMENT '冥想/音频完成次数',
+    explicit_rating FLOAT NULL COMMENT '显式评分(1-5)',
+    first_event_time DATETIME NOT NULL COMMENT '窗口内首个事件时间',
+    last_event_time DATETIME NOT NULL COMMENT '窗口内末个事件时间',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_behavior_user_time (user_id, last_event_time),
+    INDEX idx_behavior_resource_time (resource_id, last_event_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='资源行为流水';
+
+-- 2) 评分拆分为 隐式累计分(带时间衰减) + 显式评分
+ALTER TABLE resource_rating
+    ADD COLUMN implicit_score FLOAT NOT NULL DEFAULT 0 COMMENT '隐式行为累计分(按半衰期衰减)' AFTER rating,
+    ADD COLUMN explicit_rating FLOAT NULL COMMENT '用户显式评分(1-5)' AFTER implicit_score,
+    ADD COLUMN last_event_time DATETIME NULL COMMENT '最近一次行为时间' AFTER explicit_rating;
@@ -0,0 +1,9 @@
+-- ============================================================
+-- 集合化分析聚合: 按时间窗口扫描所需索引
+-- ============================================================
+
+ALTER TABLE mood_diary ADD INDEX idx_mood_diary_create_time (create_time, user_id);
+ALTER TABLE risk_event ADD INDEX idx_risk_event_detected (detected_at, user_id);
+ALTER TABLE appointment ADD INDEX idx_appointment_time_patient (appointment_time, patient_id, attendance_status);
+ALTER TABLE meditation_session ADD INDEX idx_med_started (started_at, user_id);
+ALTER TABLE intervention_task ADD INDEX idx_task_due (due_at, patient_id);
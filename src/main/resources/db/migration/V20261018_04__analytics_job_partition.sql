@@ -0,0 +1,24 @@
+-- ============================================================
+-- 每夜批处理分区与检查点
+-- 作业按患者ID区间切分为分区，每个分区按块提交并记录检查点，
+-- 作业中断后从最后一个已提交块继续
+-- ============================================================
+
+CREATE TABLE analytics_job_partition (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    job_id BIGINT NOT NULL COMMENT '所属作业ID',
+    partition_no INT NOT NULL COMMENT '分区序号',
+    range_start BIGINT NOT NULL COMMENT '患者ID区间起点(含)',
+    range_end BIGINT NOT NULL COMMENT '患者ID区间终点(含)',
+    last_committed_id BIGINT NOT NULL COMMENT '已提交检查点(该ID及之前的患者已落库)',
+    partition_status VARCHAR(32) NOT NULL DEFAULT 'PENDING' COMMENT 'PENDING,RUNNING,DONE,FAILED',
+    records_processed INT NOT NULL DEFAULT 0 COMMENT '已写入记录数',
+    chunks_committed INT NOT NULL DEFAULT 0 COMMENT '已提交块数',
+    started_at DATETIME NULL COMMENT '本次执行开始时间',
+    finished_at DATETIME NULL COMMENT '完成时间',
+    error_message VARCHAR(1000) NULL COMMENT '失败原因',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_job_partition (job_id, partition_no),
+    CONSTRAINT fk_ajp_job FOREIGN KEY (job_id) REFERENCES analytics_job_log(id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='分析作业分区检查点';
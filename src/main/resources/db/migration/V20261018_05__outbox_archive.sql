@@ -0,0 +1,36 @@
+-- ============================================================
+-- Outbox 归档
+-- 已投递(SENT)及过期死信(DEAD)事件按批迁入按月分区的归档表，
+-- 热表只保留待投递集合；过期分区整体 DROP，无需逐行删除
+-- ============================================================
+
+-- 1) 归档表：按 create_time 月分区，分区键必须包含在主键中
+CREATE TABLE outbox_event_archive (
+    id BIGINT NOT NULL COMMENT '原 outbox_event.id',
+    aggregate_type VARCHAR(50) NOT NULL COMMENT '聚合类型',
+    aggregate_id BIGINT NOT NULL COMMENT '聚合ID',
+    event_type VARCHAR(100) NOT NULL COMMENT '事件类型',
+    event_key VARCHAR(100) NOT NULL COMMENT '幂等键',
+    payload JSON NOT NULL COMMENT '事件负载',
+    headers JSON NULL COMMENT '事件头',
+    status VARCHAR(20) NOT NULL COMMENT 'SENT,DEAD',
+    retry_count INT NOT NULL DEFAULT 0 COMMENT '重试次数',
+    last_error VARCHAR(500) NULL COMMENT '最后一次错误',
+    created_by BIGINT NULL COMMENT '创建者ID',
+    create_time DATETIME NOT NULL COMMENT '事件创建时间',
+    update_time DATETIME NULL COMMENT '最后状态变更时间',
+    archived_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+    PRIMARY KEY (id, create_time),
+    INDEX idx_outbox_archive_key (event_key),
+    INDEX idx_outbox_archive_aggregate (aggregate_type, aggregate_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Outbox事件归档(按月分区)'
+PARTITION BY RANGE COLUMNS (create_time) (
+    PARTITION p202610 VALUES LESS THAN ('2026-11-01'),
+    PARTITION p202611 VALUES LESS THAN ('2026-12-01'),
+    PARTITION p202612 VALUES LESS THAN ('2027-01-01'),
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- 2) 热表索引：待投递集合由 (status, next_retry_time) 覆盖（二级索引隐含主键 id），
+--    归档扫描按 (status, update_time) 定位过期 SENT/DEAD
+ALTER TABLE outbox_event ADD INDEX idx_outbox_archive_scan (status, update_time);
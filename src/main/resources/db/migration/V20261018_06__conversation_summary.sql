@@ -0,0 +1,49 @@
+-- ============================================================
+-- 会话摘要: 最后一条消息与双方未读数冗余到 consultation_session
+-- 收件箱一次分页查询即可返回，无需逐会话查询最后消息与未读数
+-- ============================================================
+
+ALTER TABLE consultation_session
+    ADD COLUMN last_message_id BIGINT NULL COMMENT '最后一条消息ID' AFTER end_time,
+    ADD COLUMN last_message_preview VARCHAR(200) NULL COMMENT '最后一条消息预览' AFTER last_message_id,
+    ADD COLUMN last_message_type VARCHAR(20) NULL COMMENT '最后一条消息类型' AFTER last_message_preview,
+    ADD COLUMN last_message_time DATETIME NULL COMMENT '最后一条消息时间' AFTER last_message_type,
+    ADD COLUMN patient_unread INT NOT NULL DEFAULT 0 COMMENT '患者未读数' AFTER last_message_time,
+    ADD COLUMN doctor_unread INT NOT NULL DEFAULT 0 COMMENT '医生未读数' AFTER patient_unread;
+
+-- 收件箱按参与方 + 更新时间倒序分页
+ALTER TABLE consultation_session
+    ADD INDEX idx_session_patient_inbox (patient_id, deleted, update_time, id),
+    ADD INDEX idx_session_doctor_inbox (doctor_id, deleted, update_time, id);
+
+-- 标记已读按 会话+接收人+已读状态 定位
+ALTER TABLE message ADD INDEX idx_message_unread (consultation_id, receiver_id, is_read);
+
+-- 回填最后一条消息（update_time 带 ON UPDATE CURRENT_TIMESTAMP，显式保留，否则收件箱排序被打乱）
+UPDATE consultation_session s
+JOIN (
+    SELECT m.consultation_id, MAX(m.id) AS last_id
+    FROM message m
+    WHERE m.consultation_id IS NOT NULL
+    GROUP BY m.consultation_id
+) t ON t.consultation_id = s.id
+JOIN message lm ON lm.id = t.last_id
+SET s.last_message_id = lm.id,
+    s.last_message_preview = LEFT(lm.content, 200),
+    s.last_message_type = lm.message_type,
+    s.last_message_time = lm.create_time,
+    s.update_time = s.update_time;
+
+-- 回填双方未读数
+UPDATE consultation_session s
+JOIN (
+    SELECT cs.id,
+           SUM(m.receiver_id = cs.patient_id) AS patient_unread,
+           SUM(m.receiver_id = cs.doctor_id) AS doctor_unread
+    FROM consultation_session cs
+    JOIN message m ON m.consultation_id = cs.id AND m.is_read = 0
+    GROUP BY cs.id
+) u ON u.id = s.id
+SET s.patient_unread = u.patient_unread,
+    s.doctor_unread = u.doctor_unread,
+    s.update_time = s.update_time;
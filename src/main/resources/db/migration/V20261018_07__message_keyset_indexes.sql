@@ -0,0 +1,6 @@
+-- ============================================================
+-- 消息历史键集分页: (会话, create_time, id) 复合索引
+-- ai_message 已有 idx_ai_message_session (session_id, create_time)，InnoDB 二级索引隐含主键 id
+-- ============================================================
+
+ALTER TABLE message ADD INDEX idx_message_history (consultation_id, create_time, id);
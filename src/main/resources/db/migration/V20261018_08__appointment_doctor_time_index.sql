@@ -0,0 +1,2 @@
+-- 号源可用性按医生 + 时间窗一次加载已约时段
+ALTER TABLE appointment ADD INDEX idx_appointment_doctor_time (doctor_id, appointment_time, status);
@@ -0,0 +1,19 @@
+-- ============================================================
+-- 号源容量计数: 每个 (医生, 日期, 开始时间) 一行
+-- 预约一条条件自增 booked < capacity 即占位，不再先 COUNT 再插入
+-- 行在首次预约该时段时按有效预约 + 候补锁位补建
+-- ============================================================
+
+CREATE TABLE appointment_slot_capacity (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    doctor_id BIGINT NOT NULL COMMENT '医生ID',
+    slot_date DATE NOT NULL COMMENT '时段日期',
+    slot_start TIME NOT NULL COMMENT '时段开始',
+    slot_end TIME NOT NULL COMMENT '时段结束',
+    capacity INT NOT NULL COMMENT '最近一次占位时的容量',
+    booked INT NOT NULL DEFAULT 0 COMMENT '已占用（有效预约 + 候补锁位）',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_slot_capacity (doctor_id, slot_date, slot_start),
+    INDEX idx_slot_capacity_date (slot_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='号源容量计数';
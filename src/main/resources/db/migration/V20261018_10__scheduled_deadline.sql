@@ -0,0 +1,18 @@
+-- ============================================================
+-- 到期时间点: Offer/锁位过期、预约提醒与过期、通知升级
+-- 业务创建时登记，由内存时间轮按秒触发；重启后从本表恢复
+-- ============================================================
+
+CREATE TABLE scheduled_deadline (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键',
+    task_type VARCHAR(64) NOT NULL COMMENT '任务类型',
+    ref_id BIGINT NOT NULL COMMENT '业务ID',
+    fire_at DATETIME NOT NULL COMMENT '触发时间',
+    status VARCHAR(16) NOT NULL DEFAULT 'PENDING' COMMENT 'PENDING,RUNNING,FAILED',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '失败次数',
+    last_error VARCHAR(500) NULL COMMENT '最近一次失败原因',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_deadline_ref (task_type, ref_id),
+    INDEX idx_deadline_due (status, fire_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='到期时间点';
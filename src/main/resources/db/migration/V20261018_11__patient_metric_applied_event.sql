@@ -0,0 +1,10 @@
+-- ============================================================
+-- 实时日指标已计入的事件键
+-- 与指标增量在同一事务写入：重启后或其他节点重投的事件不再重复累加
+-- ============================================================
+
+CREATE TABLE patient_metric_applied_event (
+    event_key VARCHAR(100) NOT NULL PRIMARY KEY COMMENT 'outbox 事件幂等键',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_metric_applied_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='实时日指标已计入事件';
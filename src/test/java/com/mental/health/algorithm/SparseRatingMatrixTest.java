@@ -0,0 +1,119 @@
+package com.mental.health.algorithm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 稀疏评分矩阵：CSR 构建、重复写入去重、CSC 与 CSR 一致、增量替换行
+ */
+class SparseRatingMatrixTest {
+
+    @Test
+    @DisplayName("按用户分行，行内资源下标升序，同一 (用户, 资源) 以最后一次写入为准")
+    void buildsSortedRowsWithLastWriteWins() {
+        SparseRatingMatrix m = SparseRatingMatrix.builder()
+                .add(7, 300, 1f)
+                .add(5, 100, 2f)
+                .add(7, 100, 3f)
+                .add(7, 300, 4f)
+                .add(7, 200, 5f)
+                .build();
+
+        assertEquals(2, m.userCount());
+        assertEquals(3, m.itemCount());
+        assertEquals(4, m.nonZeroCount());
+
+        int u = m.userIndexOf(7);
+        assertEquals(3, m.rowEnd(u) - m.rowStart(u));
+        Map<Long, Float> row = new HashMap<>();
+        int previous = -1;
+        for (int p = m.rowStart(u); p < m.rowEnd(u); p++) {
+            assertTrue(m.rowItem(p) > previous, "行内资源下标升序");
+            previous = m.rowItem(p);
+            row.put(m.itemIdAt(m.rowItem(p)), m.rowValue(p));
+        }
+        assertEquals(Map.of(100L, 3f, 200L, 5f, 300L, 4f), row);
+
+        assertTrue(m.hasRated(u, m.itemIndexOf(200)));
+        assertFalse(m.hasRated(m.userIndexOf(5), m.itemIndexOf(200)));
+        assertEquals(-1, m.userIndexOf(99));
+        assertEquals(-1, m.itemIndexOf(999));
+    }
+
+    @Test
+    @DisplayName("随机矩阵的 CSR 与 CSC 两份存储内容一致")
+    void csrAndCscAgree() {
+        Random random = new Random(42);
+        SparseRatingMatrix.Builder builder = SparseRatingMatrix.builder(16);
+        Map<String, Float> expected = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            long user = random.nextInt(200);
+            long item = random.nextInt(80);
+            float rating = 1 + random.nextInt(5);
+            builder.add(user, item, rating);
+            expected.put(user + ":" + item, rating);
+        }
+        SparseRatingMatrix m = builder.build();
+        assertEquals(expected.size(), m.nonZeroCount());
+
+        Map<String, Float> byRow = new HashMap<>();
+        for (int u = 0; u < m.userCount(); u++) {
+            for (int p = m.rowStart(u); p < m.rowEnd(u); p++) {
+                byRow.put(m.userIdAt(u) + ":" + m.itemIdAt(m.rowItem(p)), m.rowValue(p));
+            }
+        }
+        Map<String, Float> byCol = new HashMap<>();
+        for (int i = 0; i < m.itemCount(); i++) {
+            int previous = -1;
+            for (int q = m.colStart(i); q < m.colEnd(i); q++) {
+                assertTrue(m.colUser(q) > previous, "列内用户下标升序");
+                previous = m.colUser(q);
+                byCol.put(m.userIdAt(m.colUser(q)) + ":" + m.itemIdAt(i), m.colValue(q));
+            }
+        }
+        assertEquals(expected, byRow);
+        assertEquals(expected, byCol);
+    }
+
+    @Test
+    @DisplayName("toBuilderExcept 保留其他用户的行，被替换用户只剩新写入的评分")
+    void toBuilderExceptReplacesRows() {
+        SparseRatingMatrix base = SparseRatingMatrix.builder()
+                .add(1, 10, 4f)
+                .add(1, 20, 3f)
+                .add(2, 10, 5f)
+                .add(3, 30, 2f)
+                .build();
+
+        SparseRatingMatrix m = base.toBuilderExcept(Set.of(1L, 3L))
+                .add(1, 30, 1f)
+                .build();
+
+        assertEquals(2, m.userCount());
+        assertEquals(-1, m.userIndexOf(3));
+        int u1 = m.userIndexOf(1);
+        assertEquals(1, m.rowEnd(u1) - m.rowStart(u1));
+        assertEquals(30, m.itemIdAt(m.rowItem(m.rowStart(u1))));
+        int u2 = m.userIndexOf(2);
+        assertEquals(5f, m.rowValue(m.rowStart(u2)));
+        int item30 = m.itemIndexOf(30);
+        assertEquals(1, m.colEnd(item30) - m.colStart(item30));
+        assertEquals(u1, m.colUser(m.colStart(item30)));
+    }
+
+    @Test
+    @DisplayName("空构建器得到空矩阵")
+    void emptyMatrix() {
+        SparseRatingMatrix m = SparseRatingMatrix.builder().build();
+        assertEquals(0, m.userCount());
+        assertEquals(0, m.itemCount());
+        assertEquals(0, m.nonZeroCount());
+    }
+}
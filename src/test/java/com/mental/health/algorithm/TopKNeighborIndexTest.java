@@ -0,0 +1,111 @@
+package com.mental.health.algorithm;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Top-K 近邻：offer 的挤入/改写/淘汰，以及全量构建与暴力计算的 Top-K 一致
+ */
+class TopKNeighborIndexTest {
+
+    @Test
+    @DisplayName("未满时按相似度降序插入，满后只接收优于末位的候选并淘汰末位")
+    void offerKeepsTopK() {
+        TopKNeighborIndex index = new TopKNeighborIndex(3, 4);
+        assertTrue(index.offer(1, 10, 0.5f));
+        assertTrue(index.offer(1, 11, 0.9f));
+        assertTrue(index.offer(1, 12, 0.7f));
+        assertArrayEquals(new long[]{11, 12, 10}, index.neighborIds(1));
+
+        assertFalse(index.offer(1, 13, 0.4f));
+        assertTrue(index.offer(1, 14, 0.8f));
+        assertArrayEquals(new long[]{11, 14, 12}, index.neighborIds(1));
+        assertArrayEquals(new float[]{0.9f, 0.8f, 0.7f}, index.similarities(1));
+    }
+
+    @Test
+    @DisplayName("已存在的邻居改写相似度后重排，相似度不变时不算变化")
+    void offerRescoresExistingNeighbor() {
+        TopKNeighborIndex index = new TopKNeighborIndex(3, 4);
+        index.put(1, new long[]{11, 12, 10}, new float[]{0.9f, 0.7f, 0.5f});
+
+        assertFalse(index.offer(1, 12, 0.7f));
+        assertTrue(index.offer(1, 10, 0.95f));
+        assertArrayEquals(new long[]{10, 11, 12}, index.neighborIds(1));
+        assertTrue(index.offer(1, 11, 0.1f));
+        assertArrayEquals(new long[]{10, 12, 11}, index.neighborIds(1));
+        assertArrayEquals(new float[]{0.95f, 0.7f, 0.1f}, index.similarities(1));
+    }
+
+    @Test
+    @DisplayName("副本修改不影响原索引；未知用户返回空列表")
+    void copyIsIndependent() {
+        TopKNeighborIndex index = new TopKNeighborIndex(2, 1);
+        index.put(1, new long[]{2}, new float[]{0.5f});
+        TopKNeighborIndex copy = index.copy();
+        copy.offer(1, 3, 0.9f);
+        for (long user = 100; user < 120; user++) {
+            copy.put(user, new long[0], new float[0]);
+        }
+
+        assertArrayEquals(new long[]{2}, index.neighborIds(1));
+        assertArrayEquals(new long[]{3, 2}, copy.neighborIds(1));
+        assertEquals(1, index.userCount());
+        assertEquals(21, copy.userCount());
+        assertEquals(0, index.neighborIds(99).length);
+        assertEquals(0, index.similarities(99).length);
+    }
+
+    @Test
+    @DisplayName("全量构建的每个用户 Top-K 相似度与暴力两两计算一致")
+    void buildMatchesBruteForce() {
+        Random random = new Random(7);
+        SparseRatingMatrix.Builder builder = SparseRatingMatrix.builder();
+        for (int i = 0; i < 3000; i++) {
+            builder.add(random.nextInt(150), random.nextInt(60), 1 + random.nextInt(50) / 10f);
+        }
+        SparseRatingMatrix m = builder.build();
+        int k = 5;
+        TopKNeighborIndex index = new CollaborativeFiltering().buildNeighborIndex(m, k);
+
+        for (int u = 0; u < m.userCount(); u++) {
+            List<Float> all = new ArrayList<>();
+            for (int v = 0; v < m.userCount(); v++) {
+                if (v != u) {
+                    float sim = cosineOnCoRated(m, u, v);
+                    if (sim > 0f) all.add(sim);
+                }
+            }
+            all.sort((a, b) -> Float.compare(b, a));
+            float[] actual = index.similarities(m.userIdAt(u));
+            assertEquals(Math.min(k, all.size()), actual.length);
+            for (int i = 0; i < actual.length; i++) {
+                assertEquals(all.get(i), actual[i], 1e-5f, "用户 " + m.userIdAt(u) + " 第 " + i + " 名");
+            }
+        }
+    }
+
+    /** 共同评分资源上的余弦相似度（与 CollaborativeFiltering 的定义一致） */
+    private static float cosineOnCoRated(SparseRatingMatrix m, int u, int v) {
+        double dot = 0, normU = 0, normV = 0;
+        for (int p = m.rowStart(u); p < m.rowEnd(u); p++) {
+            int item = m.rowItem(p);
+            for (int q = m.rowStart(v); q < m.rowEnd(v); q++) {
+                if (m.rowItem(q) == item) {
+                    float ru = m.rowValue(p);
+                    float rv = m.rowValue(q);
+                    dot += ru * rv;
+                    normU += ru * ru;
+                    normV += rv * rv;
+                }
+            }
+        }
+        return normU == 0 || normV == 0 ? 0f : (float) (dot / (Math.sqrt(normU) * Math.sqrt(normV)));
+    }
+}
@@ -0,0 +1,44 @@
+package com.mental.health.common;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledTemplateTest {
+
+    @Test
+    @DisplayName("按片段顺序替换变量，同一变量可出现多次")
+    void rendersVariables() {
+        CompiledTemplate t = CompiledTemplate.compile("{name}您好，您与{doctor}的预约在{time}，{name}请准时");
+        assertEquals("张三您好，您与李医生的预约在明天 9:00，张三请准时",
+                t.render(Map.of("name", "张三", "doctor", "李医生", "time", "明天 9:00")));
+    }
+
+    @Test
+    @DisplayName("未提供的变量保留占位，值为 null 时替换为空串")
+    void missingAndNullVariables() {
+        CompiledTemplate t = CompiledTemplate.compile("[{a}][{b}]");
+        Map<String, String> vars = new HashMap<>();
+        vars.put("b", null);
+        assertEquals("[{a}][]", t.render(vars));
+    }
+
+    @Test
+    @DisplayName("无占位或未闭合的花括号按字面量处理，嵌套时只替换最内层")
+    void literalBraces() {
+        assertEquals("纯文本", CompiledTemplate.compile("纯文本").render(Map.of("x", "1")));
+        assertEquals("未闭合 {x", CompiledTemplate.compile("未闭合 {x").render(Map.of("x", "1")));
+        assertEquals("{1} → {1}", CompiledTemplate.compile("{{x}} → {{x}}").render(Map.of("x", "1")));
+    }
+
+    @Test
+    @DisplayName("null 模板与 null 变量表原样返回")
+    void nullSourceAndVariables() {
+        assertNull(CompiledTemplate.compile(null).render(Map.of("x", "1")));
+        assertEquals("{x}", CompiledTemplate.compile("{x}").render(null));
+    }
+}
@@ -0,0 +1,111 @@
+package com.mental.health.common;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分层时间轮：三层各 4 槽，单位 1/4/16 tick，从 tick 0 起最远覆盖到 63
+ */
+class TimingWheelTest {
+
+    @Test
+    @DisplayName("各层的任务逐层下放，恰好在到期 tick 返回")
+    void cascadesAcrossLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(0, 4, 4, 4);
+        long[] deadlines = {1, 3, 4, 5, 15, 16, 17, 40, 63};
+        for (long d : deadlines) {
+            assertNotNull(wheel.add(d, d));
+        }
+        assertEquals(deadlines.length, wheel.size());
+
+        List<long[]> fired = new ArrayList<>();
+        for (long tick = 1; tick <= 63; tick++) {
+            for (TimingWheel.Entry<Long> e : wheel.advance(tick)) {
+                fired.add(new long[]{tick, e.value()});
+            }
+        }
+
+        assertEquals(deadlines.length, fired.size());
+        for (int i = 0; i < deadlines.length; i++) {
+            assertEquals(deadlines[i], fired.get(i)[1]);
+            assertEquals(deadlines[i], fired.get(i)[0], "任务 " + deadlines[i] + " 触发 tick");
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("一次推进多个 tick 时按到期先后返回")
+    void advanceManyTicksKeepsOrder() {
+        TimingWheel<Long> wheel = new TimingWheel<>(0, 4, 4, 4);
+        for (long d : new long[]{50, 2, 33, 7, 18}) {
+            wheel.add(d, d);
+        }
+        List<Long> due = wheel.advance(60).stream().map(TimingWheel.Entry::value).toList();
+        assertEquals(List.of(2L, 7L, 18L, 33L, 50L), due);
+        assertEquals(60, wheel.currentTick());
+    }
+
+    @Test
+    @DisplayName("加入时已到期的任务在下一次推进时返回，即使不前进")
+    void overdueReturnedOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 4, 4);
+        wheel.add("past", 3);
+        wheel.add("now", 10);
+
+        List<String> due = wheel.advance(10).stream().map(TimingWheel.Entry::value).toList();
+        assertEquals(List.of("past", "now"), due);
+        assertEquals(0, wheel.size());
+        assertTrue(wheel.advance(11).isEmpty());
+    }
+
+    @Test
+    @DisplayName("范围按最高层槽对齐：最高层一圈之内接收，之外拒绝")
+    void acceptsUpToTopLevelHorizon() {
+        TimingWheel<String> wheel = new TimingWheel<>(0, 4, 4, 4);
+        assertTrue(wheel.accepts(63));
+        assertFalse(wheel.accepts(64));
+        assertNull(wheel.add("far", 64));
+        assertEquals(0, wheel.size());
+
+        wheel.advance(16);
+        assertTrue(wheel.accepts(79));
+        assertFalse(wheel.accepts(80));
+        assertNotNull(wheel.add("edge", 79));
+        List<String> due = wheel.advance(79).stream().map(TimingWheel.Entry::value).toList();
+        assertEquals(List.of("edge"), due);
+    }
+
+    @Test
+    @DisplayName("取消的任务不返回，在轮到的槽里丢弃并计数")
+    void cancelledEntriesAreSkipped() {
+        TimingWheel<String> wheel = new TimingWheel<>(0, 4, 4, 4);
+        TimingWheel.Entry<String> low = wheel.add("low", 2);
+        TimingWheel.Entry<String> high = wheel.add("high", 40);
+        wheel.add("kept", 41);
+        low.cancel();
+        high.cancel();
+        assertTrue(high.isCancelled());
+        assertEquals(3, wheel.size());
+
+        assertTrue(wheel.advance(2).isEmpty());
+        assertEquals(2, wheel.size());
+        // 最高层槽在 tick 32 下放时丢弃已取消的任务
+        wheel.advance(32);
+        assertEquals(1, wheel.size());
+        List<String> due = wheel.advance(41).stream().map(TimingWheel.Entry::value).toList();
+        assertEquals(List.of("kept"), due);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    @DisplayName("层数或槽数不合法时拒绝构造")
+    void rejectsInvalidSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(0));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(0, 4, 1));
+    }
+}
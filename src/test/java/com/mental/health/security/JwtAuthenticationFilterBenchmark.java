@@ -0,0 +1,106 @@
+package com.mental.health.security;
+
+import com.mental.health.common.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWT 认证过滤器热路径基准
+ *
+ * - filterCached：同一令牌重复请求，命中已验签声明缓存
+ * - filterUncached：缓存关闭，每个请求验签一次
+ * - legacyFourParses：旧实现每请求的开销（每次重建密钥与解析器，验签四次）
+ *
+ * 运行：mvn test-compile 后执行本类 main 方法（或 java -cp ... org.openjdk.jmh.Main JwtAuthenticationFilterBenchmark）
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "mental-health-system-secret-key-2024-secure-random-string-for-production";
+
+    private JwtAuthenticationFilter cachedFilter;
+    private JwtAuthenticationFilter uncachedFilter;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        JwtUtil cachedUtil = newJwtUtil(10000);
+        JwtUtil uncachedUtil = newJwtUtil(0);
+        cachedFilter = newFilter(cachedUtil);
+        uncachedFilter = newFilter(uncachedUtil);
+        token = cachedUtil.generateToken(42L, "patient42", "PATIENT");
+    }
+
+    @Benchmark
+    public void filterCached(Blackhole bh) throws Exception {
+        bh.consume(runFilter(cachedFilter));
+    }
+
+    @Benchmark
+    public void filterUncached(Blackhole bh) throws Exception {
+        bh.consume(runFilter(uncachedFilter));
+    }
+
+    @Benchmark
+    public void legacyFourParses(Blackhole bh) {
+        for (int i = 0; i < 4; i++) {
+            SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+            bh.consume(Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload().getExpiration()
+                    .before(new Date()));
+        }
+    }
+
+    private Object runFilter(JwtAuthenticationFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/patient/dashboard");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockFilterChain chain = new MockFilterChain();
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static JwtUtil newJwtUtil(int cacheEntries) {
+        JwtUtil util = new JwtUtil();
+        ReflectionTestUtils.setField(util, "secret", SECRET);
+        ReflectionTestUtils.setField(util, "expiration", 86400L);
+        ReflectionTestUtils.setField(util, "cacheMaxEntries", cacheEntries);
+        ReflectionTestUtils.setField(util, "cacheTtlSeconds", 300L);
+        util.init();
+        return util;
+    }
+
+    private static JwtAuthenticationFilter newFilter(JwtUtil util) {
+        JwtAuthenticationFilter filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtUtil", util);
+        return filter;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtAuthenticationFilterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
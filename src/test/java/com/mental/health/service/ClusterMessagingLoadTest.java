@@ -0,0 +1,196 @@
+package com.mental.health.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 集群投递负载测试：4 个节点共用进程内传输，模拟 5 万个并发 STOMP 会话
+ *
+ * 会话登记、路由查询、按节点攒批中继、对端本地投递都走真实代码路径，
+ * 只把 SimpleBroker 换成按节点计数的消息通道。
+ */
+class ClusterMessagingLoadTest {
+
+    private static final int NODES = 4;
+    private static final int USERS = 50_000;
+
+    private final List<ClusterMessagingService> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(ClusterMessagingService::shutdown);
+        nodes.clear();
+    }
+
+    @Test
+    @DisplayName("5万会话分布在4个节点，任意节点发送都能送达用户所在的每个节点")
+    void fanOutReachesEverySessionAcrossNodes() throws Exception {
+        InMemoryClusterTransport transport = new InMemoryClusterTransport();
+        AtomicIntegerArray[] received = new AtomicIntegerArray[NODES];
+        for (int n = 0; n < NODES; n++) {
+            received[n] = new AtomicIntegerArray(USERS);
+            newNode(transport, "node-" + n, received[n], 10, 1000);
+        }
+
+        // 每个用户连在 u % 4 号节点；每 10 个用户有一个同时在下一个节点上多端登录
+        int expected = 0;
+        for (int u = 0; u < USERS; u++) {
+            nodes.get(u % NODES).sessionOpened((long) u, "s-" + u);
+            expected++;
+            if (u % 10 == 0) {
+                nodes.get((u + 1) % NODES).sessionOpened((long) u, "s2-" + u);
+                expected++;
+            }
+        }
+
+        ExecutorService senders = Executors.newFixedThreadPool(16);
+        for (int u = 0; u < USERS; u++) {
+            final long userId = u;
+            ClusterMessagingService from = nodes.get((u * 7 + 3) % NODES);
+            senders.execute(() -> from.sendToUser(userId, "/queue/notifications", Map.of("id", userId)));
+        }
+        senders.shutdown();
+        assertTrue(senders.awaitTermination(60, TimeUnit.SECONDS));
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (totalDelivered() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(expected, totalDelivered());
+        for (int u = 0; u < USERS; u++) {
+            assertEquals(1, received[u % NODES].get(u), "user " + u);
+            if (u % 10 == 0) {
+                assertEquals(1, received[(u + 1) % NODES].get(u), "second device of user " + u);
+            }
+        }
+        long relayed = 0;
+        long batches = 0;
+        for (ClusterMessagingService node : nodes) {
+            Map<String, Object> stats = node.stats();
+            relayed += (long) stats.get("relayedFrames");
+            batches += (long) stats.get("publishedBatches");
+            assertEquals(0L, stats.get("droppedFrames"));
+        }
+        assertTrue(relayed > 0);
+        assertTrue(batches < relayed, "跨节点帧应成批发布");
+    }
+
+    @Test
+    @DisplayName("单用户待投递超过上限时丢弃普通帧，危机预警等关键帧不丢")
+    void backpressureDropsNonCriticalButKeepsCritical() {
+        InMemoryClusterTransport transport = new InMemoryClusterTransport();
+        AtomicIntegerArray received = new AtomicIntegerArray(1);
+        // 刷新间隔足够长，由测试手动 flush
+        ClusterMessagingService node = newNode(transport, "node-bp", received, 3_600_000, 100);
+        node.sessionOpened(0L, "s-0");
+
+        for (int i = 0; i < 500; i++) {
+            node.sendToUser(0L, "/queue/notifications", Map.of("seq", i));
+        }
+        for (int i = 0; i < 50; i++) {
+            node.sendToUser(0L, "/queue/crisis-alerts", Map.of("alert", i), true);
+        }
+        node.flush();
+
+        assertEquals(150, received.get(0));
+        assertEquals(400L, node.stats().get("droppedFrames"));
+    }
+
+    @Test
+    @DisplayName("目标节点已下线时清理陈旧路由")
+    void staleRouteToDeadNodeIsPurged() {
+        InMemoryClusterTransport transport = new InMemoryClusterTransport();
+        ClusterMessagingService node = newNode(transport, "node-live", new AtomicIntegerArray(1), 3_600_000, 100);
+        transport.register(7L, "node-dead");
+
+        node.sendToUser(7L, "/queue/notifications", Map.of("id", 7));
+        node.flush();
+
+        assertEquals(1L, node.stats().get("unreachableFrames"));
+        assertTrue(transport.routes(List.of(7L)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("使用 Broker 真实的消息转换器链时，帧体是原始 JSON 而不是 base64")
+    void frameBodyIsRawJsonWithBrokerConverters() {
+        List<Message<?>> sent = new ArrayList<>();
+        MessageChannel broker = (message, timeout) -> sent.add(message);
+        // 与 WebSocketMessageBrokerConfigurationSupport#brokerMessageConverter 相同的转换器链
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        MappingJackson2MessageConverter jackson = new MappingJackson2MessageConverter();
+        jackson.setContentTypeResolver(resolver);
+        SimpMessagingTemplate template = new SimpMessagingTemplate(broker);
+        template.setMessageConverter(new CompositeMessageConverter(
+                List.of(new StringMessageConverter(), new ByteArrayMessageConverter(), jackson)));
+
+        ClusterMessagingService node = newNode(new InMemoryClusterTransport(), "node-json",
+                new AtomicIntegerArray(1), 3_600_000, 100);
+        ReflectionTestUtils.setField(node, "messagingTemplate", template);
+        node.sessionOpened(1L, "s-1");
+        node.sendToUser(1L, "/queue/notifications", Map.of("id", 1));
+        node.flush();
+
+        assertEquals(1, sent.size());
+        Message<?> message = sent.get(0);
+        assertEquals("/user/1/queue/notifications", SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        assertEquals("{\"id\":1}", new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+    }
+
+    private ClusterMessagingService newNode(InMemoryClusterTransport transport, String nodeId,
+                                            AtomicIntegerArray received, long flushIntervalMs, int maxPendingPerUser) {
+        // 目的地形如 /user/{userId}/queue/...，按用户计数
+        MessageChannel broker = (message, timeout) -> {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            int userId = Integer.parseInt(destination.substring(6, destination.indexOf('/', 6)));
+            received.incrementAndGet(userId);
+            return true;
+        };
+        ClusterMessagingService service = new ClusterMessagingService();
+        ReflectionTestUtils.setField(service, "messagingTemplate", new SimpMessagingTemplate(broker));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "transport", transport);
+        ReflectionTestUtils.setField(service, "configuredNodeId", nodeId);
+        ReflectionTestUtils.setField(service, "flushIntervalMs", flushIntervalMs);
+        ReflectionTestUtils.setField(service, "batchSize", 200);
+        ReflectionTestUtils.setField(service, "maxPendingPerUser", maxPendingPerUser);
+        ReflectionTestUtils.setField(service, "maxPendingPerNode", 100_000);
+        ReflectionTestUtils.setField(service, "routeTtlSeconds", 90L);
+        service.init();
+        nodes.add(service);
+        return service;
+    }
+
+    private long totalDelivered() {
+        long total = 0;
+        for (ClusterMessagingService node : nodes) {
+            total += (long) node.stats().get("deliveredLocal");
+        }
+        return total;
+    }
+}
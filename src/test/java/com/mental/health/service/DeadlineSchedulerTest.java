@@ -0,0 +1,153 @@
+package com.mental.health.service;
+
+import com.mental.health.entity.ScheduledDeadline;
+import com.mental.health.mapper.ScheduledDeadlineMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 到期调度：登记、改期、撤销、领取与失败重试
+ *
+ * 工作线程换成同步执行，不启动秒级推进线程，由测试直接调用 tick()；
+ * 事务同步未开启，登记与撤销立即作用于时间轮。
+ */
+class DeadlineSchedulerTest {
+
+    private static final String TYPE = "OFFER_EXPIRY";
+
+    private ScheduledDeadlineMapper mapper;
+    private ApplicationEventPublisher publisher;
+    private DeadlineScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        mapper = mock(ScheduledDeadlineMapper.class);
+        when(mapper.claim(anyString(), anyLong(), any())).thenReturn(1);
+        publisher = mock(ApplicationEventPublisher.class);
+        ExecutorService workers = mock(ExecutorService.class);
+        doAnswer(inv -> {
+            inv.<Runnable>getArgument(0).run();
+            return null;
+        }).when(workers).execute(any());
+
+        scheduler = new DeadlineScheduler();
+        ReflectionTestUtils.setField(scheduler, "deadlineMapper", mapper);
+        ReflectionTestUtils.setField(scheduler, "eventPublisher", publisher);
+        ReflectionTestUtils.setField(scheduler, "workers", workers);
+        ReflectionTestUtils.setField(scheduler, "retryDelaySeconds", 30L);
+        ReflectionTestUtils.setField(scheduler, "maxAttempts", 5);
+        ReflectionTestUtils.setField(scheduler, "staleRunningSeconds", 300L);
+    }
+
+    @Test
+    @DisplayName("到期的时间点领取后发布事件并删除记录")
+    void dueDeadlineIsClaimedAndPublished() {
+        LocalDateTime fireAt = LocalDateTime.now().minusSeconds(5).truncatedTo(ChronoUnit.SECONDS);
+        scheduler.schedule(TYPE, 1L, fireAt);
+        verify(mapper).upsertBatch(argThat(rows -> rows.size() == 1
+                && TYPE.equals(rows.get(0).getTaskType()) && fireAt.equals(rows.get(0).getFireAt())));
+
+        scheduler.tick();
+
+        verify(mapper).claim(TYPE, 1L, fireAt);
+        verify(publisher).publishEvent(new DeadlineScheduler.DeadlineDueEvent(TYPE, 1L, fireAt));
+        verify(mapper).deleteClaimed(TYPE, 1L, fireAt);
+        assertEquals(1, scheduler.stats().get("fired"));
+        assertEquals(0, scheduler.stats().get("armed"));
+    }
+
+    @Test
+    @DisplayName("时间点向上取整到秒，不早于业务到期时间")
+    void fireAtRoundsUpToSecond() {
+        LocalDateTime fireAt = LocalDateTime.now().plusMinutes(10).truncatedTo(ChronoUnit.SECONDS).plusNanos(1);
+        scheduler.schedule(TYPE, 1L, fireAt);
+        verify(mapper).upsertBatch(argThat(rows ->
+                fireAt.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1).equals(rows.get(0).getFireAt())));
+    }
+
+    @Test
+    @DisplayName("撤销后到点不再触发")
+    void cancelledDeadlineDoesNotFire() {
+        scheduler.schedule(TYPE, 1L, LocalDateTime.now().minusSeconds(1));
+        scheduler.cancel(TYPE, 1L);
+
+        scheduler.tick();
+
+        verify(mapper).deleteByRef(TYPE, 1L);
+        verify(mapper, never()).claim(anyString(), anyLong(), any());
+        verifyNoInteractions(publisher);
+        assertEquals(0, scheduler.stats().get("armed"));
+    }
+
+    @Test
+    @DisplayName("同一业务重复登记只保留最后一次")
+    void rescheduleReplacesPreviousDeadline() {
+        scheduler.schedule(TYPE, 1L, LocalDateTime.now().minusSeconds(1));
+        scheduler.schedule(TYPE, 1L, LocalDateTime.now().plusMinutes(30));
+
+        scheduler.tick();
+
+        verify(mapper, never()).claim(anyString(), anyLong(), any());
+        assertEquals(1, scheduler.stats().get("armed"));
+    }
+
+    @Test
+    @DisplayName("领取失败（已被其他节点处理）时不发布事件")
+    void unclaimedDeadlineIsNotPublished() {
+        when(mapper.claim(anyString(), anyLong(), any())).thenReturn(0);
+        scheduler.schedule(TYPE, 1L, LocalDateTime.now().minusSeconds(1));
+
+        scheduler.tick();
+
+        verifyNoInteractions(publisher);
+        verify(mapper, never()).deleteClaimed(anyString(), anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("监听方处理失败时记录失败并按间隔重新放入时间轮")
+    void failedHandlerIsRetried() {
+        doThrow(new RuntimeException("处理失败")).when(publisher).publishEvent(any(Object.class));
+        LocalDateTime fireAt = LocalDateTime.now().minusSeconds(1).truncatedTo(ChronoUnit.SECONDS);
+        scheduler.schedule(TYPE, 1L, fireAt);
+
+        scheduler.tick();
+
+        verify(mapper).fail(eq(TYPE), eq(1L), eq(fireAt),
+                argThat(retryAt -> retryAt.isAfter(LocalDateTime.now().plusSeconds(20))), eq(5), eq("处理失败"));
+        verify(mapper, never()).deleteClaimed(anyString(), anyLong(), any());
+        assertEquals(1, scheduler.stats().get("failed"));
+        assertEquals(1, scheduler.stats().get("armed"));
+    }
+
+    @Test
+    @DisplayName("超出时间轮范围的只落表，对账在临近时补入")
+    void farDeadlineStaysInTableUntilReconcile() {
+        scheduler.schedule(TYPE, 1L, LocalDateTime.now().plusDays(2));
+        verify(mapper).upsertBatch(anyList());
+        assertEquals(0, scheduler.stats().get("armed"));
+
+        ScheduledDeadline row = new ScheduledDeadline();
+        row.setTaskType(TYPE);
+        row.setRefId(2L);
+        row.setFireAt(LocalDateTime.now().minusSeconds(1).truncatedTo(ChronoUnit.SECONDS));
+        when(mapper.findPendingBefore(any(), anyInt())).thenReturn(List.of(row));
+
+        scheduler.reconcile();
+        assertEquals(1, scheduler.stats().get("armed"));
+        scheduler.tick();
+
+        verify(publisher).publishEvent(new DeadlineScheduler.DeadlineDueEvent(TYPE, 2L, row.getFireAt()));
+    }
+}
@@ -0,0 +1,222 @@
+package com.mental.health.service;
+
+import com.mental.health.dto.CreateNotificationCommand;
+import com.mental.health.entity.NotificationDelivery;
+import com.mental.health.entity.NotificationPreference;
+import com.mental.health.entity.UserNotification;
+import com.mental.health.mapper.NotificationDeliveryMapper;
+import com.mental.health.mapper.NotificationPreferenceMapper;
+import com.mental.health.mapper.NotificationTemplateMapper;
+import com.mental.health.mapper.UserNotificationMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 通知递送管道：合并、写入失败重试/放弃、偏好判定与推送结果记录
+ *
+ * 数据库写入换成记录参数的桩，事务管理器为空实现，走 flush 的真实代码路径。
+ */
+class NotificationDeliveryPipelineTest {
+
+    private final List<UserNotification> inserted = new ArrayList<>();
+    private final List<NotificationDelivery> deliveries = new ArrayList<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private UserNotificationMapper notificationMapper;
+    private NotificationPushService pushService;
+    private UserPresenceService presenceService;
+    private NotificationDeliveryPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        notificationMapper = mock(UserNotificationMapper.class);
+        when(notificationMapper.insertBatch(anyList())).thenAnswer(inv -> {
+            List<UserNotification> rows = inv.getArgument(0);
+            rows.forEach(n -> n.setId(ids.incrementAndGet()));
+            inserted.addAll(rows);
+            return rows.size();
+        });
+        NotificationDeliveryMapper deliveryMapper = mock(NotificationDeliveryMapper.class);
+        when(deliveryMapper.insertBatch(anyList())).thenAnswer(inv -> {
+            List<NotificationDelivery> rows = inv.getArgument(0);
+            deliveries.addAll(rows);
+            return rows.size();
+        });
+        pushService = mock(NotificationPushService.class);
+        presenceService = mock(UserPresenceService.class);
+
+        pipeline = new NotificationDeliveryPipeline(100);
+        ReflectionTestUtils.setField(pipeline, "userNotificationMapper", notificationMapper);
+        ReflectionTestUtils.setField(pipeline, "deliveryMapper", deliveryMapper);
+        ReflectionTestUtils.setField(pipeline, "preferenceMapper", mock(NotificationPreferenceMapper.class));
+        ReflectionTestUtils.setField(pipeline, "templateMapper", mock(NotificationTemplateMapper.class));
+        ReflectionTestUtils.setField(pipeline, "pushService", pushService);
+        ReflectionTestUtils.setField(pipeline, "userPresenceService", presenceService);
+        ReflectionTestUtils.setField(pipeline, "deadlineScheduler", mock(DeadlineScheduler.class));
+        ReflectionTestUtils.setField(pipeline, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(pipeline, "workers", 1);
+        ReflectionTestUtils.setField(pipeline, "maxDrain", 1000);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 2);
+        ReflectionTestUtils.setField(pipeline, "retryDelayMillis", 0L);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    @DisplayName("同一用户同一业务对象的普通通知合并为最新一条，不同对象与高优先级不合并")
+    void coalescesPerSourceObject() {
+        AtomicInteger callbacks = new AtomicInteger();
+        for (int i = 1; i <= 3; i++) {
+            pipeline.submit(command(1L, "NORMAL", "第" + i + "次变更", 100L), callbacks::incrementAndGet);
+        }
+        pipeline.submit(command(1L, "NORMAL", "另一个预约", 200L));
+        pipeline.submit(command(1L, "HIGH", "高优先级", 100L));
+        pipeline.submit(command(2L, "NORMAL", "其他用户", 100L));
+
+        assertEquals(4, pipeline.flush());
+
+        UserNotification merged = find("第3次变更");
+        assertEquals(3, merged.getCoalescedCount());
+        assertEquals("APPOINTMENT:APPOINTMENT:100", merged.getCoalescedKey());
+        assertEquals(1, find("另一个预约").getCoalescedCount());
+        assertEquals(1, find("高优先级").getCoalescedCount());
+        assertEquals(1, find("其他用户").getCoalescedCount());
+        // 被合并掉的草稿的回调转移到合并结果上，一条不少
+        assertEquals(3, callbacks.get());
+        assertEquals(2L, pipeline.stats().get("coalesced"));
+    }
+
+    @Test
+    @DisplayName("分片写入失败时退回重试队列，下一轮重写成功后才回调")
+    void failedShardIsRetried() {
+        when(notificationMapper.insertBatch(anyList()))
+                .thenThrow(new RuntimeException("连接中断"))
+                .thenAnswer(inv -> {
+                    List<UserNotification> rows = inv.getArgument(0);
+                    inserted.addAll(rows);
+                    return rows.size();
+                });
+        AtomicInteger callbacks = new AtomicInteger();
+        pipeline.submit(command(1L, "NORMAL", "提醒", 100L), callbacks::incrementAndGet);
+
+        assertEquals(0, pipeline.flush());
+        assertEquals(0, callbacks.get());
+        assertEquals(1, pipeline.stats().get("retrying"));
+
+        assertEquals(1, pipeline.flush());
+        assertEquals(1, callbacks.get());
+        assertEquals(1, inserted.size());
+        assertEquals(0, pipeline.stats().get("retrying"));
+        assertEquals(0L, pipeline.stats().get("dropped"));
+    }
+
+    @Test
+    @DisplayName("写入失败达到最大次数后放弃，不回调")
+    void draftIsDroppedAfterMaxAttempts() {
+        when(notificationMapper.insertBatch(anyList())).thenThrow(new RuntimeException("数据库不可用"));
+        AtomicInteger callbacks = new AtomicInteger();
+        pipeline.submit(command(1L, "NORMAL", "提醒", 100L), callbacks::incrementAndGet);
+
+        pipeline.flush();
+        pipeline.flush();
+
+        assertEquals(0, callbacks.get());
+        assertEquals(0, pipeline.stats().get("retrying"));
+        assertEquals(1L, pipeline.stats().get("dropped"));
+        assertEquals(0, pipeline.flush());
+    }
+
+    @Test
+    @DisplayName("在线用户的推送结果在推送之后记录：成功 DELIVERED，失败 FAILED")
+    void websocketOutcomeRecordedAfterPush() {
+        when(presenceService.onlineStatus(any())).thenReturn(Map.of(1L, true, 2L, true));
+        doThrow(new IllegalStateException("会话已关闭")).when(pushService).pushNotification(eq(2L), any());
+        pipeline.submit(command(1L, "HIGH", "送达", 100L));
+        pipeline.submit(command(2L, "HIGH", "失败", 100L));
+        pipeline.submit(command(3L, "HIGH", "离线", 100L));
+
+        assertEquals(3, pipeline.flush());
+
+        assertEquals(3, deliveries.stream().filter(d -> "IN_APP".equals(d.getChannelCode())).count());
+        NotificationDelivery ok = websocket(1L);
+        assertEquals("DELIVERED", ok.getDeliveryStatus());
+        assertNotNull(ok.getDeliveredAt());
+        NotificationDelivery failed = websocket(2L);
+        assertEquals("FAILED", failed.getDeliveryStatus());
+        assertNotNull(failed.getFailedAt());
+        assertEquals("会话已关闭", failed.getFailureReason());
+        assertNull(websocket(3L));
+    }
+
+    @Test
+    @DisplayName("偏好判定：无偏好发送，关闭不发送，低于阈值不发送，静默时段只放行 URGENT")
+    void preferenceRules() {
+        LocalTime noon = LocalTime.NOON;
+        assertTrue(NotificationDeliveryPipeline.allows(null, "LOW", noon));
+
+        NotificationPreference disabled = preference(0, null, null, null);
+        assertFalse(NotificationDeliveryPipeline.allows(disabled, "URGENT", noon));
+
+        NotificationPreference highOnly = preference(1, "HIGH", null, null);
+        assertFalse(NotificationDeliveryPipeline.allows(highOnly, "NORMAL", noon));
+        assertTrue(NotificationDeliveryPipeline.allows(highOnly, "HIGH", noon));
+
+        NotificationPreference quiet = preference(1, null, LocalTime.of(11, 0), LocalTime.of(13, 0));
+        assertFalse(NotificationDeliveryPipeline.allows(quiet, "HIGH", noon));
+        assertTrue(NotificationDeliveryPipeline.allows(quiet, "URGENT", noon));
+        assertTrue(NotificationDeliveryPipeline.allows(quiet, "HIGH", LocalTime.of(14, 0)));
+    }
+
+    private UserNotification find(String title) {
+        return inserted.stream().filter(n -> title.equals(n.getTitle())).findFirst().orElseThrow();
+    }
+
+    private NotificationDelivery websocket(Long userId) {
+        return deliveries.stream()
+                .filter(d -> "WEBSOCKET".equals(d.getChannelCode()) && userId.equals(d.getUserId()))
+                .findFirst().orElse(null);
+    }
+
+    private static CreateNotificationCommand command(Long userId, String priority, String title, Long sourceId) {
+        CreateNotificationCommand cmd = new CreateNotificationCommand();
+        cmd.setUserId(userId);
+        cmd.setCategory("APPOINTMENT");
+        cmd.setPriority(priority);
+        cmd.setTitle(title);
+        cmd.setContent(title);
+        cmd.setSourceType("APPOINTMENT");
+        cmd.setSourceId(sourceId);
+        return cmd;
+    }
+
+    private static NotificationPreference preference(int enabled, String minPriority,
+                                                     LocalTime quietStart, LocalTime quietEnd) {
+        NotificationPreference pref = new NotificationPreference();
+        pref.setEnabled(enabled);
+        pref.setMinPriority(minPriority);
+        pref.setQuietStart(quietStart);
+        pref.setQuietEnd(quietEnd);
+        return pref;
+    }
+}
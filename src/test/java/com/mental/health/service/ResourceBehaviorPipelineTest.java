@@ -0,0 +1,122 @@
+package com.mental.health.service;
+
+import com.mental.health.entity.ResourceBehaviorLog;
+import com.mental.health.mapper.MentalResourceMapper;
+import com.mental.health.mapper.ResourceBehaviorLogMapper;
+import com.mental.health.mapper.ResourceRatingMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 行为事件管道：合并写入与写入失败的有界重试
+ */
+class ResourceBehaviorPipelineTest {
+
+    private final List<ResourceBehaviorLog> logs = new ArrayList<>();
+
+    private ResourceBehaviorLogMapper logMapper;
+    private MentalResourceMapper resourceMapper;
+    private RecommendationIndexService indexService;
+    private ResourceBehaviorPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        logMapper = mock(ResourceBehaviorLogMapper.class);
+        when(logMapper.insertBatch(anyList())).thenAnswer(inv -> {
+            List<ResourceBehaviorLog> rows = inv.getArgument(0);
+            logs.addAll(rows);
+            return rows.size();
+        });
+        resourceMapper = mock(MentalResourceMapper.class);
+        indexService = mock(RecommendationIndexService.class);
+
+        pipeline = new ResourceBehaviorPipeline(100);
+        ReflectionTestUtils.setField(pipeline, "behaviorLogMapper", logMapper);
+        ReflectionTestUtils.setField(pipeline, "ratingMapper", mock(ResourceRatingMapper.class));
+        ReflectionTestUtils.setField(pipeline, "resourceMapper", resourceMapper);
+        ReflectionTestUtils.setField(pipeline, "recommendationIndexService", indexService);
+        ReflectionTestUtils.setField(pipeline, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(pipeline, "halfLifeDays", 30L);
+        ReflectionTestUtils.setField(pipeline, "maxDrain", 1000);
+        ReflectionTestUtils.setField(pipeline, "maxAttempts", 2);
+    }
+
+    @Test
+    @DisplayName("同一用户同一资源的事件合并为一行，资源计数器按资源汇总一次")
+    void mergesPerUserAndResource() {
+        pipeline.record(1L, 10L, "view", null);
+        pipeline.record(1L, 10L, ResourceBehaviorPipeline.ACTION_LIKE, null);
+        pipeline.record(2L, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null);
+        pipeline.record(null, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null);
+
+        assertEquals(4, pipeline.flush());
+
+        assertEquals(2, logs.size());
+        ResourceBehaviorLog first = logs.stream().filter(l -> l.getUserId() == 1L).findFirst().orElseThrow();
+        assertEquals(1, first.getViewCount());
+        assertEquals(1, first.getLikeCount());
+        verify(resourceMapper).applyCounterDelta(10L, 3, 1, 0);
+        verify(indexService).markDirty(1L);
+        verify(indexService).markDirty(2L);
+    }
+
+    @Test
+    @DisplayName("事务失败时事件退回重试队列，下一轮与新事件一起写入")
+    void failedBatchIsRetried() {
+        when(logMapper.insertBatch(anyList()))
+                .thenThrow(new RuntimeException("连接中断"))
+                .thenAnswer(inv -> {
+                    List<ResourceBehaviorLog> rows = inv.getArgument(0);
+                    logs.addAll(rows);
+                    return rows.size();
+                });
+        pipeline.record(1L, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null);
+
+        assertEquals(0, pipeline.flush());
+        assertEquals(1, pipeline.stats().get("retrying"));
+        verify(indexService, never()).markDirty(any());
+
+        pipeline.record(1L, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null);
+        assertEquals(2, pipeline.flush());
+        assertEquals(1, logs.size());
+        assertEquals(2, logs.get(0).getViewCount());
+        assertEquals(0, pipeline.stats().get("retrying"));
+        assertEquals(0L, pipeline.stats().get("writeDiscarded"));
+    }
+
+    @Test
+    @DisplayName("失败达到最大次数后放弃并计数")
+    void eventsAreDiscardedAfterMaxAttempts() {
+        when(logMapper.insertBatch(anyList())).thenThrow(new RuntimeException("数据库不可用"));
+        pipeline.record(1L, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null);
+
+        pipeline.flush();
+        pipeline.flush();
+
+        assertEquals(0, pipeline.stats().get("retrying"));
+        assertEquals(1L, pipeline.stats().get("writeDiscarded"));
+        assertEquals(0, pipeline.flush());
+        verify(logMapper, times(2)).insertBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("缓冲区满时丢弃新事件并计数")
+    void overflowIsCounted() {
+        pipeline = new ResourceBehaviorPipeline(1);
+        assertTrue(pipeline.record(1L, 10L, ResourceBehaviorPipeline.ACTION_VIEW, null));
+        assertFalse(pipeline.record(1L, 11L, ResourceBehaviorPipeline.ACTION_VIEW, null));
+        assertEquals(1L, pipeline.stats().get("overflowDropped"));
+    }
+}
@@ -0,0 +1,214 @@
+package com.mental.health.service;
+
+import com.mental.health.dto.BookAppointmentRequest;
+import com.mental.health.entity.Appointment;
+import com.mental.health.entity.User;
+import com.mental.health.mapper.AppointmentMapper;
+import com.mental.health.mapper.AppointmentSlotCapacityMapper;
+import com.mental.health.mapper.UserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 号源并发预约压测：1000 个请求同时抢同一时段
+ *
+ * 预约走 SchedulingService 的真实代码路径，数据库计数行换成行内原子的条件自增/自减，
+ * 与 appointment_slot_capacity 上 UPDATE ... WHERE booked < capacity 的语义一致。
+ */
+class SlotBookingConcurrencyTest {
+
+    private static final int REQUESTS = 1000;
+    private static final int THREADS = 64;
+    private static final int CAPACITY = 3;
+    private static final long DOCTOR_ID = 7L;
+
+    private final LocalDate date = LocalDate.now().plusDays(3);
+    private final SlotAvailabilityEngine.Slot slot = new SlotAvailabilityEngine.Slot(
+            date, LocalTime.of(9, 0), LocalTime.of(9, 50), CAPACITY, 0, "A");
+
+    private final CapacityRow row = new CapacityRow();
+    private final AtomicInteger acquireCalls = new AtomicInteger();
+    private final AtomicInteger inserted = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Object> events = new ConcurrentLinkedQueue<>();
+
+    private SchedulingService schedulingService;
+
+    @BeforeEach
+    void setUp() {
+        AppointmentSlotCapacityMapper capacityMapper = mock(AppointmentSlotCapacityMapper.class);
+        when(capacityMapper.acquire(anyLong(), any(), any(), anyInt())).thenAnswer(inv -> {
+            acquireCalls.incrementAndGet();
+            return row.acquire(inv.getArgument(3));
+        });
+        when(capacityMapper.seed(anyLong(), any(), any(), any(), anyInt())).thenAnswer(inv -> row.seed());
+        when(capacityMapper.release(anyLong(), any(), any())).thenAnswer(inv -> row.release());
+
+        ApplicationEventPublisher publisher = events::add;
+        SlotCapacityService capacityService = new SlotCapacityService();
+        ReflectionTestUtils.setField(capacityService, "capacityMapper", capacityMapper);
+        ReflectionTestUtils.setField(capacityService, "eventPublisher", publisher);
+        ReflectionTestUtils.setField(capacityService, "fullCacheMillis", 60_000L);
+        ReflectionTestUtils.setField(capacityService, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+
+        User doctor = new User();
+        doctor.setId(DOCTOR_ID);
+        doctor.setRole("DOCTOR");
+        UserMapper userMapper = mock(UserMapper.class);
+        when(userMapper.selectById(DOCTOR_ID)).thenReturn(doctor);
+
+        SlotAvailabilityEngine engine = mock(SlotAvailabilityEngine.class);
+        when(engine.slotContaining(eq(DOCTOR_ID), eq(date), any())).thenReturn(slot);
+
+        AtomicLong ids = new AtomicLong();
+        AppointmentMapper appointmentMapper = mock(AppointmentMapper.class);
+        when(appointmentMapper.selectCount(any())).thenReturn(0L);
+        when(appointmentMapper.insert(any(Appointment.class))).thenAnswer(inv -> {
+            inv.<Appointment>getArgument(0).setId(ids.incrementAndGet());
+            inserted.incrementAndGet();
+            return 1;
+        });
+        when(appointmentMapper.updateById(any(Appointment.class))).thenReturn(1);
+
+        schedulingService = new SchedulingService();
+        ReflectionTestUtils.setField(schedulingService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(schedulingService, "appointmentMapper", appointmentMapper);
+        ReflectionTestUtils.setField(schedulingService, "availabilityEngine", engine);
+        ReflectionTestUtils.setField(schedulingService, "slotCapacityService", capacityService);
+        ReflectionTestUtils.setField(schedulingService, "outboxService", mock(OutboxService.class));
+        ReflectionTestUtils.setField(schedulingService, "reminderScheduler", mock(AppointmentReminderScheduler.class));
+    }
+
+    @Test
+    @DisplayName("1000个并发预约抢同一时段，恰好容量数成功，其余返回已满，不超卖")
+    void parallelBookingsNeverOverbook() throws Exception {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger full = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch go = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < REQUESTS; i++) {
+            long patientId = 1000L + i;
+            pool.execute(() -> {
+                try {
+                    go.await();
+                    schedulingService.bookAppointment(patientId, request(slot.start().plusMinutes(patientId % 50)));
+                    booked.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    if (e.getMessage().contains("已满")) {
+                        full.incrementAndGet();
+                    } else {
+                        unexpected.add(e);
+                    }
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+        go.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertTrue(unexpected.isEmpty(), () -> "unexpected: " + unexpected.peek());
+        assertEquals(CAPACITY, booked.get());
+        assertEquals(REQUESTS - CAPACITY, full.get());
+        assertEquals(CAPACITY, inserted.get());
+        assertEquals(CAPACITY, row.booked());
+        // 判定已满后的请求在本机直接拒绝：每个线程至多有一次失败的条件更新打到数据库
+        assertTrue(acquireCalls.get() <= CAPACITY + 1 + THREADS,
+                "acquire calls: " + acquireCalls.get());
+    }
+
+    @Test
+    @DisplayName("取消归还名额并发布归还事件，随后可以再约满")
+    void cancellationReturnsCapacity() {
+        for (int i = 0; i < CAPACITY; i++) {
+            schedulingService.bookAppointment(100L + i, request(slot.start()));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> schedulingService.bookAppointment(200L, request(slot.start())));
+
+        AppointmentMapper appointmentMapper =
+                (AppointmentMapper) ReflectionTestUtils.getField(schedulingService, "appointmentMapper");
+        Appointment existing = new Appointment();
+        existing.setId(1L);
+        existing.setPatientId(100L);
+        existing.setDoctorId(DOCTOR_ID);
+        existing.setAppointmentTime(LocalDateTime.of(date, slot.start()));
+        existing.setStatus(1);
+        when(appointmentMapper.selectById(1L)).thenReturn(existing);
+
+        assertTrue(schedulingService.patientCancelAppointment(100L, 1L, "有事"));
+        assertEquals(CAPACITY - 1, row.booked());
+        assertEquals(1, events.stream().filter(e -> e instanceof SlotCapacityService.CapacityReturnedEvent).count());
+
+        schedulingService.bookAppointment(201L, request(slot.start()));
+        assertEquals(CAPACITY, row.booked());
+        assertThrows(IllegalArgumentException.class,
+                () -> schedulingService.bookAppointment(202L, request(slot.start())));
+    }
+
+    private BookAppointmentRequest request(LocalTime time) {
+        BookAppointmentRequest request = new BookAppointmentRequest();
+        request.setDoctorId(DOCTOR_ID);
+        request.setAppointmentTime(LocalDateTime.of(date, time));
+        return request;
+    }
+
+    /**
+     * 一行容量计数；每个方法相当于持行锁执行的一条 UPDATE / INSERT IGNORE
+     */
+    private static final class CapacityRow {
+        private boolean exists;
+        private int booked;
+
+        synchronized int acquire(int capacity) {
+            if (!exists || booked >= capacity) {
+                return 0;
+            }
+            booked++;
+            return 1;
+        }
+
+        synchronized int seed() {
+            if (exists) {
+                return 0;
+            }
+            exists = true;
+            return 1;
+        }
+
+        synchronized int release() {
+            if (!exists || booked == 0) {
+                return 0;
+            }
+            booked--;
+            return 1;
+        }
+
+        synchronized int booked() {
+            return booked;
+        }
+    }
+}